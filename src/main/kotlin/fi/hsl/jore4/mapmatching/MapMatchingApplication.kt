@@ -11,6 +11,7 @@ import org.springframework.boot.runApplication
 import org.springframework.boot.security.autoconfigure.UserDetailsServiceAutoConfiguration
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Primary
+import org.springframework.scheduling.annotation.EnableScheduling
 import org.springframework.transaction.annotation.EnableTransactionManagement
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean
 import org.springframework.validation.beanvalidation.MethodValidationPostProcessor
@@ -30,6 +31,7 @@ fun main(args: Array<String>) {
     ]
 )
 @EnableTransactionManagement
+@EnableScheduling
 class MapMatchingApplication {
     @Bean
     fun methodValidationPostProcessor(): MethodValidationPostProcessor {
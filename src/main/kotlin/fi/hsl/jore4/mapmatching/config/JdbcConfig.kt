@@ -0,0 +1,18 @@
+package fi.hsl.jore4.mapmatching.config
+
+import fi.hsl.jore4.mapmatching.util.DeadlineAwareJdbcTemplate
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.jdbc.core.JdbcTemplate
+import javax.sql.DataSource
+
+/**
+ * Replaces the auto-configured [JdbcTemplate] with one that applies request
+ * deadlines to statements. The auto-configured named-parameter template used
+ * by the repositories delegates to this one.
+ */
+@Configuration
+class JdbcConfig {
+    @Bean
+    fun jdbcTemplate(dataSource: DataSource): JdbcTemplate = DeadlineAwareJdbcTemplate(dataSource)
+}
@@ -0,0 +1,98 @@
+package fi.hsl.jore4.mapmatching.config
+
+import fi.hsl.jore4.mapmatching.util.DeadlinePropagatingExecutorService
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.thread.Threading
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.core.env.Environment
+import org.springframework.core.task.VirtualThreadTaskExecutor
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.SynchronousQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Provides the executor on which map-matching work is run concurrently, e.g.
+ * the evaluation of route point sequence candidates. Each concurrent task
+ * opens a database transaction of its own and thus occupies a connection from
+ * the connection pool, which should be taken into account when sizing the
+ * executor.
+ *
+ * Batches of routes are matched on a separate executor so that the routes of a
+ * batch never wait for threads occupied by other routes of the same batch.
+ *
+ * When virtual threads are enabled (`spring.threads.virtual.enabled=true` on
+ * Java 21 or newer), the tasks are run on virtual threads. In that case, the
+ * matching executor starts a new virtual thread for every task, since
+ * [RequestConcurrencyLimitConfig] limits concurrent requests by the number of
+ * connections their tasks may use. The batch executor still runs at most the
+ * configured number of routes at a time.
+ *
+ * The executors run tasks within the request deadline of the submitting
+ * thread, if any.
+ */
+@Configuration
+class MatchingExecutorConfig(
+    val environment: Environment
+) {
+    @Bean(name = [MATCHING_EXECUTOR], destroyMethod = "shutdownNow")
+    fun matchingExecutor(
+        @Value("\${$POOL_SIZE_PROPERTY:4}") poolSize: Int
+    ): ExecutorService = DeadlinePropagatingExecutorService(createMatchingExecutor(poolSize))
+
+    private fun createMatchingExecutor(poolSize: Int): ExecutorService =
+        when (isVirtualThreadsActive()) {
+            true ->
+                // A thread per task; idle virtual threads are not kept alive.
+                ThreadPoolExecutor(
+                    0,
+                    Int.MAX_VALUE,
+                    0L,
+                    TimeUnit.SECONDS,
+                    SynchronousQueue(),
+                    createVirtualThreadFactory("matching-")
+                )
+
+            false -> Executors.newFixedThreadPool(poolSize, CustomizableThreadFactory("matching-"))
+        }
+
+    @Bean(name = [BATCH_MATCHING_EXECUTOR], destroyMethod = "shutdownNow")
+    fun batchMatchingExecutor(
+        @Value("\${$BATCH_PARALLELISM_PROPERTY:4}") parallelism: Int
+    ): ExecutorService = DeadlinePropagatingExecutorService(createBatchMatchingExecutor(parallelism))
+
+    private fun createBatchMatchingExecutor(parallelism: Int): ExecutorService =
+        when (isVirtualThreadsActive()) {
+            true ->
+                ThreadPoolExecutor(
+                    parallelism,
+                    parallelism,
+                    0L,
+                    TimeUnit.SECONDS,
+                    LinkedBlockingQueue(),
+                    createVirtualThreadFactory("batch-matching-")
+                )
+
+            false -> Executors.newFixedThreadPool(parallelism, CustomizableThreadFactory("batch-matching-"))
+        }
+
+    private fun isVirtualThreadsActive(): Boolean = Threading.VIRTUAL.isActive(environment)
+
+    companion object {
+        const val MATCHING_EXECUTOR = "matchingExecutor"
+
+        const val POOL_SIZE_PROPERTY = "mapmatching.matching.executor.pool-size"
+
+        const val BATCH_MATCHING_EXECUTOR = "batchMatchingExecutor"
+
+        const val BATCH_PARALLELISM_PROPERTY = "mapmatching.matching.batch.parallelism"
+
+        private fun createVirtualThreadFactory(threadNamePrefix: String): ThreadFactory =
+            VirtualThreadTaskExecutor(threadNamePrefix).virtualThreadFactory
+    }
+}
@@ -0,0 +1,90 @@
+package fi.hsl.jore4.mapmatching.config
+
+import fi.hsl.jore4.mapmatching.controller.api.BatchMapMatchingController
+import fi.hsl.jore4.mapmatching.controller.api.MapMatchingController
+import fi.hsl.jore4.mapmatching.controller.api.RouteController
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+import fi.hsl.jore4.mapmatching.service.common.INetworkVersionProbe
+import fi.hsl.jore4.mapmatching.service.common.NetworkVersionProbeImpl
+import jakarta.servlet.FilterChain
+import jakarta.servlet.http.HttpServletRequest
+import jakarta.servlet.http.HttpServletResponse
+import org.springframework.boot.actuate.info.InfoContributor
+import org.springframework.boot.health.contributor.Health
+import org.springframework.boot.health.contributor.HealthIndicator
+import org.springframework.boot.web.servlet.FilterRegistrationBean
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.web.filter.OncePerRequestFilter
+
+/**
+ * Exposes the version of the infrastructure network so that clients and
+ * operators can correlate results with a snapshot of the network data. The
+ * version is returned in [NETWORK_VERSION_HEADER] header of API responses and
+ * in the info endpoint of actuator. The health endpoint also tells whether
+ * the pgRouting edge table derived from the network is stale. A stale edge
+ * table does not make the service down, since the table is refreshed
+ * automatically (see [NetworkVersionProbeImpl]).
+ */
+@Configuration
+class NetworkVersionConfig {
+    @Bean
+    fun networkVersionHeaderFilter(
+        networkVersionProbe: INetworkVersionProbe
+    ): FilterRegistrationBean<NetworkVersionHeaderFilter> =
+        FilterRegistrationBean(NetworkVersionHeaderFilter(networkVersionProbe)).apply {
+            addUrlPatterns(
+                MapMatchingController.URL_PREFIX + "/*",
+                BatchMapMatchingController.URL_PREFIX + "/*",
+                RouteController.URL_PREFIX + "/*"
+            )
+        }
+
+    @Bean
+    fun networkVersionInfoContributor(networkVersionProbe: INetworkVersionProbe) =
+        InfoContributor { builder ->
+            val networkVersion: NetworkVersion = networkVersionProbe.currentVersion
+
+            builder.withDetail(
+                "infrastructureNetwork",
+                mapOf(
+                    "version" to networkVersion.version,
+                    "updatedAt" to networkVersion.updatedAt.toString()
+                )
+            )
+        }
+
+    @Bean
+    fun infrastructureNetworkHealthIndicator(networkVersionProbe: INetworkVersionProbe) =
+        HealthIndicator {
+            val networkVersion: NetworkVersion = networkVersionProbe.currentVersion
+
+            Health
+                .up()
+                .withDetail("version", networkVersion.version)
+                .withDetail("edgeTableStale", networkVersion.isEdgeTableStale)
+                .build()
+        }
+
+    /**
+     * Sets the network version that is current at the start of the request.
+     * The header is set before the response is committed.
+     */
+    class NetworkVersionHeaderFilter(
+        private val networkVersionProbe: INetworkVersionProbe
+    ) : OncePerRequestFilter() {
+        override fun doFilterInternal(
+            request: HttpServletRequest,
+            response: HttpServletResponse,
+            filterChain: FilterChain
+        ) {
+            response.setHeader(NETWORK_VERSION_HEADER, networkVersionProbe.currentVersion.toString())
+
+            filterChain.doFilter(request, response)
+        }
+    }
+
+    companion object {
+        const val NETWORK_VERSION_HEADER = "X-Network-Version"
+    }
+}
@@ -0,0 +1,202 @@
+package fi.hsl.jore4.mapmatching.config
+
+import com.zaxxer.hikari.HikariDataSource
+import fi.hsl.jore4.mapmatching.controller.api.BatchMapMatchingController
+import fi.hsl.jore4.mapmatching.controller.api.MapMatchingController
+import fi.hsl.jore4.mapmatching.controller.api.RouteController
+import fi.hsl.jore4.mapmatching.service.matching.MatchRouteViaPointsOnLinksServiceImpl
+import fi.hsl.jore4.mapmatching.service.matching.MatchingServiceImpl
+import io.github.oshai.kotlinlogging.KotlinLogging
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import jakarta.servlet.AsyncEvent
+import jakarta.servlet.AsyncListener
+import jakarta.servlet.FilterChain
+import jakarta.servlet.http.HttpServletRequest
+import jakarta.servlet.http.HttpServletResponse
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.thread.Threading
+import org.springframework.boot.web.servlet.FilterRegistrationBean
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.core.env.Environment
+import org.springframework.web.filter.OncePerRequestFilter
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.sql.DataSource
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Limits the number of API requests handled concurrently when request
+ * handlers run on virtual threads (`spring.threads.virtual.enabled=true` on
+ * Java 21 or newer). Since virtual threads are not limited in number, requests
+ * would otherwise pile up waiting for a database connection inside the
+ * connection pool, where they eventually fail on connection timeout. Instead,
+ * excess requests wait on a fair semaphore.
+ *
+ * The permits of the semaphore stand for database connections, and their
+ * number defaults to the maximum size of the connection pool. A request
+ * acquires as many permits as it may use connections at the same time, which
+ * depends on the API and on how concurrently routes are matched (see
+ * [RequestConnectionDemand]). The permits are held until the response is
+ * complete, also when the response is streamed asynchronously.
+ */
+@Configuration
+class RequestConcurrencyLimitConfig {
+    @Bean
+    fun requestConcurrencyLimitFilter(
+        environment: Environment,
+        dataSource: DataSource,
+        meterRegistry: MeterRegistry,
+        @Value("\${$MAX_CONNECTIONS_PROPERTY:0}") maxConnections: Int,
+        @Value("\${${MatchRouteViaPointsOnLinksServiceImpl.CONCURRENT_CANDIDATES_PROPERTY}:1}")
+        numberOfConcurrentCandidates: Int,
+        @Value("\${${MatchingServiceImpl.SPECULATIVE_FALLBACK_PROPERTY}:false}") speculativeFallbackEnabled: Boolean,
+        @Value("\${${MatchingExecutorConfig.BATCH_PARALLELISM_PROPERTY}:4}") batchParallelism: Int
+    ): FilterRegistrationBean<RequestConcurrencyLimitFilter> {
+        val permits: Int =
+            maxConnections.takeIf { it > 0 }
+                ?: getMaximumPoolSize(dataSource)
+
+        val connectionDemand =
+            RequestConnectionDemand(numberOfConcurrentCandidates, speculativeFallbackEnabled, batchParallelism)
+
+        val filter = RequestConcurrencyLimitFilter(permits, connectionDemand::of)
+
+        val virtualThreadsActive: Boolean = Threading.VIRTUAL.isActive(environment)
+
+        if (virtualThreadsActive) {
+            LOGGER.info {
+                "Limiting the number of database connections demanded by concurrent API requests to $permits"
+            }
+
+            Gauge
+                .builder("mapmatching.requests.waiting", filter) { it.numberOfWaitingRequests.toDouble() }
+                .description("The number of API requests waiting for a concurrency permit")
+                .register(meterRegistry)
+        }
+
+        return FilterRegistrationBean(filter).apply {
+            isEnabled = virtualThreadsActive
+            addUrlPatterns(
+                MapMatchingController.URL_PREFIX + "/*",
+                BatchMapMatchingController.URL_PREFIX + "/*",
+                RouteController.URL_PREFIX + "/*"
+            )
+        }
+    }
+
+    /**
+     * Resolves the maximum number of database connections used at the same
+     * time while handling a request.
+     *
+     * A single route is matched using one connection per concurrently
+     * evaluated route candidate, plus one for the speculative fallback. The
+     * batch API matches up to [batchParallelism] routes at a time. The route
+     * API uses a single connection.
+     */
+    class RequestConnectionDemand(
+        numberOfConcurrentCandidates: Int,
+        speculativeFallbackEnabled: Boolean,
+        batchParallelism: Int
+    ) {
+        private val connectionsPerRoute: Int =
+            numberOfConcurrentCandidates.coerceAtLeast(1) + (if (speculativeFallbackEnabled) 1 else 0)
+
+        private val connectionsPerBatch: Int = batchParallelism.coerceAtLeast(1) * connectionsPerRoute
+
+        fun of(request: HttpServletRequest): Int {
+            val path: String = request.requestURI.removePrefix(request.contextPath)
+
+            return when {
+                path.startsWith(BatchMapMatchingController.URL_PREFIX) -> connectionsPerBatch
+                path.startsWith(MapMatchingController.URL_PREFIX) -> connectionsPerRoute
+                else -> 1
+            }
+        }
+    }
+
+    /**
+     * Acquires the permits given by [connectionDemand] for each request. A
+     * request demanding more permits than there are in total acquires all of
+     * them.
+     */
+    class RequestConcurrencyLimitFilter(
+        private val permits: Int,
+        private val connectionDemand: (HttpServletRequest) -> Int
+    ) : OncePerRequestFilter() {
+        private val semaphore = Semaphore(permits, true)
+
+        val numberOfWaitingRequests: Int
+            get() = semaphore.queueLength
+
+        val numberOfAvailablePermits: Int
+            get() = semaphore.availablePermits()
+
+        override fun doFilterInternal(
+            request: HttpServletRequest,
+            response: HttpServletResponse,
+            filterChain: FilterChain
+        ) {
+            val permitRelease = PermitRelease(connectionDemand(request).coerceIn(1, permits))
+
+            semaphore.acquire(permitRelease.numberOfPermits)
+
+            try {
+                filterChain.doFilter(request, response)
+            } finally {
+                // An asynchronous response, e.g. a streamed one, is completed after this
+                // filter returns. Async dispatches are not filtered again.
+                if (request.isAsyncStarted) {
+                    request.asyncContext.addListener(permitRelease)
+                } else {
+                    permitRelease.release()
+                }
+            }
+        }
+
+        /**
+         * Releases the permits of a request exactly once, either when the
+         * request is handled synchronously or when its asynchronous processing
+         * is complete.
+         */
+        private inner class PermitRelease(
+            val numberOfPermits: Int
+        ) : AsyncListener {
+            private val released = AtomicBoolean()
+
+            fun release() {
+                if (released.compareAndSet(false, true)) {
+                    semaphore.release(numberOfPermits)
+                }
+            }
+
+            override fun onComplete(event: AsyncEvent) = release()
+
+            // Asynchronous processing is completed also after a timeout or an error, and the
+            // streaming may go on until then.
+            override fun onTimeout(event: AsyncEvent) {}
+
+            override fun onError(event: AsyncEvent) {}
+
+            override fun onStartAsync(event: AsyncEvent) {
+                // Listeners are removed when asynchronous processing is restarted.
+                event.asyncContext.addListener(this)
+            }
+        }
+    }
+
+    companion object {
+        const val MAX_CONNECTIONS_PROPERTY = "mapmatching.requests.max-connections"
+
+        private const val DEFAULT_MAXIMUM_POOL_SIZE = 10
+
+        private fun getMaximumPoolSize(dataSource: DataSource): Int =
+            if (dataSource.isWrapperFor(HikariDataSource::class.java)) {
+                dataSource.unwrap(HikariDataSource::class.java).maximumPoolSize
+            } else {
+                DEFAULT_MAXIMUM_POOL_SIZE
+            }
+    }
+}
@@ -1,7 +1,9 @@
 package fi.hsl.jore4.mapmatching.config
 
+import fi.hsl.jore4.mapmatching.controller.api.BatchMapMatchingController
 import fi.hsl.jore4.mapmatching.controller.api.MapMatchingController
 import fi.hsl.jore4.mapmatching.controller.api.RouteController
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.http.HttpMethod
@@ -10,10 +12,20 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity
 import org.springframework.security.config.http.SessionCreationPolicy
 import org.springframework.security.web.SecurityFilterChain
+import org.springframework.security.web.util.matcher.RequestMatcher
 
+/**
+ * Of the actuator endpoints, only health is publicly accessible. The other
+ * exposed endpoints (info and metrics) are accessible only via a separate
+ * management port (`management.server.port`) that is not to be published
+ * outside the deployment.
+ */
 @Configuration
 @EnableWebSecurity
-class WebSecurityConfig {
+class WebSecurityConfig(
+    @param:Value("\${server.port:8080}") private val serverPort: Int,
+    @param:Value("\${management.server.port:-1}") private val managementPort: Int
+) {
     @Bean
     @Throws(Exception::class)
     fun configure(httpSecurity: HttpSecurity): SecurityFilterChain =
@@ -25,6 +37,8 @@ class WebSecurityConfig {
             .cors(withDefaults())
             .authorizeHttpRequests {
                 it
+                    .requestMatchers(managementPortRequestMatcher())
+                    .permitAll()
                     .requestMatchers(
                         HttpMethod.GET,
                         RouteController.URL_PREFIX + "/**",
@@ -34,9 +48,18 @@ class WebSecurityConfig {
                     .requestMatchers(
                         HttpMethod.POST,
                         MapMatchingController.URL_PREFIX + "/**",
+                        BatchMapMatchingController.URL_PREFIX + "/**",
                         RouteController.URL_PREFIX + "/**"
                     ).permitAll()
                     .anyRequest()
                     .denyAll()
             }.build()
+
+    private fun managementPortRequestMatcher(): RequestMatcher {
+        val separateManagementPort: Boolean = managementPort > 0 && managementPort != serverPort
+
+        return RequestMatcher { request ->
+            separateManagementPort && request.localPort == managementPort && request.method == HttpMethod.GET.name()
+        }
+    }
 }
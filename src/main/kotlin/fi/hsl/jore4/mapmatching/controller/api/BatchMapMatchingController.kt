@@ -0,0 +1,123 @@
+package fi.hsl.jore4.mapmatching.controller.api
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.service.common.RequestDeadlineHandler
+import fi.hsl.jore4.mapmatching.service.common.RequestDeadlineHandler.Companion.TIMEOUT_HEADER
+import fi.hsl.jore4.mapmatching.service.common.response.BatchMatchResultDTO
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.service.matching.IBatchMatchingService
+import fi.hsl.jore4.mapmatching.service.matching.PublicTransportRouteMatchTask
+import fi.hsl.jore4.mapmatching.util.controller.ParameterUtils.findVehicleType
+import io.github.oshai.kotlinlogging.KotlinLogging
+import jakarta.validation.Valid
+import org.springframework.http.MediaType
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.PathVariable
+import org.springframework.web.bind.annotation.PostMapping
+import org.springframework.web.bind.annotation.RequestBody
+import org.springframework.web.bind.annotation.RequestHeader
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RestController
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody
+import tools.jackson.databind.json.JsonMapper
+import java.io.OutputStream
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Map-matches batches of public transport routes. The results are streamed
+ * back as newline-delimited JSON (one [BatchMatchResultDTO] per line) in the
+ * order in which the routes are completed. The timeout given in
+ * [TIMEOUT_HEADER] header applies to each route separately. If the transportation profile
+ * given in the URL is invalid, a single [RoutingResponse] is returned as JSON
+ * instead.
+ */
+@RestController
+@RequestMapping(value = [BatchMapMatchingController.URL_PREFIX])
+class BatchMapMatchingController(
+    val batchMatchingService: IBatchMatchingService,
+    val requestDeadlineHandler: RequestDeadlineHandler,
+    val jsonMapper: JsonMapper
+) {
+    @PostMapping("/$TRANSPORTATION_MODE_PARAM", produces = [MediaType.APPLICATION_NDJSON_VALUE])
+    fun findMatchesForPublicTransportRoutes(
+        @PathVariable transportationMode: String,
+        @Valid @RequestBody request: PublicTransportRouteBatchMatchRequestDTO,
+        @RequestHeader(TIMEOUT_HEADER, required = false) timeoutInMillis: Long?
+    ): ResponseEntity<StreamingResponseBody> {
+        LOGGER.debug { "Given transportation mode: $transportationMode" }
+
+        val vehicleType: VehicleType =
+            findVehicleType(transportationMode, null)
+                ?: return failure(RoutingResponse.invalidTransportationMode(transportationMode))
+
+        return findMatches(request, vehicleType, timeoutInMillis)
+    }
+
+    @PostMapping("/$TRANSPORTATION_MODE_PARAM/$VEHICLE_TYPE_PARAM", produces = [MediaType.APPLICATION_NDJSON_VALUE])
+    fun findMatchesForPublicTransportRoutes(
+        @PathVariable transportationMode: String,
+        @PathVariable vehicleTypeParam: String,
+        @Valid @RequestBody request: PublicTransportRouteBatchMatchRequestDTO,
+        @RequestHeader(TIMEOUT_HEADER, required = false) timeoutInMillis: Long?
+    ): ResponseEntity<StreamingResponseBody> {
+        LOGGER.debug { "Given profile: $transportationMode/$vehicleTypeParam" }
+
+        val vehicleType: VehicleType =
+            findVehicleType(transportationMode, vehicleTypeParam)
+                ?: return failure(RoutingResponse.invalidTransportationProfile(transportationMode, vehicleTypeParam))
+
+        return findMatches(request, vehicleType, timeoutInMillis)
+    }
+
+    private fun findMatches(
+        request: PublicTransportRouteBatchMatchRequestDTO,
+        vehicleType: VehicleType,
+        timeoutInMillis: Long?
+    ): ResponseEntity<StreamingResponseBody> {
+        LOGGER.info { "Given batch of ${request.routes.size} routes" }
+
+        val tasks: List<PublicTransportRouteMatchTask> =
+            request.routes.map { route ->
+                PublicTransportRouteMatchTask(
+                    route.routeId,
+                    route.routeGeometry,
+                    route.routePoints,
+                    vehicleType,
+                    MapMatchingController.getMatchingParameters(route)
+                )
+            }
+
+        val body =
+            StreamingResponseBody { outputStream: OutputStream ->
+                batchMatchingService.findMatchesForPublicTransportRoutes(
+                    tasks,
+                    requestDeadlineHandler.resolveTimeout(timeoutInMillis)
+                ) { result: BatchMatchResultDTO ->
+                    outputStream.write(jsonMapper.writeValueAsBytes(result))
+                    outputStream.write(NEWLINE)
+                    outputStream.flush()
+                }
+            }
+
+        return ResponseEntity
+            .ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body)
+    }
+
+    private fun failure(response: RoutingResponse): ResponseEntity<StreamingResponseBody> =
+        ResponseEntity
+            .ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(StreamingResponseBody { it.write(jsonMapper.writeValueAsBytes(response)) })
+
+    companion object {
+        const val URL_PREFIX = "/api/match/public-transport-route/batch/v1"
+
+        private const val TRANSPORTATION_MODE_PARAM = "{transportationMode:[a-zA-Z-_]+}"
+        private const val VEHICLE_TYPE_PARAM = "{vehicleTypeParam:[a-zA-Z-_]+}"
+
+        private val NEWLINE: ByteArray = "\n".toByteArray()
+    }
+}
@@ -2,6 +2,8 @@ package fi.hsl.jore4.mapmatching.controller.api
 
 import fi.hsl.jore4.mapmatching.controller.api.PublicTransportRouteMatchRequestDTO.MapMatchingParametersDTO
 import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.service.common.RequestDeadlineHandler
+import fi.hsl.jore4.mapmatching.service.common.RequestDeadlineHandler.Companion.TIMEOUT_HEADER
 import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
 import fi.hsl.jore4.mapmatching.service.matching.IMatchingService
 import fi.hsl.jore4.mapmatching.service.matching.PublicTransportRouteMatchingParameters
@@ -14,15 +16,18 @@ import org.springframework.http.MediaType
 import org.springframework.web.bind.annotation.PathVariable
 import org.springframework.web.bind.annotation.PostMapping
 import org.springframework.web.bind.annotation.RequestBody
+import org.springframework.web.bind.annotation.RequestHeader
 import org.springframework.web.bind.annotation.RequestMapping
 import org.springframework.web.bind.annotation.RestController
+import java.time.Duration
 
 private val LOGGER = KotlinLogging.logger {}
 
 @RestController
 @RequestMapping(value = [MapMatchingController.URL_PREFIX], produces = [MediaType.APPLICATION_JSON_VALUE])
 class MapMatchingController(
-    val matchingService: IMatchingService
+    val matchingService: IMatchingService,
+    val requestDeadlineHandler: RequestDeadlineHandler
 ) {
     @PostMapping(
         "/$TRANSPORTATION_MODE_PARAM",
@@ -30,7 +35,8 @@ class MapMatchingController(
     )
     fun findMatchForPublicTransportRoute(
         @PathVariable transportationMode: String,
-        @Valid @RequestBody request: PublicTransportRouteMatchRequestDTO
+        @Valid @RequestBody request: PublicTransportRouteMatchRequestDTO,
+        @RequestHeader(TIMEOUT_HEADER, required = false) timeoutInMillis: Long?
     ): RoutingResponse {
         LOGGER.debug { "Given transportation mode: $transportationMode" }
 
@@ -38,7 +44,7 @@ class MapMatchingController(
             findVehicleType(transportationMode, null)
                 ?: return RoutingResponse.invalidTransportationMode(transportationMode)
 
-        return findMatch(request, vehicleType)
+        return findMatch(request, vehicleType, timeoutInMillis)
     }
 
     @PostMapping(
@@ -48,7 +54,8 @@ class MapMatchingController(
     fun findMatchForPublicTransportRoute(
         @PathVariable transportationMode: String,
         @PathVariable vehicleTypeParam: String,
-        @Valid @RequestBody request: PublicTransportRouteMatchRequestDTO
+        @Valid @RequestBody request: PublicTransportRouteMatchRequestDTO,
+        @RequestHeader(TIMEOUT_HEADER, required = false) timeoutInMillis: Long?
     ): RoutingResponse {
         LOGGER.debug { "Given profile: $transportationMode/$vehicleTypeParam" }
 
@@ -56,12 +63,13 @@ class MapMatchingController(
             findVehicleType(transportationMode, vehicleTypeParam)
                 ?: return RoutingResponse.invalidTransportationProfile(transportationMode, vehicleTypeParam)
 
-        return findMatch(request, vehicleType)
+        return findMatch(request, vehicleType, timeoutInMillis)
     }
 
     private fun findMatch(
         request: PublicTransportRouteMatchRequestDTO,
-        vehicleType: VehicleType
+        vehicleType: VehicleType,
+        timeoutInMillis: Long?
     ): RoutingResponse {
         LOGGER.debug { "Given route geometry: ${request.routeGeometry}" }
         LOGGER.debug {
@@ -72,14 +80,18 @@ class MapMatchingController(
             }"
         }
 
+        val timeout: Duration? = requestDeadlineHandler.resolveTimeout(timeoutInMillis)
+
         return try {
-            matchingService.findMatchForPublicTransportRoute(
-                request.routeId,
-                request.routeGeometry,
-                request.routePoints,
-                vehicleType,
-                getMatchingParameters(request)
-            )
+            requestDeadlineHandler.runWithinDeadline(API_NAME, timeout) {
+                matchingService.findMatchForPublicTransportRoute(
+                    request.routeId,
+                    request.routeGeometry,
+                    request.routePoints,
+                    vehicleType,
+                    getMatchingParameters(request)
+                )
+            }
         } catch (ex: Exception) {
             RoutingResponse.invalidUrl(ex.message ?: "Map-matching failed")
         }
@@ -88,6 +100,8 @@ class MapMatchingController(
     companion object {
         const val URL_PREFIX = "/api/match/public-transport-route/v1"
 
+        const val API_NAME = "match"
+
         private const val TRANSPORTATION_MODE_PARAM = "{transportationMode:[a-zA-Z-_]+}"
         private const val VEHICLE_TYPE_PARAM = "{vehicleTypeParam:[a-zA-Z-_]+}"
 
@@ -0,0 +1,14 @@
+package fi.hsl.jore4.mapmatching.controller.api
+
+import jakarta.validation.Valid
+import jakarta.validation.constraints.NotEmpty
+
+/**
+ * Contains input data for map-matching a batch of public transport routes
+ * against the infrastructure network provided by the system.
+ *
+ * @property routes the routes to be matched
+ */
+data class PublicTransportRouteBatchMatchRequestDTO(
+    @field:NotEmpty @field:Valid val routes: List<PublicTransportRouteMatchRequestDTO>
+)
@@ -2,6 +2,7 @@ package fi.hsl.jore4.mapmatching.controller.api
 
 import fi.hsl.jore4.mapmatching.model.LatLng
 import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.service.common.RequestDeadlineHandler
 import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
 import fi.hsl.jore4.mapmatching.service.routing.IRoutingService
 import fi.hsl.jore4.mapmatching.service.routing.RoutingExtraParameters
@@ -27,7 +28,8 @@ private val LOGGER = KotlinLogging.logger {}
 @Validated
 @RequestMapping(value = [RouteController.URL_PREFIX], produces = [MediaType.APPLICATION_JSON_VALUE])
 class RouteController(
-    val routingService: IRoutingService
+    val routingService: IRoutingService,
+    val requestDeadlineHandler: RequestDeadlineHandler
 ) {
     @Deprecated("GET request should be replaced with POST")
     @GetMapping(
@@ -141,18 +143,22 @@ class RouteController(
         linkSearchRadius: Int?,
         simplifyClosedLoopTraversals: Boolean?
     ): RoutingResponse =
-        routingService.findRoute(
-            toPoints(coords),
-            vehicleType,
-            RoutingExtraParameters(
-                linkSearchRadius ?: DEFAULT_LINK_SEARCH_RADIUS,
-                simplifyClosedLoopTraversals ?: DEFAULT_SIMPLIFY_CLOSED_LOOP_TRAVERSALS
+        requestDeadlineHandler.runWithinDeadline(API_NAME, requestDeadlineHandler.resolveTimeout(null)) {
+            routingService.findRoute(
+                toPoints(coords),
+                vehicleType,
+                RoutingExtraParameters(
+                    linkSearchRadius ?: DEFAULT_LINK_SEARCH_RADIUS,
+                    simplifyClosedLoopTraversals ?: DEFAULT_SIMPLIFY_CLOSED_LOOP_TRAVERSALS
+                )
             )
-        )
+        }
 
     companion object {
         const val URL_PREFIX = "/api/route/v1"
 
+        const val API_NAME = "route"
+
         private const val TRANSPORTATION_MODE_PARAM = "{transportationMode:[a-zA-Z-_]+}"
         private const val VEHICLE_TYPE_PARAM = "{vehicleTypeParam:[a-zA-Z-_]+}"
 
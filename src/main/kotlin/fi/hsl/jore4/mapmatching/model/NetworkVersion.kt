@@ -0,0 +1,21 @@
+package fi.hsl.jore4.mapmatching.model
+
+import java.time.OffsetDateTime
+
+/**
+ * Identifies a committed snapshot of the infrastructure network data.
+ *
+ * @property version the version number that is incremented whenever the
+ * infrastructure network, its topology or public transport stops are modified
+ * @property updatedAt the time when the version was last incremented
+ * @property isEdgeTableStale whether the pgRouting edges (and reachable nodes)
+ * derived from the infrastructure network have not been refreshed after the
+ * network or its topology was last modified
+ */
+data class NetworkVersion(
+    val version: Long,
+    val updatedAt: OffsetDateTime,
+    val isEdgeTableStale: Boolean = false
+) {
+    override fun toString() = version.toString()
+}
@@ -0,0 +1,12 @@
+package fi.hsl.jore4.mapmatching.model
+
+/**
+ * Application event published when a change in the version of the
+ * infrastructure network is detected. Caches and in-memory indices derived
+ * from the network data subscribe to this event in order to reload or
+ * invalidate their content.
+ */
+data class NetworkVersionChangedEvent(
+    val previousVersion: NetworkVersion,
+    val version: NetworkVersion
+)
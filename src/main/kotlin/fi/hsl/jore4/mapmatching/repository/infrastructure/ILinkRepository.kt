@@ -1,7 +1,9 @@
 package fi.hsl.jore4.mapmatching.repository.infrastructure
 
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
 import fi.hsl.jore4.mapmatching.model.VehicleType
 import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
 import org.geolatte.geom.Point
 
 interface ILinkRepository {
@@ -55,4 +57,25 @@ interface ILinkRepository {
         distanceInMeters: Double,
         limit: Int
     ): Map<Int, SnapPointToLinksResult>
+
+    /**
+     * Find the identifiers of the infrastructure links that are contained
+     * inside the buffer area formed by expanding the given line geometry in
+     * all directions by the given radius. The selection of links is the same as
+     * the geometric restriction applied for pgRouting in
+     * [fi.hsl.jore4.mapmatching.repository.routing.PgRoutingEdgeQueries].
+     *
+     * @param lineGeometry the LineString geometry to be expanded
+     * @param bufferRadiusInMeters the distance with which the LineString
+     * geometry is expanded in all directions
+     * @param vehicleType vehicle type constraint for links. Resulting links
+     * must be safely traversable by the given vehicle type.
+     *
+     * @return identifiers of the infrastructure links within the buffer area
+     */
+    fun findIdsOfLinksWithinBufferArea(
+        lineGeometry: LineString<G2D>,
+        bufferRadiusInMeters: Double,
+        vehicleType: VehicleType
+    ): Set<InfrastructureLinkId>
 }
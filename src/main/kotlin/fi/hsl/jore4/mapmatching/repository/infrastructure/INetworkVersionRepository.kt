@@ -0,0 +1,17 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+
+interface INetworkVersionRepository {
+    /**
+     * Reads the current version of the infrastructure network in the
+     * database. The version changes whenever the network data is modified.
+     */
+    fun getNetworkVersion(): NetworkVersion
+
+    /**
+     * Re-populates the pgRouting edge table (and reachable nodes) from the
+     * infrastructure network so that it is no longer stale.
+     */
+    fun refreshEdgeTable()
+}
@@ -7,6 +7,7 @@ import fi.hsl.jore4.mapmatching.model.VehicleType
 import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toEwkb
 import org.geolatte.geom.G2D
 import org.geolatte.geom.Geometries.mkMultiPoint
+import org.geolatte.geom.LineString
 import org.geolatte.geom.Point
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
@@ -100,6 +101,24 @@ class LinkRepositoryImpl(
             }
     }
 
+    @Transactional(readOnly = true)
+    override fun findIdsOfLinksWithinBufferArea(
+        lineGeometry: LineString<G2D>,
+        bufferRadiusInMeters: Double,
+        vehicleType: VehicleType
+    ): Set<InfrastructureLinkId> {
+        val params =
+            MapSqlParameterSource()
+                .addValue("ewkb", toEwkb(lineGeometry))
+                .addValue("bufferRadius", bufferRadiusInMeters)
+                .addValue("vehicleType", vehicleType.value)
+
+        return jdbcTemplate
+            .query(FIND_LINKS_WITHIN_BUFFER_AREA_SQL, params) { rs: ResultSet, _: Int ->
+                InfrastructureLinkId(rs.getLong("infrastructure_link_id"))
+            }.toSet()
+    }
+
     private fun findClosestLinksInternal(
         points: List<Point<G2D>>,
         vehicleType: VehicleType,
@@ -143,6 +162,16 @@ class LinkRepositoryImpl(
     }
 
     companion object {
+        private val FIND_LINKS_WITHIN_BUFFER_AREA_SQL =
+            """
+            SELECT l.infrastructure_link_id
+            FROM routing.infrastructure_link l
+            INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
+                ON s.infrastructure_link_id = l.infrastructure_link_id
+            WHERE s.vehicle_type = :vehicleType
+                AND ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(:ewkb), 3067), :bufferRadius), l.geom)
+            """.trimIndent()
+
         private val FIND_CLOSEST_LINKS_SQL =
             """
             SELECT
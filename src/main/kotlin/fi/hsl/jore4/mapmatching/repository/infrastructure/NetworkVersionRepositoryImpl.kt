@@ -0,0 +1,44 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.time.OffsetDateTime
+
+/**
+ * Reads the network version from `routing.infrastructure_network_version`
+ * table, which is incremented by triggers in the same transaction that
+ * modifies the network data. The edge table is stale if the topology of the
+ * network has been modified after `routing.refresh_infrastructure_link_edge()`
+ * was last called, e.g. after a routine import of the network.
+ */
+@Repository
+class NetworkVersionRepositoryImpl(
+    val jdbcTemplate: NamedParameterJdbcTemplate
+) : INetworkVersionRepository {
+    @Transactional(readOnly = true)
+    override fun getNetworkVersion(): NetworkVersion =
+        jdbcTemplate.jdbcOperations.queryForObject(GET_NETWORK_VERSION_SQL) { rs, _ ->
+            NetworkVersion(
+                rs.getLong("version"),
+                rs.getObject("updated_at", OffsetDateTime::class.java),
+                rs.getBoolean("is_edge_table_stale")
+            )
+        }!!
+
+    @Transactional
+    override fun refreshEdgeTable() {
+        jdbcTemplate.jdbcOperations.execute(REFRESH_EDGE_TABLE_SQL)
+    }
+
+    companion object {
+        private val GET_NETWORK_VERSION_SQL =
+            """
+            SELECT v.version, v.updated_at, v.edge_topology_version <> v.topology_version AS is_edge_table_stale
+            FROM routing.infrastructure_network_version v
+            """.trimIndent()
+
+        private const val REFRESH_EDGE_TABLE_SQL = "CALL routing.refresh_infrastructure_link_edge()"
+    }
+}
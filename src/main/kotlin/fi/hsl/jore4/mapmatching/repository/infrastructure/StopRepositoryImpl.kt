@@ -6,19 +6,17 @@ import fi.hsl.jore4.mapmatching.model.LinkSide
 import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
 import fi.hsl.jore4.mapmatching.model.VehicleType
 import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toEwkb
+import org.geolatte.geom.Geometries.mkMultiPoint
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
 import org.springframework.stereotype.Repository
 import org.springframework.transaction.annotation.Transactional
 import java.sql.ResultSet
-import java.util.concurrent.ConcurrentHashMap
 
 @Repository
 class StopRepositoryImpl(
     val jdbcTemplate: NamedParameterJdbcTemplate
 ) : IStopRepository {
-    private val cachedQueriesForFindingStopsByNationalId = ConcurrentHashMap<Int, String>()
-
     @Transactional(readOnly = true)
     override fun findStopsAndSnapToInfrastructureLinks(
         stopMatchParams: Collection<PublicTransportStopMatchParameters>,
@@ -28,22 +26,19 @@ class StopRepositoryImpl(
             return emptyList()
         }
 
-        val queryString: String = getQueryForFindingStopsByNationalId(stopMatchParams.size)
-
+        // Source locations are transformed to binary MultiPoint format (for compact representation).
+        // Together with the array of national IDs this keeps the SQL text the same regardless of
+        // the number of stops.
         val jdbcParams =
             MapSqlParameterSource()
+                .addValue(
+                    "nationalIds",
+                    stopMatchParams.joinToString(prefix = "{", postfix = "}") { "${it.nationalId}" }
+                ).addValue("srcLocations", toEwkb(mkMultiPoint(stopMatchParams.map { it.sourceLocation })))
                 .addValue("vehicleType", VehicleType.GENERIC_BUS.value)
                 .addValue("maxDistance", maxDistanceBetweenExpectedAndActualStopLocation)
 
-        stopMatchParams.withIndex().forEach { (index: Int, params: PublicTransportStopMatchParameters) ->
-            val seq = index + 1
-
-            jdbcParams
-                .addValue("nationalId$seq", params.nationalId)
-                .addValue("srcLocation$seq", toEwkb(params.sourceLocation))
-        }
-
-        return jdbcTemplate.query(queryString, jdbcParams) { rs: ResultSet, _: Int ->
+        return jdbcTemplate.query(FIND_STOPS_BY_NATIONAL_ID_SQL, jdbcParams) { rs: ResultSet, _: Int ->
             val stopNationalId = rs.getInt("public_transport_stop_national_id")
 
             val stopSideOnLink: LinkSide =
@@ -84,49 +79,37 @@ class StopRepositoryImpl(
         }
     }
 
-    private fun getQueryForFindingStopsByNationalId(numberOfStops: Int): String =
-        cachedQueriesForFindingStopsByNationalId.computeIfAbsent(
-            numberOfStops,
-            StopRepositoryImpl::createQueryForFindingStopsByNationalId
-        )
-
     companion object {
-        private fun createQueryForFindingStopsByNationalId(numberOfStops: Int): String {
-            require(numberOfStops in 1..500) { "numberOfStops must be in range 1..500" }
-
-            fun createUnionSubquery(numberOfStops: Int): String =
-                (1..numberOfStops).joinToString(
-                    transform = { i: Int ->
-                        "SELECT $i AS seq, :nationalId$i AS stop_national_id, :srcLocation$i AS src_location"
-                    },
-                    // Indent in separator should match the main query string below in order to have
-                    // properly formatted SQL result.
-                    separator = "\n                    UNION "
-                )
-
-            return """
-                SELECT
-                    stop.public_transport_stop_national_id,
-                    stop.is_on_direction_of_link_forward_traversal,
-                    link.infrastructure_link_id,
-                    link.start_node_id,
-                    link.end_node_id,
-                    link.traffic_flow_direction_type,
-                    ST_LineLocatePoint(link.geom, stop.geom) AS fractional_measure,
-                    ST_Length(link.geom) AS infrastructure_link_len2d
-                FROM (
-                    ${createUnionSubquery(numberOfStops)}
-                ) stop_params
-                INNER JOIN routing.public_transport_stop stop ON
-                    stop.public_transport_stop_national_id = stop_params.stop_national_id
-                INNER JOIN routing.infrastructure_link link ON
-                    link.infrastructure_link_id = stop.located_on_infrastructure_link_id
-                INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type safe
-                    ON safe.infrastructure_link_id = link.infrastructure_link_id
-                WHERE ST_DWithin(stop.geom, ST_Transform(ST_GeomFromEWKB(stop_params.src_location), 3067), :maxDistance)
-                    AND safe.vehicle_type = :vehicleType
-                ORDER BY stop_params.seq ASC;
-                """.trimIndent()
-        }
+        private val FIND_STOPS_BY_NATIONAL_ID_SQL =
+            """
+            SELECT
+                stop.public_transport_stop_national_id,
+                stop.is_on_direction_of_link_forward_traversal,
+                link.infrastructure_link_id,
+                link.start_node_id,
+                link.end_node_id,
+                link.traffic_flow_direction_type,
+                ST_LineLocatePoint(link.geom, stop.geom) AS fractional_measure,
+                ST_Length(link.geom) AS infrastructure_link_len2d
+            FROM (
+                SELECT param.seq, param.stop_national_id, src.geom AS src_location
+                FROM unnest((:nationalIds)::int[]) WITH ORDINALITY AS param(stop_national_id, seq)
+                INNER JOIN (
+                    SELECT (g.gdump).path[1] AS seq, (g.gdump).geom AS geom
+                    FROM (
+                        SELECT ST_Dump(ST_Transform(ST_GeomFromEWKB(:srcLocations), 3067)) AS gdump
+                    ) g
+                ) src ON src.seq = param.seq
+            ) stop_params
+            INNER JOIN routing.public_transport_stop stop ON
+                stop.public_transport_stop_national_id = stop_params.stop_national_id
+            INNER JOIN routing.infrastructure_link link ON
+                link.infrastructure_link_id = stop.located_on_infrastructure_link_id
+            INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type safe
+                ON safe.infrastructure_link_id = link.infrastructure_link_id
+            WHERE ST_DWithin(stop.geom, stop_params.src_location, :maxDistance)
+                AND safe.vehicle_type = :vehicleType
+            ORDER BY stop_params.seq ASC;
+            """.trimIndent()
     }
 }
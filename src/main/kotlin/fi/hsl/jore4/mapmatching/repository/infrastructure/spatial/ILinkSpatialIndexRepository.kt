@@ -0,0 +1,12 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure.spatial
+
+interface ILinkSpatialIndexRepository {
+    /**
+     * Loads all infrastructure links along with the vehicle types by which
+     * they are safely traversable and builds an in-memory spatial index from
+     * them.
+     *
+     * @return the spatial index of infrastructure links
+     */
+    fun loadLinkSpatialIndex(): LinkSpatialIndex
+}
@@ -0,0 +1,101 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure.spatial
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.infrastructure.ILinkRepository
+import fi.hsl.jore4.mapmatching.repository.infrastructure.LinkRepositoryImpl
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnapPointToLinkResult
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnapPointToLinksResult
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnappedPointOnLink
+import fi.hsl.jore4.mapmatching.util.EtrsTm35FinProjection
+import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
+import org.geolatte.geom.Point
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.context.annotation.Primary
+import org.springframework.stereotype.Repository
+
+/**
+ * A link repository that snaps points to the closest infrastructure links by
+ * searching an in-memory spatial index instead of querying the database. The
+ * resulting [SnappedPointOnLink] objects carry the same information as the
+ * ones produced by [LinkRepositoryImpl]: the input points are projected into
+ * EPSG:3067 in the JVM and distances, fractional locations and link lengths
+ * are measured in that coordinate system.
+ *
+ * Finding links within a buffer area is delegated to [LinkRepositoryImpl]
+ * because the result depends on the polygonal approximation of the buffer
+ * made by PostGIS.
+ *
+ * This repository replaces [LinkRepositoryImpl] when enabled via
+ * [LinkSpatialIndexHolder.SPATIAL_INDEX_ENABLED_PROPERTY].
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = [LinkSpatialIndexHolder.SPATIAL_INDEX_ENABLED_PROPERTY], havingValue = "true")
+class IndexedLinkRepositoryImpl(
+    val linkSpatialIndexHolder: LinkSpatialIndexHolder,
+    val databaseLinkRepository: LinkRepositoryImpl
+) : ILinkRepository {
+    override fun findClosestLinks(
+        points: List<Point<G2D>>,
+        vehicleType: VehicleType,
+        distanceInMeters: Double
+    ): Map<Int, SnapPointToLinkResult> =
+        findClosestLinksInternal(points, vehicleType, distanceInMeters, 1)
+            .mapValues { (pointSeqNum, closestLinks) ->
+                SnapPointToLinkResult(points[pointSeqNum - 1], distanceInMeters, closestLinks.first())
+            }
+
+    override fun findNClosestLinks(
+        points: List<Point<G2D>>,
+        vehicleType: VehicleType,
+        distanceInMeters: Double,
+        limit: Int
+    ): Map<Int, SnapPointToLinksResult> =
+        findClosestLinksInternal(points, vehicleType, distanceInMeters, limit)
+            .mapValues { (pointSeqNum, closestLinks) ->
+                SnapPointToLinksResult(points[pointSeqNum - 1], distanceInMeters, limit, closestLinks)
+            }
+
+    override fun findIdsOfLinksWithinBufferArea(
+        lineGeometry: LineString<G2D>,
+        bufferRadiusInMeters: Double,
+        vehicleType: VehicleType
+    ): Set<InfrastructureLinkId> =
+        databaseLinkRepository.findIdsOfLinksWithinBufferArea(lineGeometry, bufferRadiusInMeters, vehicleType)
+
+    /**
+     * @return the closest links ordered by ascending distance indexed by the
+     * one-based sequence number of the point. Points for which no link was
+     * found are left out.
+     */
+    private fun findClosestLinksInternal(
+        points: List<Point<G2D>>,
+        vehicleType: VehicleType,
+        distanceInMeters: Double,
+        limit: Int
+    ): Map<Int, List<SnappedPointOnLink>> {
+        if (points.isEmpty()) {
+            return emptyMap()
+        }
+
+        val index: LinkSpatialIndex = linkSpatialIndexHolder.getIndex()
+        val projected = DoubleArray(2)
+
+        val result: MutableMap<Int, List<SnappedPointOnLink>> = LinkedHashMap()
+
+        points.forEachIndexed { pointIndex, point ->
+            EtrsTm35FinProjection.project(point.position.lon, point.position.lat, projected)
+
+            val closestLinks: List<SnappedPointOnLink> =
+                index.findClosestLinks(projected[0], projected[1], vehicleType, distanceInMeters, limit)
+
+            if (closestLinks.isNotEmpty()) {
+                result[pointIndex + 1] = closestLinks
+            }
+        }
+
+        return result
+    }
+}
@@ -0,0 +1,340 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure.spatial
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnappedPointOnLink
+import java.util.BitSet
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * An immutable in-memory spatial index of infrastructure links in EPSG:3067
+ * coordinate system. The index is a packed static R-tree whose leaf items are
+ * the line segments of the links. The segments are ordered along a Hilbert
+ * curve before the tree is packed bottom-up, so that every node (except the
+ * last one on each level) is filled up to [NODE_SIZE] children.
+ *
+ * Links are indexed by position (link index). The vertices of all links are
+ * stored in a single coordinate array and each link refers to a range of it.
+ * Cumulative distances from the start of the link are stored for every vertex
+ * in order to resolve the fractional location of a closest point on a link in
+ * the same way as PostGIS ST_LineLocatePoint does.
+ *
+ * The vehicle types by which a link is safely traversable are held as one
+ * [BitSet] per vehicle type over link indices.
+ *
+ * Instances are created with [LinkSpatialIndexBuilder]. The index is safe for
+ * concurrent reading.
+ */
+class LinkSpatialIndex internal constructor(
+    private val linkIds: LongArray,
+    private val startNodeIds: LongArray,
+    private val endNodeIds: LongArray,
+    private val trafficFlowDirectionTypes: Array<TrafficFlowDirectionType>,
+    private val firstVertexOfLink: IntArray,
+    private val vertexCoordinates: DoubleArray,
+    private val vertexDistances: DoubleArray,
+    private val segmentStartVertices: IntArray,
+    private val segmentLinks: IntArray,
+    private val nodeBoxes: DoubleArray,
+    private val nodeIndices: IntArray,
+    private val levelBounds: IntArray,
+    private val linksByVehicleType: Map<VehicleType, BitSet>
+) {
+    val numberOfLinks: Int
+        get() = linkIds.size
+
+    val numberOfSegments: Int
+        get() = segmentLinks.size
+
+    /**
+     * An estimate of the heap memory held by the primitive arrays of the index.
+     */
+    val estimatedSizeInBytes: Long
+        get() =
+            8L * (linkIds.size + startNodeIds.size + endNodeIds.size) +
+                8L * trafficFlowDirectionTypes.size +
+                4L * firstVertexOfLink.size +
+                8L * (vertexCoordinates.size + vertexDistances.size) +
+                4L * (segmentStartVertices.size + segmentLinks.size) +
+                8L * nodeBoxes.size +
+                4L * nodeIndices.size +
+                linksByVehicleType.values.sumOf { it.size() / 8L }
+
+    /**
+     * Finds the closest links to the given point within the given distance.
+     * Only links safely traversable by the given vehicle type are considered.
+     * The closest distance from the point to each link is resolved along with
+     * the fractional location of the closest point on the link.
+     *
+     * @param x the x coordinate of the point in EPSG:3067
+     * @param y the y coordinate of the point in EPSG:3067
+     * @param vehicleType vehicle type constraint for links
+     * @param distanceInMeters the maximum distance (inclusive) of links from
+     * the point
+     * @param limit the maximum number of links to be returned
+     *
+     * @return the closest links ordered by ascending distance
+     */
+    fun findClosestLinks(
+        x: Double,
+        y: Double,
+        vehicleType: VehicleType,
+        distanceInMeters: Double,
+        limit: Int
+    ): List<SnappedPointOnLink> {
+        val eligibleLinks: BitSet = linksByVehicleType[vehicleType] ?: return emptyList()
+
+        if (numberOfSegments == 0 || limit <= 0) {
+            return emptyList()
+        }
+
+        val result: MutableList<SnappedPointOnLink> = ArrayList(limit)
+        val foundLinks = BitSet()
+
+        // Best-first traversal of the tree. Queue values are encoded as follows: for a tree node
+        // the value is its position (non-negative) and for a segment the value is -(segment + 1).
+        // Segment priorities are exact distances, so segments are polled in the order of their
+        // distance from the point.
+        val queue = PriorityQueue()
+        var nodePosition: Int = nodeIndices.size - 1
+
+        while (true) {
+            val childStart: Int = nodeIndices[nodePosition]
+            val childEnd: Int = min(childStart + NODE_SIZE, getLevelUpperBound(childStart))
+            val isParentOfLeaves: Boolean = childStart < numberOfSegments
+
+            for (childPosition in childStart until childEnd) {
+                if (isParentOfLeaves) {
+                    val segment: Int = nodeIndices[childPosition]
+                    val linkIndex: Int = segmentLinks[segment]
+
+                    if (eligibleLinks[linkIndex] && !foundLinks[linkIndex]) {
+                        val distance: Double = getDistanceToSegment(segment, x, y)
+
+                        if (distance <= distanceInMeters) {
+                            queue.push(distance, -(segment + 1))
+                        }
+                    }
+                } else {
+                    val distance: Double = getDistanceToBox(childPosition, x, y)
+
+                    if (distance <= distanceInMeters) {
+                        queue.push(distance, childPosition)
+                    }
+                }
+            }
+
+            // Emit segments that are closer than any remaining tree node.
+            while (!queue.isEmpty() && queue.peekValue() < 0) {
+                val distance: Double = queue.peekPriority()
+                val segment: Int = -queue.pop() - 1
+                val linkIndex: Int = segmentLinks[segment]
+
+                // Only the closest segment of each link is of interest.
+                if (!foundLinks[linkIndex]) {
+                    foundLinks.set(linkIndex)
+                    result.add(createSnappedPoint(segment, distance, x, y))
+
+                    if (result.size == limit) {
+                        return result
+                    }
+                }
+            }
+
+            if (queue.isEmpty()) {
+                return result
+            }
+
+            nodePosition = queue.pop()
+        }
+    }
+
+    private fun getLevelUpperBound(position: Int): Int = levelBounds.first { it > position }
+
+    private fun getDistanceToBox(
+        nodePosition: Int,
+        x: Double,
+        y: Double
+    ): Double {
+        val offset: Int = 4 * nodePosition
+        val dx: Double = axisDistance(x, nodeBoxes[offset], nodeBoxes[offset + 2])
+        val dy: Double = axisDistance(y, nodeBoxes[offset + 1], nodeBoxes[offset + 3])
+
+        return sqrt(dx * dx + dy * dy)
+    }
+
+    private fun getDistanceToSegment(
+        segment: Int,
+        x: Double,
+        y: Double
+    ): Double {
+        val vertex: Int = segmentStartVertices[segment]
+        val t: Double = getProjectionRatio(vertex, x, y)
+
+        val px: Double = interpolate(vertexCoordinates[2 * vertex], vertexCoordinates[2 * vertex + 2], t)
+        val py: Double = interpolate(vertexCoordinates[2 * vertex + 1], vertexCoordinates[2 * vertex + 3], t)
+
+        val dx: Double = x - px
+        val dy: Double = y - py
+
+        return sqrt(dx * dx + dy * dy)
+    }
+
+    /**
+     * Returns the ratio (0..1) of the location of the closest point on the
+     * segment starting from the given vertex.
+     */
+    private fun getProjectionRatio(
+        vertex: Int,
+        x: Double,
+        y: Double
+    ): Double {
+        val x1: Double = vertexCoordinates[2 * vertex]
+        val y1: Double = vertexCoordinates[2 * vertex + 1]
+        val dx: Double = vertexCoordinates[2 * vertex + 2] - x1
+        val dy: Double = vertexCoordinates[2 * vertex + 3] - y1
+
+        val squaredLength: Double = dx * dx + dy * dy
+
+        if (squaredLength == 0.0) {
+            return 0.0
+        }
+
+        val ratio: Double = ((x - x1) * dx + (y - y1) * dy) / squaredLength
+
+        return min(1.0, max(0.0, ratio))
+    }
+
+    private fun createSnappedPoint(
+        segment: Int,
+        distance: Double,
+        x: Double,
+        y: Double
+    ): SnappedPointOnLink {
+        val linkIndex: Int = segmentLinks[segment]
+        val vertex: Int = segmentStartVertices[segment]
+
+        val linkLength: Double = vertexDistances[firstVertexOfLink[linkIndex + 1] - 1]
+
+        val distanceAlongLink: Double =
+            interpolate(vertexDistances[vertex], vertexDistances[vertex + 1], getProjectionRatio(vertex, x, y))
+
+        val fractionalMeasure: Double = if (linkLength > 0.0) min(1.0, distanceAlongLink / linkLength) else 0.0
+
+        return SnappedPointOnLink(
+            InfrastructureLinkId(linkIds[linkIndex]),
+            distance,
+            fractionalMeasure,
+            trafficFlowDirectionTypes[linkIndex],
+            linkLength,
+            InfrastructureNodeId(startNodeIds[linkIndex]),
+            InfrastructureNodeId(endNodeIds[linkIndex])
+        )
+    }
+
+    /**
+     * A binary min-heap of integer values keyed by double priorities. The
+     * heap is backed by primitive arrays that grow as needed.
+     */
+    private class PriorityQueue {
+        private var priorities = DoubleArray(64)
+        private var values = IntArray(64)
+        private var size = 0
+
+        fun isEmpty(): Boolean = size == 0
+
+        fun peekPriority(): Double = priorities[0]
+
+        fun peekValue(): Int = values[0]
+
+        fun push(
+            priority: Double,
+            value: Int
+        ) {
+            if (size == priorities.size) {
+                priorities = priorities.copyOf(2 * size)
+                values = values.copyOf(2 * size)
+            }
+
+            var position: Int = size++
+
+            while (position > 0) {
+                val parent: Int = (position - 1) shr 1
+
+                if (priorities[parent] <= priority) {
+                    break
+                }
+
+                priorities[position] = priorities[parent]
+                values[position] = values[parent]
+                position = parent
+            }
+
+            priorities[position] = priority
+            values[position] = value
+        }
+
+        fun pop(): Int {
+            val top: Int = values[0]
+
+            size--
+
+            if (size > 0) {
+                val priority: Double = priorities[size]
+                val value: Int = values[size]
+
+                var position = 0
+
+                while (true) {
+                    var child: Int = 2 * position + 1
+
+                    if (child >= size) {
+                        break
+                    }
+                    if (child + 1 < size && priorities[child + 1] < priorities[child]) {
+                        child++
+                    }
+                    if (priorities[child] >= priority) {
+                        break
+                    }
+
+                    priorities[position] = priorities[child]
+                    values[position] = values[child]
+                    position = child
+                }
+
+                priorities[position] = priority
+                values[position] = value
+            }
+
+            return top
+        }
+    }
+
+    companion object {
+        const val NODE_SIZE = 16
+
+        private fun axisDistance(
+            value: Double,
+            min: Double,
+            max: Double
+        ): Double =
+            if (value < min) {
+                min - value
+            } else if (value > max) {
+                value - max
+            } else {
+                0.0
+            }
+
+        private fun interpolate(
+            from: Double,
+            to: Double,
+            ratio: Double
+        ): Double = from + ratio * (to - from)
+    }
+}
@@ -0,0 +1,328 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure.spatial
+
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import java.util.BitSet
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * Collects infrastructure links into growable primitive arrays and builds an
+ * immutable [LinkSpatialIndex] from them. The links must be added in strictly
+ * ascending order of their identifiers. The vehicle types by which links are
+ * safely traversable can be set after the links have been added.
+ */
+class LinkSpatialIndexBuilder(
+    initialCapacity: Int = 1024
+) {
+    private var linkIds = LongArray(initialCapacity)
+    private var startNodeIds = LongArray(initialCapacity)
+    private var endNodeIds = LongArray(initialCapacity)
+    private var trafficFlowDirectionTypes = arrayOfNulls<TrafficFlowDirectionType>(initialCapacity)
+    private var firstVertexOfLink = IntArray(initialCapacity + 1)
+
+    private var numberOfLinks = 0
+
+    private var vertexCoordinates = DoubleArray(4 * initialCapacity)
+    private var numberOfVertices = 0
+
+    private val linksByVehicleType: MutableMap<VehicleType, BitSet> = HashMap()
+
+    /**
+     * @param coordinates the interleaved x/y values of the vertices of the
+     * link in EPSG:3067
+     */
+    fun addLink(
+        linkId: Long,
+        startNodeId: Long,
+        endNodeId: Long,
+        trafficFlowDirectionType: TrafficFlowDirectionType,
+        coordinates: DoubleArray
+    ): LinkSpatialIndexBuilder {
+        require(numberOfLinks == 0 || linkId > linkIds[numberOfLinks - 1]) {
+            "Links must be added in strictly ascending order of identifiers: $linkId"
+        }
+        require(coordinates.size >= 4 && coordinates.size % 2 == 0) {
+            "Link geometry must have at least two positions: $linkId"
+        }
+
+        if (numberOfLinks == linkIds.size) {
+            val newCapacity: Int = linkIds.size * 2
+
+            linkIds = linkIds.copyOf(newCapacity)
+            startNodeIds = startNodeIds.copyOf(newCapacity)
+            endNodeIds = endNodeIds.copyOf(newCapacity)
+            trafficFlowDirectionTypes = trafficFlowDirectionTypes.copyOf(newCapacity)
+            firstVertexOfLink = firstVertexOfLink.copyOf(newCapacity + 1)
+        }
+
+        val requiredCoordinateCapacity: Int = 2 * numberOfVertices + coordinates.size
+
+        if (requiredCoordinateCapacity > vertexCoordinates.size) {
+            vertexCoordinates = vertexCoordinates.copyOf(max(requiredCoordinateCapacity, 2 * vertexCoordinates.size))
+        }
+
+        linkIds[numberOfLinks] = linkId
+        startNodeIds[numberOfLinks] = startNodeId
+        endNodeIds[numberOfLinks] = endNodeId
+        trafficFlowDirectionTypes[numberOfLinks] = trafficFlowDirectionType
+        firstVertexOfLink[numberOfLinks] = numberOfVertices
+
+        coordinates.copyInto(vertexCoordinates, 2 * numberOfVertices)
+        numberOfVertices += coordinates.size / 2
+
+        numberOfLinks++
+        firstVertexOfLink[numberOfLinks] = numberOfVertices
+
+        return this
+    }
+
+    /**
+     * Marks the given link as safely traversable by the given vehicle type.
+     * Links that have not been added are ignored.
+     */
+    fun addSafeTraversal(
+        linkId: Long,
+        vehicleType: VehicleType
+    ): LinkSpatialIndexBuilder {
+        val linkIndex: Int = linkIds.binarySearch(linkId, 0, numberOfLinks)
+
+        if (linkIndex >= 0) {
+            linksByVehicleType.getOrPut(vehicleType) { BitSet(numberOfLinks) }.set(linkIndex)
+        }
+
+        return this
+    }
+
+    fun build(): LinkSpatialIndex {
+        val coordinates: DoubleArray = vertexCoordinates.copyOf(2 * numberOfVertices)
+        val vertexDistances = DoubleArray(numberOfVertices)
+
+        val numberOfSegments: Int = numberOfVertices - numberOfLinks
+        val segmentStartVertices = IntArray(numberOfSegments)
+        val segmentLinks = IntArray(numberOfSegments)
+
+        var segment = 0
+
+        for (linkIndex in 0 until numberOfLinks) {
+            val firstVertex: Int = firstVertexOfLink[linkIndex]
+            val endVertex: Int = firstVertexOfLink[linkIndex + 1]
+
+            for (vertex in firstVertex + 1 until endVertex) {
+                val dx: Double = coordinates[2 * vertex] - coordinates[2 * vertex - 2]
+                val dy: Double = coordinates[2 * vertex + 1] - coordinates[2 * vertex - 1]
+
+                vertexDistances[vertex] = vertexDistances[vertex - 1] + sqrt(dx * dx + dy * dy)
+
+                segmentStartVertices[segment] = vertex - 1
+                segmentLinks[segment] = linkIndex
+                segment++
+            }
+        }
+
+        val levelBounds: IntArray = computeLevelBounds(numberOfSegments)
+        val numberOfNodes: Int = levelBounds.last()
+
+        val nodeBoxes = DoubleArray(4 * numberOfNodes)
+        val nodeIndices = IntArray(numberOfNodes)
+
+        // Leaf level: segments in the order of the Hilbert values of their centres
+        sortByHilbertValue(coordinates, segmentStartVertices).forEachIndexed { position, segmentIndex ->
+            val vertex: Int = segmentStartVertices[segmentIndex]
+            val offset: Int = 4 * position
+
+            nodeBoxes[offset] = min(coordinates[2 * vertex], coordinates[2 * vertex + 2])
+            nodeBoxes[offset + 1] = min(coordinates[2 * vertex + 1], coordinates[2 * vertex + 3])
+            nodeBoxes[offset + 2] = max(coordinates[2 * vertex], coordinates[2 * vertex + 2])
+            nodeBoxes[offset + 3] = max(coordinates[2 * vertex + 1], coordinates[2 * vertex + 3])
+            nodeIndices[position] = segmentIndex
+        }
+
+        // Upper levels: each node covers up to NODE_SIZE consecutive nodes of the level below.
+        var childLevelStart = 0
+        var position: Int = levelBounds[0]
+
+        for (level in 1 until levelBounds.size) {
+            val childLevelEnd: Int = levelBounds[level - 1]
+
+            for (childStart in childLevelStart until childLevelEnd step LinkSpatialIndex.NODE_SIZE) {
+                val childEnd: Int = min(childStart + LinkSpatialIndex.NODE_SIZE, childLevelEnd)
+                val offset: Int = 4 * position
+
+                nodeBoxes[offset] = Double.POSITIVE_INFINITY
+                nodeBoxes[offset + 1] = Double.POSITIVE_INFINITY
+                nodeBoxes[offset + 2] = Double.NEGATIVE_INFINITY
+                nodeBoxes[offset + 3] = Double.NEGATIVE_INFINITY
+
+                for (child in childStart until childEnd) {
+                    nodeBoxes[offset] = min(nodeBoxes[offset], nodeBoxes[4 * child])
+                    nodeBoxes[offset + 1] = min(nodeBoxes[offset + 1], nodeBoxes[4 * child + 1])
+                    nodeBoxes[offset + 2] = max(nodeBoxes[offset + 2], nodeBoxes[4 * child + 2])
+                    nodeBoxes[offset + 3] = max(nodeBoxes[offset + 3], nodeBoxes[4 * child + 3])
+                }
+
+                nodeIndices[position] = childStart
+                position++
+            }
+
+            childLevelStart = childLevelEnd
+        }
+
+        return LinkSpatialIndex(
+            linkIds.copyOf(numberOfLinks),
+            startNodeIds.copyOf(numberOfLinks),
+            endNodeIds.copyOf(numberOfLinks),
+            Array(numberOfLinks) { trafficFlowDirectionTypes[it]!! },
+            firstVertexOfLink.copyOf(numberOfLinks + 1),
+            coordinates,
+            vertexDistances,
+            segmentStartVertices,
+            segmentLinks,
+            nodeBoxes,
+            nodeIndices,
+            levelBounds,
+            linksByVehicleType.toMap()
+        )
+    }
+
+    companion object {
+        private const val HILBERT_MAX: Int = (1 shl 16) - 1
+
+        /**
+         * Returns the exclusive end positions of each tree level. The leaf
+         * level comes first and the root level (consisting of one node) last.
+         */
+        private fun computeLevelBounds(numberOfSegments: Int): IntArray {
+            val bounds: MutableList<Int> = mutableListOf(numberOfSegments)
+
+            var numberOfNodesOnLevel: Int = numberOfSegments
+            var numberOfNodes: Int = numberOfSegments
+
+            do {
+                numberOfNodesOnLevel =
+                    (numberOfNodesOnLevel + LinkSpatialIndex.NODE_SIZE - 1) / LinkSpatialIndex.NODE_SIZE
+                numberOfNodes += numberOfNodesOnLevel
+                bounds.add(numberOfNodes)
+            } while (numberOfNodesOnLevel > 1)
+
+            return bounds.toIntArray()
+        }
+
+        /**
+         * Returns the indices of segments sorted by the Hilbert values of the
+         * centres of the segments.
+         */
+        private fun sortByHilbertValue(
+            coordinates: DoubleArray,
+            segmentStartVertices: IntArray
+        ): IntArray {
+            val numberOfSegments: Int = segmentStartVertices.size
+
+            if (numberOfSegments == 0) {
+                return IntArray(0)
+            }
+
+            var minX: Double = Double.POSITIVE_INFINITY
+            var minY: Double = Double.POSITIVE_INFINITY
+            var maxX: Double = Double.NEGATIVE_INFINITY
+            var maxY: Double = Double.NEGATIVE_INFINITY
+
+            for (index in 0 until coordinates.size / 2) {
+                minX = min(minX, coordinates[2 * index])
+                minY = min(minY, coordinates[2 * index + 1])
+                maxX = max(maxX, coordinates[2 * index])
+                maxY = max(maxY, coordinates[2 * index + 1])
+            }
+
+            val width: Double = if (maxX > minX) maxX - minX else 1.0
+            val height: Double = if (maxY > minY) maxY - minY else 1.0
+
+            // The Hilbert value and the segment index are packed into one long so that a primitive
+            // array can be sorted.
+            val keys = LongArray(numberOfSegments)
+
+            for (segmentIndex in 0 until numberOfSegments) {
+                val vertex: Int = segmentStartVertices[segmentIndex]
+                val centreX: Double = (coordinates[2 * vertex] + coordinates[2 * vertex + 2]) / 2
+                val centreY: Double = (coordinates[2 * vertex + 1] + coordinates[2 * vertex + 3]) / 2
+
+                val hilbertValue: Int =
+                    hilbert(
+                        (HILBERT_MAX * (centreX - minX) / width).toInt(),
+                        (HILBERT_MAX * (centreY - minY) / height).toInt()
+                    )
+
+                keys[segmentIndex] = (hilbertValue.toLong() and 0xFFFFFFFFL shl 32) or segmentIndex.toLong()
+            }
+
+            keys.sort()
+
+            return IntArray(numberOfSegments) { (keys[it] and 0xFFFFFFFFL).toInt() }
+        }
+
+        /**
+         * Computes the position of the given cell along a Hilbert curve
+         * filling a 2^16 x 2^16 grid. The algorithm is a branch-free variant
+         * adapted from "Fast Hilbert curve generation, sorting, and range
+         * queries" by Rawrunprotected.
+         */
+        internal fun hilbert(
+            x: Int,
+            y: Int
+        ): Int {
+            var a: Int = x xor y
+            var b: Int = 0xFFFF xor a
+            var c: Int = 0xFFFF xor (x or y)
+            var d: Int = x and (y xor 0xFFFF)
+
+            var aa: Int = a or (b ushr 1)
+            var bb: Int = (a ushr 1) xor a
+            var cc: Int = ((c ushr 1) xor (b and (d ushr 1))) xor c
+            var dd: Int = ((a and (c ushr 1)) xor (d ushr 1)) xor d
+
+            a = aa
+            b = bb
+            c = cc
+            d = dd
+            aa = (a and (a ushr 2)) xor (b and (b ushr 2))
+            bb = (a and (b ushr 2)) xor (b and ((a xor b) ushr 2))
+            cc = cc xor ((a and (c ushr 2)) xor (b and (d ushr 2)))
+            dd = dd xor ((b and (c ushr 2)) xor ((a xor b) and (d ushr 2)))
+
+            a = aa
+            b = bb
+            c = cc
+            d = dd
+            aa = (a and (a ushr 4)) xor (b and (b ushr 4))
+            bb = (a and (b ushr 4)) xor (b and ((a xor b) ushr 4))
+            cc = cc xor ((a and (c ushr 4)) xor (b and (d ushr 4)))
+            dd = dd xor ((b and (c ushr 4)) xor ((a xor b) and (d ushr 4)))
+
+            a = aa
+            b = bb
+            c = cc
+            d = dd
+            cc = cc xor ((a and (c ushr 8)) xor (b and (d ushr 8)))
+            dd = dd xor ((b and (c ushr 8)) xor ((a xor b) and (d ushr 8)))
+
+            a = cc xor (cc ushr 1)
+            b = dd xor (dd ushr 1)
+
+            var i0: Int = x xor y
+            var i1: Int = b or (0xFFFF xor (i0 or a))
+
+            i0 = (i0 or (i0 shl 8)) and 0x00FF00FF
+            i0 = (i0 or (i0 shl 4)) and 0x0F0F0F0F
+            i0 = (i0 or (i0 shl 2)) and 0x33333333
+            i0 = (i0 or (i0 shl 1)) and 0x55555555
+
+            i1 = (i1 or (i1 shl 8)) and 0x00FF00FF
+            i1 = (i1 or (i1 shl 4)) and 0x0F0F0F0F
+            i1 = (i1 or (i1 shl 2)) and 0x33333333
+            i1 = (i1 or (i1 shl 1)) and 0x55555555
+
+            return (i1 shl 1) or i0
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure.spatial
+
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.util.EwkbLineStringDecoder
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.sql.ResultSet
+
+@Repository
+class LinkSpatialIndexRepositoryImpl(
+    val jdbcTemplate: NamedParameterJdbcTemplate
+) : ILinkSpatialIndexRepository {
+    @Transactional(readOnly = true)
+    override fun loadLinkSpatialIndex(): LinkSpatialIndex {
+        val builder = LinkSpatialIndexBuilder(64 * 1024)
+
+        jdbcTemplate.jdbcOperations.query(
+            LOAD_LINKS_SQL,
+            RowCallbackHandler { rs: ResultSet ->
+                builder.addLink(
+                    rs.getLong("infrastructure_link_id"),
+                    rs.getLong("start_node_id"),
+                    rs.getLong("end_node_id"),
+                    TrafficFlowDirectionType.from(rs.getInt("traffic_flow_direction_type")),
+                    EwkbLineStringDecoder.decodeCoordinates(
+                        rs.getBytes("geom"),
+                        EwkbLineStringDecoder.ETRS_TM35FIN_SRID
+                    )
+                )
+            }
+        )
+
+        jdbcTemplate.jdbcOperations.query(
+            LOAD_SAFE_TRAVERSALS_SQL,
+            RowCallbackHandler { rs: ResultSet ->
+                VehicleType.from(rs.getString("vehicle_type"))?.let { vehicleType ->
+                    builder.addSafeTraversal(rs.getLong("infrastructure_link_id"), vehicleType)
+                }
+            }
+        )
+
+        return builder.build()
+    }
+
+    companion object {
+        // Links are ordered by their identifiers as required by LinkSpatialIndexBuilder.
+        private val LOAD_LINKS_SQL =
+            """
+            SELECT
+                l.infrastructure_link_id,
+                l.start_node_id,
+                l.end_node_id,
+                l.traffic_flow_direction_type,
+                ST_AsEWKB(l.geom) AS geom
+            FROM routing.infrastructure_link l
+            ORDER BY l.infrastructure_link_id
+            """.trimIndent()
+
+        private val LOAD_SAFE_TRAVERSALS_SQL =
+            """
+            SELECT s.infrastructure_link_id, s.vehicle_type
+            FROM routing.infrastructure_link_safely_traversed_by_vehicle_type s
+            """.trimIndent()
+    }
+}
@@ -16,17 +16,55 @@ import org.geolatte.geom.LineString
  * outside the buffer area, they can be referenced explicitly by means of
  * [explicitLinkReferences].
  *
+ * The set of links within the buffer area can be resolved once per
+ * map-matching request (see [idsOfLinksWithinBufferArea]) and shared by all
+ * routing attempts of the request so that the geometric restriction does not
+ * need to be re-evaluated on each attempt. Only the explicitly referenced
+ * terminus links vary between attempts, see [withTerminusPoints].
+ *
  * @property lineGeometry the LineString geometry to be expanded
  * @property bufferRadiusInMeters the distance with which the LineString
  * geometry is expanded in all directions
  * @property explicitLinkReferences contains set of terminus link and node
  * identifiers with which terminus links can be explicitly referenced.
+ * @property idsOfLinksWithinBufferArea the optional pre-resolved identifiers of
+ * the infrastructure links that are contained inside the buffer area and
+ * safely traversable by the vehicle type of the request. If present, they are
+ * used instead of evaluating the buffer area geometrically.
  */
 data class BufferAreaRestriction(
     val lineGeometry: LineString<G2D>,
     val bufferRadiusInMeters: Double,
-    val explicitLinkReferences: ExplicitLinkReferences? = null
+    val explicitLinkReferences: ExplicitLinkReferences? = null,
+    val idsOfLinksWithinBufferArea: Set<InfrastructureLinkId>? = null
 ) {
+    val isMaterialised: Boolean
+        get() = idsOfLinksWithinBufferArea != null
+
+    /**
+     * Returns a copy of this restriction in which the terminus links are
+     * explicitly referenced on the basis of the given terminus points.
+     */
+    fun withTerminusPoints(
+        pointOnStartLink: SnappedPointOnLink,
+        pointOnEndLink: SnappedPointOnLink
+    ) = copy(explicitLinkReferences = ExplicitLinkReferences.fromTerminusPoints(pointOnStartLink, pointOnEndLink))
+
+    /**
+     * Returns a copy of this restriction in which the terminus links are
+     * explicitly referenced on the basis of the given terminus points.
+     */
+    fun withTerminusPoints(
+        startPoint: PgRoutingPoint,
+        endPoint: PgRoutingPoint
+    ) = copy(explicitLinkReferences = ExplicitLinkReferences.fromTerminusPoints(startPoint, endPoint))
+
+    // Overridden in order not to flood logs with the possibly large set of link identifiers.
+    override fun toString(): String =
+        "BufferAreaRestriction(lineGeometry=$lineGeometry, bufferRadiusInMeters=$bufferRadiusInMeters, " +
+            "explicitLinkReferences=$explicitLinkReferences, " +
+            "numberOfLinksWithinBufferArea=${idsOfLinksWithinBufferArea?.size})"
+
     /**
      * @property idsOfCandidatesForTerminusLinks the list of identifiers for
      * candidate terminus links on route. The terminus links may lie partly outside
@@ -0,0 +1,16 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+
+interface ILinkAttributeRepository {
+    /**
+     * Loads the attributes of all infrastructure links in bulk.
+     */
+    fun findAllLinkAttributes(): Map<InfrastructureLinkId, LinkAttributes>
+
+    /**
+     * Loads the attributes of the given infrastructure links. Links that do not
+     * exist are left out of the result.
+     */
+    fun findLinkAttributes(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, LinkAttributes>
+}
@@ -0,0 +1,16 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+
+interface ILinkGeometryRepository {
+    /**
+     * Loads the geometries of all infrastructure links in bulk.
+     */
+    fun findAllLinkGeometries(): Map<InfrastructureLinkId, LinkGeometry>
+
+    /**
+     * Loads the geometries of the given infrastructure links. Links that do not
+     * exist are left out of the result.
+     */
+    fun findLinkGeometries(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, LinkGeometry>
+}
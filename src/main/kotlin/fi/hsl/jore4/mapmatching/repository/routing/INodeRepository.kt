@@ -41,6 +41,9 @@ interface INodeRepository {
      * applying the conditions given by parameters [vehicleType] and
      * [bufferAreaRestriction].
      *
+     * The shortest-path cost of each distinct leg between consecutive nodes is
+     * computed only once and shared among the candidates containing the leg.
+     *
      * @param nodeSequenceCandidates the node sequence candidates to be tested
      * @param vehicleType vehicle type constraint to be applied when testing
      * candidates. The returned results should contain only the sequences that
@@ -0,0 +1,18 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+interface IRouteLinkRepository {
+    /**
+     * Resolves route links for the given sequence of link traversals that has
+     * been found by a routing engine. The attributes and geometries of
+     * infrastructure links are completed from in-memory caches.
+     *
+     * @param linkSections the traversed infrastructure links (or sections of
+     * them) in the order of traversal on a route
+     *
+     * @return a list of route links that together constitute the route. The
+     * sequence numbers of route links are one-based and follow the ordering of
+     * [linkSections]. The traversed geometry of a route link is trimmed for
+     * only partially traversed infrastructure links.
+     */
+    fun findRouteLinks(linkSections: List<TraversedLinkSection>): List<RouteLink>
+}
@@ -0,0 +1,89 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.system.measureTimeMillis
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Base class for in-memory caches of immutable per-link data keyed by
+ * [InfrastructureLinkId]. The data of all links is loaded in bulk when the
+ * application has started (if preloading is enabled). Links missing from the
+ * cache, e.g. ones imported after the bulk load, are loaded on demand in one
+ * query per lookup.
+ *
+ * The cache can be re-populated via [reload]. When a change in the network
+ * version is detected, the cache is re-populated (if preloading is enabled)
+ * or cleared.
+ *
+ * @param description describes the cached data in log messages
+ * @param preloadEnabled whether the data of all links is loaded at startup
+ */
+abstract class InfrastructureLinkCache<T : Any>(
+    private val description: String,
+    private val preloadEnabled: Boolean
+) {
+    @Volatile
+    private var entries: ConcurrentHashMap<InfrastructureLinkId, T> = ConcurrentHashMap()
+
+    val size: Int
+        get() = entries.size
+
+    protected abstract fun loadAll(): Map<InfrastructureLinkId, T>
+
+    protected abstract fun load(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, T>
+
+    /**
+     * Returns the cached data of the given infrastructure links.
+     *
+     * @throws IllegalStateException if any of the links does not exist
+     */
+    protected fun getEntries(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, T> {
+        val currentEntries: ConcurrentHashMap<InfrastructureLinkId, T> = entries
+
+        val missingLinkIds: Set<InfrastructureLinkId> =
+            linkIds.filterTo(HashSet()) { !currentEntries.containsKey(it) }
+
+        if (missingLinkIds.isNotEmpty()) {
+            currentEntries.putAll(load(missingLinkIds))
+        }
+
+        return linkIds.associateWith { linkId ->
+            checkNotNull(currentEntries[linkId]) { "Infrastructure link not found: ${linkId.value}" }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun loadOnStartup() {
+        if (preloadEnabled) {
+            reload()
+        }
+    }
+
+    @EventListener(NetworkVersionChangedEvent::class)
+    fun onNetworkVersionChanged() {
+        if (preloadEnabled) {
+            reload()
+        } else {
+            entries = ConcurrentHashMap()
+        }
+    }
+
+    /**
+     * Replaces the content of the cache with the data of all infrastructure
+     * links loaded in bulk.
+     */
+    fun reload() {
+        val loaded: Map<InfrastructureLinkId, T>
+        val elapsedMillis: Long = measureTimeMillis { loaded = loadAll() }
+
+        entries = ConcurrentHashMap(loaded)
+
+        LOGGER.info { "Loaded $description of ${loaded.size} infrastructure links in $elapsedMillis ms" }
+    }
+}
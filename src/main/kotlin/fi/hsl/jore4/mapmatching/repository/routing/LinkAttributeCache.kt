@@ -0,0 +1,34 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+
+/**
+ * Holds the immutable attributes of infrastructure links in memory so that
+ * route queries do not need to join and parse them for every route link. The
+ * attributes of all links are loaded in bulk at startup unless disabled via
+ * [PRELOAD_PROPERTY].
+ */
+@Component
+class LinkAttributeCache(
+    val linkAttributeRepository: ILinkAttributeRepository,
+    @Value("\${$PRELOAD_PROPERTY:true}") preloadEnabled: Boolean
+) : InfrastructureLinkCache<LinkAttributes>("attributes", preloadEnabled) {
+    /**
+     * Returns the attributes of the given infrastructure links.
+     *
+     * @throws IllegalStateException if any of the links does not exist
+     */
+    fun getLinkAttributes(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, LinkAttributes> =
+        getEntries(linkIds)
+
+    override fun loadAll(): Map<InfrastructureLinkId, LinkAttributes> = linkAttributeRepository.findAllLinkAttributes()
+
+    override fun load(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, LinkAttributes> =
+        linkAttributeRepository.findLinkAttributes(linkIds)
+
+    companion object {
+        const val PRELOAD_PROPERTY = "mapmatching.routing.link-attribute-cache.preload"
+    }
+}
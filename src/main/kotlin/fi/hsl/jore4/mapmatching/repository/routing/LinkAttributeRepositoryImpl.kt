@@ -0,0 +1,99 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.ExternalLinkReference
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.util.MultilingualString
+import fi.hsl.jore4.mapmatching.util.component.IJsonbConverter
+import org.jooq.JSONB
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.sql.ResultSet
+
+@Repository
+class LinkAttributeRepositoryImpl(
+    val jdbcTemplate: NamedParameterJdbcTemplate,
+    val jsonbConverter: IJsonbConverter
+) : ILinkAttributeRepository {
+    @Transactional(readOnly = true)
+    override fun findAllLinkAttributes(): Map<InfrastructureLinkId, LinkAttributes> =
+        queryLinkAttributes(FIND_ALL_LINK_ATTRIBUTES_SQL, MapSqlParameterSource())
+
+    @Transactional(readOnly = true)
+    override fun findLinkAttributes(
+        linkIds: Collection<InfrastructureLinkId>
+    ): Map<InfrastructureLinkId, LinkAttributes> {
+        if (linkIds.isEmpty()) {
+            return emptyMap()
+        }
+
+        val params =
+            MapSqlParameterSource()
+                .addValue("linkIds", linkIds.joinToString(prefix = "{", postfix = "}") { it.value.toString() })
+
+        return queryLinkAttributes(FIND_LINK_ATTRIBUTES_BY_IDS_SQL, params)
+    }
+
+    private fun queryLinkAttributes(
+        queryString: String,
+        params: MapSqlParameterSource
+    ): Map<InfrastructureLinkId, LinkAttributes> {
+        val result: MutableMap<InfrastructureLinkId, LinkAttributes> = HashMap()
+
+        // Many links share the same name and infrastructure source. Equal values are parsed only
+        // once and shared between links.
+        val namesByJson: MutableMap<String?, MultilingualString> = HashMap()
+        val sourceNames: MutableMap<String, String> = HashMap()
+
+        jdbcTemplate.query(
+            queryString,
+            params,
+            RowCallbackHandler { rs: ResultSet ->
+                val infrastructureSource: String = rs.getString("infrastructure_source_name")
+                val linkNameJson: String? = rs.getString("link_name")
+
+                val linkName: MultilingualString =
+                    namesByJson.getOrPut(linkNameJson) {
+                        linkNameJson
+                            ?.let { jsonbConverter.fromJson(JSONB.jsonb(it), MultilingualString::class.java) }
+                            ?: MultilingualString.of(null)
+                    }
+
+                result[InfrastructureLinkId(rs.getLong("infrastructure_link_id"))] =
+                    LinkAttributes(
+                        ExternalLinkReference(
+                            sourceNames.getOrPut(infrastructureSource) { infrastructureSource },
+                            rs.getString("external_link_id")
+                        ),
+                        linkName,
+                        rs.getBoolean("is_closed_loop"),
+                        rs.getDouble("cost"),
+                        rs.getDouble("reverse_cost")
+                    )
+            }
+        )
+
+        return result
+    }
+
+    companion object {
+        private val FIND_ALL_LINK_ATTRIBUTES_SQL =
+            """
+            SELECT
+                l.infrastructure_link_id,
+                src.infrastructure_source_name,
+                l.external_link_id,
+                l.name AS link_name,
+                l.start_node_id = l.end_node_id AS is_closed_loop,
+                l.cost,
+                l.reverse_cost
+            FROM routing.infrastructure_link l
+            INNER JOIN routing.infrastructure_source src ON src.infrastructure_source_id = l.infrastructure_source_id
+            """.trimIndent()
+
+        private val FIND_LINK_ATTRIBUTES_BY_IDS_SQL =
+            "$FIND_ALL_LINK_ATTRIBUTES_SQL\nWHERE l.infrastructure_link_id = ANY((:linkIds)::bigint[])"
+    }
+}
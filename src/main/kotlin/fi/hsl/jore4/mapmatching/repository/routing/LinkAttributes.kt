@@ -0,0 +1,28 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.ExternalLinkReference
+import fi.hsl.jore4.mapmatching.util.MultilingualString
+
+/**
+ * The immutable attributes of an infrastructure link that are attached to
+ * route links.
+ *
+ * @property externalLinkRef the reference to the link in the external source
+ * system
+ * @property name the name of the road or street. Equal names are shared
+ * between links.
+ * @property isClosedLoop whether the link starts and ends at the same node
+ * @property cost the length (traversal cost) of the link in its digitised
+ * direction
+ * @property reverseCost the length (traversal cost) of the link against its
+ * digitised direction
+ */
+data class LinkAttributes(
+    val externalLinkRef: ExternalLinkReference,
+    val name: MultilingualString,
+    val isClosedLoop: Boolean,
+    val cost: Double,
+    val reverseCost: Double
+) {
+    fun getTraversalCost(isTraversalForwards: Boolean): Double = if (isTraversalForwards) cost else reverseCost
+}
@@ -0,0 +1,177 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.util.LineStringCoordinates
+import kotlin.math.sqrt
+
+/**
+ * The geometry of an infrastructure link in a compact form.
+ *
+ * Only the WGS84 (EPSG:4326) coordinates are retained from the two
+ * representations of the geometry. The EPSG:3067 geometry, in which link
+ * lengths and fractional locations are measured, is reduced to cumulative
+ * distances from the start of the link to each position. This is sufficient
+ * for trimming the geometry at fractional locations.
+ *
+ * @property coordinates the positions of the link in EPSG:4326
+ * @param cumulativeDistances the metric distances along the link (in
+ * EPSG:3067) from the start of the link to each position. The first value is
+ * zero and the last one is the length of the link.
+ */
+class LinkGeometry(
+    val coordinates: LineStringCoordinates,
+    private val cumulativeDistances: DoubleArray
+) {
+    init {
+        require(coordinates.numPositions >= 2) { "Link geometry must have at least two positions" }
+        require(cumulativeDistances.size == coordinates.numPositions) {
+            "Number of cumulative distances must match the number of positions"
+        }
+    }
+
+    /**
+     * The metric length of the link in EPSG:3067.
+     */
+    val length: Double
+        get() = cumulativeDistances.last()
+
+    /**
+     * Returns the part of the geometry between the given fractional locations
+     * in the direction of traversal, i.e. the positions are in reverse order
+     * if [startFraction] is greater than [endFraction]. This is the equivalent
+     * of (possibly reversed) PostGIS ST_LineSubstring in EPSG:3067 for the
+     * WGS84 geometry: the locations are resolved by metric distance and the
+     * coordinates are interpolated within the corresponding segment.
+     */
+    fun getSubstring(
+        startFraction: Double,
+        endFraction: Double
+    ): LineStringCoordinates =
+        if (startFraction <= endFraction) {
+            getForwardSubstring(startFraction, endFraction)
+        } else {
+            getForwardSubstring(endFraction, startFraction).reversed()
+        }
+
+    /**
+     * Returns the metric length of the part of the link between the given
+     * fractional locations.
+     */
+    fun getSubstringLength(
+        startFraction: Double,
+        endFraction: Double
+    ): Double = length * if (startFraction <= endFraction) endFraction - startFraction else startFraction - endFraction
+
+    private fun getForwardSubstring(
+        fromFraction: Double,
+        toFraction: Double
+    ): LineStringCoordinates {
+        val fromDistance: Double = fromFraction * length
+        val toDistance: Double = toFraction * length
+
+        val fromSegmentIndex: Int = findSegmentIndex(fromDistance)
+        val toSegmentIndex: Int = findSegmentIndex(toDistance)
+
+        val result = DoubleArray(2 * (toSegmentIndex - fromSegmentIndex + 2))
+        var offset = 0
+
+        fun addPosition(
+            lon: Double,
+            lat: Double
+        ) {
+            result[offset++] = lon
+            result[offset++] = lat
+        }
+
+        fun addInterpolatedPosition(
+            segmentIndex: Int,
+            distance: Double
+        ) {
+            val segmentStart: Double = cumulativeDistances[segmentIndex]
+            val segmentLength: Double = cumulativeDistances[segmentIndex + 1] - segmentStart
+            val ratio: Double = if (segmentLength > 0.0) (distance - segmentStart) / segmentLength else 0.0
+
+            addPosition(
+                interpolate(coordinates.getLon(segmentIndex), coordinates.getLon(segmentIndex + 1), ratio),
+                interpolate(coordinates.getLat(segmentIndex), coordinates.getLat(segmentIndex + 1), ratio)
+            )
+        }
+
+        addInterpolatedPosition(fromSegmentIndex, fromDistance)
+
+        // Add the positions strictly between the interpolated endpoints.
+        for (positionIndex in fromSegmentIndex + 1..toSegmentIndex) {
+            val distance: Double = cumulativeDistances[positionIndex]
+
+            if (distance > fromDistance && distance < toDistance) {
+                addPosition(coordinates.getLon(positionIndex), coordinates.getLat(positionIndex))
+            }
+        }
+
+        addInterpolatedPosition(toSegmentIndex, toDistance)
+
+        return LineStringCoordinates(result.copyOf(offset))
+    }
+
+    /**
+     * Finds the index of the segment that contains the given distance. A
+     * segment with index i spans from position i to position i + 1.
+     */
+    private fun findSegmentIndex(distance: Double): Int {
+        val lastSegmentIndex: Int = cumulativeDistances.size - 2
+
+        var low = 0
+        var high: Int = lastSegmentIndex
+
+        // Find the last segment starting at or before the given distance.
+        while (low < high) {
+            val mid: Int = (low + high + 1) ushr 1
+
+            if (cumulativeDistances[mid] <= distance) {
+                low = mid
+            } else {
+                high = mid - 1
+            }
+        }
+
+        return low
+    }
+
+    companion object {
+        private fun interpolate(
+            from: Double,
+            to: Double,
+            ratio: Double
+        ): Double =
+            if (ratio == 0.0) {
+                from
+            } else if (ratio == 1.0) {
+                to
+            } else {
+                from + ratio * (to - from)
+            }
+
+        /**
+         * Creates a link geometry from the WGS84 coordinates and the metric
+         * EPSG:3067 coordinates of the same positions.
+         *
+         * @param metricCoordinates the interleaved x/y values of the positions
+         * in EPSG:3067
+         */
+        fun of(
+            coordinates: LineStringCoordinates,
+            metricCoordinates: DoubleArray
+        ): LinkGeometry {
+            val numPositions: Int = metricCoordinates.size / 2
+            val cumulativeDistances = DoubleArray(numPositions)
+
+            for (i in 1 until numPositions) {
+                val dx: Double = metricCoordinates[2 * i] - metricCoordinates[2 * i - 2]
+                val dy: Double = metricCoordinates[2 * i + 1] - metricCoordinates[2 * i - 1]
+
+                cumulativeDistances[i] = cumulativeDistances[i - 1] + sqrt(dx * dx + dy * dy)
+            }
+
+            return LinkGeometry(coordinates, cumulativeDistances)
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+
+/**
+ * Holds the geometries of infrastructure links in memory so that route
+ * queries do not need to transform and serialise link geometries for every
+ * route link. Partially traversed links are trimmed in the JVM via
+ * [LinkGeometry.getSubstring]. The geometries of all links are loaded in bulk
+ * at startup unless disabled via [PRELOAD_PROPERTY].
+ */
+@Component
+class LinkGeometryCache(
+    val linkGeometryRepository: ILinkGeometryRepository,
+    @Value("\${$PRELOAD_PROPERTY:true}") preloadEnabled: Boolean
+) : InfrastructureLinkCache<LinkGeometry>("geometries", preloadEnabled) {
+    /**
+     * Returns the geometries of the given infrastructure links.
+     *
+     * @throws IllegalStateException if any of the links does not exist
+     */
+    fun getLinkGeometries(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, LinkGeometry> =
+        getEntries(linkIds)
+
+    override fun loadAll(): Map<InfrastructureLinkId, LinkGeometry> = linkGeometryRepository.findAllLinkGeometries()
+
+    override fun load(linkIds: Collection<InfrastructureLinkId>): Map<InfrastructureLinkId, LinkGeometry> =
+        linkGeometryRepository.findLinkGeometries(linkIds)
+
+    companion object {
+        const val PRELOAD_PROPERTY = "mapmatching.routing.link-geometry-cache.preload"
+    }
+}
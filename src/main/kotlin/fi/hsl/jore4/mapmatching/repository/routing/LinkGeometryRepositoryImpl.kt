@@ -0,0 +1,75 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.util.EwkbLineStringDecoder
+import fi.hsl.jore4.mapmatching.util.LineStringCoordinates
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.sql.ResultSet
+
+@Repository
+class LinkGeometryRepositoryImpl(
+    val jdbcTemplate: NamedParameterJdbcTemplate
+) : ILinkGeometryRepository {
+    @Transactional(readOnly = true)
+    override fun findAllLinkGeometries(): Map<InfrastructureLinkId, LinkGeometry> =
+        queryLinkGeometries(FIND_ALL_LINK_GEOMETRIES_SQL, MapSqlParameterSource())
+
+    @Transactional(readOnly = true)
+    override fun findLinkGeometries(
+        linkIds: Collection<InfrastructureLinkId>
+    ): Map<InfrastructureLinkId, LinkGeometry> {
+        if (linkIds.isEmpty()) {
+            return emptyMap()
+        }
+
+        val params =
+            MapSqlParameterSource()
+                .addValue("linkIds", linkIds.joinToString(prefix = "{", postfix = "}") { it.value.toString() })
+
+        return queryLinkGeometries(FIND_LINK_GEOMETRIES_BY_IDS_SQL, params)
+    }
+
+    private fun queryLinkGeometries(
+        queryString: String,
+        params: MapSqlParameterSource
+    ): Map<InfrastructureLinkId, LinkGeometry> {
+        val result: MutableMap<InfrastructureLinkId, LinkGeometry> = HashMap()
+
+        jdbcTemplate.query(
+            queryString,
+            params,
+            RowCallbackHandler { rs: ResultSet ->
+                val coordinates: LineStringCoordinates = EwkbLineStringDecoder.decode(rs.getBytes("geom_wgs84"))
+
+                val metricCoordinates: DoubleArray =
+                    EwkbLineStringDecoder.decodeCoordinates(
+                        rs.getBytes("geom"),
+                        EwkbLineStringDecoder.ETRS_TM35FIN_SRID
+                    )
+
+                result[InfrastructureLinkId(rs.getLong("infrastructure_link_id"))] =
+                    LinkGeometry.of(coordinates, metricCoordinates)
+            }
+        )
+
+        return result
+    }
+
+    companion object {
+        private val FIND_ALL_LINK_GEOMETRIES_SQL =
+            """
+            SELECT
+                l.infrastructure_link_id,
+                ST_AsEWKB(ST_Transform(l.geom, 4326)) AS geom_wgs84,
+                ST_AsEWKB(l.geom) AS geom
+            FROM routing.infrastructure_link l
+            """.trimIndent()
+
+        private val FIND_LINK_GEOMETRIES_BY_IDS_SQL =
+            "$FIND_ALL_LINK_GEOMETRIES_SQL\nWHERE l.infrastructure_link_id = ANY((:linkIds)::bigint[])"
+    }
+}
@@ -70,68 +70,56 @@ class NodeRepositoryImpl(
         vehicleType: VehicleType,
         bufferAreaRestriction: BufferAreaRestriction?
     ): Map<Pair<InfrastructureLinkId, InfrastructureLinkId>, NodeIdSequence> {
-        val numCandidates: Int = nodeSequenceCandidates.size
-
-        if (numCandidates == 0) {
+        if (nodeSequenceCandidates.isEmpty()) {
             return emptyMap()
         }
 
-        val query: String = getQueryForResolvingBestNodeSequences(numCandidates, bufferAreaRestriction)
+        val legs: List<NodeSequenceLeg> = NodeSequenceLegs.getDistinctLegs(nodeSequenceCandidates).toList()
+
+        // The shortest-path cost of every distinct leg is computed once in a single database
+        // call instead of routing each candidate separately.
+        val legCosts: Map<NodeSequenceLeg, Double> =
+            when {
+                legs.isEmpty() -> emptyMap()
+                else -> findLegCosts(legs, vehicleType, bufferAreaRestriction)
+            }
+
+        return NodeSequenceLegs.selectBestNodeSequences(nodeSequenceCandidates, legCosts)
+    }
+
+    private fun findLegCosts(
+        legs: List<NodeSequenceLeg>,
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): Map<NodeSequenceLeg, Double> {
+        val query: String = getQueryForResolvingLegCosts(bufferAreaRestriction)
 
         val preparedStatementCreator =
             PreparedStatementCreator { conn ->
                 val pstmt: PreparedStatement = conn.prepareStatement(query)
 
-                var paramIndex = 1
-
-                nodeSequenceCandidates.withIndex().forEach { (index, nodeIdSeq) ->
-
-                    pstmt.setInt(paramIndex++, index + 1)
-                    pstmt.setLong(paramIndex++, nodeIdSeq.startLinkId.value)
-                    pstmt.setLong(paramIndex++, nodeIdSeq.endLinkId.value)
-
-                    // Setting array parameters can only be done through a java.sql.Connection object.
-                    pstmt.setArray(paramIndex++, toSqlArray(nodeIdSeq.nodeIdSequence, conn))
-                }
-
-                pstmt.setString(paramIndex++, vehicleType.value)
-
-                // Set additional parameters if restricting infrastructure links with a buffer area.
-                bufferAreaRestriction?.run {
-                    explicitLinkReferences?.run {
-                        idsOfCandidatesForTerminusLinks.forEach {
-                            pstmt.setLong(paramIndex++, it.value)
-                        }
-                        repeat(2) {
-                            // node IDs need to be set twice, separately for start and end nodes
-                            idsOfCandidatesForTerminusNodes.forEach {
-                                pstmt.setLong(paramIndex++, it.value)
-                            }
-                        }
-                    }
-                    pstmt.setBytes(paramIndex++, toEwkb(lineGeometry))
-                    pstmt.setDouble(paramIndex++, bufferRadiusInMeters)
-                }
+                var paramIndex: Int =
+                    PgRoutingEdgeQueries.setLinkSelectionQueryParameters(
+                        pstmt,
+                        1,
+                        vehicleType.value,
+                        bufferAreaRestriction
+                    )
+
+                // Setting array parameters can only be done through a java.sql.Connection object.
+                pstmt.setArray(paramIndex++, toSqlArray(legs.map { it.first }, conn))
+                pstmt.setArray(paramIndex++, toSqlArray(legs.map { it.second }, conn))
 
                 pstmt
             }
 
         return jdbcTemplate.jdbcOperations
             .query(preparedStatementCreator) { rs: ResultSet, _: Int ->
-                Triple(
-                    rs.getLong("start_link_id"),
-                    rs.getLong("end_link_id"),
-                    InfrastructureNodeId(rs.getLong("node_id"))
-                )
-            }.groupBy(
-                keySelector = { it.first to it.second },
-                valueTransform = { it.third }
-            ).mapKeys { entry ->
-                val startLinkId = InfrastructureLinkId(entry.key.first)
-                val endLinkId = InfrastructureLinkId(entry.key.second)
-
-                startLinkId to endLinkId
-            }.mapValues { NodeIdSequence(it.value) }
+                val startNodeId = InfrastructureNodeId(rs.getLong("start_vid"))
+                val endNodeId = InfrastructureNodeId(rs.getLong("end_vid"))
+
+                (startNodeId to endNodeId) to rs.getDouble("agg_cost")
+            }.toMap()
     }
 
     companion object {
@@ -150,16 +138,10 @@ class NodeRepositoryImpl(
                 SELECT
                     node.id,
                     point.geom <-> node.the_geom AS distance
-                FROM routing.infrastructure_link_vertices_pgr node
-                WHERE ST_DWithin(point.geom, node.the_geom, :distance)
-                    AND EXISTS (
-                        SELECT 1
-                        FROM routing.infrastructure_link link
-                        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type safe
-                            ON safe.infrastructure_link_id = link.infrastructure_link_id
-                        WHERE safe.vehicle_type = :vehicleType
-                            AND (link.start_node_id = node.id OR link.end_node_id = node.id)
-                    )
+                FROM routing.infrastructure_link_vertex_reachable_by_vehicle_type node
+                WHERE node.vehicle_type = :vehicleType
+                    AND ST_DWithin(point.geom, node.the_geom, :distance)
+                ORDER BY point.geom <-> node.the_geom
             ) close_node
             ORDER BY point_seq ASC, distance ASC
             """.trimIndent()
@@ -168,73 +150,34 @@ class NodeRepositoryImpl(
          * The generated query uses '?' placeholder for bind variables since
          * there exist SQL ARRAY parameters that cannot be set via named
          * variables in Spring JDBC templates.
+         *
+         * The legs to be routed are passed as two parallel arrays of start and
+         * end node identifiers which are combined into (source, target) pairs
+         * for pgRouting. Unreachable legs are left out of the result.
          */
-        private fun getQueryForResolvingBestNodeSequences(
-            numberOfSequenceCandidates: Int,
-            bufferAreaRestriction: BufferAreaRestriction?
-        ): String {
-            require(numberOfSequenceCandidates in 1..100) { "numberOfSequenceCandidates must be in range 1..100" }
-
+        private fun getQueryForResolvingLegCosts(bufferAreaRestriction: BufferAreaRestriction?): String {
             // The produced SQL query is enclosed in quotes and passed as parameter to
             // pgRouting function. '?' is used as a bind variable placeholder. Actual
             // variable binding is left to occur within initialisation of PreparedStatement.
             val linkSelectionQueryForPgRouting: String =
-                bufferAreaRestriction
-                    ?.run {
-                        explicitLinkReferences
-                            ?.run {
-                                PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(
-                                    idsOfCandidatesForTerminusLinks.size,
-                                    idsOfCandidatesForTerminusNodes.size
-                                )
-                            }
-                            ?: PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(0, 0)
-                    }
-                    ?: PgRoutingEdgeQueries.getVehicleTypeConstrainedLinksQuery()
-
-            fun createUnionSubquery(numberOfSequenceCandidates: Int): String =
-                (1..numberOfSequenceCandidates)
-                    .joinToString(
-                        transform = {
-                            "SELECT ? AS node_seq_id, ? AS start_link_id, ? AS end_link_id, ?::bigint[] AS node_arr"
-                        },
-                        // Indent in separator should match the main query string below in order to have
-                        // properly formatted SQL result.
-                        separator = "\n                        UNION "
-                    )
+                PgRoutingEdgeQueries.getLinkSelectionQuery(bufferAreaRestriction)
 
             return """
-                SELECT start_link_id, end_link_id, unnest(node_arr) AS node_id
-                FROM (
-                    SELECT DISTINCT ON (start_link_id, end_link_id) start_link_id, end_link_id, node_arr
-                    FROM (
-                        ${createUnionSubquery(numberOfSequenceCandidates)}
-                    ) node_seq
-                    CROSS JOIN LATERAL (
-                        SELECT max(pgr.route_agg_cost) AS route_agg_cost
-                        FROM pgr_dijkstraVia(
-                            $linkSelectionQueryForPgRouting,
-                            node_seq.node_arr,
-                            directed := true,
-                            strict := true,
-                            U_turn_on_edge := true
-                        ) pgr
-                        GROUP BY node_seq_id
-                    ) route_overview
-                    ORDER BY start_link_id, end_link_id, route_agg_cost
-                ) res;
+                SELECT pgr.start_vid, pgr.end_vid, pgr.agg_cost
+                FROM pgr_dijkstraCost(
+                    $linkSelectionQueryForPgRouting,
+                    'SELECT source, target FROM unnest(' || quote_literal(?::bigint[]) || '::bigint[], '
+                        || quote_literal(?::bigint[]) || '::bigint[]) AS leg(source, target)',
+                    directed := true
+                ) pgr;
                 """.trimIndent()
         }
 
         private fun toSqlArray(
-            nodeIdSequence: NodeIdSequence?,
+            nodeIds: List<InfrastructureNodeId>,
             conn: Connection
         ): java.sql.Array {
-            val nodeIdArr: Array<Long> =
-                nodeIdSequence
-                    ?.list
-                    ?.run { map(InfrastructureNodeId::value).toTypedArray() }
-                    ?: emptyArray()
+            val nodeIdArr: Array<Long> = nodeIds.map(InfrastructureNodeId::value).toTypedArray()
 
             return conn.createArrayOf("bigint", nodeIdArr)
         }
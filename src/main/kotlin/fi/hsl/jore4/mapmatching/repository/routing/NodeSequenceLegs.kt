@@ -0,0 +1,93 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.NodeIdSequence
+
+/**
+ * A route leg between two consecutive nodes of a node sequence.
+ */
+typealias NodeSequenceLeg = Pair<InfrastructureNodeId, InfrastructureNodeId>
+
+/**
+ * Functions for resolving the best node sequences out of
+ * [NodeSequenceCandidate]s on the basis of shortest-path costs of the legs
+ * between consecutive nodes.
+ *
+ * The candidates produced for a pair of terminus links mostly share the same
+ * via nodes and differ only in the first and last one or two nodes. Hence,
+ * the cost of every distinct leg needs to be computed only once, after which
+ * the cost of each candidate is obtained as a sum over the shared leg costs.
+ */
+object NodeSequenceLegs {
+    /**
+     * Collects the distinct legs between consecutive nodes of the given
+     * candidates. Legs starting and ending at the same node are excluded since
+     * they do not need a shortest-path computation.
+     */
+    fun getDistinctLegs(nodeSequenceCandidates: List<NodeSequenceCandidate>): Set<NodeSequenceLeg> =
+        nodeSequenceCandidates
+            .flatMap { it.nodeIdSequence.list.zipWithNext() }
+            .filter { (startNodeId, endNodeId) -> startNodeId != endNodeId }
+            .toSet()
+
+    /**
+     * Resolves the cost of the route visiting the nodes of the given sequence
+     * in order.
+     *
+     * @param legCosts costs of the legs that have a route. A leg missing from
+     * the map is considered not routable.
+     *
+     * @return the sum of the leg costs or null if the sequence consists of
+     * less than two nodes or if any of its legs is not routable
+     */
+    fun getRouteCost(
+        nodeIdSequence: NodeIdSequence,
+        legCosts: Map<NodeSequenceLeg, Double>
+    ): Double? {
+        if (nodeIdSequence.size < 2) {
+            return null
+        }
+
+        return nodeIdSequence.list
+            .zipWithNext()
+            .sumOf { leg ->
+                if (leg.first == leg.second) {
+                    0.0
+                } else {
+                    legCosts[leg] ?: return null
+                }
+            }
+    }
+
+    /**
+     * Selects the node sequence yielding the cheapest route for each unique
+     * pair of start/end link. Candidates that are not routable are filtered
+     * out. On equal costs, the candidate appearing first is selected.
+     *
+     * @param legCosts costs of the legs that have a route
+     *
+     * @return [NodeIdSequence] indexed by pair of infrastructure link
+     * identifiers associated with the sequence.
+     */
+    fun selectBestNodeSequences(
+        nodeSequenceCandidates: List<NodeSequenceCandidate>,
+        legCosts: Map<NodeSequenceLeg, Double>
+    ): Map<Pair<InfrastructureLinkId, InfrastructureLinkId>, NodeIdSequence> {
+        val bestCandidates: MutableMap<Pair<InfrastructureLinkId, InfrastructureLinkId>, Pair<NodeIdSequence, Double>> =
+            LinkedHashMap()
+
+        nodeSequenceCandidates.forEach { candidate ->
+            val routeCost: Double = getRouteCost(candidate.nodeIdSequence, legCosts) ?: return@forEach
+
+            val key: Pair<InfrastructureLinkId, InfrastructureLinkId> = candidate.startLinkId to candidate.endLinkId
+            val currentBest: Pair<NodeIdSequence, Double>? = bestCandidates[key]
+
+            if (currentBest == null || routeCost < currentBest.second) {
+                bestCandidates[key] = candidate.nodeIdSequence to routeCost
+            }
+        }
+
+        return bestCandidates.mapValues { it.value.first }
+    }
+}
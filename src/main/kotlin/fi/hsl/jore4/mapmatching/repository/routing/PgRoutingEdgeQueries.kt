@@ -1,5 +1,9 @@
 package fi.hsl.jore4.mapmatching.repository.routing
 
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toEwkb
+import java.sql.PreparedStatement
+
 object PgRoutingEdgeQueries {
     private const val UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL = "''' || ? || '''"
 
@@ -41,67 +45,101 @@ object PgRoutingEdgeQueries {
      * The generated query is enclosed in quotes and intended to be passed as
      * string parameter to a pgRouting SQL function.
      *
-     * @param numberOfTerminusLinkIds the number of placeholders to generate for
-     * terminus link identifiers
-     * @param numberOfTerminusNodeIds the number of placeholders to generate for
-     * terminus node identifiers
+     * The terminus link and node identifiers are given as array literals like
+     * e.g. "{1,2,3}" (possibly empty) so that the text of the enclosing SQL
+     * statement does not depend on the number of terminus identifiers. This
+     * way the enclosing statement can be prepared once per database
+     * connection and its plan reused.
+     *
+     * @param isBufferAreaMaterialised whether the links within the buffer area
+     * are already resolved. If true, the buffer area is given as a single
+     * placeholder for an array literal of link identifiers instead of
+     * placeholders for the LineString geometry and buffer radius.
      *
      * @return an SQL query enclosed in quotes as [java.lang.String]
      */
-    fun getVehicleTypeAndBufferAreaConstrainedLinksQuery(
-        numberOfTerminusLinkIds: Int,
-        numberOfTerminusNodeIds: Int
-    ): String {
-        require(numberOfTerminusLinkIds >= 0) { "numberOfTerminusLinkIds must be non-negative" }
-        require(numberOfTerminusNodeIds >= 0) { "numberOfTerminusNodeIds must be non-negative" }
-
+    fun getVehicleTypeAndBufferAreaConstrainedLinksQuery(isBufferAreaMaterialised: Boolean = false): String {
         // Using SQL string concatenation in order to be able to inject a bind
         // variable placeholders into the query. This way we enable assigning the
         // actual values through PreparedStatement variable binding.
+        val bufferAreaPredicate: String =
+            when (isBufferAreaMaterialised) {
+                true -> "e.id = ANY($UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL::bigint[])"
+                false ->
+                    getBufferAreaRestriction(
+                        UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL,
+                        UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL
+                    )
+            }
 
-        fun getPlaceholdersConcatenated(numberOfPlaceholders: Int): String =
-            CharArray(numberOfPlaceholders) { '?' }.joinToString(
-                prefix = "''' || ",
-                separator = " || ''',''' || ",
-                postfix = " || '''"
-            )
+        val queryStart: String = getVehicleTypeConstrainedLinksQueryInternal(UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL)
 
-        val additionalTerminusPredicates: MutableList<String> = ArrayList()
+        val queryEnd: String =
+            listOf(
+                "e.id = ANY($UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL::bigint[])",
+                "$UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL::bigint[] && ARRAY[e.source, e.target]",
+                bufferAreaPredicate
+            ).joinToString(
+                prefix = "\n  AND (\n    ",
+                separator = "\n    OR ",
+                postfix = "\n  )"
+            )
 
-        if (numberOfTerminusLinkIds > 0) {
-            val quotedLinkIdsParam = getPlaceholdersConcatenated(numberOfTerminusLinkIds)
-            additionalTerminusPredicates.add("l.infrastructure_link_id IN ($quotedLinkIdsParam)")
-        }
-        if (numberOfTerminusNodeIds > 0) {
-            val quotedNodeIdsParam = getPlaceholdersConcatenated(numberOfTerminusNodeIds)
+        return "'$queryStart$queryEnd'"
+    }
 
-            additionalTerminusPredicates.add("l.start_node_id IN ($quotedNodeIdsParam)")
-            additionalTerminusPredicates.add("l.end_node_id IN ($quotedNodeIdsParam)")
-        }
+    /**
+     * Generates an SQL query that fetches infrastructure links associated with
+     * a specific vehicle type and optionally restricted by the given buffer
+     * area. The generated query is enclosed in quotes and intended to be passed
+     * as string parameter to a pgRouting SQL function. The values for the
+     * placeholders are to be set with [setLinkSelectionQueryParameters].
+     *
+     * @return an SQL query enclosed in quotes as [java.lang.String]
+     */
+    fun getLinkSelectionQuery(bufferAreaRestriction: BufferAreaRestriction?): String =
+        bufferAreaRestriction
+            ?.run { getVehicleTypeAndBufferAreaConstrainedLinksQuery(isMaterialised) }
+            ?: getVehicleTypeConstrainedLinksQuery()
 
-        // Buffer area restriction is always applied.
-        additionalTerminusPredicates.add(
-            getBufferAreaRestriction(
-                UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL,
-                UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL
+    /**
+     * Sets the values for the placeholders of the query generated with
+     * [getLinkSelectionQuery].
+     *
+     * @return the index of the next parameter after the ones set
+     */
+    fun setLinkSelectionQueryParameters(
+        pstmt: PreparedStatement,
+        firstParameterIndex: Int,
+        vehicleTypeValue: String,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): Int {
+        var paramIndex = firstParameterIndex
+
+        pstmt.setString(paramIndex++, vehicleTypeValue)
+
+        // Set additional parameters if restricting infrastructure links with a buffer area.
+        bufferAreaRestriction?.run {
+            pstmt.setString(
+                paramIndex++,
+                toArrayLiteral(explicitLinkReferences?.idsOfCandidatesForTerminusLinks.orEmpty()) { it.value }
+            )
+            pstmt.setString(
+                paramIndex++,
+                toArrayLiteral(explicitLinkReferences?.idsOfCandidatesForTerminusNodes.orEmpty()) { it.value }
             )
-        )
-
-        val queryStart: String = getVehicleTypeConstrainedLinksQueryInternal(UNNAMED_BIND_VAR_INSIDE_QUOTED_SQL)
-
-        val queryEnd: String =
-            when (additionalTerminusPredicates.size) {
-                1 -> "\n  AND " + additionalTerminusPredicates.first()
 
-                else ->
-                    additionalTerminusPredicates.joinToString(
-                        prefix = "\n  AND (\n    ",
-                        separator = "\n    OR ",
-                        postfix = "\n  )"
-                    )
-            }
+            idsOfLinksWithinBufferArea
+                ?.let { linkIds: Set<InfrastructureLinkId> ->
+                    pstmt.setString(paramIndex++, toArrayLiteral(linkIds) { it.value })
+                }
+                ?: run {
+                    pstmt.setBytes(paramIndex++, toEwkb(lineGeometry))
+                    pstmt.setDouble(paramIndex++, bufferRadiusInMeters)
+                }
+        }
 
-        return "'$queryStart$queryEnd'"
+        return paramIndex
     }
 
     /**
@@ -148,12 +186,12 @@ object PgRoutingEdgeQueries {
 
         if (terminusLinkIdsVariableName != null) {
             additionalTerminusPredicates.add(
-                "l.infrastructure_link_id = ANY((${wrapBindVariable(terminusLinkIdsVariableName)})::bigint[])"
+                "e.id = ANY((${wrapBindVariable(terminusLinkIdsVariableName)})::bigint[])"
             )
         }
         if (terminusNodeIdsVariableName != null) {
             additionalTerminusPredicates.add(
-                "(${wrapBindVariable(terminusNodeIdsVariableName)})::bigint[] && ARRAY[l.start_node_id, l.end_node_id]"
+                "(${wrapBindVariable(terminusNodeIdsVariableName)})::bigint[] && ARRAY[e.source, e.target]"
             )
         }
 
@@ -177,22 +215,21 @@ object PgRoutingEdgeQueries {
         return "$$ $queryStart$queryEnd$$"
     }
 
+    private fun <T> toArrayLiteral(
+        items: Collection<T>,
+        transform: (T) -> Long
+    ): String = items.joinToString(prefix = "{", postfix = "}") { transform(it).toString() }
+
     private fun getVehicleTypeConstrainedLinksQueryInternal(vehicleTypeParameter: String): String =
         """
-        SELECT l.infrastructure_link_id AS id,
-          l.start_node_id AS source,
-          l.end_node_id AS target,
-          l.cost,
-          l.reverse_cost
-        FROM routing.infrastructure_link l
-        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-          ON s.infrastructure_link_id = l.infrastructure_link_id
-        WHERE s.vehicle_type = $vehicleTypeParameter
+        SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+        FROM routing.infrastructure_link_edge e
+        WHERE e.vehicle_type = $vehicleTypeParameter
         """.trimIndent()
 
     private fun getBufferAreaRestriction(
         lineStringEwkbParameter: String,
         bufferRadiusParameter: String
     ): String =
-        "ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($lineStringEwkbParameter), 3067), $bufferRadiusParameter), l.geom)"
+        "ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($lineStringEwkbParameter), 3067), $bufferRadiusParameter), e.geom)"
 }
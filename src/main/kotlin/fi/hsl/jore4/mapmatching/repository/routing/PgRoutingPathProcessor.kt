@@ -0,0 +1,255 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import kotlin.math.abs
+
+/**
+ * A raw output row of pgRouting's pgr_withPointsVia function.
+ *
+ * @property seq the sequence number of the row
+ * @property pathId the one-based index of the path (leg) between two
+ * consecutive visited points
+ * @property edge the identifier of the traversed infrastructure link or a
+ * negative value if the row does not denote a traversal of a link
+ * @property node the node at which the traversal of [edge] starts. Positive
+ * values refer to real infrastructure nodes and negative values to virtual
+ * nodes.
+ * @property cost the cost of traversing [edge] from [node]
+ * @property link the attributes of the traversed infrastructure link, null if
+ * [edge] is negative
+ */
+data class PgRoutingPathRow(
+    val seq: Int,
+    val pathId: Int,
+    val edge: Long,
+    val node: Long,
+    val cost: Double,
+    val link: PgRoutingPathLink?
+)
+
+/**
+ * The attributes of an infrastructure link that are needed in recognising the
+ * direction of traversal on the link.
+ */
+data class PgRoutingPathLink(
+    val startNodeId: Long,
+    val endNodeId: Long,
+    val trafficFlowDirectionType: TrafficFlowDirectionType,
+    val cost: Double
+) {
+    val isClosedLoop: Boolean
+        get() = startNodeId == endNodeId
+}
+
+/**
+ * The location of a virtual node along an infrastructure link.
+ *
+ * @property fraction the fractional location on the link
+ * @property roundedFraction the rounded fractional location that is passed to
+ * pgRouting
+ */
+data class PgRoutingVirtualNodeLocation(
+    val fraction: Double,
+    val roundedFraction: Double
+)
+
+/**
+ * Transforms the raw output of pgr_withPointsVia into a sequence of traversed
+ * link sections in a single pass. The rows are fed one at a time in the order
+ * of their sequence numbers via [accept] and the result is obtained via
+ * [finish]. The transformation is the same as the one done in the
+ * "pgr_transform1".."pgr_transform5" sub-queries of the SQL query that finds a
+ * route via points in [RoutingRepositoryImpl]:
+ *
+ * (1) The end node of each link traversal is taken from the following row.
+ * (2) The start and end fractions are derived for each link traversal.
+ * Closed-loop links require special treatment since the direction of traversal
+ * cannot be deduced from the start and end nodes.
+ * (3) Traversals starting and ending at the same fraction are discarded and
+ * the direction of traversal is resolved.
+ * (4) Consecutive duplicates of links in one direction of traversal are
+ * removed.
+ * (5) End fractions are corrected after the removal of duplicates.
+ *
+ * Only a constant amount of state is kept between rows, apart from the
+ * produced result.
+ *
+ * @param virtualNodes the locations of virtual nodes indexed by their
+ * (positive) point identifiers given to pgRouting
+ */
+class PgRoutingPathProcessor(
+    private val virtualNodes: Map<Long, PgRoutingVirtualNodeLocation>
+) {
+    private data class LinkTraversal(
+        val seq: Int,
+        val edge: Long,
+        val isTraversalForwards: Boolean,
+        val startFraction: Double
+    )
+
+    // the row traversing a link whose end node is not known until the next row is read
+    private var pendingEdgeRow: PgRoutingPathRow? = null
+
+    // the end fraction of the last derived link traversal
+    private var lastEndFraction: Double? = null
+
+    // the last link traversal that passed the sanity check of stage (3)
+    private var previousTraversal: LinkTraversal? = null
+
+    // the last retained link traversal whose end fraction is resolved by the next retained one
+    private var pendingTraversal: LinkTraversal? = null
+
+    private val result: MutableList<TraversedLinkSection> = ArrayList()
+
+    fun accept(row: PgRoutingPathRow) {
+        pendingEdgeRow?.let { processLinkTraversal(it, row.node) }
+
+        pendingEdgeRow = if (row.edge >= 0) row else null
+    }
+
+    /**
+     * Completes the processing and returns the traversed link sections in the
+     * order of traversal.
+     */
+    fun finish(): List<TraversedLinkSection> {
+        pendingEdgeRow?.let { processLinkTraversal(it, null) }
+        pendingEdgeRow = null
+
+        pendingTraversal?.let { addLinkSection(it, null) }
+        pendingTraversal = null
+
+        return result.toList()
+    }
+
+    private fun processLinkTraversal(
+        row: PgRoutingPathRow,
+        endNode: Long?
+    ) {
+        val link: PgRoutingPathLink = checkNotNull(row.link) { "Link attributes missing for edge: ${row.edge}" }
+
+        val startFraction: Double = resolveStartFraction(row.node, endNode, row.cost, link)
+        val endFraction: Double = resolveEndFraction(row.node, endNode, row.cost, link)
+
+        lastEndFraction = endFraction
+
+        // sanity check
+        if (startFraction == endFraction) {
+            return
+        }
+
+        val traversal = LinkTraversal(row.seq, row.edge, endFraction > startFraction, startFraction)
+
+        val isRetained: Boolean =
+            traversal.seq == 1 ||
+                previousTraversal?.let {
+                    traversal.edge != it.edge || traversal.isTraversalForwards != it.isTraversalForwards
+                } == true ||
+                // closed loop cases
+                isLinkEndpoint(startFraction)
+
+        previousTraversal = traversal
+
+        if (isRetained) {
+            pendingTraversal?.let { addLinkSection(it, traversal) }
+            pendingTraversal = traversal
+        }
+    }
+
+    private fun addLinkSection(
+        traversal: LinkTraversal,
+        nextTraversal: LinkTraversal?
+    ) {
+        val endFraction: Double =
+            if (nextTraversal != null) {
+                if (nextTraversal.edge == traversal.edge && !isLinkEndpoint(nextTraversal.startFraction)) {
+                    nextTraversal.startFraction
+                } else if (traversal.isTraversalForwards) {
+                    1.0
+                } else {
+                    0.0
+                }
+            } else {
+                checkNotNull(lastEndFraction)
+            }
+
+        result.add(
+            TraversedLinkSection(
+                InfrastructureLinkId(traversal.edge),
+                traversal.isTraversalForwards,
+                traversal.startFraction,
+                endFraction
+            )
+        )
+    }
+
+    private fun resolveStartFraction(
+        startNode: Long,
+        endNode: Long?,
+        cost: Double,
+        link: PgRoutingPathLink
+    ): Double =
+        if (startNode < 0) {
+            getVirtualNodeLocation(startNode).fraction
+        } else if (link.isClosedLoop) {
+            when (link.trafficFlowDirectionType) {
+                TrafficFlowDirectionType.AGAINST_DIGITISED_DIRECTION -> 1.0
+                TrafficFlowDirectionType.ALONG_DIGITISED_DIRECTION -> 0.0
+                TrafficFlowDirectionType.BIDIRECTIONAL -> {
+                    // Determine direction by matching to pgRouting cost.
+                    findVirtualNodeLocation(endNode)
+                        ?.let { endLocation ->
+                            val forwardCostDiff: Double = abs(cost - link.cost * endLocation.roundedFraction)
+                            val backwardCostDiff: Double = abs(cost - link.cost * (1.0 - endLocation.roundedFraction))
+
+                            if (forwardCostDiff < backwardCostDiff) 0.0 else 1.0
+                        }
+                        ?: 1.0
+                }
+            }
+        } else if (startNode == link.startNodeId) {
+            0.0
+        } else {
+            1.0
+        }
+
+    private fun resolveEndFraction(
+        startNode: Long,
+        endNode: Long?,
+        cost: Double,
+        link: PgRoutingPathLink
+    ): Double =
+        if (endNode != null && endNode < 0) {
+            getVirtualNodeLocation(endNode).fraction
+        } else if (link.isClosedLoop) {
+            when (link.trafficFlowDirectionType) {
+                TrafficFlowDirectionType.AGAINST_DIGITISED_DIRECTION -> 0.0
+                TrafficFlowDirectionType.ALONG_DIGITISED_DIRECTION -> 1.0
+                TrafficFlowDirectionType.BIDIRECTIONAL -> {
+                    // Determine direction by matching to pgRouting cost.
+                    findVirtualNodeLocation(startNode)
+                        ?.let { startLocation ->
+                            val forwardCostDiff: Double = abs(cost - link.cost * (1.0 - startLocation.roundedFraction))
+                            val backwardCostDiff: Double = abs(cost - link.cost * startLocation.roundedFraction)
+
+                            if (forwardCostDiff < backwardCostDiff) 1.0 else 0.0
+                        }
+                        ?: 0.0
+                }
+            }
+        } else if (endNode == link.startNodeId) {
+            0.0
+        } else {
+            1.0
+        }
+
+    private fun findVirtualNodeLocation(node: Long?): PgRoutingVirtualNodeLocation? =
+        if (node != null && node < 0) getVirtualNodeLocation(node) else null
+
+    private fun getVirtualNodeLocation(node: Long): PgRoutingVirtualNodeLocation =
+        checkNotNull(virtualNodes[-node]) { "Unknown virtual node: $node" }
+
+    companion object {
+        private fun isLinkEndpoint(fraction: Double) = fraction == 0.0 || fraction == 1.0
+    }
+}
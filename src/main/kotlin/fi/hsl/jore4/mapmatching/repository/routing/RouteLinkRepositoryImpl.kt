@@ -0,0 +1,66 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkTraversal
+import fi.hsl.jore4.mapmatching.util.LineStringCoordinates
+import org.springframework.stereotype.Repository
+
+/**
+ * Resolves route links from the in-memory caches of link attributes and link
+ * geometries without querying the database (except for links missing from
+ * the caches). The geometries of partially traversed links are trimmed in the
+ * JVM.
+ */
+@Repository
+class RouteLinkRepositoryImpl(
+    val linkAttributeCache: LinkAttributeCache,
+    val linkGeometryCache: LinkGeometryCache
+) : IRouteLinkRepository {
+    override fun findRouteLinks(linkSections: List<TraversedLinkSection>): List<RouteLink> {
+        if (linkSections.isEmpty()) {
+            return emptyList()
+        }
+
+        val linkIds: Set<InfrastructureLinkId> = linkSections.mapTo(HashSet(), TraversedLinkSection::linkId)
+
+        val linkAttributes: Map<InfrastructureLinkId, LinkAttributes> = linkAttributeCache.getLinkAttributes(linkIds)
+        val linkGeometries: Map<InfrastructureLinkId, LinkGeometry> = linkGeometryCache.getLinkGeometries(linkIds)
+
+        return linkSections.mapIndexed { index, section ->
+            val attributes: LinkAttributes = linkAttributes.getValue(section.linkId)
+            val geometry: LinkGeometry = linkGeometries.getValue(section.linkId)
+
+            val linkLength: Double = attributes.getTraversalCost(section.isTraversalForwards)
+
+            val traversedGeometry: LineStringCoordinates
+            val traversedDistance: Double
+
+            if (section.isTrimmed) {
+                traversedGeometry = geometry.getSubstring(section.startFraction, section.endFraction)
+                traversedDistance = geometry.getSubstringLength(section.startFraction, section.endFraction)
+            } else {
+                traversedGeometry =
+                    when (section.isTraversalForwards) {
+                        true -> geometry.coordinates
+                        false -> geometry.coordinates.reversed()
+                    }
+                traversedDistance = linkLength
+            }
+
+            RouteLink(
+                index + 1,
+                InfrastructureLinkTraversal(
+                    section.linkId,
+                    attributes.externalLinkRef,
+                    geometry.coordinates,
+                    traversedGeometry,
+                    section.isTraversalForwards,
+                    linkLength,
+                    traversedDistance,
+                    attributes.isClosedLoop,
+                    attributes.name
+                )
+            )
+        }
+    }
+}
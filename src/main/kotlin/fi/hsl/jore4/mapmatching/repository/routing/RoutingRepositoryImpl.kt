@@ -1,68 +1,42 @@
 package fi.hsl.jore4.mapmatching.repository.routing
 
-import fi.hsl.jore4.mapmatching.model.ExternalLinkReference
 import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
-import fi.hsl.jore4.mapmatching.model.InfrastructureLinkTraversal
 import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
 import fi.hsl.jore4.mapmatching.model.LinkSide
 import fi.hsl.jore4.mapmatching.model.NodeIdSequence
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
 import fi.hsl.jore4.mapmatching.model.VehicleType
 import fi.hsl.jore4.mapmatching.util.CollectionUtils.filterOutConsecutiveDuplicates
-import fi.hsl.jore4.mapmatching.util.GeolatteUtils.extractLineStringG2D
-import fi.hsl.jore4.mapmatching.util.GeolatteUtils.fromEwkb
-import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toEwkb
 import fi.hsl.jore4.mapmatching.util.MathUtils.isWithinTolerance
-import fi.hsl.jore4.mapmatching.util.MultilingualString
-import fi.hsl.jore4.mapmatching.util.component.IJsonbConverter
-import org.geolatte.geom.G2D
-import org.geolatte.geom.Geometries.mkLineString
-import org.geolatte.geom.Geometry
-import org.geolatte.geom.LineString
-import org.geolatte.geom.crs.CoordinateReferenceSystems.WGS84
-import org.jooq.JSONB
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.jdbc.core.PreparedStatementSetter
+import org.springframework.jdbc.core.RowCallbackHandler
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
 import org.springframework.stereotype.Repository
 import org.springframework.transaction.annotation.Transactional
 import java.math.BigDecimal
-import java.sql.PreparedStatement
+import java.math.RoundingMode
 import java.sql.ResultSet
 import kotlin.math.pow
 import kotlin.math.roundToInt
 
+/**
+ * A routing repository that finds routes by invoking pgRouting functions in
+ * the database. The queries resolve only the traversed link sections. The
+ * attributes and geometries of the traversed links are completed via
+ * [IRouteLinkRepository].
+ *
+ * When finding a route via points along links, the raw output of pgRouting
+ * can optionally be post-processed in the JVM instead of the database (see
+ * [JVM_PATH_PROCESSING_PROPERTY]). In that case, the output rows are streamed
+ * through [PgRoutingPathProcessor].
+ */
 @Repository
 class RoutingRepositoryImpl(
     val jdbcTemplate: NamedParameterJdbcTemplate,
-    val jsonbConverter: IJsonbConverter
+    val routeLinkRepository: IRouteLinkRepository,
+    @param:Value("\${$JVM_PATH_PROCESSING_PROPERTY:false}") val jvmPathProcessingEnabled: Boolean
 ) : IRoutingRepository {
-    sealed interface ResultItem
-
-    /**
-     * Models full traversal of an infrastructure link (from end-to-end) as
-     * a route link.
-     */
-    private data class RouteLinkResultItem(
-        val routeSeqNum: Int,
-        val linkId: InfrastructureLinkId,
-        val linkGeometry: LineString<G2D>,
-        val linkLength: Double,
-        val isTraversalForwards: Boolean,
-        val externalLinkRef: ExternalLinkReference,
-        val isClosedLoop: Boolean,
-        val linkName: MultilingualString
-    ) : ResultItem
-
-    /**
-     * Models partial traversal of an infrastructure link (not end-to-end) as
-     * a route link.
-     */
-    private data class TrimmedRouteLinkResultItem(
-        val routeSeqNum: Int,
-        val linkId: InfrastructureLinkId,
-        val traversedGeometry: LineString<G2D>,
-        val traversedDistance: Double
-    ) : ResultItem
-
     @Transactional(readOnly = true)
     override fun findRouteViaNetworkNodes(
         nodeIdSequence: NodeIdSequence,
@@ -101,32 +75,42 @@ class RoutingRepositoryImpl(
         val parameterSetter =
             PreparedStatementSetter { pstmt ->
 
-                pstmt.setString(1, vehicleType.value)
-
-                var paramIndex = 2
-
-                // Set additional parameters if restricting infrastructure links with a buffer area.
-                bufferAreaRestriction?.run {
-                    paramIndex = setParametersForBufferAreaRestriction(pstmt, this, paramIndex)
-                }
+                var paramIndex: Int =
+                    PgRoutingEdgeQueries.setLinkSelectionQueryParameters(
+                        pstmt,
+                        1,
+                        vehicleType.value,
+                        bufferAreaRestriction
+                    )
 
                 val nodeIdArray: Array<Long> = nodeIdSequence.list.map(InfrastructureNodeId::value).toTypedArray()
 
                 // Setting array parameters can only be done through a java.sql.Connection object.
-                pstmt.setArray(paramIndex++, pstmt.connection.createArrayOf("bigint", nodeIdArray))
+                pstmt.setArray(paramIndex, pstmt.connection.createArrayOf("bigint", nodeIdArray))
+            }
 
-                fractionalStartLocationOnFirstLink
-                    ?.let { pstmt.setDouble(paramIndex++, it) }
-                    ?: run { pstmt.setNull(paramIndex++, java.sql.Types.NUMERIC) }
+        val queryString: String = getQueryForFindingRouteViaNodes(bufferAreaRestriction)
 
-                fractionalEndLocationOnLastLink
-                    ?.let { pstmt.setDouble(paramIndex++, it) }
-                    ?: run { pstmt.setNull(paramIndex++, java.sql.Types.NUMERIC) }
+        val fullLinkTraversals: List<TraversedLinkSection> =
+            jdbcTemplate.jdbcOperations.query(queryString, parameterSetter) { rs: ResultSet, _: Int ->
+                TraversedLinkSection.fullTraversal(
+                    InfrastructureLinkId(rs.getLong("infrastructure_link_id")),
+                    rs.getBoolean("is_traversal_forwards")
+                )
             }
 
-        val queryString: String = getQueryForFindingRouteViaNodes(bufferAreaRestriction)
+        val linkSections: List<TraversedLinkSection> =
+            if (fractionalStartLocationOnFirstLink != null && fractionalEndLocationOnLastLink != null) {
+                trimTerminusLinks(
+                    fullLinkTraversals,
+                    fractionalStartLocationOnFirstLink,
+                    fractionalEndLocationOnLastLink
+                )
+            } else {
+                fullLinkTraversals
+            }
 
-        return executeQueryAndTransformToResult(queryString, parameterSetter)
+        return routeLinkRepository.findRouteLinks(linkSections)
     }
 
     @Transactional(readOnly = true)
@@ -239,6 +223,18 @@ class RoutingRepositoryImpl(
         // endpoints.
         val filteredPointsIds: List<Long> = filterOutConsecutiveDuplicates(visitedPointIds)
 
+        if (jvmPathProcessingEnabled) {
+            return findRouteViaPointsWithJvmPathProcessing(
+                linkIdsForVirtualNodes,
+                fractionalLocations,
+                linkSides,
+                filteredPointsIds,
+                roundedFractionDecimalPrecision,
+                vehicleType,
+                bufferAreaRestriction
+            )
+        }
+
         val parameterSetter =
             PreparedStatementSetter { pstmt ->
 
@@ -261,12 +257,12 @@ class RoutingRepositoryImpl(
                     pstmt.connection.createArrayOf("bigint", filteredPointsIds.toTypedArray())
                 )
 
-                pstmt.setString(paramIndex++, vehicleType.value)
-
-                // Set additional parameters if restricting infrastructure links with a buffer area.
-                bufferAreaRestriction?.run {
-                    setParametersForBufferAreaRestriction(pstmt, this, paramIndex)
-                }
+                PgRoutingEdgeQueries.setLinkSelectionQueryParameters(
+                    pstmt,
+                    paramIndex,
+                    vehicleType.value,
+                    bufferAreaRestriction
+                )
             }
 
         val queryString: String =
@@ -275,174 +271,177 @@ class RoutingRepositoryImpl(
                 bufferAreaRestriction
             )
 
-        return executeQueryAndTransformToResult(queryString, parameterSetter)
-    }
-
-    // Returns the next parameter index after all parameters related to buffer area are set.
-    private fun setParametersForBufferAreaRestriction(
-        pstmt: PreparedStatement,
-        bufferAreaRestriction: BufferAreaRestriction,
-        firstParameterIndex: Int
-    ): Int {
-        var paramIndex = firstParameterIndex
-
-        bufferAreaRestriction.run {
-            explicitLinkReferences?.run {
-                idsOfCandidatesForTerminusLinks.forEach {
-                    pstmt.setLong(paramIndex++, it.value)
-                }
-                repeat(2) {
-                    // node IDs need to be set twice, separately for start and end nodes
-                    idsOfCandidatesForTerminusNodes.forEach {
-                        pstmt.setLong(paramIndex++, it.value)
-                    }
-                }
+        val linkSections: List<TraversedLinkSection> =
+            jdbcTemplate.jdbcOperations.query(queryString, parameterSetter) { rs: ResultSet, _: Int ->
+                TraversedLinkSection(
+                    InfrastructureLinkId(rs.getLong("infrastructure_link_id")),
+                    rs.getBoolean("is_traversal_forwards"),
+                    rs.getDouble("start_fraction"),
+                    rs.getDouble("end_fraction")
+                )
             }
-            pstmt.setBytes(paramIndex++, toEwkb(lineGeometry))
-            pstmt.setDouble(paramIndex++, bufferRadiusInMeters)
-        }
 
-        return paramIndex
+        return routeLinkRepository.findRouteLinks(linkSections)
     }
 
-    private fun executeQueryAndTransformToResult(
-        queryString: String,
-        parameterSetter: PreparedStatementSetter
+    /**
+     * Finds a route via points by fetching only the raw output rows of
+     * pgRouting from the database. The rows are transformed into traversed
+     * link sections by [PgRoutingPathProcessor] while reading the result set,
+     * after which route links are resolved for the link sections.
+     */
+    private fun findRouteViaPointsWithJvmPathProcessing(
+        linkIdsForVirtualNodes: List<Long>,
+        fractionalLocations: List<Double>,
+        linkSides: List<Char>,
+        visitedPointIds: List<Long>,
+        roundedFractionDecimalPrecision: Int,
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction?
     ): List<RouteLink> {
-        // This flat list contains result items for both (1) fully traversed infrastructure links
-        // (with whole link geometries) and (2) partially traversed links (with trimmed geometries).
-        // They are separated by the "trimmed" column of the result set. Each partially traversed
-        // link has a fully-traversed counterpart in the result set (with same sequence number) but
-        // not the other way around.
-        val queryResults: List<ResultItem> =
-            jdbcTemplate.jdbcOperations
-                .query(queryString, parameterSetter) { rs: ResultSet, _: Int ->
-                    val trimmed = rs.getBoolean("trimmed")
-
-                    val routeSeqNum = rs.getInt("seq")
-
-                    val infrastructureLinkId = InfrastructureLinkId(rs.getLong("infrastructure_link_id"))
-                    val cost = rs.getDouble("cost")
-
-                    val linkBytes: ByteArray = rs.getBytes("geom")
-
-                    val geom: Geometry<*> = fromEwkb(linkBytes)
-                    val lineString: LineString<G2D> = extractLineStringG2D(geom)
-
-                    when (trimmed) {
-                        true ->
-                            TrimmedRouteLinkResultItem(
-                                routeSeqNum,
-                                infrastructureLinkId,
-                                lineString,
-                                cost
-                            )
-
-                        false -> {
-                            val isTraversalForwards = rs.getBoolean("is_traversal_forwards")
-
-                            val infrastructureSource = rs.getString("infrastructure_source_name")
-                            val externalLinkId = rs.getString("external_link_id")
-
-                            val linkNameJson = JSONB.jsonb(rs.getString("link_name"))
-                            val linkName = jsonbConverter.fromJson(linkNameJson, MultilingualString::class.java)
-
-                            val isClosedLoop = rs.getBoolean("is_closed_loop")
-
-                            RouteLinkResultItem(
-                                routeSeqNum,
-                                infrastructureLinkId,
-                                lineString,
-                                cost,
-                                isTraversalForwards,
-                                ExternalLinkReference(infrastructureSource, externalLinkId),
-                                isClosedLoop,
-                                linkName
-                            )
-                        }
-                    }
-                }
+        val roundedFractions: List<BigDecimal> =
+            fractionalLocations.map {
+                BigDecimal
+                    .valueOf(
+                        it
+                    ).setScale(roundedFractionDecimalPrecision, RoundingMode.HALF_UP)
+            }
 
-        // Collect partially traversed links from the result set and index them by the sequence
-        // number of route link.
-        val routeSeqNumToTrimmedRouteLink: Map<Int, TrimmedRouteLinkResultItem> =
-            queryResults
-                .mapNotNull { it as? TrimmedRouteLinkResultItem }
-                .associateBy { it.routeSeqNum }
-
-        val routeLinks: List<RouteLink> =
-            queryResults
-                .mapNotNull { path ->
-                    when (path) {
-                        // Filtered out since trimmed versions (partial link traversals) were already
-                        // collected to a Map.
-                        is TrimmedRouteLinkResultItem -> null
-
-                        is RouteLinkResultItem -> {
-                            val seqNum: Int = path.routeSeqNum
-                            val trimmedRouteLink: TrimmedRouteLinkResultItem? =
-                                routeSeqNumToTrimmedRouteLink[seqNum]
-
-                            // If a trimmed version exists, then use its geometry as the traversed
-                            // geometry. Otherwise, use whole link geometry as the traversed geometry
-                            // (already reversed in SQL in case of backwards traversal).
-                            val traversedGeometry: LineString<G2D> =
-                                trimmedRouteLink
-                                    ?.traversedGeometry
-                                    ?: when (path.isTraversalForwards) {
-                                        true -> path.linkGeometry
-                                        false -> mkLineString(path.linkGeometry.positions.reverse(), WGS84)
-                                    }
-
-                            // If a trimmed version exists, then use the length of its geometry as the
-                            // traversed distance. Otherwise, use the length of whole link geometry as
-                            // the traversed distance.
-                            val traversedDistance: Double =
-                                trimmedRouteLink
-                                    ?.traversedDistance
-                                    ?: path.linkLength
-
-                            RouteLink(
-                                seqNum,
-                                InfrastructureLinkTraversal(
-                                    path.linkId,
-                                    path.externalLinkRef,
-                                    path.linkGeometry,
-                                    traversedGeometry,
-                                    path.isTraversalForwards,
-                                    path.linkLength,
-                                    traversedDistance,
-                                    path.isClosedLoop,
-                                    path.linkName
-                                )
-                            )
-                        }
+        // Point identifiers are assigned to virtual nodes in the order of the arrays starting from 3.
+        val virtualNodes: Map<Long, PgRoutingVirtualNodeLocation> =
+            fractionalLocations.indices.associate { index ->
+                (index + 3L) to
+                    PgRoutingVirtualNodeLocation(fractionalLocations[index], roundedFractions[index].toDouble())
+            }
+
+        val parameterSetter =
+            PreparedStatementSetter { pstmt ->
+
+                var paramIndex: Int =
+                    PgRoutingEdgeQueries.setLinkSelectionQueryParameters(
+                        pstmt,
+                        1,
+                        vehicleType.value,
+                        bufferAreaRestriction
+                    )
+
+                // Setting array parameters can only be done through a java.sql.Connection object.
+
+                pstmt.setArray(
+                    paramIndex++,
+                    pstmt.connection.createArrayOf("bigint", linkIdsForVirtualNodes.toTypedArray())
+                )
+                pstmt.setArray(paramIndex++, pstmt.connection.createArrayOf("numeric", roundedFractions.toTypedArray()))
+                pstmt.setArray(paramIndex++, pstmt.connection.createArrayOf("char", linkSides.toTypedArray()))
+
+                pstmt.setArray(paramIndex, pstmt.connection.createArrayOf("bigint", visitedPointIds.toTypedArray()))
+            }
+
+        val processor = PgRoutingPathProcessor(virtualNodes)
+
+        jdbcTemplate.jdbcOperations.query(
+            getRawQueryForFindingRouteViaPoints(bufferAreaRestriction),
+            parameterSetter,
+            RowCallbackHandler { rs: ResultSet ->
+                val edge: Long = rs.getLong("edge")
+
+                val link: PgRoutingPathLink? =
+                    if (edge >= 0) {
+                        PgRoutingPathLink(
+                            rs.getLong("start_node_id"),
+                            rs.getLong("end_node_id"),
+                            TrafficFlowDirectionType.from(rs.getInt("traffic_flow_direction_type")),
+                            rs.getDouble("link_cost")
+                        )
+                    } else {
+                        null
                     }
-                }.sortedBy(RouteLink::routeSeqNum)
 
-        return routeLinks
+                processor.accept(
+                    PgRoutingPathRow(
+                        rs.getInt("seq"),
+                        rs.getInt("path_id"),
+                        edge,
+                        rs.getLong("node"),
+                        rs.getDouble("cost"),
+                        link
+                    )
+                )
+            }
+        )
+
+        return routeLinkRepository.findRouteLinks(processor.finish())
     }
 
     companion object {
+        const val JVM_PATH_PROCESSING_PROPERTY = "mapmatching.routing.via-points.jvm-path-processing.enabled"
+
         /**
-         * The produced SQL query is enclosed in quotes and passed as parameter
-         * to pgRouting function. '?' is used as a bind variable placeholder.
-         * Actual variable binding is left to occur within the initialisation of
-         * PreparedStatement.
+         * Trims the first and the last link of a route (found via network
+         * nodes) at the given fractional locations. A terminus link is trimmed
+         * only if the fractional location is located in the direction of
+         * traversal. Otherwise, the link is regarded as fully traversed.
+         *
+         * Also used by [fi.hsl.jore4.mapmatching.repository.routing.graph.GraphRoutingRepositoryImpl]
+         * so that both routing engines trim routes identically.
          */
-        private fun createLinkSelectionQueryForPgRouting(bufferAreaRestriction: BufferAreaRestriction?): String =
-            bufferAreaRestriction
-                ?.run {
-                    explicitLinkReferences
-                        ?.run {
-                            PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(
-                                idsOfCandidatesForTerminusLinks.size,
-                                idsOfCandidatesForTerminusNodes.size
-                            )
+        internal fun trimTerminusLinks(
+            fullLinkTraversals: List<TraversedLinkSection>,
+            fractionalStartLocationOnFirstLink: Double,
+            fractionalEndLocationOnLastLink: Double
+        ): List<TraversedLinkSection> {
+            if (fullLinkTraversals.isEmpty()) {
+                return fullLinkTraversals
+            }
+
+            val start: Double = fractionalStartLocationOnFirstLink
+            val end: Double = fractionalEndLocationOnLastLink
+            val lastIndex: Int = fullLinkTraversals.lastIndex
+
+            return fullLinkTraversals.mapIndexed { index, section ->
+                val forwards: Boolean = section.isTraversalForwards
+
+                when {
+                    // only one link
+                    lastIndex == 0 ->
+                        when {
+                            forwards && start < end -> section.copy(startFraction = start, endFraction = end)
+                            !forwards && start > end -> section.copy(startFraction = start, endFraction = end)
+                            else -> section
+                        }
+
+                    // start link
+                    index == 0 ->
+                        when {
+                            forwards && start < 1.0 -> section.copy(startFraction = start)
+                            !forwards && start > 0.0 -> section.copy(startFraction = start)
+                            else -> section
+                        }
+
+                    // end link
+                    index == lastIndex ->
+                        when {
+                            forwards && end > 0.0 -> section.copy(endFraction = end)
+                            !forwards && end < 1.0 -> section.copy(endFraction = end)
+                            else -> section
                         }
-                        ?: PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(0, 0)
+
+                    else -> section
                 }
-                ?: PgRoutingEdgeQueries.getVehicleTypeConstrainedLinksQuery()
+            }
+        }
+
+        /**
+         * The format string for the points query passed to pgRouting. The
+         * query has a fixed shape regardless of the number of virtual nodes.
+         * The identifiers of links, fractional locations and sides of virtual
+         * nodes are embedded as array literals. The point identifiers are
+         * assigned in the order of the arrays starting from 3.
+         */
+        private const val VIRTUAL_NODES_SQL_FORMAT =
+            "SELECT (idx + 2)::bigint AS pid, edge_id, fraction, side " +
+                "FROM unnest(%L::bigint[], %L::float8[], %L::char[]) " +
+                "WITH ORDINALITY AS u(edge_id, fraction, side, idx)"
 
         /**
          * The generated query uses '?' placeholder for bind variables since
@@ -451,91 +450,19 @@ class RoutingRepositoryImpl(
          */
         private fun getQueryForFindingRouteViaNodes(bufferAreaRestriction: BufferAreaRestriction?): String =
             """
-            WITH route_link AS (
-                SELECT
-                    pgr.seq,
-                    link.infrastructure_link_id,
-                    (pgr.node = link.start_node_id) AS is_traversal_forwards,
-                    pgr.cost,
-                    src.infrastructure_source_name,
-                    link.external_link_id,
-                    link.name AS link_name,
-                    link.start_node_id = link.end_node_id AS is_closed_loop,
-                    link.geom
-                FROM pgr_dijkstraVia(
-                    ${createLinkSelectionQueryForPgRouting(bufferAreaRestriction)},
-                    ?::bigint[],
-                    directed := true,
-                    strict := true,
-                    U_turn_on_edge := true
-                ) pgr
-                INNER JOIN routing.infrastructure_link link ON link.infrastructure_link_id = pgr.edge
-                INNER JOIN routing.infrastructure_source src ON src.infrastructure_source_id = link.infrastructure_source_id
-            ),
-            trimmed_terminus_link AS (
-                SELECT
-                    seq,
-                    infrastructure_link_id,
-                    CASE
-                        WHEN max_seq = 1 THEN CASE -- only one link
-                            WHEN is_traversal_forwards = true AND start_link_fractional < end_link_fractional 
-                                THEN ST_LineSubstring(geom, start_link_fractional, end_link_fractional)
-                            WHEN is_traversal_forwards = false AND start_link_fractional > end_link_fractional 
-                                THEN ST_Reverse(ST_LineSubstring(geom, end_link_fractional, start_link_fractional))
-                            ELSE NULL
-                        END
-                        WHEN seq = 1 THEN CASE -- start link
-                            WHEN is_traversal_forwards = true AND start_link_fractional < 1.0
-                                THEN ST_LineSubstring(geom, start_link_fractional, 1.0)
-                            WHEN is_traversal_forwards = false AND start_link_fractional > 0.0
-                                THEN ST_Reverse(ST_LineSubstring(geom, 0.0, start_link_fractional))
-                            ELSE NULL
-                        END
-                        ELSE CASE -- end link
-                            WHEN is_traversal_forwards = true AND end_link_fractional > 0.0
-                                THEN ST_LineSubstring(geom, 0.0, end_link_fractional)
-                            WHEN is_traversal_forwards = false AND end_link_fractional < 1.0
-                                THEN ST_Reverse(ST_LineSubstring(geom, end_link_fractional, 1.0))
-                            ELSE NULL
-                        END
-                    END AS geom
-                FROM (
-                    SELECT min(seq) AS min_seq, max(seq) AS max_seq FROM route_link
-                ) min_max_seq
-                INNER JOIN route_link ON seq IN (min_seq, max_seq)
-                CROSS JOIN (
-                    SELECT ?::numeric AS start_link_fractional, ?::numeric AS end_link_fractional
-                ) substring_param
-                WHERE start_link_fractional IS NOT NULL AND end_link_fractional IS NOT NULL
-            )
-            SELECT *
-            FROM (
-                SELECT false AS trimmed,
-                    rl.seq,
-                    rl.infrastructure_link_id,
-                    rl.is_traversal_forwards,
-                    rl.cost,
-                    rl.infrastructure_source_name,
-                    rl.external_link_id,
-                    rl.link_name,
-                    rl.is_closed_loop,
-                    ST_AsEWKB(ST_Transform(rl.geom, 4326)) as geom
-                FROM route_link rl
-                UNION ALL
-                SELECT true AS trimmed,
-                    ttl.seq,
-                    ttl.infrastructure_link_id,
-                    NULL::bool AS is_traversal_forwards,
-                    ST_Length(ttl.geom) AS cost,
-                    NULL::text AS infrastructure_source_name,
-                    NULL::text AS external_link_id,
-                    NULL::jsonb AS link_name,
-                    NULL::bool AS is_closed_loop,
-                    ST_AsEWKB(ST_Transform(ttl.geom, 4326)) as geom
-                FROM trimmed_terminus_link ttl
-                WHERE ttl.geom IS NOT NULL
-            ) combined
-            ORDER BY seq, trimmed;
+            SELECT
+                pgr.seq,
+                link.infrastructure_link_id,
+                (pgr.node = link.start_node_id) AS is_traversal_forwards
+            FROM pgr_dijkstraVia(
+                ${PgRoutingEdgeQueries.getLinkSelectionQuery(bufferAreaRestriction)},
+                ?::bigint[],
+                directed := true,
+                strict := true,
+                U_turn_on_edge := true
+            ) pgr
+            INNER JOIN routing.infrastructure_link link ON link.infrastructure_link_id = pgr.edge
+            ORDER BY pgr.seq;
             """.trimIndent()
 
         /**
@@ -543,12 +470,10 @@ class RoutingRepositoryImpl(
          * infrastructure network via route points given as parameters. A route
          * point is either (A) infrastructure node or (B) virtual node, that is,
          * a point along infrastructure link that does not coincide with link's
-         * endpoints. The resulting route is returned as a sequence of route
-         * links, each of which refers to an infrastructure link. For each route
-         * link, the geometry of the whole infrastructure link is returned. For
-         * only partially traversed infrastructure links also a trimmed version
-         * of the infrastructure link geometry is returned that models the real
-         * traversed path on the route.
+         * endpoints. The resulting route is returned as a sequence of traversed
+         * link sections, each of which refers to an infrastructure link along
+         * with the direction of traversal and the fractional locations where
+         * the traversal starts and ends on the link.
          *
          * Virtual nodes are bound to the query via three separate arrays given
          * as parameters. So, each virtual node point is effectively a triple
@@ -566,10 +491,15 @@ class RoutingRepositoryImpl(
          * shortest path. The embedded query has its own set of parameters that
          * are handled in [PgRoutingEdgeQueries] object.
          *
+         * The visited points data is passed to pgRouting as a points query of a
+         * fixed shape that unnests the virtual node arrays embedded as array
+         * literals. Hence, the query text passed to pgRouting does not grow into
+         * a chain of sub-queries as the number of via points increases.
+         *
          * There is also a decimal precision parameter that is used to round
-         * fractional locations along infrastructure links. The rounding is done
-         * as an optimisation to shorten the internally built query that
-         * generates the visited points data as an SQL query.
+         * fractional locations along infrastructure links. Fractions are rounded
+         * so that virtual nodes located close to each other are treated as one
+         * and the same location.
          *
          * The query uses pgRouting's pgr_withPointsVia function.
          *
@@ -696,49 +626,32 @@ class RoutingRepositoryImpl(
             ),
             virtual_node AS (
                 SELECT
-                    edge_index + 2 AS pid,
+                    idx + 2 AS pid,
                     edge_id,
                     fraction,
                     round(fraction, $roundedFractionDecimalPrecision) AS rounded_fraction,
-                    side::char
-                FROM (
-                    SELECT *, row_number() OVER () AS edge_index
-                    FROM (
-                        SELECT unnest(edge_ids) AS edge_id FROM virtual_node_params
-                    ) u
-                ) edges
-                INNER JOIN (
-                    SELECT *, row_number() OVER () AS fraction_index
-                    FROM (
-                        SELECT unnest(fractions) AS fraction FROM virtual_node_params
-                    ) u
-                ) fractions ON fraction_index = edge_index
-                INNER JOIN (
-                    SELECT *, row_number() OVER () AS side_index
-                    FROM (
-                        SELECT unnest(sides) AS side FROM virtual_node_params
-                    ) u
-                ) sides ON side_index = edge_index
+                    side
+                FROM virtual_node_params p
+                CROSS JOIN unnest(p.edge_ids, p.fractions, p.sides) WITH ORDINALITY AS u(edge_id, fraction, side, idx)
             ),
             virtual_nodes_sql AS (
-                SELECT string_agg(sql, ' UNION ') AS txt
-                FROM (
-                    SELECT
-                        CASE
-                            WHEN pid = 3 THEN -- first point given column names
-                                'SELECT ' || pid || ' AS pid, ' || edge_id || ' AS edge_id, ' || rounded_fraction || ' AS fraction, ''' || side || '''::char AS side'
-                            ELSE
-                                'SELECT ' || pid || ', ' || edge_id || ', ' || rounded_fraction || ', ''' || side || '''::char'
-                        END AS sql
-                    FROM virtual_node
-                ) parts
+                -- The points query has a fixed shape regardless of the number of
+                -- virtual nodes. The point data is embedded as array literals that
+                -- are unnested by the query.
+                SELECT format(
+                    '$VIRTUAL_NODES_SQL_FORMAT',
+                    array_agg(edge_id ORDER BY pid),
+                    array_agg(rounded_fraction ORDER BY pid),
+                    array_agg(side ORDER BY pid)
+                ) AS txt
+                FROM virtual_node
             ),
             pgr AS (
                 SELECT seq, path_id, edge, node, cost
                 FROM visited_points pts
                 CROSS JOIN virtual_nodes_sql sql
                 CROSS JOIN pgr_withPointsVia(
-                    ${createLinkSelectionQueryForPgRouting(bufferAreaRestriction)},
+                    ${PgRoutingEdgeQueries.getLinkSelectionQuery(bufferAreaRestriction)},
                     sql.txt,
                     pts.ids,
                     directed => true,
@@ -846,64 +759,50 @@ class RoutingRepositoryImpl(
                         lead(start_fraction) OVER (ORDER BY seq) AS next_start_fraction
                     FROM pgr_transform4
                 ) sub ON sub.seq = pgr.seq
-            ),
-            route_link AS (
-                SELECT
-                    pgr.seq,
-                    link.infrastructure_link_id,
-                    pgr.is_traversal_forwards,
-                    CASE
-                        WHEN pgr.is_traversal_forwards THEN link.cost
-                        ELSE link.reverse_cost
-                    END AS cost,
-                    src.infrastructure_source_name,
-                    link.external_link_id,
-                    link.name AS link_name,
-                    link.start_node_id = link.end_node_id AS is_closed_loop,
-                    link.geom
-                FROM pgr_transform5 pgr
-                INNER JOIN routing.infrastructure_link link ON link.infrastructure_link_id = pgr.edge
-                INNER JOIN routing.infrastructure_source src ON src.infrastructure_source_id = link.infrastructure_source_id
-            ),
-            trimmed_route_link AS (
-                SELECT
-                    pgr.seq,
-                    link.infrastructure_link_id,
-                    CASE
-                        WHEN pgr.is_traversal_forwards THEN ST_LineSubstring(link.geom, pgr.start_fraction, pgr.end_fraction)
-                        ELSE ST_Reverse(ST_LineSubstring(link.geom, pgr.end_fraction, pgr.start_fraction))
-                    END AS geom
-                FROM pgr_transform5 pgr
-                INNER JOIN routing.infrastructure_link link ON link.infrastructure_link_id = pgr.edge
-                WHERE pgr.start_fraction NOT IN (0.0, 1.0) OR pgr.end_fraction NOT IN (0.0, 1.0)
             )
-            SELECT *
-            FROM (
-                SELECT false AS trimmed,
-                    rl.seq,
-                    rl.infrastructure_link_id,
-                    rl.is_traversal_forwards,
-                    rl.cost,
-                    rl.infrastructure_source_name,
-                    rl.external_link_id,
-                    rl.link_name,
-                    rl.is_closed_loop,
-                    ST_AsEWKB(ST_Transform(rl.geom, 4326)) as geom
-                FROM route_link rl
-                UNION ALL
-                SELECT true AS trimmed,
-                    trl.seq,
-                    trl.infrastructure_link_id,
-                    NULL::bool AS is_traversal_forwards,
-                    ST_Length(trl.geom) AS cost,
-                    NULL::text AS infrastructure_source_name,
-                    NULL::text AS external_link_id,
-                    NULL::jsonb AS link_name,
-                    NULL::bool AS is_closed_loop,
-                    ST_AsEWKB(ST_Transform(trl.geom, 4326)) as geom
-                FROM trimmed_route_link trl
-            ) combined
-            ORDER BY seq, trimmed;
+            SELECT edge AS infrastructure_link_id, is_traversal_forwards, start_fraction, end_fraction
+            FROM pgr_transform5
+            ORDER BY seq;
+            """.trimIndent()
+
+        /**
+         * Returns an SQL query that finds the shortest path through
+         * infrastructure network via route points given as parameters. Unlike
+         * the query returned by [getQueryForFindingRouteViaPoints], only the
+         * raw output rows of pgRouting are returned in the order of their
+         * sequence numbers. The rows are complemented with the attributes of
+         * the traversed infrastructure link that are needed in recognising the
+         * direction of traversal in [PgRoutingPathProcessor].
+         *
+         * The parameters of the embedded link selection query come first,
+         * followed by the three virtual node arrays and the visited points
+         * array. The fractional locations of virtual nodes are expected to be
+         * already rounded.
+         */
+        private fun getRawQueryForFindingRouteViaPoints(bufferAreaRestriction: BufferAreaRestriction?) =
+            """
+            SELECT
+                pgr.seq,
+                pgr.path_id,
+                pgr.edge,
+                pgr.node,
+                pgr.cost,
+                l.start_node_id,
+                l.end_node_id,
+                l.traffic_flow_direction_type,
+                l.cost AS link_cost
+            FROM pgr_withPointsVia(
+                ${PgRoutingEdgeQueries.getLinkSelectionQuery(bufferAreaRestriction)},
+                format('$VIRTUAL_NODES_SQL_FORMAT', ?::bigint[], ?::numeric[], ?::char[]),
+                ?::bigint[],
+                directed => true,
+                strict => true,  -- for topologically sound results
+                U_turn_on_edge => true,
+                driving_side => 'r'::char,
+                details => true  -- for flawless operation of the following transformations
+            ) pgr
+            LEFT JOIN routing.infrastructure_link l ON l.infrastructure_link_id = pgr.edge
+            ORDER BY pgr.seq;
             """.trimIndent()
     }
 }
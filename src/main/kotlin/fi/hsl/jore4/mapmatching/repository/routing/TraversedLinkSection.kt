@@ -0,0 +1,49 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+
+/**
+ * Models the traversal of an infrastructure link (or a section of it) on a
+ * route. The fractional locations are measured along the digitised direction
+ * of the link. Hence, in case of backwards traversal [startFraction] is greater
+ * than [endFraction].
+ *
+ * @property linkId the identifier of the traversed infrastructure link
+ * @property isTraversalForwards indicates whether the link is traversed along
+ * its digitised direction
+ * @property startFraction the fractional location on the link where the
+ * traversal starts. The fraction must be in range [0.0, 1.0].
+ * @property endFraction the fractional location on the link where the traversal
+ * ends. The fraction must be in range [0.0, 1.0].
+ */
+data class TraversedLinkSection(
+    val linkId: InfrastructureLinkId,
+    val isTraversalForwards: Boolean,
+    val startFraction: Double,
+    val endFraction: Double
+) {
+    init {
+        require(startFraction in 0.0..1.0) { "startFraction must be in range [0.0, 1.0]: $startFraction" }
+        require(endFraction in 0.0..1.0) { "endFraction must be in range [0.0, 1.0]: $endFraction" }
+    }
+
+    /**
+     * Indicates whether the infrastructure link is traversed only partially,
+     * that is, not from end to end.
+     */
+    val isTrimmed: Boolean
+        get() = isPartial(startFraction) || isPartial(endFraction)
+
+    companion object {
+        private fun isPartial(fraction: Double) = fraction != 0.0 && fraction != 1.0
+
+        fun fullTraversal(
+            linkId: InfrastructureLinkId,
+            isTraversalForwards: Boolean
+        ): TraversedLinkSection =
+            when (isTraversalForwards) {
+                true -> TraversedLinkSection(linkId, true, 0.0, 1.0)
+                false -> TraversedLinkSection(linkId, false, 1.0, 0.0)
+            }
+    }
+}
@@ -0,0 +1,165 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import java.util.BitSet
+
+/**
+ * Point-to-point shortest path search on a [RoutingGraph] using bidirectional
+ * A*. A forward search from the source and a backward search from the target
+ * are alternated, and both are guided by the straight-line distance heuristic
+ * of [RoutingGraph.estimateCost].
+ *
+ * The searches use the symmetric (average) potential
+ *
+ *   p(v) = (h(v, target) - h(source, v)) / 2
+ *
+ * for the forward direction and -p(v) for the backward direction. Since the
+ * heuristic is consistent, the reduced edge costs are non-negative in both
+ * directions and the search can be stopped as soon as the sum of the smallest
+ * priorities in the two queues is not less than the cost of the best path
+ * found so far.
+ *
+ * Compared to [DijkstraSearch], the explored area is confined to an ellipse-
+ * like region around the straight line between source and target instead of
+ * a full disk around the source. If the graph has no vertex coordinates, the
+ * search degrades to bidirectional Dijkstra.
+ *
+ * Note that in case there exist multiple shortest paths with equal cost, the
+ * selected path may differ from the one pgRouting would select.
+ */
+object BidirectionalAStarSearch {
+    /**
+     * Finds the shortest path from [sourceVertex] to [targetVertex].
+     *
+     * @param linkFilter optional set of indices of links that are allowed to
+     * be traversed. If null, all links of the graph are allowed.
+     * @param listener optional listener that is notified of the number of
+     * vertices settled in both directions
+     *
+     * @return the indices of the edges that constitute the shortest path in
+     * the order of traversal or null if the target is not reachable. An empty
+     * array is returned if source and target are the same vertex.
+     */
+    fun findShortestPath(
+        graph: RoutingGraph,
+        sourceVertex: Int,
+        targetVertex: Int,
+        linkFilter: BitSet?,
+        listener: LegSearchListener? = null
+    ): IntArray? =
+        graph.withBidirectionalSearchWorkspaces { forwardWorkspace, backwardWorkspace ->
+            val path: IntArray? =
+                search(graph, sourceVertex, targetVertex, linkFilter, forwardWorkspace, backwardWorkspace)
+
+            listener?.onLegSearched(
+                forwardWorkspace.numberOfSettledVertices + backwardWorkspace.numberOfSettledVertices
+            )
+
+            path
+        }
+
+    private fun search(
+        graph: RoutingGraph,
+        sourceVertex: Int,
+        targetVertex: Int,
+        linkFilter: BitSet?,
+        forwardWorkspace: GraphSearchWorkspace,
+        backwardWorkspace: GraphSearchWorkspace
+    ): IntArray? {
+        forwardWorkspace.startNewSearch()
+        backwardWorkspace.startNewSearch()
+
+        if (sourceVertex == targetVertex) {
+            return IntArray(0)
+        }
+
+        fun potential(vertex: Int): Double =
+            0.5 * (graph.estimateCost(vertex, targetVertex) - graph.estimateCost(sourceVertex, vertex))
+
+        fun isTraversable(edge: Int): Boolean = linkFilter == null || linkFilter.get(graph.getEdgeLink(edge))
+
+        forwardWorkspace.relax(sourceVertex, 0.0, -1, potential(sourceVertex))
+        backwardWorkspace.relax(targetVertex, 0.0, -1, -potential(targetVertex))
+
+        var bestCost: Double = Double.POSITIVE_INFINITY
+        var meetingVertex = -1
+
+        while (!forwardWorkspace.isQueueEmpty() && !backwardWorkspace.isQueueEmpty()) {
+            val minForwardPriority: Double = forwardWorkspace.peekMinPriority()
+            val minBackwardPriority: Double = backwardWorkspace.peekMinPriority()
+
+            if (minForwardPriority + minBackwardPriority >= bestCost) {
+                break
+            }
+
+            if (minForwardPriority <= minBackwardPriority) {
+                val vertex: Int = forwardWorkspace.pollMin()
+                val distance: Double = forwardWorkspace.getDistance(vertex)
+
+                for (edge in graph.getFirstOutgoingEdge(vertex) until graph.getEndOfOutgoingEdges(vertex)) {
+                    if (!isTraversable(edge)) {
+                        continue
+                    }
+
+                    val next: Int = graph.getEdgeTarget(edge)
+                    val nextDistance: Double = distance + graph.getEdgeCost(edge)
+
+                    forwardWorkspace.relax(next, nextDistance, edge, nextDistance + potential(next))
+
+                    if (backwardWorkspace.isReached(next)) {
+                        val cost: Double = forwardWorkspace.getDistance(next) + backwardWorkspace.getDistance(next)
+
+                        if (cost < bestCost) {
+                            bestCost = cost
+                            meetingVertex = next
+                        }
+                    }
+                }
+            } else {
+                val vertex: Int = backwardWorkspace.pollMin()
+                val distance: Double = backwardWorkspace.getDistance(vertex)
+
+                for (position in graph.getFirstIncomingEdgePosition(vertex) until
+                    graph.getEndOfIncomingEdgePositions(vertex)) {
+                    val edge: Int = graph.getIncomingEdge(position)
+
+                    if (!isTraversable(edge)) {
+                        continue
+                    }
+
+                    val prev: Int = graph.getEdgeSource(edge)
+                    val prevDistance: Double = distance + graph.getEdgeCost(edge)
+
+                    backwardWorkspace.relax(prev, prevDistance, edge, prevDistance - potential(prev))
+
+                    if (forwardWorkspace.isReached(prev)) {
+                        val cost: Double = forwardWorkspace.getDistance(prev) + backwardWorkspace.getDistance(prev)
+
+                        if (cost < bestCost) {
+                            bestCost = cost
+                            meetingVertex = prev
+                        }
+                    }
+                }
+            }
+        }
+
+        if (meetingVertex < 0) {
+            return null
+        }
+
+        val forwardPart: IntArray = DijkstraSearch.collectPath(graph, forwardWorkspace, meetingVertex)
+
+        // In the backward search tree, parent edges point towards the target vertex.
+        val backwardPart = ArrayList<Int>()
+        var vertex: Int = meetingVertex
+        var edge: Int = backwardWorkspace.getParentEdge(vertex)
+
+        while (edge >= 0) {
+            backwardPart.add(edge)
+            vertex = graph.getEdgeTarget(edge)
+            edge = backwardWorkspace.getParentEdge(vertex)
+        }
+
+        return forwardPart + backwardPart.toIntArray()
+    }
+}
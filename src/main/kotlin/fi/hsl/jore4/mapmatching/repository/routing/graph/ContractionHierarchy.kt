@@ -0,0 +1,113 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+/**
+ * A contraction hierarchy (CH) index over a [RoutingGraph]. The vertices of
+ * the graph are ranked by the order in which they were contracted during
+ * preprocessing, and shortcut edges were added so that the shortest path
+ * between any two vertices can be found with a bidirectional search that only
+ * proceeds towards vertices of higher rank.
+ *
+ * The edges of the hierarchy (original edges and shortcuts) are referenced by
+ * their zero-based indices. The upward edges of each vertex (towards higher
+ * rank) and the downward edges into each vertex (from higher rank) are stored
+ * in compressed sparse row format.
+ *
+ * A shortcut edge is composed of two consecutive hierarchy edges which are
+ * recursively unpacked into the edges of the underlying graph, see
+ * [unpackEdge].
+ *
+ * Since the index does not support restricting the set of traversable links,
+ * it is applicable only when a route is searched within the whole network of a
+ * vehicle type.
+ */
+class ContractionHierarchy(
+    val graph: RoutingGraph,
+    private val ranks: IntArray,
+    private val edgeSources: IntArray,
+    private val edgeTargets: IntArray,
+    private val edgeCosts: DoubleArray,
+    private val originalEdges: IntArray,
+    private val firstChildEdges: IntArray,
+    private val secondChildEdges: IntArray,
+    private val firstUpwardEdges: IntArray,
+    private val upwardEdges: IntArray,
+    private val firstDownwardEdges: IntArray,
+    private val downwardEdges: IntArray
+) {
+    val numberOfEdges: Int
+        get() = edgeSources.size
+
+    /**
+     * The number of shortcut edges added to the edges of the underlying graph.
+     */
+    val numberOfShortcuts: Int
+        get() = originalEdges.count { it < 0 }
+
+    fun getRank(vertex: Int): Int = ranks[vertex]
+
+    fun getEdgeSource(edge: Int): Int = edgeSources[edge]
+
+    fun getEdgeTarget(edge: Int): Int = edgeTargets[edge]
+
+    fun getEdgeCost(edge: Int): Double = edgeCosts[edge]
+
+    /**
+     * The upward edges of [vertex] are obtained with [getUpwardEdge] for
+     * positions in range [getFirstUpwardEdgePosition] (inclusive) ..
+     * [getEndOfUpwardEdgePositions] (exclusive).
+     */
+    fun getFirstUpwardEdgePosition(vertex: Int): Int = firstUpwardEdges[vertex]
+
+    fun getEndOfUpwardEdgePositions(vertex: Int): Int = firstUpwardEdges[vertex + 1]
+
+    fun getUpwardEdge(position: Int): Int = upwardEdges[position]
+
+    /**
+     * The downward edges into [vertex] are obtained with [getDownwardEdge] for
+     * positions in range [getFirstDownwardEdgePosition] (inclusive) ..
+     * [getEndOfDownwardEdgePositions] (exclusive).
+     */
+    fun getFirstDownwardEdgePosition(vertex: Int): Int = firstDownwardEdges[vertex]
+
+    fun getEndOfDownwardEdgePositions(vertex: Int): Int = firstDownwardEdges[vertex + 1]
+
+    fun getDownwardEdge(position: Int): Int = downwardEdges[position]
+
+    /**
+     * Unpacks the given hierarchy edge into the edges of the underlying graph
+     * and appends them to [result] in the order of traversal.
+     */
+    fun unpackEdge(
+        edge: Int,
+        result: MutableList<Int>
+    ) {
+        val stack = ArrayDeque<Int>()
+        stack.addLast(edge)
+
+        while (stack.isNotEmpty()) {
+            val current: Int = stack.removeLast()
+            val originalEdge: Int = originalEdges[current]
+
+            if (originalEdge >= 0) {
+                result.add(originalEdge)
+            } else {
+                // The second child is pushed first so that the first child is unpacked first.
+                stack.addLast(secondChildEdges[current])
+                stack.addLast(firstChildEdges[current])
+            }
+        }
+    }
+
+    /**
+     * An estimate of the heap memory consumed by the primitive arrays of this
+     * index in bytes, excluding the underlying graph.
+     */
+    val estimatedSizeInBytes: Long
+        get() =
+            8L * edgeCosts.size +
+                4L * (
+                    ranks.size + edgeSources.size + edgeTargets.size + originalEdges.size +
+                        firstChildEdges.size + secondChildEdges.size + firstUpwardEdges.size + upwardEdges.size +
+                        firstDownwardEdges.size + downwardEdges.size
+                )
+}
@@ -0,0 +1,364 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import java.util.PriorityQueue
+
+/**
+ * Builds a [ContractionHierarchy] for a [RoutingGraph].
+ *
+ * Vertices are contracted one by one in the order of their priority, which is
+ * the edge difference (the number of shortcuts needed minus the number of
+ * edges removed) added with the number of already contracted neighbours. The
+ * priorities are updated lazily: the priority of the next vertex in the queue
+ * is re-computed before contraction, and the vertex is re-inserted if it is
+ * no longer the smallest.
+ *
+ * When contracting a vertex, a shortcut is added for a pair of incoming and
+ * outgoing edges unless a witness search finds a path between the neighbours
+ * that bypasses the vertex and is not more costly. The witness searches are
+ * limited by the number of settled vertices, which may result in superfluous
+ * shortcuts but does not affect the correctness of the hierarchy.
+ *
+ * @param maxSettledVerticesInWitnessSearch the limit for the number of
+ * vertices settled in a single witness search
+ */
+class ContractionHierarchyBuilder(
+    private val graph: RoutingGraph,
+    private val maxSettledVerticesInWitnessSearch: Int = 500
+) {
+    private val numberOfVertices: Int = graph.numberOfVertices
+
+    // Hierarchy edges in growable arrays. Index of an edge is its position in the arrays.
+    private var edgeSources = IntArray(graph.numberOfEdges + 16)
+    private var edgeTargets = IntArray(graph.numberOfEdges + 16)
+    private var edgeCosts = DoubleArray(graph.numberOfEdges + 16)
+    private var originalEdges = IntArray(graph.numberOfEdges + 16)
+    private var firstChildEdges = IntArray(graph.numberOfEdges + 16)
+    private var secondChildEdges = IntArray(graph.numberOfEdges + 16)
+    private var numberOfEdges = 0
+
+    // Adjacency of the remaining (not yet contracted) graph. Edges incident to contracted vertices
+    // are skipped while iterating.
+    private val outgoingEdges: Array<IntList> = Array(numberOfVertices) { IntList() }
+    private val incomingEdges: Array<IntList> = Array(numberOfVertices) { IntList() }
+
+    private val contracted = BooleanArray(numberOfVertices)
+    private val contractedNeighbours = IntArray(numberOfVertices)
+    private val ranks = IntArray(numberOfVertices)
+
+    private val witnessWorkspace = GraphSearchWorkspace(numberOfVertices)
+
+    fun build(): ContractionHierarchy {
+        addOriginalEdges()
+
+        val queue = PriorityQueue<Long>()
+
+        for (vertex in 0 until numberOfVertices) {
+            queue.add(encodeQueueEntry(computePriority(vertex), vertex))
+        }
+
+        var nextRank = 0
+
+        while (queue.isNotEmpty()) {
+            val vertex: Int = decodeVertex(queue.poll())
+
+            if (contracted[vertex]) {
+                continue
+            }
+
+            val priority: Int = computePriority(vertex)
+
+            if (queue.isNotEmpty() && priority > decodePriority(queue.peek())) {
+                queue.add(encodeQueueEntry(priority, vertex))
+                continue
+            }
+
+            contract(vertex)
+            ranks[vertex] = nextRank++
+        }
+
+        return createHierarchy()
+    }
+
+    private fun addOriginalEdges() {
+        for (edge in 0 until graph.numberOfEdges) {
+            val source: Int = graph.getEdgeSource(edge)
+            val target: Int = graph.getEdgeTarget(edge)
+
+            // Closed loops can never be part of a shortest path.
+            if (source == target) {
+                continue
+            }
+
+            addOrImproveEdge(source, target, graph.getEdgeCost(edge), edge, -1, -1)
+        }
+    }
+
+    /**
+     * Adds an edge between the given vertices unless an edge with smaller or
+     * equal cost already exists. An existing more costly edge is replaced.
+     */
+    private fun addOrImproveEdge(
+        source: Int,
+        target: Int,
+        cost: Double,
+        originalEdge: Int,
+        firstChild: Int,
+        secondChild: Int
+    ) {
+        val existingOutgoing: IntList = outgoingEdges[source]
+
+        for (i in 0 until existingOutgoing.size) {
+            val existing: Int = existingOutgoing[i]
+
+            if (edgeTargets[existing] == target) {
+                if (cost < edgeCosts[existing]) {
+                    // An edge between two uncontracted vertices is not yet referenced by any
+                    // shortcut, so it can be modified in place.
+                    edgeCosts[existing] = cost
+                    originalEdges[existing] = originalEdge
+                    firstChildEdges[existing] = firstChild
+                    secondChildEdges[existing] = secondChild
+                }
+                return
+            }
+        }
+
+        if (numberOfEdges == edgeSources.size) {
+            val newCapacity: Int = edgeSources.size * 2
+
+            edgeSources = edgeSources.copyOf(newCapacity)
+            edgeTargets = edgeTargets.copyOf(newCapacity)
+            edgeCosts = edgeCosts.copyOf(newCapacity)
+            originalEdges = originalEdges.copyOf(newCapacity)
+            firstChildEdges = firstChildEdges.copyOf(newCapacity)
+            secondChildEdges = secondChildEdges.copyOf(newCapacity)
+        }
+
+        val edge: Int = numberOfEdges++
+
+        edgeSources[edge] = source
+        edgeTargets[edge] = target
+        edgeCosts[edge] = cost
+        originalEdges[edge] = originalEdge
+        firstChildEdges[edge] = firstChild
+        secondChildEdges[edge] = secondChild
+
+        outgoingEdges[source].add(edge)
+        incomingEdges[target].add(edge)
+    }
+
+    private fun computePriority(vertex: Int): Int {
+        var numberOfRemovedEdges = 0
+
+        forEachRemainingEdge(incomingEdges[vertex], edgeSources) { numberOfRemovedEdges++ }
+        forEachRemainingEdge(outgoingEdges[vertex], edgeTargets) { numberOfRemovedEdges++ }
+
+        val numberOfShortcuts: Int = processShortcuts(vertex, addShortcuts = false)
+
+        return numberOfShortcuts - numberOfRemovedEdges + contractedNeighbours[vertex]
+    }
+
+    private fun contract(vertex: Int) {
+        processShortcuts(vertex, addShortcuts = true)
+
+        contracted[vertex] = true
+
+        forEachRemainingEdge(incomingEdges[vertex], edgeSources) { contractedNeighbours[it]++ }
+        forEachRemainingEdge(outgoingEdges[vertex], edgeTargets) { contractedNeighbours[it]++ }
+    }
+
+    /**
+     * Resolves the shortcuts needed for contracting [vertex] and optionally
+     * adds them.
+     *
+     * @return the number of shortcuts needed
+     */
+    private fun processShortcuts(
+        vertex: Int,
+        addShortcuts: Boolean
+    ): Int {
+        var numberOfShortcuts = 0
+
+        val incoming: IntList = incomingEdges[vertex]
+        val outgoing: IntList = outgoingEdges[vertex]
+
+        for (i in 0 until incoming.size) {
+            val inEdge: Int = incoming[i]
+            val source: Int = edgeSources[inEdge]
+
+            if (contracted[source]) {
+                continue
+            }
+
+            var maxOutCost = 0.0
+            var hasOutgoing = false
+
+            for (j in 0 until outgoing.size) {
+                val outEdge: Int = outgoing[j]
+                val target: Int = edgeTargets[outEdge]
+
+                if (!contracted[target] && target != source) {
+                    maxOutCost = maxOf(maxOutCost, edgeCosts[outEdge])
+                    hasOutgoing = true
+                }
+            }
+
+            if (!hasOutgoing) {
+                continue
+            }
+
+            searchWitnesses(source, vertex, edgeCosts[inEdge] + maxOutCost)
+
+            for (j in 0 until outgoing.size) {
+                val outEdge: Int = outgoing[j]
+                val target: Int = edgeTargets[outEdge]
+
+                if (contracted[target] || target == source) {
+                    continue
+                }
+
+                val shortcutCost: Double = edgeCosts[inEdge] + edgeCosts[outEdge]
+
+                if (witnessWorkspace.getDistance(target) > shortcutCost) {
+                    numberOfShortcuts++
+
+                    if (addShortcuts) {
+                        addOrImproveEdge(source, target, shortcutCost, -1, inEdge, outEdge)
+                    }
+                }
+            }
+        }
+
+        return numberOfShortcuts
+    }
+
+    /**
+     * Runs a bounded Dijkstra search from [source] within the remaining graph
+     * while bypassing [excludedVertex].
+     */
+    private fun searchWitnesses(
+        source: Int,
+        excludedVertex: Int,
+        maxCost: Double
+    ) {
+        val workspace: GraphSearchWorkspace = witnessWorkspace
+
+        workspace.startNewSearch()
+        workspace.relax(source, 0.0, -1)
+
+        while (!workspace.isQueueEmpty() &&
+            workspace.peekMinPriority() <= maxCost &&
+            workspace.numberOfSettledVertices < maxSettledVerticesInWitnessSearch
+        ) {
+            val vertex: Int = workspace.pollMin()
+            val distance: Double = workspace.getDistance(vertex)
+
+            val outgoing: IntList = outgoingEdges[vertex]
+
+            for (i in 0 until outgoing.size) {
+                val edge: Int = outgoing[i]
+                val target: Int = edgeTargets[edge]
+
+                if (target != excludedVertex && !contracted[target]) {
+                    workspace.relax(target, distance + edgeCosts[edge], edge)
+                }
+            }
+        }
+    }
+
+    private inline fun forEachRemainingEdge(
+        edges: IntList,
+        endpoints: IntArray,
+        action: (neighbour: Int) -> Unit
+    ) {
+        for (i in 0 until edges.size) {
+            val neighbour: Int = endpoints[edges[i]]
+
+            if (!contracted[neighbour]) {
+                action(neighbour)
+            }
+        }
+    }
+
+    private fun createHierarchy(): ContractionHierarchy {
+        val n: Int = numberOfEdges
+
+        val firstUpwardEdges = IntArray(numberOfVertices + 1)
+        val firstDownwardEdges = IntArray(numberOfVertices + 1)
+
+        fun isUpward(edge: Int) = ranks[edgeSources[edge]] < ranks[edgeTargets[edge]]
+
+        for (edge in 0 until n) {
+            if (isUpward(edge)) {
+                firstUpwardEdges[edgeSources[edge] + 1]++
+            } else {
+                firstDownwardEdges[edgeTargets[edge] + 1]++
+            }
+        }
+        for (vertex in 1..numberOfVertices) {
+            firstUpwardEdges[vertex] += firstUpwardEdges[vertex - 1]
+            firstDownwardEdges[vertex] += firstDownwardEdges[vertex - 1]
+        }
+
+        val upwardEdges = IntArray(firstUpwardEdges[numberOfVertices])
+        val downwardEdges = IntArray(firstDownwardEdges[numberOfVertices])
+
+        val nextUpwardPosition: IntArray = firstUpwardEdges.copyOf(numberOfVertices)
+        val nextDownwardPosition: IntArray = firstDownwardEdges.copyOf(numberOfVertices)
+
+        for (edge in 0 until n) {
+            if (isUpward(edge)) {
+                upwardEdges[nextUpwardPosition[edgeSources[edge]]++] = edge
+            } else {
+                downwardEdges[nextDownwardPosition[edgeTargets[edge]]++] = edge
+            }
+        }
+
+        return ContractionHierarchy(
+            graph,
+            ranks,
+            edgeSources.copyOf(n),
+            edgeTargets.copyOf(n),
+            edgeCosts.copyOf(n),
+            originalEdges.copyOf(n),
+            firstChildEdges.copyOf(n),
+            secondChildEdges.copyOf(n),
+            firstUpwardEdges,
+            upwardEdges,
+            firstDownwardEdges,
+            downwardEdges
+        )
+    }
+
+    /**
+     * A minimal growable list of primitive integers.
+     */
+    private class IntList {
+        private var values = IntArray(4)
+
+        var size: Int = 0
+            private set
+
+        operator fun get(index: Int): Int = values[index]
+
+        fun add(value: Int) {
+            if (size == values.size) {
+                values = values.copyOf(2 * size)
+            }
+            values[size++] = value
+        }
+    }
+
+    companion object {
+        // Queue entries encode the priority in the upper and the vertex in the lower 32 bits so that
+        // entries are ordered by priority.
+        private fun encodeQueueEntry(
+            priority: Int,
+            vertex: Int
+        ): Long = (priority.toLong() shl 32) or vertex.toLong()
+
+        private fun decodePriority(entry: Long): Int = (entry shr 32).toInt()
+
+        private fun decodeVertex(entry: Long): Int = entry.toInt()
+    }
+}
@@ -0,0 +1,251 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.repository.routing.TraversedLinkSection
+import fi.hsl.jore4.mapmatching.repository.routing.graph.ViaPointsSearch.Arrival
+import fi.hsl.jore4.mapmatching.repository.routing.graph.ViaPointsSearch.FROM_SOURCE_LINK_BACKWARDS
+import fi.hsl.jore4.mapmatching.repository.routing.graph.ViaPointsSearch.FROM_SOURCE_LINK_FORWARDS
+import fi.hsl.jore4.mapmatching.repository.routing.graph.ViaPointsSearch.FROM_SOURCE_VERTEX
+
+/**
+ * Shortest path queries on a [ContractionHierarchy]. A forward search from the
+ * source proceeds along upward edges and a backward search from the target
+ * proceeds along downward edges in reverse, both towards vertices of higher
+ * rank. The shortest path passes through the vertex at which the sum of the
+ * distances of the two searches is smallest.
+ *
+ * Route points along links are supported in the same way as in
+ * [ViaPointsSearch]: the searches are seeded at the endpoints of the link of
+ * the source point and at the endpoints of the link of the target point,
+ * respectively.
+ */
+object ContractionHierarchySearch {
+    /**
+     * Finds the shortest path from [sourceVertex] to [targetVertex].
+     *
+     * @param listener optional listener that is notified of the number of
+     * vertices settled in both directions
+     *
+     * @return the indices of the edges of the underlying graph that constitute
+     * the shortest path in the order of traversal or null if the target is not
+     * reachable. An empty array is returned if source and target are the same
+     * vertex.
+     */
+    fun findShortestPath(
+        hierarchy: ContractionHierarchy,
+        sourceVertex: Int,
+        targetVertex: Int,
+        listener: LegSearchListener? = null
+    ): IntArray? {
+        if (sourceVertex == targetVertex) {
+            listener?.onLegSearched(0)
+            return IntArray(0)
+        }
+
+        return search(
+            hierarchy,
+            VertexRoutePoint(sourceVertex),
+            VertexRoutePoint(targetVertex),
+            Double.POSITIVE_INFINITY,
+            listener
+        )?.edges?.toIntArray()
+    }
+
+    /**
+     * Finds the shortest path between two route points.
+     *
+     * @param listener optional listener that is notified of the number of
+     * vertices settled in both directions
+     *
+     * @return the traversed link sections in the order of traversal or null
+     * if the target is not reachable
+     */
+    fun findLeg(
+        hierarchy: ContractionHierarchy,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint,
+        listener: LegSearchListener? = null
+    ): List<TraversedLinkSection>? {
+        val graph: RoutingGraph = hierarchy.graph
+
+        val directTraversalCost: Double = ViaPointsSearch.getDirectTraversalCost(graph, from, to)
+
+        val path: LegPath? = search(hierarchy, from, to, directTraversalCost, listener)
+
+        return when {
+            path != null ->
+                ViaPointsSearch.createLegSections(graph, from, to, path.departureMarker, path.edges, path.arrival)
+
+            directTraversalCost.isFinite() -> ViaPointsSearch.createDirectTraversalSections(graph, from, to)
+
+            else -> null
+        }
+    }
+
+    private class LegPath(
+        val departureMarker: Int,
+        val edges: List<Int>,
+        val arrival: Arrival
+    )
+
+    /**
+     * @param costBound the search finds only paths that cost less than this
+     *
+     * @return the shortest path or null if no path cheaper than [costBound]
+     * exists
+     */
+    private fun search(
+        hierarchy: ContractionHierarchy,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint,
+        costBound: Double,
+        listener: LegSearchListener?
+    ): LegPath? =
+        hierarchy.graph.withBidirectionalSearchWorkspaces { forward, backward ->
+            search(hierarchy, from, to, costBound, listener, forward, backward)
+        }
+
+    private fun search(
+        hierarchy: ContractionHierarchy,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint,
+        costBound: Double,
+        listener: LegSearchListener?,
+        forward: GraphSearchWorkspace,
+        backward: GraphSearchWorkspace
+    ): LegPath? {
+        val graph: RoutingGraph = hierarchy.graph
+
+        forward.startNewSearch()
+        backward.startNewSearch()
+
+        when (from) {
+            is VertexRoutePoint -> forward.relax(from.vertex, 0.0, FROM_SOURCE_VERTEX)
+
+            is LinkRoutePoint -> {
+                val link: Int = from.link
+
+                if (graph.getLinkCost(link) >= 0.0 && from.isVisitableForwards) {
+                    forward.relax(
+                        graph.getLinkEndVertex(link),
+                        (1.0 - from.fraction) * graph.getLinkCost(link),
+                        FROM_SOURCE_LINK_FORWARDS
+                    )
+                }
+                if (graph.getLinkReverseCost(link) >= 0.0 && from.isVisitableBackwards) {
+                    forward.relax(
+                        graph.getLinkStartVertex(link),
+                        from.fraction * graph.getLinkReverseCost(link),
+                        FROM_SOURCE_LINK_BACKWARDS
+                    )
+                }
+            }
+        }
+
+        // The same markers are used for the vertices at which the backward search is started.
+        when (to) {
+            is VertexRoutePoint -> backward.relax(to.vertex, 0.0, FROM_SOURCE_VERTEX)
+
+            is LinkRoutePoint -> {
+                val link: Int = to.link
+
+                if (graph.getLinkCost(link) >= 0.0 && to.isVisitableForwards) {
+                    backward.relax(
+                        graph.getLinkStartVertex(link),
+                        to.fraction * graph.getLinkCost(link),
+                        FROM_SOURCE_LINK_FORWARDS
+                    )
+                }
+                if (graph.getLinkReverseCost(link) >= 0.0 && to.isVisitableBackwards) {
+                    backward.relax(
+                        graph.getLinkEndVertex(link),
+                        (1.0 - to.fraction) * graph.getLinkReverseCost(link),
+                        FROM_SOURCE_LINK_BACKWARDS
+                    )
+                }
+            }
+        }
+
+        var bestCost: Double = costBound
+        var meetingVertex = -1
+
+        while (true) {
+            val minForwardDistance: Double = forward.peekMinPriority()
+            val minBackwardDistance: Double = backward.peekMinPriority()
+
+            // Neither search can improve the best path any more.
+            if (minForwardDistance >= bestCost && minBackwardDistance >= bestCost) {
+                break
+            }
+
+            if (minForwardDistance <= minBackwardDistance) {
+                val vertex: Int = forward.pollMin()
+                val distance: Double = forward.getDistance(vertex)
+
+                if (backward.isReached(vertex) && distance + backward.getDistance(vertex) < bestCost) {
+                    bestCost = distance + backward.getDistance(vertex)
+                    meetingVertex = vertex
+                }
+
+                for (position in hierarchy.getFirstUpwardEdgePosition(vertex) until
+                    hierarchy.getEndOfUpwardEdgePositions(vertex)) {
+                    val edge: Int = hierarchy.getUpwardEdge(position)
+
+                    forward.relax(hierarchy.getEdgeTarget(edge), distance + hierarchy.getEdgeCost(edge), edge)
+                }
+            } else {
+                val vertex: Int = backward.pollMin()
+                val distance: Double = backward.getDistance(vertex)
+
+                if (forward.isReached(vertex) && distance + forward.getDistance(vertex) < bestCost) {
+                    bestCost = distance + forward.getDistance(vertex)
+                    meetingVertex = vertex
+                }
+
+                for (position in hierarchy.getFirstDownwardEdgePosition(vertex) until
+                    hierarchy.getEndOfDownwardEdgePositions(vertex)) {
+                    val edge: Int = hierarchy.getDownwardEdge(position)
+
+                    backward.relax(hierarchy.getEdgeSource(edge), distance + hierarchy.getEdgeCost(edge), edge)
+                }
+            }
+        }
+
+        listener?.onLegSearched(forward.numberOfSettledVertices + backward.numberOfSettledVertices)
+
+        if (meetingVertex < 0) {
+            return null
+        }
+
+        val forwardEdges = ArrayList<Int>()
+        var edge: Int = forward.getParentEdge(meetingVertex)
+
+        while (edge >= 0) {
+            forwardEdges.add(edge)
+            edge = forward.getParentEdge(hierarchy.getEdgeSource(edge))
+        }
+
+        val departureMarker: Int = edge
+
+        val backwardEdges = ArrayList<Int>()
+        edge = backward.getParentEdge(meetingVertex)
+
+        while (edge >= 0) {
+            backwardEdges.add(edge)
+            edge = backward.getParentEdge(hierarchy.getEdgeTarget(edge))
+        }
+
+        val arrival: Arrival =
+            when (edge) {
+                FROM_SOURCE_LINK_FORWARDS -> Arrival.ALONG_TARGET_LINK_FORWARDS
+                FROM_SOURCE_LINK_BACKWARDS -> Arrival.ALONG_TARGET_LINK_BACKWARDS
+                else -> Arrival.AT_TARGET_VERTEX
+            }
+
+        val graphEdges = ArrayList<Int>()
+
+        forwardEdges.asReversed().forEach { hierarchy.unpackEdge(it, graphEdges) }
+        backwardEdges.forEach { hierarchy.unpackEdge(it, graphEdges) }
+
+        return LegPath(departureMarker, graphEdges, arrival)
+    }
+}
@@ -0,0 +1,93 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import java.util.BitSet
+
+/**
+ * Point-to-point shortest path search on a [RoutingGraph] using Dijkstra's
+ * algorithm. The search terminates as soon as the target vertex is settled.
+ *
+ * Note that in case there exist multiple shortest paths with equal cost, the
+ * selected path may differ from the one pgRouting would select.
+ */
+object DijkstraSearch {
+    /**
+     * Finds the shortest path from [sourceVertex] to [targetVertex].
+     *
+     * @param linkFilter optional set of indices of links that are allowed to
+     * be traversed. If null, all links of the graph are allowed.
+     * @param listener optional listener that is notified of the number of
+     * settled vertices
+     *
+     * @return the indices of the edges that constitute the shortest path in
+     * the order of traversal or null if the target is not reachable. An empty
+     * array is returned if source and target are the same vertex.
+     */
+    fun findShortestPath(
+        graph: RoutingGraph,
+        sourceVertex: Int,
+        targetVertex: Int,
+        linkFilter: BitSet?,
+        listener: LegSearchListener? = null
+    ): IntArray? =
+        graph.withSearchWorkspace { workspace ->
+            val path: IntArray? = search(graph, sourceVertex, targetVertex, linkFilter, workspace)
+
+            listener?.onLegSearched(workspace.numberOfSettledVertices)
+
+            path
+        }
+
+    private fun search(
+        graph: RoutingGraph,
+        sourceVertex: Int,
+        targetVertex: Int,
+        linkFilter: BitSet?,
+        workspace: GraphSearchWorkspace
+    ): IntArray? {
+        workspace.startNewSearch()
+        workspace.relax(sourceVertex, 0.0, -1)
+
+        while (!workspace.isQueueEmpty()) {
+            val vertex: Int = workspace.pollMin()
+
+            if (vertex == targetVertex) {
+                return collectPath(graph, workspace, targetVertex)
+            }
+
+            val distance: Double = workspace.getDistance(vertex)
+
+            for (edge in graph.getFirstOutgoingEdge(vertex) until graph.getEndOfOutgoingEdges(vertex)) {
+                if (linkFilter != null && !linkFilter.get(graph.getEdgeLink(edge))) {
+                    continue
+                }
+
+                workspace.relax(graph.getEdgeTarget(edge), distance + graph.getEdgeCost(edge), edge)
+            }
+        }
+
+        return null
+    }
+
+    /**
+     * Collects the edges of the shortest path tree from the source of the
+     * search to [targetVertex].
+     */
+    fun collectPath(
+        graph: RoutingGraph,
+        workspace: GraphSearchWorkspace,
+        targetVertex: Int
+    ): IntArray {
+        val reversedEdges = ArrayList<Int>()
+
+        var vertex: Int = targetVertex
+        var edge: Int = workspace.getParentEdge(vertex)
+
+        while (edge >= 0) {
+            reversedEdges.add(edge)
+            vertex = graph.getEdgeSource(edge)
+            edge = workspace.getParentEdge(vertex)
+        }
+
+        return IntArray(reversedEdges.size) { reversedEdges[reversedEdges.size - 1 - it] }
+    }
+}
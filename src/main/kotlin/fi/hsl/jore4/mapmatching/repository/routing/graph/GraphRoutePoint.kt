@@ -0,0 +1,41 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.LinkSide
+
+/**
+ * A route point resolved against a [RoutingGraph]. This is the in-memory
+ * counterpart of [fi.hsl.jore4.mapmatching.repository.routing.PgRoutingPoint].
+ */
+sealed interface GraphRoutePoint
+
+/**
+ * A graph vertex (real infrastructure node) as route point.
+ */
+data class VertexRoutePoint(
+    val vertex: Int
+) : GraphRoutePoint
+
+/**
+ * A point along a link (virtual node) as route point.
+ *
+ * The side of the link affects the directions in which the point can be
+ * arrived at and departed from. Right-hand traffic is assumed in the same way
+ * as pgRouting does with driving_side => 'r': a point on the right side can
+ * only be visited while traversing the link forwards and a point on the left
+ * side only while traversing the link backwards.
+ *
+ * @property link the index of the link in the graph
+ * @property fraction the fractional location on the link in range (0, 1)
+ * @property side the side of the link that the point affects
+ */
+data class LinkRoutePoint(
+    val link: Int,
+    val fraction: Double,
+    val side: LinkSide
+) : GraphRoutePoint {
+    val isVisitableForwards: Boolean
+        get() = side != LinkSide.LEFT
+
+    val isVisitableBackwards: Boolean
+        get() = side != LinkSide.RIGHT
+}
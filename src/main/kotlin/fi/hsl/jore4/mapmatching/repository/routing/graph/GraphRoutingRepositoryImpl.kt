@@ -0,0 +1,405 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.NodeIdSequence
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
+import fi.hsl.jore4.mapmatching.repository.routing.IRouteLinkRepository
+import fi.hsl.jore4.mapmatching.repository.routing.IRoutingRepository
+import fi.hsl.jore4.mapmatching.repository.routing.PgRoutingPoint
+import fi.hsl.jore4.mapmatching.repository.routing.RealNode
+import fi.hsl.jore4.mapmatching.repository.routing.RouteLink
+import fi.hsl.jore4.mapmatching.repository.routing.RoutingRepositoryImpl
+import fi.hsl.jore4.mapmatching.repository.routing.TraversedLinkSection
+import fi.hsl.jore4.mapmatching.repository.routing.VirtualNode
+import fi.hsl.jore4.mapmatching.util.CollectionUtils.filterOutConsecutiveDuplicates
+import fi.hsl.jore4.mapmatching.util.MathUtils.isWithinTolerance
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.context.annotation.Primary
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.util.BitSet
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.roundToInt
+
+/**
+ * A routing repository that finds routes via network nodes and via points
+ * along links by searching shortest paths within in-memory routing graphs
+ * instead of invoking pgRouting. This avoids re-building the pgRouting graph
+ * from the database on every call. The terminus links of the resulting route
+ * are trimmed with [RoutingRepositoryImpl.trimTerminusLinks] and the route
+ * links are completed with attributes and geometries via the same
+ * [IRouteLinkRepository] (backed by in-memory link caches), so the result is
+ * the same as the one produced by [RoutingRepositoryImpl].
+ *
+ * The algorithm used for the leg searches is selected via
+ * [SEARCH_ALGORITHM_PROPERTY]. However, when a route is searched without a
+ * buffer area restriction and a contraction hierarchy is available for the
+ * vehicle type, the legs are searched within the contraction hierarchy. The
+ * number of vertices settled in each leg search is recorded as a distribution
+ * summary tagged by algorithm and vehicle type, so that the explored area of
+ * different algorithms can be compared.
+ *
+ * This repository replaces [RoutingRepositoryImpl] when the in-memory routing
+ * engine is enabled via [RoutingGraphRegistry.ROUTING_ENGINE_PROPERTY].
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(
+    name = [RoutingGraphRegistry.ROUTING_ENGINE_PROPERTY],
+    havingValue = RoutingGraphRegistry.GRAPH_ROUTING_ENGINE
+)
+class GraphRoutingRepositoryImpl(
+    val routingGraphRegistry: RoutingGraphRegistry,
+    val routingGraphRepository: IRoutingGraphRepository,
+    val routeLinkRepository: IRouteLinkRepository,
+    val meterRegistry: MeterRegistry,
+    @Value("\${$SEARCH_ALGORITHM_PROPERTY:dijkstra}") searchAlgorithmConfigValue: String
+) : IRoutingRepository {
+    private val searchAlgorithm: GraphSearchAlgorithm = GraphSearchAlgorithm.fromConfigValue(searchAlgorithmConfigValue)
+
+    private val settledVerticesPerLeg: ConcurrentHashMap<Pair<String, VehicleType>, DistributionSummary> =
+        ConcurrentHashMap()
+
+    @Transactional(readOnly = true)
+    override fun findRouteViaNetworkNodes(
+        nodeIdSequence: NodeIdSequence,
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): List<RouteLink> =
+        findRouteViaNetworkNodesInternal(nodeIdSequence, vehicleType, null, null, bufferAreaRestriction)
+
+    @Transactional(readOnly = true)
+    override fun findRouteViaNetworkNodes(
+        nodeIdSequence: NodeIdSequence,
+        vehicleType: VehicleType,
+        fractionalStartLocationOnFirstLink: Double,
+        fractionalEndLocationOnLastLink: Double,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): List<RouteLink> =
+        findRouteViaNetworkNodesInternal(
+            nodeIdSequence,
+            vehicleType,
+            fractionalStartLocationOnFirstLink,
+            fractionalEndLocationOnLastLink,
+            bufferAreaRestriction
+        )
+
+    @Transactional(readOnly = true)
+    override fun findRouteViaPointsOnLinks(
+        points: List<PgRoutingPoint>,
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): List<RouteLink> {
+        val graph: RoutingGraph = routingGraphRegistry.getRoutingGraph(vehicleType)
+
+        val linkFilter: BitSet? = createLinkFilter(graph, vehicleType, bufferAreaRestriction)
+
+        val graphRoutePoints: List<GraphRoutePoint> =
+            resolveGraphRoutePoints(graph, points, linkFilter) ?: return emptyList()
+
+        if (graphRoutePoints.size < 2) {
+            return emptyList()
+        }
+
+        val hierarchy: ContractionHierarchy? = findApplicableContractionHierarchy(graph, bufferAreaRestriction)
+
+        val linkSections: List<TraversedLinkSection> =
+            when (hierarchy) {
+                null ->
+                    ViaPointsSearch.findPathViaPoints(
+                        graph,
+                        graphRoutePoints,
+                        linkFilter,
+                        searchAlgorithm == GraphSearchAlgorithm.BIDIRECTIONAL_ASTAR,
+                        createLegSearchListener(searchAlgorithm.configValue, vehicleType)
+                    )
+
+                else -> {
+                    val listener: LegSearchListener = createLegSearchListener(CONTRACTION_HIERARCHY, vehicleType)
+
+                    ViaPointsSearch.findPathViaPoints(graphRoutePoints) { from, to ->
+                        ContractionHierarchySearch.findLeg(hierarchy, from, to, listener)
+                    }
+                }
+            } ?: return emptyList()
+
+        if (linkSections.isEmpty()) {
+            return emptyList()
+        }
+
+        return routeLinkRepository.findRouteLinks(linkSections)
+    }
+
+    private fun findRouteViaNetworkNodesInternal(
+        nodeIdSequence: NodeIdSequence,
+        vehicleType: VehicleType,
+        fractionalStartLocationOnFirstLink: Double?,
+        fractionalEndLocationOnLastLink: Double?,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): List<RouteLink> {
+        if (nodeIdSequence.size < 2) {
+            return emptyList()
+        }
+
+        val graph: RoutingGraph = routingGraphRegistry.getRoutingGraph(vehicleType)
+
+        val linkFilter: BitSet? = createLinkFilter(graph, vehicleType, bufferAreaRestriction)
+
+        val hierarchy: ContractionHierarchy? = findApplicableContractionHierarchy(graph, bufferAreaRestriction)
+
+        val edges: IntArray =
+            when (hierarchy) {
+                null -> {
+                    val listener: LegSearchListener = createLegSearchListener(searchAlgorithm.configValue, vehicleType)
+
+                    findPathViaVertices(graph, nodeIdSequence) { source, target ->
+                        when (searchAlgorithm) {
+                            GraphSearchAlgorithm.DIJKSTRA ->
+                                DijkstraSearch.findShortestPath(graph, source, target, linkFilter, listener)
+
+                            GraphSearchAlgorithm.BIDIRECTIONAL_ASTAR ->
+                                BidirectionalAStarSearch.findShortestPath(graph, source, target, linkFilter, listener)
+                        }
+                    }
+                }
+
+                else -> {
+                    val listener: LegSearchListener = createLegSearchListener(CONTRACTION_HIERARCHY, vehicleType)
+
+                    findPathViaVertices(graph, nodeIdSequence) { source, target ->
+                        ContractionHierarchySearch.findShortestPath(hierarchy, source, target, listener)
+                    }
+                }
+            } ?: return emptyList()
+
+        if (edges.isEmpty()) {
+            return emptyList()
+        }
+
+        val fullLinkTraversals: List<TraversedLinkSection> = toLinkSections(graph, edges)
+
+        val linkSections: List<TraversedLinkSection> =
+            if (fractionalStartLocationOnFirstLink != null && fractionalEndLocationOnLastLink != null) {
+                RoutingRepositoryImpl.trimTerminusLinks(
+                    fullLinkTraversals,
+                    fractionalStartLocationOnFirstLink,
+                    fractionalEndLocationOnLastLink
+                )
+            } else {
+                fullLinkTraversals
+            }
+
+        return routeLinkRepository.findRouteLinks(linkSections)
+    }
+
+    private fun createLinkFilter(
+        graph: RoutingGraph,
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): BitSet? =
+        bufferAreaRestriction?.let { restriction ->
+            when (restriction.isMaterialised) {
+                // The links within the buffer area are already resolved for the request.
+                true -> createLinkFilterForMaterialisedBufferArea(graph, restriction)
+
+                false ->
+                    graph.createLinkFilter(
+                        routingGraphRepository.findIdsOfLinksWithinBufferArea(vehicleType, restriction)
+                    )
+            }
+        }
+
+    /**
+     * Creates a link filter that allows the links within the pre-resolved
+     * buffer area as well as the explicitly referenced terminus links and the
+     * links incident to the explicitly referenced terminus nodes.
+     */
+    private fun createLinkFilterForMaterialisedBufferArea(
+        graph: RoutingGraph,
+        bufferAreaRestriction: BufferAreaRestriction
+    ): BitSet {
+        val filter: BitSet = graph.createLinkFilter(bufferAreaRestriction.idsOfLinksWithinBufferArea.orEmpty())
+
+        bufferAreaRestriction.explicitLinkReferences?.run {
+            idsOfCandidatesForTerminusLinks.forEach { linkId ->
+                val link: Int = graph.findLink(linkId)
+
+                if (link >= 0) {
+                    filter.set(link)
+                }
+            }
+
+            idsOfCandidatesForTerminusNodes.forEach { nodeId ->
+                val vertex: Int = graph.findVertex(nodeId)
+
+                if (vertex >= 0) {
+                    for (edge in graph.getFirstOutgoingEdge(vertex) until graph.getEndOfOutgoingEdges(vertex)) {
+                        filter.set(graph.getEdgeLink(edge))
+                    }
+                    for (position in graph.getFirstIncomingEdgePosition(vertex) until
+                        graph.getEndOfIncomingEdgePositions(vertex)) {
+                        filter.set(graph.getEdgeLink(graph.getIncomingEdge(position)))
+                    }
+                }
+            }
+        }
+
+        return filter
+    }
+
+    /**
+     * Returns the contraction hierarchy built for the given graph if the route
+     * is not restricted by a buffer area and the hierarchy is available.
+     */
+    private fun findApplicableContractionHierarchy(
+        graph: RoutingGraph,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): ContractionHierarchy? {
+        if (bufferAreaRestriction != null) {
+            return null
+        }
+
+        return routingGraphRegistry
+            .getContractionHierarchy(graph.vehicleType)
+            ?.takeIf { it.graph === graph }
+    }
+
+    private fun createLegSearchListener(
+        algorithm: String,
+        vehicleType: VehicleType
+    ): LegSearchListener {
+        val summary: DistributionSummary =
+            settledVerticesPerLeg.computeIfAbsent(algorithm to vehicleType) {
+                DistributionSummary
+                    .builder(SETTLED_VERTICES_METRIC)
+                    .description("The number of vertices settled in a single leg search within routing graph")
+                    .tag("algorithm", algorithm)
+                    .tag("vehicle_type", vehicleType.value)
+                    .register(meterRegistry)
+            }
+
+        return LegSearchListener { numberOfSettledVertices -> summary.record(numberOfSettledVertices.toDouble()) }
+    }
+
+    companion object {
+        const val SEARCH_ALGORITHM_PROPERTY = "mapmatching.routing.graph.search-algorithm"
+
+        // The algorithm tag of the settled vertices metric when contraction hierarchy is used.
+        private const val CONTRACTION_HIERARCHY = "contraction-hierarchy"
+
+        private const val SETTLED_VERTICES_METRIC = "mapmatching.routing.graph.leg.settled.vertices"
+
+        // co-efficients for rounding fractional locations along infrastructure link, the same
+        // values are used in RoutingRepositoryImpl
+        private const val ROUNDING_TOLERANCE = 0.001
+        private const val ROUNDING_MULTIPLIER = 1000.0
+
+        /**
+         * Resolves the given route points against the routing graph. The points
+         * are pre-processed in the same way as in [RoutingRepositoryImpl]:
+         * virtual nodes whose rounded fractional location is zero or one are
+         * replaced by the closer real node, virtual nodes that round to the
+         * same location as their predecessor on the same link are dropped, and
+         * finally consecutive duplicates are filtered out.
+         *
+         * @return the resolved route points or null if a point references a
+         * node or link that is not present in the graph or not allowed by the
+         * link filter
+         */
+        private fun resolveGraphRoutePoints(
+            graph: RoutingGraph,
+            points: List<PgRoutingPoint>,
+            linkFilter: BitSet?
+        ): List<GraphRoutePoint>? {
+            val resolvedPoints: MutableList<GraphRoutePoint> = ArrayList(points.size)
+
+            fun resolveRealNode(nodeId: InfrastructureNodeId): GraphRoutePoint? =
+                graph
+                    .findVertex(nodeId)
+                    .takeIf { it >= 0 }
+                    ?.let(::VertexRoutePoint)
+
+            points.forEach { point ->
+                when (point) {
+                    is RealNode -> resolvedPoints.add(resolveRealNode(point.nodeId) ?: return null)
+
+                    is VirtualNode -> {
+                        val fraction: Double = point.fractionalLocation
+
+                        if (fraction.isWithinTolerance(0.0, ROUNDING_TOLERANCE) ||
+                            fraction.isWithinTolerance(1.0, ROUNDING_TOLERANCE)
+                        ) {
+                            resolvedPoints.add(resolveRealNode(point.closerRealNodeId) ?: return null)
+                        } else {
+                            val link: Int = graph.findLink(point.linkId)
+
+                            if (link < 0 || linkFilter != null && !linkFilter.get(link)) {
+                                return null
+                            }
+
+                            val roundedFraction: Double =
+                                (fraction * ROUNDING_MULTIPLIER).roundToInt() / ROUNDING_MULTIPLIER
+
+                            val prev: GraphRoutePoint? = resolvedPoints.lastOrNull()
+
+                            val isPointAConsecutiveDuplicateAfterRounding: Boolean =
+                                prev is LinkRoutePoint &&
+                                    prev.link == link &&
+                                    roundedFraction.isWithinTolerance(prev.fraction, ROUNDING_TOLERANCE)
+
+                            if (!isPointAConsecutiveDuplicateAfterRounding) {
+                                resolvedPoints.add(LinkRoutePoint(link, roundedFraction, point.side))
+                            }
+                        }
+                    }
+                }
+            }
+
+            return filterOutConsecutiveDuplicates(resolvedPoints)
+        }
+
+        /**
+         * Finds the shortest path via the vertices of the given nodes. As with
+         * pgr_dijkstraVia (with strict := true), null is returned if any of
+         * the legs between consecutive nodes cannot be routed.
+         */
+        private fun findPathViaVertices(
+            graph: RoutingGraph,
+            nodeIdSequence: NodeIdSequence,
+            legSearch: (sourceVertex: Int, targetVertex: Int) -> IntArray?
+        ): IntArray? {
+            val vertices: IntArray = IntArray(nodeIdSequence.size) { graph.findVertex(nodeIdSequence.list[it]) }
+
+            if (vertices.any { it < 0 }) {
+                return null
+            }
+
+            val legs: List<IntArray> =
+                (0 until vertices.size - 1).map { legIndex ->
+                    legSearch(vertices[legIndex], vertices[legIndex + 1]) ?: return null
+                }
+
+            return legs.fold(IntArray(0), IntArray::plus)
+        }
+
+        private fun toLinkSections(
+            graph: RoutingGraph,
+            edges: IntArray
+        ): List<TraversedLinkSection> =
+            edges.map { edge ->
+                val link: Int = graph.getEdgeLink(edge)
+
+                // The direction of traversal is resolved in the same way as in the SQL query of
+                // RoutingRepositoryImpl, that is, by comparing the source node of the edge to the
+                // start node of the link. Closed loops are hence always deemed to be traversed
+                // forwards.
+                val isTraversalForwards: Boolean = graph.getEdgeSource(edge) == graph.getLinkStartVertex(link)
+
+                TraversedLinkSection.fullTraversal(graph.getLinkId(link), isTraversalForwards)
+            }
+    }
+}
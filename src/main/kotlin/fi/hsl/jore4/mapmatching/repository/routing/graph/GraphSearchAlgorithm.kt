@@ -0,0 +1,30 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+/**
+ * The algorithms available for the leg searches within in-memory routing
+ * graphs.
+ *
+ * @property configValue the value with which the algorithm is selected in
+ * application configuration
+ */
+enum class GraphSearchAlgorithm(
+    val configValue: String
+) {
+    /**
+     * Unidirectional Dijkstra search.
+     */
+    DIJKSTRA("dijkstra"),
+
+    /**
+     * Bidirectional A* search with straight-line distance heuristic between
+     * network nodes. Legs that start or end at a point along a link are
+     * searched with unidirectional A* using the same heuristic.
+     */
+    BIDIRECTIONAL_ASTAR("bidirectional-astar");
+
+    companion object {
+        fun fromConfigValue(configValue: String): GraphSearchAlgorithm =
+            entries.find { it.configValue == configValue.trim().lowercase() }
+                ?: throw IllegalArgumentException("Unknown graph search algorithm: '$configValue'")
+    }
+}
@@ -0,0 +1,177 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+/**
+ * Mutable state for shortest path searches on a [RoutingGraph], used by one
+ * search at a time and borrowed from [GraphSearchWorkspacePool]. The arrays
+ * are sized by the number of vertices and reused between searches. In order to
+ * avoid clearing the arrays before each search, vertex states are stamped with
+ * the identifier of the search that last touched them.
+ *
+ * The workspace contains an indexed binary min-heap of vertices keyed by their
+ * priorities, supporting the decrease-key operation. For Dijkstra's algorithm
+ * the priority of a vertex is its tentative distance; goal-directed searches
+ * (A*) add a potential to the distance.
+ */
+class GraphSearchWorkspace(
+    numberOfVertices: Int
+) {
+    private val searchStamps = IntArray(numberOfVertices)
+    private val distances = DoubleArray(numberOfVertices)
+    private val priorities = DoubleArray(numberOfVertices)
+    private val parentEdges = IntArray(numberOfVertices)
+
+    // The position of a vertex in the heap or SETTLED if the vertex has been polled.
+    private val heapPositions = IntArray(numberOfVertices)
+
+    private val heap = IntArray(numberOfVertices)
+    private var heapSize = 0
+
+    private var currentSearch = 0
+
+    /**
+     * The number of vertices settled (polled from the queue) during the
+     * current search.
+     */
+    var numberOfSettledVertices: Int = 0
+        private set
+
+    fun startNewSearch() {
+        if (currentSearch == Int.MAX_VALUE) {
+            searchStamps.fill(0)
+            currentSearch = 0
+        }
+        currentSearch++
+        heapSize = 0
+        numberOfSettledVertices = 0
+    }
+
+    fun isReached(vertex: Int): Boolean = searchStamps[vertex] == currentSearch
+
+    fun isSettled(vertex: Int): Boolean = isReached(vertex) && heapPositions[vertex] == SETTLED
+
+    fun getDistance(vertex: Int): Double = if (isReached(vertex)) distances[vertex] else Double.POSITIVE_INFINITY
+
+    /**
+     * Returns the edge via which [vertex] was reached or -1 if the vertex is
+     * the source of the search.
+     */
+    fun getParentEdge(vertex: Int): Int = parentEdges[vertex]
+
+    fun isQueueEmpty(): Boolean = heapSize == 0
+
+    fun peekMinPriority(): Double = if (heapSize == 0) Double.POSITIVE_INFINITY else priorities[heap[0]]
+
+    /**
+     * Records a tentative distance for [vertex] if it improves the current
+     * one. The vertex is inserted into the queue or its key is decreased.
+     *
+     * @param priority the key of the vertex in the queue. Must differ from
+     * [distance] by a vertex-specific constant (potential) that does not
+     * change during the search.
+     *
+     * @return true if the tentative distance was improved
+     */
+    fun relax(
+        vertex: Int,
+        distance: Double,
+        parentEdge: Int,
+        priority: Double = distance
+    ): Boolean {
+        if (!isReached(vertex)) {
+            searchStamps[vertex] = currentSearch
+            distances[vertex] = distance
+            priorities[vertex] = priority
+            parentEdges[vertex] = parentEdge
+            heapPositions[vertex] = heapSize
+            heap[heapSize++] = vertex
+            siftUp(heapPositions[vertex])
+            return true
+        }
+
+        if (heapPositions[vertex] == SETTLED || distance >= distances[vertex]) {
+            return false
+        }
+
+        distances[vertex] = distance
+        priorities[vertex] = priority
+        parentEdges[vertex] = parentEdge
+        siftUp(heapPositions[vertex])
+        return true
+    }
+
+    /**
+     * Removes the vertex with the smallest priority from the queue
+     * and marks it settled.
+     */
+    fun pollMin(): Int {
+        val min: Int = heap[0]
+
+        heapSize--
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize]
+            heapPositions[heap[0]] = 0
+            siftDown(0)
+        }
+
+        heapPositions[min] = SETTLED
+        numberOfSettledVertices++
+
+        return min
+    }
+
+    private fun siftUp(startPosition: Int) {
+        var pos: Int = startPosition
+        val vertex: Int = heap[pos]
+        val priority: Double = priorities[vertex]
+
+        while (pos > 0) {
+            val parentPos: Int = (pos - 1) ushr 1
+            val parent: Int = heap[parentPos]
+
+            if (priorities[parent] <= priority) {
+                break
+            }
+
+            heap[pos] = parent
+            heapPositions[parent] = pos
+            pos = parentPos
+        }
+
+        heap[pos] = vertex
+        heapPositions[vertex] = pos
+    }
+
+    private fun siftDown(startPosition: Int) {
+        var pos: Int = startPosition
+        val vertex: Int = heap[pos]
+        val priority: Double = priorities[vertex]
+
+        while (true) {
+            var childPos: Int = 2 * pos + 1
+
+            if (childPos >= heapSize) {
+                break
+            }
+            if (childPos + 1 < heapSize && priorities[heap[childPos + 1]] < priorities[heap[childPos]]) {
+                childPos++
+            }
+
+            val child: Int = heap[childPos]
+
+            if (priority <= priorities[child]) {
+                break
+            }
+
+            heap[pos] = child
+            heapPositions[child] = pos
+            pos = childPos
+        }
+
+        heap[pos] = vertex
+        heapPositions[vertex] = pos
+    }
+
+    companion object {
+        private const val SETTLED = -1
+    }
+}
@@ -0,0 +1,49 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import java.util.concurrent.ArrayBlockingQueue
+
+/**
+ * A bounded pool of [GraphSearchWorkspace]s of a single graph. A workspace is
+ * borrowed for the duration of one search and then returned for reuse by any
+ * thread. Workspaces are created on demand when none is idle, so borrowing
+ * never blocks. At most [maxIdleWorkspaces] workspaces are retained between
+ * searches; workspaces returned beyond that are left for garbage collection.
+ *
+ * Thus, the memory retained for workspaces is bounded regardless of the
+ * number of threads performing searches, and workspaces are reused also when
+ * searches are run on short-lived (e.g. virtual) threads.
+ */
+class GraphSearchWorkspacePool(
+    private val numberOfVertices: Int,
+    maxIdleWorkspaces: Int = Runtime.getRuntime().availableProcessors()
+) {
+    private val idleWorkspaces = ArrayBlockingQueue<GraphSearchWorkspace>(maxIdleWorkspaces.coerceAtLeast(1))
+
+    val numberOfIdleWorkspaces: Int
+        get() = idleWorkspaces.size
+
+    /**
+     * Runs the given block with a workspace that is exclusively used by the
+     * block. The workspace must not be retained by the block.
+     */
+    fun <T> withWorkspace(block: (GraphSearchWorkspace) -> T): T {
+        val workspace: GraphSearchWorkspace = borrow()
+
+        try {
+            return block(workspace)
+        } finally {
+            idleWorkspaces.offer(workspace)
+        }
+    }
+
+    /**
+     * Runs the given block with two distinct workspaces, e.g. for the forward
+     * and backward directions of bidirectional searches.
+     */
+    fun <T> withWorkspaces(block: (GraphSearchWorkspace, GraphSearchWorkspace) -> T): T =
+        withWorkspace { first ->
+            withWorkspace { second -> block(first, second) }
+        }
+
+    private fun borrow(): GraphSearchWorkspace = idleWorkspaces.poll() ?: GraphSearchWorkspace(numberOfVertices)
+}
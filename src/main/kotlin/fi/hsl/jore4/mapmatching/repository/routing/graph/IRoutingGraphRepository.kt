@@ -0,0 +1,36 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
+
+interface IRoutingGraphRepository {
+    /**
+     * Loads the infrastructure links that are safely traversable by the given
+     * vehicle type and builds an in-memory routing graph from them. The graph
+     * is supplemented with the coordinates of infrastructure nodes.
+     *
+     * @param vehicleType vehicle type constraint for the graph
+     *
+     * @return the routing graph for the given vehicle type
+     */
+    fun loadRoutingGraph(vehicleType: VehicleType): RoutingGraph
+
+    /**
+     * Finds the identifiers of the infrastructure links that are safely
+     * traversable by the given vehicle type and that are eligible with regard
+     * to the given buffer area restriction. The selection of links is the same
+     * as the one made for pgRouting in
+     * [fi.hsl.jore4.mapmatching.repository.routing.PgRoutingEdgeQueries].
+     *
+     * @param vehicleType vehicle type constraint for infrastructure links
+     * @param bufferAreaRestriction contains data with which the target set of
+     * infrastructure links is geometrically restricted
+     *
+     * @return identifiers of the eligible infrastructure links
+     */
+    fun findIdsOfLinksWithinBufferArea(
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction
+    ): List<InfrastructureLinkId>
+}
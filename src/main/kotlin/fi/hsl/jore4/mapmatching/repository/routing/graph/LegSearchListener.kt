@@ -0,0 +1,15 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+/**
+ * Receives statistics of the shortest path searches performed for single legs
+ * of a route, e.g. in order to measure the number of explored vertices with
+ * different search algorithms.
+ */
+fun interface LegSearchListener {
+    /**
+     * @param numberOfSettledVertices the number of vertices settled during
+     * the search of the leg (in both directions in case of a bidirectional
+     * search)
+     */
+    fun onLegSearched(numberOfSettledVertices: Int)
+}
@@ -0,0 +1,193 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import java.util.BitSet
+import kotlin.math.hypot
+
+/**
+ * An immutable, compact in-memory representation of the infrastructure network
+ * that is safely traversable by a specific vehicle type. The graph is stored in
+ * compressed sparse row (CSR) format: the outgoing directed edges of each
+ * vertex are stored contiguously in primitive arrays.
+ *
+ * Vertices correspond to infrastructure nodes and links correspond to
+ * infrastructure links. Each infrastructure link gives rise to at most two
+ * directed edges in the same way as in pgRouting: one along the digitised
+ * direction of the link if its cost is non-negative, and one against the
+ * digitised direction if its reverse cost is non-negative.
+ *
+ * Vertices and links are referenced by their zero-based indices within the
+ * graph. The indices follow the ascending order of node and link identifiers.
+ *
+ * The incoming edges of each vertex are additionally indexed in the same
+ * format for backward searches. Vertices may carry planar EPSG:3067
+ * coordinates that enable goal-directed (A*) searches, see [estimateCost].
+ */
+class RoutingGraph(
+    val vehicleType: VehicleType,
+    private val nodeIds: LongArray,
+    private val linkIds: LongArray,
+    private val linkStartVertices: IntArray,
+    private val linkEndVertices: IntArray,
+    private val linkCosts: DoubleArray,
+    private val linkReverseCosts: DoubleArray,
+    private val firstOutgoingEdges: IntArray,
+    private val edgeTargetVertices: IntArray,
+    private val edgeLinks: IntArray,
+    private val edgeCosts: DoubleArray,
+    private val forwardEdges: BitSet,
+    private val firstIncomingEdges: IntArray,
+    private val incomingEdges: IntArray,
+    private val vertexXs: DoubleArray,
+    private val vertexYs: DoubleArray,
+    /**
+     * The factor by which straight-line distances are multiplied to obtain
+     * lower bounds for path costs. Zero if coordinates are not available for
+     * all vertices, in which case goal-directed searches degrade to plain
+     * Dijkstra searches.
+     */
+    val heuristicScale: Double
+) {
+    private val searchWorkspacePool = GraphSearchWorkspacePool(nodeIds.size)
+
+    val numberOfVertices: Int
+        get() = nodeIds.size
+
+    val numberOfLinks: Int
+        get() = linkIds.size
+
+    val numberOfEdges: Int
+        get() = edgeTargetVertices.size
+
+    /**
+     * Returns the index of the vertex for the given infrastructure node or -1
+     * if the node is not part of this graph.
+     */
+    fun findVertex(nodeId: InfrastructureNodeId): Int = nodeIds.binarySearch(nodeId.value).coerceAtLeast(-1)
+
+    /**
+     * Returns the index of the given infrastructure link or -1 if the link is
+     * not part of this graph.
+     */
+    fun findLink(linkId: InfrastructureLinkId): Int = linkIds.binarySearch(linkId.value).coerceAtLeast(-1)
+
+    fun getNodeId(vertex: Int) = InfrastructureNodeId(nodeIds[vertex])
+
+    fun getLinkId(link: Int) = InfrastructureLinkId(linkIds[link])
+
+    fun getLinkStartVertex(link: Int): Int = linkStartVertices[link]
+
+    fun getLinkEndVertex(link: Int): Int = linkEndVertices[link]
+
+    fun getLinkCost(link: Int): Double = linkCosts[link]
+
+    fun getLinkReverseCost(link: Int): Double = linkReverseCosts[link]
+
+    /**
+     * The outgoing edges of [vertex] are indexed in range
+     * [getFirstOutgoingEdge] (inclusive) .. [getEndOfOutgoingEdges] (exclusive).
+     */
+    fun getFirstOutgoingEdge(vertex: Int): Int = firstOutgoingEdges[vertex]
+
+    fun getEndOfOutgoingEdges(vertex: Int): Int = firstOutgoingEdges[vertex + 1]
+
+    /**
+     * The incoming edges of [vertex] are obtained with [getIncomingEdge] for
+     * positions in range [getFirstIncomingEdgePosition] (inclusive) ..
+     * [getEndOfIncomingEdgePositions] (exclusive).
+     */
+    fun getFirstIncomingEdgePosition(vertex: Int): Int = firstIncomingEdges[vertex]
+
+    fun getEndOfIncomingEdgePositions(vertex: Int): Int = firstIncomingEdges[vertex + 1]
+
+    fun getIncomingEdge(position: Int): Int = incomingEdges[position]
+
+    fun getEdgeTarget(edge: Int): Int = edgeTargetVertices[edge]
+
+    fun getEdgeSource(edge: Int): Int {
+        val link: Int = edgeLinks[edge]
+
+        return if (isEdgeForwards(edge)) linkStartVertices[link] else linkEndVertices[link]
+    }
+
+    fun getEdgeLink(edge: Int): Int = edgeLinks[edge]
+
+    fun getEdgeCost(edge: Int): Double = edgeCosts[edge]
+
+    /**
+     * Indicates whether the edge is directed along the digitised direction of
+     * its infrastructure link.
+     */
+    fun isEdgeForwards(edge: Int): Boolean = forwardEdges[edge]
+
+    fun getVertexX(vertex: Int): Double = vertexXs[vertex]
+
+    fun getVertexY(vertex: Int): Double = vertexYs[vertex]
+
+    /**
+     * Returns a lower bound for the cost of any path between the given
+     * vertices based on their straight-line distance. The estimate is
+     * consistent: it does not exceed the cost of any single edge in the
+     * direction of the edge, so it can be used as an A* heuristic.
+     */
+    fun estimateCost(
+        fromVertex: Int,
+        toVertex: Int
+    ): Double {
+        if (heuristicScale == 0.0) {
+            return 0.0
+        }
+
+        return heuristicScale *
+            hypot(vertexXs[toVertex] - vertexXs[fromVertex], vertexYs[toVertex] - vertexYs[fromVertex])
+    }
+
+    /**
+     * Creates a filter that allows traversal only on the given infrastructure
+     * links. Links that are not part of this graph are ignored.
+     */
+    fun createLinkFilter(allowedLinkIds: Iterable<InfrastructureLinkId>): BitSet {
+        val filter = BitSet(numberOfLinks)
+
+        allowedLinkIds.forEach { linkId ->
+            val link: Int = findLink(linkId)
+
+            if (link >= 0) {
+                filter.set(link)
+            }
+        }
+
+        return filter
+    }
+
+    /**
+     * Runs the given block with a workspace for graph searches borrowed from
+     * the bounded workspace pool of this graph.
+     */
+    fun <T> withSearchWorkspace(block: (GraphSearchWorkspace) -> T): T = searchWorkspacePool.withWorkspace(block)
+
+    /**
+     * Runs the given block with two workspaces for the forward and backward
+     * directions of bidirectional searches.
+     */
+    fun <T> withBidirectionalSearchWorkspaces(block: (GraphSearchWorkspace, GraphSearchWorkspace) -> T): T =
+        searchWorkspacePool.withWorkspaces(block)
+
+    /**
+     * An estimate of the heap memory consumed by the primitive arrays of this
+     * graph in bytes.
+     */
+    val estimatedSizeInBytes: Long
+        get() =
+            8L * (
+                nodeIds.size + linkIds.size + linkCosts.size + linkReverseCosts.size + edgeCosts.size +
+                    vertexXs.size + vertexYs.size
+            ) +
+                4L * (
+                    linkStartVertices.size + linkEndVertices.size + firstOutgoingEdges.size +
+                        edgeTargetVertices.size + edgeLinks.size + firstIncomingEdges.size + incomingEdges.size
+                ) +
+                forwardEdges.size() / 8
+}
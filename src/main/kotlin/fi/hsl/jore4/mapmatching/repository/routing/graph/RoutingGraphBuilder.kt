@@ -0,0 +1,249 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import java.util.BitSet
+import kotlin.math.hypot
+import kotlin.math.min
+
+/**
+ * Collects infrastructure links into growable primitive arrays and builds an
+ * immutable [RoutingGraph] from them. The links must be added in strictly
+ * ascending order of their identifiers.
+ *
+ * Optionally, planar coordinates can be given for the infrastructure nodes.
+ * Coordinates of nodes that are not endpoints of any added link are ignored.
+ */
+class RoutingGraphBuilder(
+    private val vehicleType: VehicleType,
+    initialCapacity: Int = 1024
+) {
+    private var linkIds = LongArray(initialCapacity)
+    private var startNodeIds = LongArray(initialCapacity)
+    private var endNodeIds = LongArray(initialCapacity)
+    private var costs = DoubleArray(initialCapacity)
+    private var reverseCosts = DoubleArray(initialCapacity)
+
+    private var numberOfLinks = 0
+
+    private var coordinateNodeIds = LongArray(initialCapacity)
+    private var coordinateXs = DoubleArray(initialCapacity)
+    private var coordinateYs = DoubleArray(initialCapacity)
+
+    private var numberOfCoordinates = 0
+
+    fun addLink(
+        linkId: Long,
+        startNodeId: Long,
+        endNodeId: Long,
+        cost: Double,
+        reverseCost: Double
+    ): RoutingGraphBuilder {
+        require(numberOfLinks == 0 || linkId > linkIds[numberOfLinks - 1]) {
+            "Links must be added in strictly ascending order of identifiers: $linkId"
+        }
+
+        if (numberOfLinks == linkIds.size) {
+            val newCapacity: Int = linkIds.size * 2
+
+            linkIds = linkIds.copyOf(newCapacity)
+            startNodeIds = startNodeIds.copyOf(newCapacity)
+            endNodeIds = endNodeIds.copyOf(newCapacity)
+            costs = costs.copyOf(newCapacity)
+            reverseCosts = reverseCosts.copyOf(newCapacity)
+        }
+
+        linkIds[numberOfLinks] = linkId
+        startNodeIds[numberOfLinks] = startNodeId
+        endNodeIds[numberOfLinks] = endNodeId
+        costs[numberOfLinks] = cost
+        reverseCosts[numberOfLinks] = reverseCost
+
+        numberOfLinks++
+
+        return this
+    }
+
+    fun setNodeCoordinates(
+        nodeId: Long,
+        x: Double,
+        y: Double
+    ): RoutingGraphBuilder {
+        if (numberOfCoordinates == coordinateNodeIds.size) {
+            val newCapacity: Int = coordinateNodeIds.size * 2
+
+            coordinateNodeIds = coordinateNodeIds.copyOf(newCapacity)
+            coordinateXs = coordinateXs.copyOf(newCapacity)
+            coordinateYs = coordinateYs.copyOf(newCapacity)
+        }
+
+        coordinateNodeIds[numberOfCoordinates] = nodeId
+        coordinateXs[numberOfCoordinates] = x
+        coordinateYs[numberOfCoordinates] = y
+
+        numberOfCoordinates++
+
+        return this
+    }
+
+    fun build(): RoutingGraph {
+        val n: Int = numberOfLinks
+
+        // Collect the distinct node identifiers in ascending order.
+        val nodeIds: LongArray =
+            LongArray(2 * n)
+                .also { arr ->
+                    startNodeIds.copyInto(arr, 0, 0, n)
+                    endNodeIds.copyInto(arr, n, 0, n)
+                    arr.sort()
+                }.let(::distinctOfSorted)
+
+        val linkStartVertices = IntArray(n) { nodeIds.binarySearch(startNodeIds[it]) }
+        val linkEndVertices = IntArray(n) { nodeIds.binarySearch(endNodeIds[it]) }
+
+        // Negative cost means that the link is not traversable in the direction in question.
+        fun hasForwardEdge(link: Int) = costs[link] >= 0.0
+
+        fun hasBackwardEdge(link: Int) = reverseCosts[link] >= 0.0
+
+        // Count out-degree of each vertex and convert counts to CSR offsets.
+        val firstOutgoingEdges = IntArray(nodeIds.size + 1)
+
+        for (link in 0 until n) {
+            if (hasForwardEdge(link)) firstOutgoingEdges[linkStartVertices[link] + 1]++
+            if (hasBackwardEdge(link)) firstOutgoingEdges[linkEndVertices[link] + 1]++
+        }
+        for (vertex in 1..nodeIds.size) {
+            firstOutgoingEdges[vertex] += firstOutgoingEdges[vertex - 1]
+        }
+
+        val numberOfEdges: Int = firstOutgoingEdges[nodeIds.size]
+
+        val edgeTargetVertices = IntArray(numberOfEdges)
+        val edgeLinks = IntArray(numberOfEdges)
+        val edgeCosts = DoubleArray(numberOfEdges)
+        val forwardEdges = BitSet(numberOfEdges)
+
+        val nextEdgeOfVertex: IntArray = firstOutgoingEdges.copyOf(nodeIds.size)
+
+        for (link in 0 until n) {
+            if (hasForwardEdge(link)) {
+                val edge: Int = nextEdgeOfVertex[linkStartVertices[link]]++
+
+                edgeTargetVertices[edge] = linkEndVertices[link]
+                edgeLinks[edge] = link
+                edgeCosts[edge] = costs[link]
+                forwardEdges.set(edge)
+            }
+            if (hasBackwardEdge(link)) {
+                val edge: Int = nextEdgeOfVertex[linkEndVertices[link]]++
+
+                edgeTargetVertices[edge] = linkStartVertices[link]
+                edgeLinks[edge] = link
+                edgeCosts[edge] = reverseCosts[link]
+            }
+        }
+
+        // Index incoming edges by target vertex in the same manner as outgoing edges.
+        val firstIncomingEdges = IntArray(nodeIds.size + 1)
+
+        for (edge in 0 until numberOfEdges) {
+            firstIncomingEdges[edgeTargetVertices[edge] + 1]++
+        }
+        for (vertex in 1..nodeIds.size) {
+            firstIncomingEdges[vertex] += firstIncomingEdges[vertex - 1]
+        }
+
+        val incomingEdges = IntArray(numberOfEdges)
+        val nextIncomingEdgeOfVertex: IntArray = firstIncomingEdges.copyOf(nodeIds.size)
+
+        for (edge in 0 until numberOfEdges) {
+            incomingEdges[nextIncomingEdgeOfVertex[edgeTargetVertices[edge]]++] = edge
+        }
+
+        val vertexXs = DoubleArray(nodeIds.size) { Double.NaN }
+        val vertexYs = DoubleArray(nodeIds.size) { Double.NaN }
+
+        for (i in 0 until numberOfCoordinates) {
+            val vertex: Int = nodeIds.binarySearch(coordinateNodeIds[i])
+
+            if (vertex >= 0) {
+                vertexXs[vertex] = coordinateXs[i]
+                vertexYs[vertex] = coordinateYs[i]
+            }
+        }
+
+        return RoutingGraph(
+            vehicleType,
+            nodeIds,
+            linkIds.copyOf(n),
+            linkStartVertices,
+            linkEndVertices,
+            costs.copyOf(n),
+            reverseCosts.copyOf(n),
+            firstOutgoingEdges,
+            edgeTargetVertices,
+            edgeLinks,
+            edgeCosts,
+            forwardEdges,
+            firstIncomingEdges,
+            incomingEdges,
+            vertexXs,
+            vertexYs,
+            resolveHeuristicScale(vertexXs, vertexYs, linkStartVertices, linkEndVertices)
+        )
+    }
+
+    /**
+     * Resolves the largest factor (capped at 1.0) by which the straight-line
+     * distance between the endpoints of each link can be multiplied without
+     * exceeding the cost of traversing the link in either direction. Scaling
+     * straight-line distances by this factor yields a consistent A* heuristic
+     * regardless of how link costs are defined. When costs are link lengths in
+     * metres, as in EPSG:3067, the factor is 1.0.
+     */
+    private fun resolveHeuristicScale(
+        vertexXs: DoubleArray,
+        vertexYs: DoubleArray,
+        linkStartVertices: IntArray,
+        linkEndVertices: IntArray
+    ): Double {
+        if (vertexXs.any(Double::isNaN) || vertexYs.any(Double::isNaN)) {
+            return 0.0
+        }
+
+        var scale = 1.0
+
+        for (link in 0 until numberOfLinks) {
+            val startVertex: Int = linkStartVertices[link]
+            val endVertex: Int = linkEndVertices[link]
+
+            val distance: Double =
+                hypot(vertexXs[endVertex] - vertexXs[startVertex], vertexYs[endVertex] - vertexYs[startVertex])
+
+            if (distance > 0.0) {
+                if (costs[link] >= 0.0) scale = min(scale, costs[link] / distance)
+                if (reverseCosts[link] >= 0.0) scale = min(scale, reverseCosts[link] / distance)
+            }
+        }
+
+        return scale
+    }
+
+    companion object {
+        private fun distinctOfSorted(sorted: LongArray): LongArray {
+            if (sorted.isEmpty()) {
+                return sorted
+            }
+
+            var count = 1
+
+            for (i in 1 until sorted.size) {
+                if (sorted[i] != sorted[count - 1]) {
+                    sorted[count++] = sorted[i]
+                }
+            }
+
+            return sorted.copyOf(count)
+        }
+    }
+}
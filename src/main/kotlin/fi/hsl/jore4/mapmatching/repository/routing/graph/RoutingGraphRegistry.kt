@@ -0,0 +1,167 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Component
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.random.Random
+import kotlin.system.measureNanoTime
+import kotlin.system.measureTimeMillis
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Holds the in-memory routing graphs, one for each vehicle type. The graphs
+ * are loaded when the application has started. A graph is loaded on demand in
+ * case it is requested before the startup loading has completed.
+ *
+ * Optionally, a contraction hierarchy is built for each graph at startup
+ * (enabled via [CONTRACTION_HIERARCHY_ENABLED_PROPERTY]). The preprocessing
+ * time and size of each hierarchy are logged together with a comparison of
+ * query latencies against plain Dijkstra searches between random vertices.
+ * Until a hierarchy is built, routes are searched without it.
+ *
+ * The graphs (and hierarchies) are re-built via [reload], which is triggered
+ * automatically when a change in the network version is detected. A hierarchy
+ * is applied only to the graph it was built from, so the graph of a vehicle
+ * type can be replaced before its hierarchy.
+ *
+ * This component is active only when the in-memory routing engine is enabled
+ * via [ROUTING_ENGINE_PROPERTY].
+ */
+@Component
+@ConditionalOnProperty(
+    name = [RoutingGraphRegistry.ROUTING_ENGINE_PROPERTY],
+    havingValue = RoutingGraphRegistry.GRAPH_ROUTING_ENGINE
+)
+class RoutingGraphRegistry(
+    val routingGraphRepository: IRoutingGraphRepository,
+    @param:Value("\${$CONTRACTION_HIERARCHY_ENABLED_PROPERTY:false}") val contractionHierarchyEnabled: Boolean
+) {
+    private val graphs: ConcurrentHashMap<VehicleType, RoutingGraph> = ConcurrentHashMap()
+
+    private val contractionHierarchies: ConcurrentHashMap<VehicleType, ContractionHierarchy> = ConcurrentHashMap()
+
+    fun getRoutingGraph(vehicleType: VehicleType): RoutingGraph =
+        graphs.computeIfAbsent(vehicleType, ::loadRoutingGraph)
+
+    /**
+     * Returns the contraction hierarchy for the given vehicle type or null if
+     * it is not enabled or not yet built.
+     */
+    fun getContractionHierarchy(vehicleType: VehicleType): ContractionHierarchy? = contractionHierarchies[vehicleType]
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun loadRoutingGraphsOnStartup() {
+        VehicleType.values().forEach { vehicleType ->
+            val graph: RoutingGraph = getRoutingGraph(vehicleType)
+
+            if (contractionHierarchyEnabled) {
+                contractionHierarchies[vehicleType] = buildContractionHierarchy(graph)
+            }
+        }
+    }
+
+    /**
+     * Replaces the routing graphs (and contraction hierarchies) of all vehicle
+     * types with ones built from the current content of the database.
+     */
+    @EventListener(NetworkVersionChangedEvent::class)
+    fun reload() {
+        VehicleType.values().forEach { vehicleType ->
+            val graph: RoutingGraph = loadRoutingGraph(vehicleType)
+
+            graphs[vehicleType] = graph
+
+            if (contractionHierarchyEnabled) {
+                contractionHierarchies[vehicleType] = buildContractionHierarchy(graph)
+            }
+        }
+    }
+
+    private fun loadRoutingGraph(vehicleType: VehicleType): RoutingGraph {
+        val graph: RoutingGraph
+        val elapsedMillis: Long = measureTimeMillis { graph = routingGraphRepository.loadRoutingGraph(vehicleType) }
+
+        LOGGER.info {
+            "Loaded routing graph for vehicle type '${vehicleType.value}' in $elapsedMillis ms: " +
+                "${graph.numberOfVertices} vertices, ${graph.numberOfEdges} edges, " +
+                "${graph.numberOfLinks} links, ~${graph.estimatedSizeInBytes / 1024} KiB"
+        }
+
+        return graph
+    }
+
+    private fun buildContractionHierarchy(graph: RoutingGraph): ContractionHierarchy {
+        val hierarchy: ContractionHierarchy
+        val elapsedMillis: Long = measureTimeMillis { hierarchy = ContractionHierarchyBuilder(graph).build() }
+
+        LOGGER.info {
+            "Built contraction hierarchy for vehicle type '${graph.vehicleType.value}' in $elapsedMillis ms: " +
+                "${hierarchy.numberOfShortcuts} shortcuts, ${hierarchy.numberOfEdges} edges in total, " +
+                "~${hierarchy.estimatedSizeInBytes / 1024} KiB"
+        }
+
+        reportQueryLatencies(hierarchy)
+
+        return hierarchy
+    }
+
+    /**
+     * Measures and logs the average latencies of Dijkstra and contraction
+     * hierarchy queries between the same pseudo-random vertex pairs.
+     */
+    private fun reportQueryLatencies(hierarchy: ContractionHierarchy) {
+        val graph: RoutingGraph = hierarchy.graph
+
+        if (graph.numberOfVertices < 2) {
+            return
+        }
+
+        val random = Random(LATENCY_SAMPLE_SEED)
+        val vertexPairs: List<Pair<Int, Int>> =
+            List(LATENCY_SAMPLE_SIZE) {
+                random.nextInt(graph.numberOfVertices) to random.nextInt(graph.numberOfVertices)
+            }
+
+        var dijkstraSettled = 0L
+        var hierarchySettled = 0L
+
+        val dijkstraNanos: Long =
+            measureNanoTime {
+                vertexPairs.forEach { (source, target) ->
+                    DijkstraSearch.findShortestPath(graph, source, target, null, { dijkstraSettled += it })
+                }
+            }
+        val hierarchyNanos: Long =
+            measureNanoTime {
+                vertexPairs.forEach { (source, target) ->
+                    ContractionHierarchySearch.findShortestPath(hierarchy, source, target) { hierarchySettled += it }
+                }
+            }
+
+        LOGGER.info {
+            "Average query latency for vehicle type '${graph.vehicleType.value}' " +
+                "over $LATENCY_SAMPLE_SIZE random vertex pairs: " +
+                "Dijkstra ${dijkstraNanos / LATENCY_SAMPLE_SIZE / 1000} µs " +
+                "(${dijkstraSettled / LATENCY_SAMPLE_SIZE} settled vertices), " +
+                "contraction hierarchy ${hierarchyNanos / LATENCY_SAMPLE_SIZE / 1000} µs " +
+                "(${hierarchySettled / LATENCY_SAMPLE_SIZE} settled vertices)"
+        }
+    }
+
+    companion object {
+        const val ROUTING_ENGINE_PROPERTY = "mapmatching.routing.engine"
+        const val GRAPH_ROUTING_ENGINE = "graph"
+
+        const val CONTRACTION_HIERARCHY_ENABLED_PROPERTY = "mapmatching.routing.graph.contraction-hierarchy.enabled"
+
+        private const val LATENCY_SAMPLE_SIZE = 200
+        private const val LATENCY_SAMPLE_SEED = 4L
+    }
+}
@@ -0,0 +1,109 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
+import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toEwkb
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.sql.ResultSet
+
+@Repository
+class RoutingGraphRepositoryImpl(
+    val jdbcTemplate: NamedParameterJdbcTemplate
+) : IRoutingGraphRepository {
+    @Transactional(readOnly = true)
+    override fun loadRoutingGraph(vehicleType: VehicleType): RoutingGraph {
+        val builder = RoutingGraphBuilder(vehicleType, 64 * 1024)
+
+        val params = MapSqlParameterSource().addValue("vehicleType", vehicleType.value)
+
+        jdbcTemplate.query(
+            LOAD_LINKS_SQL,
+            params,
+            RowCallbackHandler { rs: ResultSet ->
+                builder.addLink(
+                    rs.getLong("infrastructure_link_id"),
+                    rs.getLong("start_node_id"),
+                    rs.getLong("end_node_id"),
+                    rs.getDouble("cost"),
+                    rs.getDouble("reverse_cost")
+                )
+            }
+        )
+
+        // Node coordinates are needed for the straight-line distance heuristic of A* searches.
+        jdbcTemplate.query(
+            LOAD_NODE_COORDINATES_SQL,
+            RowCallbackHandler { rs: ResultSet ->
+                builder.setNodeCoordinates(rs.getLong("node_id"), rs.getDouble("x"), rs.getDouble("y"))
+            }
+        )
+
+        return builder.build()
+    }
+
+    @Transactional(readOnly = true)
+    override fun findIdsOfLinksWithinBufferArea(
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction
+    ): List<InfrastructureLinkId> {
+        val terminusLinkIds: Set<InfrastructureLinkId> =
+            bufferAreaRestriction.explicitLinkReferences?.idsOfCandidatesForTerminusLinks ?: emptySet()
+        val terminusNodeIds: Set<InfrastructureNodeId> =
+            bufferAreaRestriction.explicitLinkReferences?.idsOfCandidatesForTerminusNodes ?: emptySet()
+
+        val params =
+            MapSqlParameterSource()
+                .addValue("vehicleType", vehicleType.value)
+                .addValue("terminusLinkIds", terminusLinkIds.joinToString(prefix = "{", postfix = "}"))
+                .addValue("terminusNodeIds", terminusNodeIds.joinToString(prefix = "{", postfix = "}"))
+                .addValue("ewkb", toEwkb(bufferAreaRestriction.lineGeometry))
+                .addValue("bufferRadius", bufferAreaRestriction.bufferRadiusInMeters)
+
+        return jdbcTemplate.query(FIND_LINKS_WITHIN_BUFFER_AREA_SQL, params) { rs: ResultSet, _: Int ->
+            InfrastructureLinkId(rs.getLong("infrastructure_link_id"))
+        }
+    }
+
+    companion object {
+        // The graph is loaded from the same edge relation that pgRouting queries read, so that
+        // both routing engines route on the same edges. Links are ordered by their identifiers
+        // as required by RoutingGraphBuilder.
+        private val LOAD_LINKS_SQL =
+            """
+            SELECT e.id AS infrastructure_link_id, e.source AS start_node_id, e.target AS end_node_id,
+                e.cost, e.reverse_cost
+            FROM routing.infrastructure_link_edge e
+            WHERE e.vehicle_type = :vehicleType
+            ORDER BY e.id
+            """.trimIndent()
+
+        // The coordinates are in EPSG:3067, the same metric system in which link costs are computed.
+        private val LOAD_NODE_COORDINATES_SQL =
+            """
+            SELECT v.id AS node_id, ST_X(v.the_geom) AS x, ST_Y(v.the_geom) AS y
+            FROM routing.infrastructure_link_vertices_pgr v
+            WHERE v.the_geom IS NOT NULL
+            """.trimIndent()
+
+        private val FIND_LINKS_WITHIN_BUFFER_AREA_SQL =
+            """
+            SELECT e.id AS infrastructure_link_id
+            FROM routing.infrastructure_link_edge e
+            WHERE e.vehicle_type = :vehicleType
+                AND (
+                    e.id = ANY((:terminusLinkIds)::bigint[])
+                    OR (:terminusNodeIds)::bigint[] && ARRAY[e.source, e.target]
+                    OR ST_Covers(
+                        ST_Buffer(ST_Transform(ST_GeomFromEWKB(:ewkb), 3067), :bufferRadius),
+                        e.geom
+                    )
+                )
+            """.trimIndent()
+    }
+}
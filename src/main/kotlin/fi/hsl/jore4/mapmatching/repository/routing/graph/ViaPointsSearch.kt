@@ -0,0 +1,373 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.repository.routing.TraversedLinkSection
+import java.util.BitSet
+import kotlin.math.min
+
+/**
+ * Shortest path search on a [RoutingGraph] between route points that may be
+ * located along links (virtual nodes). This is the in-memory counterpart of
+ * pgRouting's pgr_withPointsVia function invoked with the parameters used in
+ * [fi.hsl.jore4.mapmatching.repository.routing.RoutingRepositoryImpl]:
+ * directed graph, U-turns allowed on edges and right-hand driving side.
+ *
+ * The result is produced directly as link sections with start and end
+ * fractions, so there is no need for the post-processing stages applied to the
+ * output of pgRouting.
+ *
+ * Optionally, the search is goal-directed (A*) using the straight-line
+ * distance heuristic of [RoutingGraph.estimateCost] towards the vertices via
+ * which the target point can be arrived at.
+ */
+object ViaPointsSearch {
+    // Markers stored as parent edges for the vertices from which a search is started.
+    internal const val FROM_SOURCE_VERTEX = -1
+    internal const val FROM_SOURCE_LINK_FORWARDS = -2
+    internal const val FROM_SOURCE_LINK_BACKWARDS = -3
+
+    internal enum class Arrival {
+        NONE,
+        DIRECTLY_ALONG_SOURCE_LINK,
+        AT_TARGET_VERTEX,
+        ALONG_TARGET_LINK_FORWARDS,
+        ALONG_TARGET_LINK_BACKWARDS
+    }
+
+    /**
+     * Finds the shortest path via the given route points. As with
+     * pgr_withPointsVia (with strict => true), null is returned if any of the
+     * legs between consecutive route points cannot be routed.
+     *
+     * @param linkFilter optional set of indices of links that are allowed to
+     * be traversed. If null, all links of the graph are allowed.
+     * @param isGoalDirected whether A* search is applied instead of Dijkstra
+     * @param listener optional listener that is notified of the number of
+     * settled vertices for each leg
+     *
+     * @return the traversed link sections in the order of traversal. Consecutive
+     * sections on the same link in the same direction are merged.
+     */
+    fun findPathViaPoints(
+        graph: RoutingGraph,
+        points: List<GraphRoutePoint>,
+        linkFilter: BitSet?,
+        isGoalDirected: Boolean = false,
+        listener: LegSearchListener? = null
+    ): List<TraversedLinkSection>? =
+        findPathViaPoints(points) { from, to ->
+            graph.withSearchWorkspace { workspace ->
+                val leg: List<TraversedLinkSection>? = findLeg(graph, from, to, linkFilter, isGoalDirected, workspace)
+
+                listener?.onLegSearched(workspace.numberOfSettledVertices)
+
+                leg
+            }
+        }
+
+    /**
+     * Finds the shortest path via the given route points using the given
+     * search for single legs. Null is returned if any of the legs cannot be
+     * routed.
+     *
+     * @return the traversed link sections in the order of traversal. Consecutive
+     * sections on the same link in the same direction are merged.
+     */
+    fun findPathViaPoints(
+        points: List<GraphRoutePoint>,
+        legSearch: (from: GraphRoutePoint, to: GraphRoutePoint) -> List<TraversedLinkSection>?
+    ): List<TraversedLinkSection>? {
+        val sections: MutableList<TraversedLinkSection> = ArrayList()
+
+        points.zipWithNext().forEach { (from, to) ->
+            sections.addAll(legSearch(from, to) ?: return null)
+        }
+
+        return mergeConsecutiveSections(sections)
+    }
+
+    /**
+     * Finds the shortest path between two route points.
+     *
+     * @return the traversed link sections in the order of traversal or null
+     * if the target is not reachable
+     */
+    fun findLeg(
+        graph: RoutingGraph,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint,
+        linkFilter: BitSet?,
+        isGoalDirected: Boolean = false
+    ): List<TraversedLinkSection>? =
+        graph.withSearchWorkspace { workspace ->
+            findLeg(graph, from, to, linkFilter, isGoalDirected, workspace)
+        }
+
+    private fun findLeg(
+        graph: RoutingGraph,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint,
+        linkFilter: BitSet?,
+        isGoalDirected: Boolean,
+        workspace: GraphSearchWorkspace
+    ): List<TraversedLinkSection>? {
+        fun isForwardsTraversable(link: Int) = graph.getLinkCost(link) >= 0.0
+
+        fun isBackwardsTraversable(link: Int) = graph.getLinkReverseCost(link) >= 0.0
+
+        var bestCost: Double = getDirectTraversalCost(graph, from, to)
+        var arrival: Arrival = if (bestCost.isFinite()) Arrival.DIRECTLY_ALONG_SOURCE_LINK else Arrival.NONE
+
+        var targetVertex = -1
+        var vertexBeforeForwardsArrival = -1
+        var vertexBeforeBackwardsArrival = -1
+
+        when (to) {
+            is VertexRoutePoint -> targetVertex = to.vertex
+
+            is LinkRoutePoint -> {
+                if (isForwardsTraversable(to.link) && to.isVisitableForwards) {
+                    vertexBeforeForwardsArrival = graph.getLinkStartVertex(to.link)
+                }
+                if (isBackwardsTraversable(to.link) && to.isVisitableBackwards) {
+                    vertexBeforeBackwardsArrival = graph.getLinkEndVertex(to.link)
+                }
+            }
+        }
+
+        // The heuristic is the minimum of straight-line estimates towards the vertices via which the
+        // target can be arrived at. The minimum of consistent heuristics is consistent as well.
+        fun estimateRemainingCost(vertex: Int): Double {
+            if (!isGoalDirected) {
+                return 0.0
+            }
+
+            var estimate: Double = Double.POSITIVE_INFINITY
+
+            if (targetVertex >= 0) {
+                estimate = min(estimate, graph.estimateCost(vertex, targetVertex))
+            }
+            if (vertexBeforeForwardsArrival >= 0) {
+                estimate = min(estimate, graph.estimateCost(vertex, vertexBeforeForwardsArrival))
+            }
+            if (vertexBeforeBackwardsArrival >= 0) {
+                estimate = min(estimate, graph.estimateCost(vertex, vertexBeforeBackwardsArrival))
+            }
+
+            return if (estimate.isInfinite()) 0.0 else estimate
+        }
+
+        fun relax(
+            vertex: Int,
+            distance: Double,
+            parentEdge: Int
+        ) {
+            workspace.relax(vertex, distance, parentEdge, distance + estimateRemainingCost(vertex))
+        }
+
+        workspace.startNewSearch()
+
+        when (from) {
+            is VertexRoutePoint -> relax(from.vertex, 0.0, FROM_SOURCE_VERTEX)
+
+            is LinkRoutePoint -> {
+                val link: Int = from.link
+
+                if (isForwardsTraversable(link) && from.isVisitableForwards) {
+                    relax(
+                        graph.getLinkEndVertex(link),
+                        (1.0 - from.fraction) * graph.getLinkCost(link),
+                        FROM_SOURCE_LINK_FORWARDS
+                    )
+                }
+                if (isBackwardsTraversable(link) && from.isVisitableBackwards) {
+                    relax(
+                        graph.getLinkStartVertex(link),
+                        from.fraction * graph.getLinkReverseCost(link),
+                        FROM_SOURCE_LINK_BACKWARDS
+                    )
+                }
+            }
+        }
+
+        var arrivalVertex = -1
+
+        // Since arrival costs are non-negative and the heuristic does not overestimate, the search
+        // can be stopped as soon as the smallest priority in the queue is not less than the cost of
+        // the best path found so far.
+        while (!workspace.isQueueEmpty() && workspace.peekMinPriority() < bestCost) {
+            val vertex: Int = workspace.pollMin()
+            val distance: Double = workspace.getDistance(vertex)
+
+            if (vertex == targetVertex) {
+                bestCost = distance
+                arrival = Arrival.AT_TARGET_VERTEX
+                arrivalVertex = vertex
+                break
+            }
+            if (to is LinkRoutePoint) {
+                if (vertex == vertexBeforeForwardsArrival) {
+                    val cost: Double = distance + to.fraction * graph.getLinkCost(to.link)
+
+                    if (cost < bestCost) {
+                        bestCost = cost
+                        arrival = Arrival.ALONG_TARGET_LINK_FORWARDS
+                        arrivalVertex = vertex
+                    }
+                }
+                if (vertex == vertexBeforeBackwardsArrival) {
+                    val cost: Double = distance + (1.0 - to.fraction) * graph.getLinkReverseCost(to.link)
+
+                    if (cost < bestCost) {
+                        bestCost = cost
+                        arrival = Arrival.ALONG_TARGET_LINK_BACKWARDS
+                        arrivalVertex = vertex
+                    }
+                }
+            }
+
+            for (edge in graph.getFirstOutgoingEdge(vertex) until graph.getEndOfOutgoingEdges(vertex)) {
+                if (linkFilter != null && !linkFilter.get(graph.getEdgeLink(edge))) {
+                    continue
+                }
+
+                relax(graph.getEdgeTarget(edge), distance + graph.getEdgeCost(edge), edge)
+            }
+        }
+
+        return when (arrival) {
+            Arrival.NONE -> null
+
+            Arrival.DIRECTLY_ALONG_SOURCE_LINK -> createDirectTraversalSections(graph, from, to)
+
+            else -> {
+                val reversedEdges: MutableList<Int> = ArrayList()
+
+                var edge: Int = workspace.getParentEdge(arrivalVertex)
+
+                while (edge >= 0) {
+                    reversedEdges.add(edge)
+                    edge = workspace.getParentEdge(graph.getEdgeSource(edge))
+                }
+
+                createLegSections(graph, from, to, edge, reversedEdges.asReversed(), arrival)
+            }
+        }
+    }
+
+    /**
+     * Returns the cost of traversing directly from [from] to [to] along a
+     * single link or infinity if the points are not on the same link or
+     * cannot be connected without leaving the link.
+     */
+    internal fun getDirectTraversalCost(
+        graph: RoutingGraph,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint
+    ): Double {
+        if (from is LinkRoutePoint && to is LinkRoutePoint && from.link == to.link) {
+            val link: Int = from.link
+
+            if (to.fraction > from.fraction) {
+                if (graph.getLinkCost(link) >= 0.0 && from.isVisitableForwards && to.isVisitableForwards) {
+                    return (to.fraction - from.fraction) * graph.getLinkCost(link)
+                }
+            } else if (to.fraction < from.fraction) {
+                if (graph.getLinkReverseCost(link) >= 0.0 && from.isVisitableBackwards && to.isVisitableBackwards) {
+                    return (from.fraction - to.fraction) * graph.getLinkReverseCost(link)
+                }
+            }
+        }
+
+        return Double.POSITIVE_INFINITY
+    }
+
+    internal fun createDirectTraversalSections(
+        graph: RoutingGraph,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint
+    ): List<TraversedLinkSection> {
+        from as LinkRoutePoint
+        to as LinkRoutePoint
+
+        return listOf(
+            TraversedLinkSection(graph.getLinkId(from.link), to.fraction > from.fraction, from.fraction, to.fraction)
+        )
+    }
+
+    /**
+     * Creates the link sections of a leg that departs from [from] in the way
+     * indicated by [departureMarker], traverses the given graph edges in full
+     * and arrives at [to] in the way indicated by [arrival].
+     */
+    internal fun createLegSections(
+        graph: RoutingGraph,
+        from: GraphRoutePoint,
+        to: GraphRoutePoint,
+        departureMarker: Int,
+        edges: List<Int>,
+        arrival: Arrival
+    ): List<TraversedLinkSection> =
+        buildList {
+            if (from is LinkRoutePoint) {
+                when (departureMarker) {
+                    FROM_SOURCE_LINK_FORWARDS ->
+                        add(TraversedLinkSection(graph.getLinkId(from.link), true, from.fraction, 1.0))
+
+                    FROM_SOURCE_LINK_BACKWARDS ->
+                        add(TraversedLinkSection(graph.getLinkId(from.link), false, from.fraction, 0.0))
+                }
+            }
+
+            edges.forEach { pathEdge ->
+                add(
+                    TraversedLinkSection.fullTraversal(
+                        graph.getLinkId(graph.getEdgeLink(pathEdge)),
+                        graph.isEdgeForwards(pathEdge)
+                    )
+                )
+            }
+
+            if (to is LinkRoutePoint) {
+                when (arrival) {
+                    Arrival.ALONG_TARGET_LINK_FORWARDS ->
+                        add(TraversedLinkSection(graph.getLinkId(to.link), true, 0.0, to.fraction))
+
+                    Arrival.ALONG_TARGET_LINK_BACKWARDS ->
+                        add(TraversedLinkSection(graph.getLinkId(to.link), false, 1.0, to.fraction))
+
+                    else -> {}
+                }
+            }
+        }
+
+    /**
+     * Merges consecutive sections that continue traversal on the same link in
+     * the same direction from a point along the link (a visited virtual
+     * node). Zero-length sections are discarded. Consecutive full traversals
+     * of the same closed-loop link are retained as separate sections.
+     */
+    fun mergeConsecutiveSections(sections: List<TraversedLinkSection>): List<TraversedLinkSection> {
+        val merged: MutableList<TraversedLinkSection> = ArrayList(sections.size)
+
+        sections.forEach { section ->
+            if (section.startFraction == section.endFraction) {
+                return@forEach
+            }
+
+            val prev: TraversedLinkSection? = merged.lastOrNull()
+
+            if (prev != null &&
+                prev.linkId == section.linkId &&
+                prev.isTraversalForwards == section.isTraversalForwards &&
+                section.startFraction != 0.0 &&
+                section.startFraction != 1.0
+            ) {
+                merged[merged.lastIndex] = prev.copy(endFraction = section.endFraction)
+            } else {
+                merged.add(section)
+            }
+        }
+
+        return merged
+    }
+}
@@ -0,0 +1,13 @@
+package fi.hsl.jore4.mapmatching.repository.routing.spatial
+
+interface INodeSpatialIndexRepository {
+    /**
+     * Loads all infrastructure nodes along with the vehicle types by which
+     * they are reachable and builds an in-memory spatial index from them. A
+     * node is reachable by a vehicle type if it is an endpoint of at least one
+     * infrastructure link that is safely traversable by the vehicle type.
+     *
+     * @return the spatial index of infrastructure nodes
+     */
+    fun loadNodeSpatialIndex(): NodeSpatialIndex
+}
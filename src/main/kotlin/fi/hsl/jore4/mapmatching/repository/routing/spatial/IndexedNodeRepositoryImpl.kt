@@ -0,0 +1,73 @@
+package fi.hsl.jore4.mapmatching.repository.routing.spatial
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.NodeIdSequence
+import fi.hsl.jore4.mapmatching.model.NodeProximity
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
+import fi.hsl.jore4.mapmatching.repository.routing.INodeRepository
+import fi.hsl.jore4.mapmatching.repository.routing.NodeRepositoryImpl
+import fi.hsl.jore4.mapmatching.repository.routing.NodeSequenceCandidate
+import fi.hsl.jore4.mapmatching.repository.routing.SnapPointToNodesResult
+import fi.hsl.jore4.mapmatching.util.EtrsTm35FinProjection
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Point
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.context.annotation.Primary
+import org.springframework.stereotype.Repository
+
+/**
+ * A node repository that finds the closest infrastructure nodes by searching
+ * an in-memory KD-tree instead of querying the database. The eligibility of
+ * nodes with regard to vehicle type is precomputed, so no per-node lookup of
+ * incident links is needed. The input points are projected into EPSG:3067 in
+ * the JVM.
+ *
+ * Resolving the best node sequences is delegated to [NodeRepositoryImpl].
+ *
+ * This repository replaces [NodeRepositoryImpl] when enabled via
+ * [NodeSpatialIndexHolder.SPATIAL_INDEX_ENABLED_PROPERTY].
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = [NodeSpatialIndexHolder.SPATIAL_INDEX_ENABLED_PROPERTY], havingValue = "true")
+class IndexedNodeRepositoryImpl(
+    val nodeSpatialIndexHolder: NodeSpatialIndexHolder,
+    val databaseNodeRepository: NodeRepositoryImpl
+) : INodeRepository {
+    override fun findNClosestNodes(
+        points: List<Point<G2D>>,
+        vehicleType: VehicleType,
+        distanceInMeters: Double
+    ): Map<Int, SnapPointToNodesResult> {
+        if (points.isEmpty()) {
+            return emptyMap()
+        }
+
+        val index: NodeSpatialIndex = nodeSpatialIndexHolder.getIndex()
+        val projected = DoubleArray(2)
+
+        // one-based index
+        val result: MutableMap<Int, SnapPointToNodesResult> = LinkedHashMap()
+
+        points.forEachIndexed { pointIndex, point ->
+            EtrsTm35FinProjection.project(point.position.lon, point.position.lat, projected)
+
+            val nodes: List<NodeProximity> =
+                index.findNodesWithinDistance(projected[0], projected[1], vehicleType, distanceInMeters)
+
+            if (nodes.isNotEmpty()) {
+                result[pointIndex + 1] = SnapPointToNodesResult(point, distanceInMeters, nodes)
+            }
+        }
+
+        return result
+    }
+
+    override fun resolveBestNodeSequences(
+        nodeSequenceCandidates: List<NodeSequenceCandidate>,
+        vehicleType: VehicleType,
+        bufferAreaRestriction: BufferAreaRestriction?
+    ): Map<Pair<InfrastructureLinkId, InfrastructureLinkId>, NodeIdSequence> =
+        databaseNodeRepository.resolveBestNodeSequences(nodeSequenceCandidates, vehicleType, bufferAreaRestriction)
+}
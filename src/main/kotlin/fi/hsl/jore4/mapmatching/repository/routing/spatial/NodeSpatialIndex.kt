@@ -0,0 +1,130 @@
+package fi.hsl.jore4.mapmatching.repository.routing.spatial
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.NodeProximity
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import java.util.BitSet
+import kotlin.math.sqrt
+
+/**
+ * An immutable in-memory spatial index of infrastructure nodes in EPSG:3067
+ * coordinate system. The index is a static KD-tree stored implicitly in
+ * primitive arrays: the nodes are sorted so that the median of every range
+ * (split alternately by x and y) is located in the middle of the range.
+ * Ranges of at most [LEAF_SIZE] nodes are left unsorted.
+ *
+ * For every vehicle type, the nodes that appear as an endpoint of at least one
+ * infrastructure link safely traversable by the vehicle type are marked in a
+ * [BitSet] over node positions.
+ *
+ * Instances are created with [NodeSpatialIndexBuilder]. The index is safe for
+ * concurrent reading.
+ */
+class NodeSpatialIndex internal constructor(
+    private val nodeIds: LongArray,
+    private val coordinates: DoubleArray,
+    private val nodesByVehicleType: Map<VehicleType, BitSet>
+) {
+    val numberOfNodes: Int
+        get() = nodeIds.size
+
+    /**
+     * An estimate of the heap memory held by the primitive arrays of the index.
+     */
+    val estimatedSizeInBytes: Long
+        get() = 8L * (nodeIds.size + coordinates.size) + nodesByVehicleType.values.sumOf { it.size() / 8L }
+
+    /**
+     * Finds the nodes located within the given distance from the given point.
+     * Only nodes that are endpoints of infrastructure links safely traversable
+     * by the given vehicle type are considered.
+     *
+     * @param x the x coordinate of the point in EPSG:3067
+     * @param y the y coordinate of the point in EPSG:3067
+     * @param vehicleType vehicle type constraint for nodes
+     * @param distanceInMeters the maximum distance (inclusive) of nodes from
+     * the point
+     *
+     * @return the nodes ordered by ascending distance
+     */
+    fun findNodesWithinDistance(
+        x: Double,
+        y: Double,
+        vehicleType: VehicleType,
+        distanceInMeters: Double
+    ): List<NodeProximity> {
+        val eligibleNodes: BitSet = nodesByVehicleType[vehicleType] ?: return emptyList()
+
+        if (numberOfNodes == 0) {
+            return emptyList()
+        }
+
+        val result: MutableList<NodeProximity> = ArrayList()
+
+        fun visit(position: Int) {
+            if (eligibleNodes[position]) {
+                val dx: Double = coordinates[2 * position] - x
+                val dy: Double = coordinates[2 * position + 1] - y
+                val distance: Double = sqrt(dx * dx + dy * dy)
+
+                if (distance <= distanceInMeters) {
+                    result.add(NodeProximity(InfrastructureNodeId(nodeIds[position]), distance))
+                }
+            }
+        }
+
+        // Each stack frame consists of the left and right bound of a range and the split axis.
+        var stack = IntArray(3 * 32)
+        var stackSize = 0
+
+        fun push(
+            left: Int,
+            right: Int,
+            axis: Int
+        ) {
+            if (stackSize + 3 > stack.size) {
+                stack = stack.copyOf(2 * stack.size)
+            }
+
+            stack[stackSize++] = left
+            stack[stackSize++] = right
+            stack[stackSize++] = axis
+        }
+
+        push(0, numberOfNodes - 1, 0)
+
+        while (stackSize > 0) {
+            val axis: Int = stack[--stackSize]
+            val right: Int = stack[--stackSize]
+            val left: Int = stack[--stackSize]
+
+            if (right - left <= LEAF_SIZE) {
+                for (position in left..right) {
+                    visit(position)
+                }
+                continue
+            }
+
+            val middle: Int = (left + right) ushr 1
+            val splitValue: Double = coordinates[2 * middle + axis]
+            val queryValue: Double = if (axis == 0) x else y
+
+            visit(middle)
+
+            if (queryValue - distanceInMeters <= splitValue) {
+                push(left, middle - 1, 1 - axis)
+            }
+            if (queryValue + distanceInMeters >= splitValue) {
+                push(middle + 1, right, 1 - axis)
+            }
+        }
+
+        result.sortBy(NodeProximity::distanceToNode)
+
+        return result
+    }
+
+    companion object {
+        const val LEAF_SIZE = 64
+    }
+}
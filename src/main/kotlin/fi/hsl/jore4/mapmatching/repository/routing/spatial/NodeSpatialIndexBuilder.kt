@@ -0,0 +1,180 @@
+package fi.hsl.jore4.mapmatching.repository.routing.spatial
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import java.util.BitSet
+
+/**
+ * Collects infrastructure nodes into growable primitive arrays and builds an
+ * immutable [NodeSpatialIndex] from them. The nodes must be added in strictly
+ * ascending order of their identifiers. The vehicle types by which nodes are
+ * reachable can be set after the nodes have been added.
+ */
+class NodeSpatialIndexBuilder(
+    initialCapacity: Int = 1024
+) {
+    private var nodeIds = LongArray(initialCapacity)
+    private var coordinates = DoubleArray(2 * initialCapacity)
+
+    private var numberOfNodes = 0
+
+    private val nodesByVehicleType: MutableMap<VehicleType, BitSet> = HashMap()
+
+    /**
+     * @param x the x coordinate of the node in EPSG:3067
+     * @param y the y coordinate of the node in EPSG:3067
+     */
+    fun addNode(
+        nodeId: Long,
+        x: Double,
+        y: Double
+    ): NodeSpatialIndexBuilder {
+        require(numberOfNodes == 0 || nodeId > nodeIds[numberOfNodes - 1]) {
+            "Nodes must be added in strictly ascending order of identifiers: $nodeId"
+        }
+
+        if (numberOfNodes == nodeIds.size) {
+            val newCapacity: Int = nodeIds.size * 2
+
+            nodeIds = nodeIds.copyOf(newCapacity)
+            coordinates = coordinates.copyOf(2 * newCapacity)
+        }
+
+        nodeIds[numberOfNodes] = nodeId
+        coordinates[2 * numberOfNodes] = x
+        coordinates[2 * numberOfNodes + 1] = y
+
+        numberOfNodes++
+
+        return this
+    }
+
+    /**
+     * Marks the given node as an endpoint of an infrastructure link that is
+     * safely traversable by the given vehicle type. Nodes that have not been
+     * added are ignored.
+     */
+    fun addEligibleVehicleType(
+        nodeId: Long,
+        vehicleType: VehicleType
+    ): NodeSpatialIndexBuilder {
+        val nodeIndex: Int = nodeIds.binarySearch(nodeId, 0, numberOfNodes)
+
+        if (nodeIndex >= 0) {
+            nodesByVehicleType.getOrPut(vehicleType) { BitSet(numberOfNodes) }.set(nodeIndex)
+        }
+
+        return this
+    }
+
+    fun build(): NodeSpatialIndex {
+        val sortedNodeIds: LongArray = nodeIds.copyOf(numberOfNodes)
+        val sortedCoordinates: DoubleArray = coordinates.copyOf(2 * numberOfNodes)
+
+        // The original position of the node at each position of the sorted arrays
+        val originalPositions = IntArray(numberOfNodes) { it }
+
+        KdSorter(sortedNodeIds, sortedCoordinates, originalPositions).sort(0, numberOfNodes - 1, 0)
+
+        val sortedNodesByVehicleType: Map<VehicleType, BitSet> =
+            nodesByVehicleType.mapValues { (_, nodes) ->
+                BitSet(numberOfNodes).also { sortedNodes ->
+                    for (position in 0 until numberOfNodes) {
+                        if (nodes[originalPositions[position]]) {
+                            sortedNodes.set(position)
+                        }
+                    }
+                }
+            }
+
+        return NodeSpatialIndex(sortedNodeIds, sortedCoordinates, sortedNodesByVehicleType)
+    }
+
+    /**
+     * Sorts the nodes into the implicit KD-tree order expected by
+     * [NodeSpatialIndex].
+     */
+    private class KdSorter(
+        private val nodeIds: LongArray,
+        private val coordinates: DoubleArray,
+        private val originalPositions: IntArray
+    ) {
+        fun sort(
+            left: Int,
+            right: Int,
+            axis: Int
+        ) {
+            if (right - left <= NodeSpatialIndex.LEAF_SIZE) {
+                return
+            }
+
+            val middle: Int = (left + right) ushr 1
+
+            select(middle, left, right, axis)
+
+            sort(left, middle - 1, 1 - axis)
+            sort(middle + 1, right, 1 - axis)
+        }
+
+        /**
+         * Rearranges the given range so that the k-th smallest value (on the
+         * given axis) is located at position k, smaller or equal values before
+         * it and greater or equal values after it.
+         */
+        private fun select(
+            k: Int,
+            left: Int,
+            right: Int,
+            axis: Int
+        ) {
+            var low: Int = left
+            var high: Int = right
+
+            while (high > low) {
+                val pivot: Double = value((low + high) ushr 1, axis)
+
+                var i: Int = low
+                var j: Int = high
+
+                while (i <= j) {
+                    while (value(i, axis) < pivot) i++
+                    while (value(j, axis) > pivot) j--
+
+                    if (i <= j) {
+                        swap(i++, j--)
+                    }
+                }
+
+                when {
+                    k <= j -> high = j
+                    k >= i -> low = i
+                    else -> return
+                }
+            }
+        }
+
+        private fun value(
+            position: Int,
+            axis: Int
+        ): Double = coordinates[2 * position + axis]
+
+        private fun swap(
+            i: Int,
+            j: Int
+        ) {
+            val nodeId: Long = nodeIds[i]
+            nodeIds[i] = nodeIds[j]
+            nodeIds[j] = nodeId
+
+            val x: Double = coordinates[2 * i]
+            val y: Double = coordinates[2 * i + 1]
+            coordinates[2 * i] = coordinates[2 * j]
+            coordinates[2 * i + 1] = coordinates[2 * j + 1]
+            coordinates[2 * j] = x
+            coordinates[2 * j + 1] = y
+
+            val originalPosition: Int = originalPositions[i]
+            originalPositions[i] = originalPositions[j]
+            originalPositions[j] = originalPosition
+        }
+    }
+}
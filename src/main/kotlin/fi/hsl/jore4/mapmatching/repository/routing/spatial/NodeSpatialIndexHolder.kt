@@ -0,0 +1,65 @@
+package fi.hsl.jore4.mapmatching.repository.routing.spatial
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Component
+import kotlin.system.measureTimeMillis
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Holds the in-memory spatial index of infrastructure nodes. The index is
+ * loaded when the application has started. It is loaded on demand in case it
+ * is requested before the startup loading has completed. The index can be
+ * re-built via [reload], which is triggered automatically when a change in
+ * the network version is detected.
+ *
+ * This component is active only when finding closest nodes via the spatial
+ * index is enabled via [SPATIAL_INDEX_ENABLED_PROPERTY].
+ */
+@Component
+@ConditionalOnProperty(name = [NodeSpatialIndexHolder.SPATIAL_INDEX_ENABLED_PROPERTY], havingValue = "true")
+class NodeSpatialIndexHolder(
+    val nodeSpatialIndexRepository: INodeSpatialIndexRepository
+) {
+    @Volatile
+    private var index: NodeSpatialIndex? = null
+
+    fun getIndex(): NodeSpatialIndex = index ?: loadIfAbsent()
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun loadOnStartup() {
+        getIndex()
+    }
+
+    /**
+     * Replaces the current index with one built from the current content of
+     * the database.
+     */
+    @EventListener(NetworkVersionChangedEvent::class)
+    fun reload() {
+        index = load()
+    }
+
+    @Synchronized
+    private fun loadIfAbsent(): NodeSpatialIndex = index ?: load().also { index = it }
+
+    private fun load(): NodeSpatialIndex {
+        val loaded: NodeSpatialIndex
+        val elapsedMillis: Long = measureTimeMillis { loaded = nodeSpatialIndexRepository.loadNodeSpatialIndex() }
+
+        LOGGER.info {
+            "Loaded spatial index of infrastructure nodes in $elapsedMillis ms: " +
+                "${loaded.numberOfNodes} nodes, ~${loaded.estimatedSizeInBytes / 1024} KiB"
+        }
+
+        return loaded
+    }
+
+    companion object {
+        const val SPATIAL_INDEX_ENABLED_PROPERTY = "mapmatching.node-snapping.spatial-index.enabled"
+    }
+}
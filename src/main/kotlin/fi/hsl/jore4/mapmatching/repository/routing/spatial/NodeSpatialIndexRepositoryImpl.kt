@@ -0,0 +1,52 @@
+package fi.hsl.jore4.mapmatching.repository.routing.spatial
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.sql.ResultSet
+
+@Repository
+class NodeSpatialIndexRepositoryImpl(
+    val jdbcTemplate: NamedParameterJdbcTemplate
+) : INodeSpatialIndexRepository {
+    @Transactional(readOnly = true)
+    override fun loadNodeSpatialIndex(): NodeSpatialIndex {
+        val builder = NodeSpatialIndexBuilder(64 * 1024)
+
+        jdbcTemplate.jdbcOperations.query(
+            LOAD_NODES_SQL,
+            RowCallbackHandler { rs: ResultSet ->
+                builder.addNode(rs.getLong("id"), rs.getDouble("x"), rs.getDouble("y"))
+            }
+        )
+
+        jdbcTemplate.jdbcOperations.query(
+            LOAD_NODE_VEHICLE_TYPES_SQL,
+            RowCallbackHandler { rs: ResultSet ->
+                VehicleType.from(rs.getString("vehicle_type"))?.let { vehicleType ->
+                    builder.addEligibleVehicleType(rs.getLong("node_id"), vehicleType)
+                }
+            }
+        )
+
+        return builder.build()
+    }
+
+    companion object {
+        // Nodes are ordered by their identifiers as required by NodeSpatialIndexBuilder.
+        private val LOAD_NODES_SQL =
+            """
+            SELECT node.id, ST_X(node.the_geom) AS x, ST_Y(node.the_geom) AS y
+            FROM routing.infrastructure_link_vertices_pgr node
+            ORDER BY node.id
+            """.trimIndent()
+
+        private val LOAD_NODE_VEHICLE_TYPES_SQL =
+            """
+            SELECT node.id AS node_id, node.vehicle_type
+            FROM routing.infrastructure_link_vertex_reachable_by_vehicle_type node
+            """.trimIndent()
+    }
+}
@@ -0,0 +1,12 @@
+package fi.hsl.jore4.mapmatching.service.common
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+
+interface INetworkVersionProbe {
+    /**
+     * The version of the infrastructure network the results of the service
+     * are based on. Results computed with different network versions must not
+     * be mixed.
+     */
+    val currentVersion: NetworkVersion
+}
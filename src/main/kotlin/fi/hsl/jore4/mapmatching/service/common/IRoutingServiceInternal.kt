@@ -61,6 +61,10 @@ interface IRoutingServiceInternal {
      * @param bufferAreaRestriction contains data with which geometrical
      * restriction for the target set of infrastructure links can be defined
      * while finding route through infrastructure network.
+     * @param matchingAlgorithm the map-matching algorithm (see
+     * [MatchingPipelineMetrics]) under which the duration of routing is
+     * recorded. If null, e.g. when called from the route API, the duration is
+     * not recorded.
      *
      * @return a list of route links that together constitute the resulting
      * route. Each route link contains a path element that consists of a
@@ -71,6 +75,7 @@ interface IRoutingServiceInternal {
         points: List<PgRoutingPoint>,
         vehicleType: VehicleType,
         simplifyConsecutiveClosedLoopTraversals: Boolean,
-        bufferAreaRestriction: BufferAreaRestriction? = null
+        bufferAreaRestriction: BufferAreaRestriction? = null,
+        matchingAlgorithm: String? = null
     ): List<RouteLink>
 }
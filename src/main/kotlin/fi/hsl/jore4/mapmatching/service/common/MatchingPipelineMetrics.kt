@@ -0,0 +1,174 @@
+package fi.hsl.jore4.mapmatching.service.common
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import org.springframework.stereotype.Component
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records metrics of the stages of the map-matching pipeline tagged by
+ * algorithm and vehicle type:
+ * - the duration of each [Stage] as a timer
+ * - the number of route candidates tried per matching attempt as a histogram
+ * - the outcomes of matching with respect to falling back to the
+ *   via-graph-vertices algorithm as a counter tagged by [FallbackMode]
+ * - the head start of the speculative fallback as a timer
+ *
+ * The metrics are exposed through the metrics endpoint of actuator.
+ */
+@Component
+class MatchingPipelineMetrics(
+    val meterRegistry: MeterRegistry
+) {
+    enum class Stage(
+        val value: String
+    ) {
+        TERMINUS_LINK_RESOLUTION("terminus_link_resolution"),
+        STOP_MATCHING("stop_matching"),
+        JUNCTION_MATCHING("junction_matching"),
+        BUFFER_AREA_RESOLUTION("buffer_area_resolution"),
+        CANDIDATE_GENERATION("candidate_generation"),
+        NODE_SEQUENCE_RESOLUTION("node_sequence_resolution"),
+
+        // A single routing query, i.e. one pgRouting SQL call or in-memory graph search
+        ROUTING("routing"),
+
+        CLOSED_LOOP_POST_PROCESSING("closed_loop_post_processing"),
+        RESPONSE_CREATION("response_creation")
+    }
+
+    enum class FallbackOutcome(
+        val value: String
+    ) {
+        // The primary algorithm succeeded.
+        NOT_NEEDED("not_needed"),
+
+        // The primary algorithm failed and falling back is disabled.
+        DISABLED("disabled"),
+
+        // The primary algorithm failed and the fallback succeeded.
+        FALLBACK_SUCCEEDED("fallback_succeeded"),
+
+        // Both the primary algorithm and the fallback failed.
+        FALLBACK_FAILED("fallback_failed")
+    }
+
+    enum class FallbackMode(
+        val value: String
+    ) {
+        // The fallback is started after the primary algorithm has failed.
+        SEQUENTIAL("sequential"),
+
+        // The fallback is started concurrently with the primary algorithm.
+        SPECULATIVE("speculative")
+    }
+
+    private val stageTimers: ConcurrentHashMap<Triple<Stage, String, VehicleType>, Timer> = ConcurrentHashMap()
+
+    private val candidateSummaries: ConcurrentHashMap<Triple<String, VehicleType, Boolean>, DistributionSummary> =
+        ConcurrentHashMap()
+
+    /**
+     * Runs the given block and records its duration as the given stage even
+     * if the block throws an exception.
+     */
+    fun <T> time(
+        stage: Stage,
+        algorithm: String,
+        vehicleType: VehicleType,
+        block: () -> T
+    ): T {
+        val startTime: Long = System.nanoTime()
+
+        try {
+            return block()
+        } finally {
+            getStageTimer(stage, algorithm, vehicleType).record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS)
+        }
+    }
+
+    /**
+     * Records the number of route candidates tried in priority order until
+     * the first one succeeded or, in case of failure, all of them were tried.
+     */
+    fun recordCandidatesTried(
+        algorithm: String,
+        vehicleType: VehicleType,
+        numberOfCandidates: Int,
+        succeeded: Boolean
+    ) {
+        candidateSummaries
+            .computeIfAbsent(Triple(algorithm, vehicleType, succeeded)) {
+                DistributionSummary
+                    .builder(CANDIDATES_TRIED_METRIC)
+                    .description("The number of route candidates tried within a single map-matching attempt")
+                    .tag("algorithm", algorithm)
+                    .tag("vehicle_type", vehicleType.value)
+                    .tag("result", if (succeeded) "success" else "failure")
+                    .serviceLevelObjectives(*CANDIDATE_HISTOGRAM_BUCKETS)
+                    .register(meterRegistry)
+            }.record(numberOfCandidates.toDouble())
+    }
+
+    fun recordFallbackOutcome(
+        vehicleType: VehicleType,
+        mode: FallbackMode,
+        outcome: FallbackOutcome
+    ) {
+        Counter
+            .builder(FALLBACK_METRIC)
+            .description("The outcomes of map-matching with respect to falling back to via-graph-vertices algorithm")
+            .tag("mode", mode.value)
+            .tag("outcome", outcome.value)
+            .tag("vehicle_type", vehicleType.value)
+            .register(meterRegistry)
+            .increment()
+    }
+
+    /**
+     * Records the time the speculative fallback had been running when the
+     * primary algorithm failed, i.e. the time saved by speculation.
+     */
+    fun recordFallbackHeadStart(
+        vehicleType: VehicleType,
+        headStartNanos: Long
+    ) {
+        Timer
+            .builder(FALLBACK_HEAD_START_METRIC)
+            .description("The time the speculative fallback had been running when the primary algorithm failed")
+            .tag("vehicle_type", vehicleType.value)
+            .register(meterRegistry)
+            .record(headStartNanos, TimeUnit.NANOSECONDS)
+    }
+
+    private fun getStageTimer(
+        stage: Stage,
+        algorithm: String,
+        vehicleType: VehicleType
+    ): Timer =
+        stageTimers.computeIfAbsent(Triple(stage, algorithm, vehicleType)) {
+            Timer
+                .builder(STAGE_METRIC)
+                .description("The duration of a stage of the map-matching pipeline")
+                .tag("stage", stage.value)
+                .tag("algorithm", algorithm)
+                .tag("vehicle_type", vehicleType.value)
+                .register(meterRegistry)
+        }
+
+    companion object {
+        const val ALGORITHM_VIA_GRAPH_EDGES = "via-graph-edges"
+        const val ALGORITHM_VIA_GRAPH_VERTICES = "via-graph-vertices"
+
+        const val STAGE_METRIC = "mapmatching.matching.stage"
+        const val CANDIDATES_TRIED_METRIC = "mapmatching.matching.candidates.tried"
+        const val FALLBACK_METRIC = "mapmatching.matching.fallback"
+        const val FALLBACK_HEAD_START_METRIC = "mapmatching.matching.fallback.head.start"
+
+        private val CANDIDATE_HISTOGRAM_BUCKETS = doubleArrayOf(1.0, 2.0, 3.0, 5.0, 10.0, 20.0, 50.0)
+    }
+}
@@ -0,0 +1,111 @@
+package fi.hsl.jore4.mapmatching.service.common
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import fi.hsl.jore4.mapmatching.repository.infrastructure.INetworkVersionRepository
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.context.event.EventListener
+import org.springframework.core.Ordered
+import org.springframework.core.annotation.Order
+import org.springframework.dao.DataAccessException
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import kotlin.system.measureTimeMillis
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Polls the network version from the database at the interval given by
+ * [CHECK_INTERVAL_PROPERTY]. When a change is detected, a
+ * [NetworkVersionChangedEvent] is published. The event listeners are run
+ * synchronously before [currentVersion] is switched to the new version.
+ * Hence, caches and in-memory indices subscribing to the event have been
+ * reloaded by the time results are associated with the new version.
+ *
+ * The pgRouting edge table must be refreshed whenever the topology of the
+ * network is modified, e.g. by a routine import, otherwise pgRouting and the
+ * in-memory routing graph would route on stale edges. A stale edge table is
+ * refreshed on startup and whenever it is detected while polling. The refresh
+ * is done before the version change is published so that the listeners
+ * reload from the refreshed table. If the refresh fails, it is retried on the
+ * next poll.
+ */
+@Component
+class NetworkVersionProbeImpl(
+    val networkVersionRepository: INetworkVersionRepository,
+    val eventPublisher: ApplicationEventPublisher
+) : INetworkVersionProbe {
+    @Volatile
+    private var version: NetworkVersion? = null
+
+    override val currentVersion: NetworkVersion
+        get() = version ?: loadIfAbsent()
+
+    @EventListener(ApplicationReadyEvent::class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    fun refreshStaleEdgeTableOnStartup() = checkForChange()
+
+    @Scheduled(
+        initialDelayString = "\${$CHECK_INTERVAL_PROPERTY:30s}",
+        fixedDelayString = "\${$CHECK_INTERVAL_PROPERTY:30s}"
+    )
+    fun poll() {
+        try {
+            checkForChange()
+        } catch (ex: DataAccessException) {
+            LOGGER.warn(ex) { "Failed to check infrastructure network version" }
+        }
+    }
+
+    @Synchronized
+    fun checkForChange() {
+        val newVersion: NetworkVersion = refreshEdgeTableIfStale(networkVersionRepository.getNetworkVersion())
+        val previousVersion: NetworkVersion? = version
+
+        // A refresh that failed earlier may have succeeded without changing the version.
+        if (previousVersion != null && previousVersion != newVersion) {
+            LOGGER.info {
+                "Infrastructure network version changed from $previousVersion to $newVersion " +
+                    "(updated at ${newVersion.updatedAt})"
+            }
+
+            eventPublisher.publishEvent(NetworkVersionChangedEvent(previousVersion, newVersion))
+        }
+
+        version = newVersion
+    }
+
+    /**
+     * Refreshes the edge table if it is stale and returns the version
+     * resulting from the refresh. If the refresh fails, the given stale
+     * version is returned.
+     */
+    private fun refreshEdgeTableIfStale(networkVersion: NetworkVersion): NetworkVersion {
+        if (!networkVersion.isEdgeTableStale) {
+            return networkVersion
+        }
+
+        LOGGER.info { "The pgRouting edge table is stale after modifications to the network, refreshing it..." }
+
+        try {
+            val elapsedMillis: Long = measureTimeMillis { networkVersionRepository.refreshEdgeTable() }
+
+            LOGGER.info { "Refreshed the pgRouting edge table in $elapsedMillis ms" }
+        } catch (ex: DataAccessException) {
+            LOGGER.error(ex) { "Failed to refresh the pgRouting edge table, routing on stale edges until next attempt" }
+            return networkVersion
+        }
+
+        return networkVersionRepository.getNetworkVersion()
+    }
+
+    @Synchronized
+    private fun loadIfAbsent(): NetworkVersion =
+        version ?: networkVersionRepository.getNetworkVersion().also { version = it }
+
+    companion object {
+        const val CHECK_INTERVAL_PROPERTY = "mapmatching.network-version.check-interval"
+    }
+}
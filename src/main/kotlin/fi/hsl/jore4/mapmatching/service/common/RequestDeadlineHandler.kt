@@ -0,0 +1,113 @@
+package fi.hsl.jore4.mapmatching.service.common
+
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.util.RequestDeadline
+import io.github.oshai.kotlinlogging.KotlinLogging
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.dao.QueryTimeoutException
+import org.springframework.stereotype.Component
+import org.springframework.transaction.TransactionTimedOutException
+import java.time.Duration
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Runs request processing within a [RequestDeadline] and converts a deadline
+ * overrun to a timeout response.
+ *
+ * The timeout of a request is resolved from the optional timeout requested by
+ * the client and the configured maximum timeout ([TIMEOUT_PROPERTY]), the
+ * smaller one being applied. A non-positive configured timeout means that only
+ * client-requested timeouts are applied.
+ *
+ * Timeouts are counted in metrics tagged by the name of the API.
+ */
+@Component
+class RequestDeadlineHandler(
+    val meterRegistry: MeterRegistry,
+    @param:Value("\${$TIMEOUT_PROPERTY:0}") val configuredTimeout: Duration
+) {
+    /**
+     * Resolves the timeout for a request.
+     *
+     * @param requestedTimeoutInMillis the timeout requested by the client, if
+     * any. Non-positive values are ignored.
+     *
+     * @return the timeout or null if the request is not to be restricted by
+     * a deadline
+     */
+    fun resolveTimeout(requestedTimeoutInMillis: Long?): Duration? {
+        val requestedTimeout: Duration? =
+            requestedTimeoutInMillis
+                ?.takeIf { it > 0 }
+                ?.let(Duration::ofMillis)
+
+        val maxTimeout: Duration? = configuredTimeout.takeIf { !it.isNegative && !it.isZero }
+
+        return listOfNotNull(requestedTimeout, maxTimeout).minOrNull()
+    }
+
+    /**
+     * Runs the given block within a deadline after the given timeout. If the
+     * deadline is exceeded (i.e. a database statement is cancelled due to
+     * timeout or the processing fails after the deadline has passed), a
+     * timeout response is returned instead.
+     *
+     * @param apiName the name of the API used as a metric tag
+     * @param timeout the timeout for the block or null for no deadline
+     * @param deadline the deadline to apply. Can be given explicitly in order
+     * to be able to cancel it from another thread.
+     */
+    fun runWithinDeadline(
+        apiName: String,
+        timeout: Duration?,
+        deadline: RequestDeadline? = timeout?.let(RequestDeadline::after),
+        block: () -> RoutingResponse
+    ): RoutingResponse {
+        if (timeout == null || deadline == null) {
+            return block()
+        }
+
+        val response: RoutingResponse =
+            try {
+                RequestDeadline.runWithin(deadline, block)
+            } catch (ex: QueryTimeoutException) {
+                return onTimeout(apiName, timeout, ex)
+            } catch (ex: TransactionTimedOutException) {
+                return onTimeout(apiName, timeout, ex)
+            } catch (ex: Exception) {
+                if (deadline.isExpired || deadline.isCancelled) {
+                    return onTimeout(apiName, timeout, ex)
+                }
+                throw ex
+            }
+
+        // Failures may also be caused by timeouts caught within the services.
+        return if (response is RoutingResponse.RoutingFailureDTO && (deadline.isExpired || deadline.isCancelled)) {
+            onTimeout(apiName, timeout, null)
+        } else {
+            response
+        }
+    }
+
+    private fun onTimeout(
+        apiName: String,
+        timeout: Duration,
+        cause: Exception?
+    ): RoutingResponse {
+        LOGGER.warn { "Request to $apiName API exceeded its deadline of ${timeout.toMillis()} ms: ${cause?.message}" }
+
+        meterRegistry.counter(TIMEOUT_COUNTER, "api", apiName).increment()
+
+        return RoutingResponse.timeout(timeout.toMillis())
+    }
+
+    companion object {
+        const val TIMEOUT_PROPERTY = "mapmatching.request.timeout"
+
+        const val TIMEOUT_HEADER = "X-Request-Timeout"
+
+        const val TIMEOUT_COUNTER = "mapmatching.request.timeouts"
+    }
+}
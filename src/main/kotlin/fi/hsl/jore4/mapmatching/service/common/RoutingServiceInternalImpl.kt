@@ -8,12 +8,22 @@ import fi.hsl.jore4.mapmatching.repository.routing.IRoutingRepository
 import fi.hsl.jore4.mapmatching.repository.routing.PgRoutingPoint
 import fi.hsl.jore4.mapmatching.repository.routing.RealNode
 import fi.hsl.jore4.mapmatching.repository.routing.RouteLink
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Companion.ALGORITHM_VIA_GRAPH_VERTICES
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Stage
 import fi.hsl.jore4.mapmatching.util.InternalService
 import org.springframework.transaction.annotation.Transactional
 
+/**
+ * The duration of each routing query and closed-loop post-processing is
+ * recorded via [MatchingPipelineMetrics]. Routing via nodes is tagged as
+ * via-graph-vertices algorithm. Routing via points on links is recorded only
+ * when the calling map-matching algorithm is given, so that route API calls
+ * are not mixed with map-matching.
+ */
 @InternalService
 class RoutingServiceInternalImpl(
-    val routingRepository: IRoutingRepository
+    val routingRepository: IRoutingRepository,
+    val pipelineMetrics: MatchingPipelineMetrics
 ) : IRoutingServiceInternal {
     @Transactional(readOnly = true, noRollbackFor = [RuntimeException::class])
     override fun findRouteViaNodes(
@@ -23,20 +33,23 @@ class RoutingServiceInternalImpl(
         fractionalEndLocationOnLastLink: Double,
         bufferAreaRestriction: BufferAreaRestriction?
     ): List<RouteLink> =
-        routingRepository.findRouteViaNetworkNodes(
-            nodeIdSequence,
-            vehicleType,
-            fractionalStartLocationOnFirstLink,
-            fractionalEndLocationOnLastLink,
-            bufferAreaRestriction
-        )
+        pipelineMetrics.time(Stage.ROUTING, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+            routingRepository.findRouteViaNetworkNodes(
+                nodeIdSequence,
+                vehicleType,
+                fractionalStartLocationOnFirstLink,
+                fractionalEndLocationOnLastLink,
+                bufferAreaRestriction
+            )
+        }
 
     @Transactional(readOnly = true, noRollbackFor = [RuntimeException::class])
     override fun findRouteViaPointsOnLinks(
         points: List<PgRoutingPoint>,
         vehicleType: VehicleType,
         simplifyConsecutiveClosedLoopTraversals: Boolean,
-        bufferAreaRestriction: BufferAreaRestriction?
+        bufferAreaRestriction: BufferAreaRestriction?,
+        matchingAlgorithm: String?
     ): List<RouteLink> {
         return when (points.all { it is RealNode }) {
             true -> {
@@ -47,19 +60,36 @@ class RoutingServiceInternalImpl(
 
                 // Closed-loop post-processing is not relevant when find route via network nodes.
 
-                routingRepository.findRouteViaNetworkNodes(nodeIdSequence, vehicleType, bufferAreaRestriction)
+                timeIfMatching(Stage.ROUTING, matchingAlgorithm, vehicleType) {
+                    routingRepository.findRouteViaNetworkNodes(nodeIdSequence, vehicleType, bufferAreaRestriction)
+                }
             }
 
             false -> {
                 val routeLinks: List<RouteLink> =
-                    routingRepository.findRouteViaPointsOnLinks(points, vehicleType, bufferAreaRestriction)
+                    timeIfMatching(Stage.ROUTING, matchingAlgorithm, vehicleType) {
+                        routingRepository.findRouteViaPointsOnLinks(points, vehicleType, bufferAreaRestriction)
+                    }
 
                 return if (simplifyConsecutiveClosedLoopTraversals) {
-                    ClosedLoopPostProcessor.simplifyConsecutiveClosedLoopTraversals(routeLinks)
+                    timeIfMatching(Stage.CLOSED_LOOP_POST_PROCESSING, matchingAlgorithm, vehicleType) {
+                        ClosedLoopPostProcessor.simplifyConsecutiveClosedLoopTraversals(routeLinks)
+                    }
                 } else {
                     routeLinks
                 }
             }
         }
     }
+
+    private fun <T> timeIfMatching(
+        stage: Stage,
+        matchingAlgorithm: String?,
+        vehicleType: VehicleType,
+        block: () -> T
+    ): T =
+        when (matchingAlgorithm) {
+            null -> block()
+            else -> pipelineMetrics.time(stage, matchingAlgorithm, vehicleType, block)
+        }
 }
@@ -0,0 +1,16 @@
+package fi.hsl.jore4.mapmatching.service.common.response
+
+/**
+ * The result of map-matching one route within a batch.
+ *
+ * @property index the zero-based position of the route within the batch
+ * @property routeId the identifier of the route, if given in the request
+ * @property durationInMillis the time spent in matching the route
+ * @property response the routing response for the route
+ */
+data class BatchMatchResultDTO(
+    val index: Int,
+    val routeId: String?,
+    val durationInMillis: Long,
+    val response: RoutingResponse
+)
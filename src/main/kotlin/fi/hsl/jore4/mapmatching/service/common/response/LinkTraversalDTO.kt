@@ -21,7 +21,7 @@ data class LinkTraversalDTO(
                 link.infrastructureLinkId.value,
                 link.externalLinkRef,
                 link.isTraversalForwards,
-                link.linkGeometry,
+                link.linkGeometry.toLineString(),
                 link.traversedDistance,
                 link.linkLength,
                 link.infrastructureLinkName
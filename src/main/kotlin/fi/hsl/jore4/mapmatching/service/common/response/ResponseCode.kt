@@ -4,5 +4,6 @@ enum class ResponseCode {
     Ok,
     InvalidUrl,
     InvalidValue,
-    NoSegment
+    NoSegment,
+    Timeout
 }
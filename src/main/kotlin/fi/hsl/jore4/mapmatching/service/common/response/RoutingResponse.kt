@@ -37,5 +37,8 @@ sealed interface RoutingResponse {
 
         fun noSegment(unmatchedPoints: List<Point<G2D>>) =
             noSegment("Could not match infrastructure link for following points: $unmatchedPoints")
+
+        fun timeout(timeoutInMillis: Long) =
+            RoutingFailureDTO(ResponseCode.Timeout, "Request could not be completed within $timeoutInMillis ms")
     }
 }
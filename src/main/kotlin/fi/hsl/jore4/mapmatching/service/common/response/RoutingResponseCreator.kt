@@ -2,7 +2,7 @@ package fi.hsl.jore4.mapmatching.service.common.response
 
 import fi.hsl.jore4.mapmatching.model.InfrastructureLinkTraversal
 import fi.hsl.jore4.mapmatching.repository.routing.RouteLink
-import fi.hsl.jore4.mapmatching.util.GeolatteUtils.mergeContinuousLines
+import fi.hsl.jore4.mapmatching.util.LineStringCoordinates
 import org.geolatte.geom.G2D
 import org.geolatte.geom.LineString
 
@@ -24,11 +24,12 @@ object RoutingResponseCreator {
                 accumulatedLength + link.linkLength
             }
 
-        val linesToMerge: List<LineString<G2D>> = linkTraversals.map(InfrastructureLinkTraversal::traversedGeometry)
+        val linesToMerge: List<LineStringCoordinates> =
+            linkTraversals.map(InfrastructureLinkTraversal::traversedGeometry)
 
         val mergedLine: LineString<G2D> =
             try {
-                mergeContinuousLines(linesToMerge)
+                LineStringCoordinates.mergeContinuousLines(linesToMerge).toLineString()
             } catch (ex: Exception) {
                 return RoutingResponse.noSegment(
                     ex.message ?: "Merging compound LineString from multiple infrastructure link geometries failed"
@@ -0,0 +1,122 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.config.MatchingExecutorConfig
+import fi.hsl.jore4.mapmatching.service.common.RequestDeadlineHandler
+import fi.hsl.jore4.mapmatching.service.common.response.BatchMatchResultDTO
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.util.RequestDeadline
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.stereotype.Service
+import java.time.Duration
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+private val LOGGER = KotlinLogging.logger {}
+
+/**
+ * Map-matches batches of public transport routes on a dedicated executor. The
+ * size of the executor bounds the number of routes matched concurrently across
+ * all batches. Since each route is matched in a database transaction of its
+ * own, the executor should be sized according to the database connection
+ * pool.
+ */
+@Service
+class BatchMatchingServiceImpl(
+    val matchingService: IMatchingService,
+    val requestDeadlineHandler: RequestDeadlineHandler,
+    @param:Qualifier(MatchingExecutorConfig.BATCH_MATCHING_EXECUTOR) val batchMatchingExecutor: ExecutorService
+) : IBatchMatchingService {
+    override fun findMatchesForPublicTransportRoutes(
+        tasks: List<PublicTransportRouteMatchTask>,
+        routeTimeout: Duration?,
+        resultConsumer: (BatchMatchResultDTO) -> Unit
+    ) {
+        val batchStartTime: Long = System.nanoTime()
+
+        val completionService = ExecutorCompletionService<BatchMatchResultDTO>(batchMatchingExecutor)
+
+        // The deadline of each route is created when the route is started.
+        val deadlines = AtomicReferenceArray<RequestDeadline>(tasks.size)
+
+        val futures: List<Future<BatchMatchResultDTO>> =
+            tasks.mapIndexed { index, task ->
+                completionService.submit {
+                    val deadline: RequestDeadline? = routeTimeout?.let(RequestDeadline::after)
+                    deadlines.set(index, deadline)
+
+                    findMatch(index, task, routeTimeout, deadline)
+                }
+            }
+
+        var completed = false
+
+        try {
+            repeat(tasks.size) {
+                resultConsumer(getResult(completionService.take()))
+            }
+            completed = true
+        } finally {
+            if (!completed) {
+                // Cancel the remaining routes and their database statements in case of failure or
+                // interruption.
+                futures.forEach { it.cancel(true) }
+                (0 until deadlines.length()).forEach { deadlines.get(it)?.cancel() }
+            }
+        }
+
+        LOGGER.info {
+            "Matched batch of ${tasks.size} routes in ${
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStartTime)
+            } ms"
+        }
+    }
+
+    private fun findMatch(
+        index: Int,
+        task: PublicTransportRouteMatchTask,
+        timeout: Duration?,
+        deadline: RequestDeadline?
+    ): BatchMatchResultDTO {
+        val startTime: Long = System.nanoTime()
+
+        val response: RoutingResponse =
+            try {
+                requestDeadlineHandler.runWithinDeadline(API_NAME, timeout, deadline) {
+                    matchingService.findMatchForPublicTransportRoute(
+                        task.routeId,
+                        task.routeGeometry,
+                        task.routePoints,
+                        task.vehicleType,
+                        task.matchingParameters
+                    )
+                }
+            } catch (ex: Exception) {
+                LOGGER.warn(ex) { "Matching route #${index + 1} of batch failed" }
+                RoutingResponse.invalidUrl(ex.message ?: "Map-matching failed")
+            }
+
+        return BatchMatchResultDTO(
+            index,
+            task.routeId,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+            response
+        )
+    }
+
+    companion object {
+        const val API_NAME = "batch-match"
+
+        private fun getResult(future: Future<BatchMatchResultDTO>): BatchMatchResultDTO =
+            try {
+                future.get()
+            } catch (ex: ExecutionException) {
+                // Failures of matching are already converted to responses.
+                throw IllegalStateException("Unexpected failure in batch matching", ex.cause)
+            }
+    }
+}
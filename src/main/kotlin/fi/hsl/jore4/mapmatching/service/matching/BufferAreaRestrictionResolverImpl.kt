@@ -0,0 +1,36 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.infrastructure.ILinkRepository
+import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
+import fi.hsl.jore4.mapmatching.util.InternalService
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
+import org.springframework.transaction.annotation.Transactional
+
+private val LOGGER = KotlinLogging.logger {}
+
+@InternalService
+class BufferAreaRestrictionResolverImpl(
+    val linkRepository: ILinkRepository
+) : IBufferAreaRestrictionResolver {
+    @Transactional(readOnly = true, noRollbackFor = [RuntimeException::class])
+    override fun resolveBufferAreaRestriction(
+        sourceRouteGeometry: LineString<G2D>,
+        bufferRadiusInMeters: Double,
+        vehicleType: VehicleType
+    ): BufferAreaRestriction {
+        val idsOfLinksWithinBufferArea: Set<InfrastructureLinkId> =
+            linkRepository.findIdsOfLinksWithinBufferArea(sourceRouteGeometry, bufferRadiusInMeters, vehicleType)
+
+        LOGGER.debug { "Resolved ${idsOfLinksWithinBufferArea.size} infrastructure links within buffer area" }
+
+        return BufferAreaRestriction(
+            sourceRouteGeometry,
+            bufferRadiusInMeters,
+            idsOfLinksWithinBufferArea = idsOfLinksWithinBufferArea
+        )
+    }
+}
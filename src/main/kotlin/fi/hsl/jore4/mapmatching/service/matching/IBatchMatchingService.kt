@@ -0,0 +1,29 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.service.common.response.BatchMatchResultDTO
+import java.time.Duration
+
+interface IBatchMatchingService {
+    /**
+     * Map-matches the given public transport routes concurrently and passes
+     * the result of each route to [resultConsumer] as soon as the route is
+     * completed. Hence, the results are consumed in the order of completion,
+     * not in the order of the given tasks. The consumer is always invoked in
+     * the calling thread.
+     *
+     * If [resultConsumer] throws an exception (e.g. because the client has
+     * disconnected), the routes not yet completed are cancelled along with
+     * their in-flight database statements and the exception is rethrown.
+     *
+     * @param tasks the routes to be matched
+     * @param routeTimeout the time budget for matching each route or null if
+     * routes are not restricted by a deadline. A route exceeding its budget
+     * gets a timeout response.
+     * @param resultConsumer the receiver of the result of each route
+     */
+    fun findMatchesForPublicTransportRoutes(
+        tasks: List<PublicTransportRouteMatchTask>,
+        routeTimeout: Duration?,
+        resultConsumer: (BatchMatchResultDTO) -> Unit
+    )
+}
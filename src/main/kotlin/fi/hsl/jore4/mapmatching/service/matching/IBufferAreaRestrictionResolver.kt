@@ -0,0 +1,28 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
+import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
+
+interface IBufferAreaRestrictionResolver {
+    /**
+     * Resolves the buffer area restriction to be shared by all routing
+     * attempts made while map-matching a single route. The infrastructure
+     * links within the buffer area are resolved once so that the geometric
+     * restriction does not need to be re-evaluated on each attempt. Terminus
+     * links are added per attempt with
+     * [BufferAreaRestriction.withTerminusPoints].
+     *
+     * @param sourceRouteGeometry the LineString geometry to be expanded
+     * @param bufferRadiusInMeters the distance with which the LineString
+     * geometry is expanded in all directions
+     * @param vehicleType vehicle type constraint for infrastructure links.
+     * The restriction must only be used in routing for the same vehicle type.
+     */
+    fun resolveBufferAreaRestriction(
+        sourceRouteGeometry: LineString<G2D>,
+        bufferRadiusInMeters: Double,
+        vehicleType: VehicleType
+    ): BufferAreaRestriction
+}
@@ -15,6 +15,9 @@ import fi.hsl.jore4.mapmatching.repository.infrastructure.SnappedPointOnLink
 import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
 import fi.hsl.jore4.mapmatching.repository.routing.RouteLink
 import fi.hsl.jore4.mapmatching.service.common.IRoutingServiceInternal
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Companion.ALGORITHM_VIA_GRAPH_VERTICES
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Stage
 import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
 import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponseCreator
 import fi.hsl.jore4.mapmatching.service.node.INodeServiceInternal
@@ -37,7 +40,9 @@ class MatchRouteViaNetworkNodesServiceImpl(
     val publicTransportStopMatcher: IPublicTransportStopMatcher,
     val roadJunctionMatcher: IRoadJunctionMatcher,
     val nodeService: INodeServiceInternal,
-    val routingService: IRoutingServiceInternal
+    val routingService: IRoutingServiceInternal,
+    val bufferAreaRestrictionResolver: IBufferAreaRestrictionResolver,
+    val pipelineMetrics: MatchingPipelineMetrics
 ) : IMatchRouteViaNetworkNodesService {
     internal data class InfrastructureLinksOnRoute(
         val startLinkCandidates: List<TerminusLinkCandidate>,
@@ -54,14 +59,20 @@ class MatchRouteViaNetworkNodesServiceImpl(
     ): RoutingResponse {
         val terminusLinkSelectionParams: TerminusLinkSelectionParams =
             try {
-                closestTerminusLinksResolver.resolveTerminusLinkSelectionParameters(
-                    sourceRouteGeometry,
-                    sourceRoutePoints,
-                    vehicleType,
-                    matchingParameters.terminusLinkQueryDistance,
-                    matchingParameters.terminusLinkQueryLimit
-                )
+                pipelineMetrics.time(Stage.TERMINUS_LINK_RESOLUTION, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+                    closestTerminusLinksResolver.resolveTerminusLinkSelectionParameters(
+                        sourceRouteGeometry,
+                        sourceRoutePoints,
+                        vehicleType,
+                        matchingParameters.terminusLinkQueryDistance,
+                        matchingParameters.terminusLinkQueryLimit
+                    )
+                }
             } catch (ex: RuntimeException) {
+                if (MatchingServiceHelper.isTransientFailure(ex)) {
+                    throw ex
+                }
+
                 val errMessage: String =
                     ex.message ?: "Failed to find closest terminus links on either end of route"
                 return RoutingResponse.noSegment(errMessage)
@@ -76,24 +87,40 @@ class MatchRouteViaNetworkNodesServiceImpl(
                     matchingParameters
                 )
             } catch (ex: RuntimeException) {
+                if (MatchingServiceHelper.isTransientFailure(ex)) {
+                    throw ex
+                }
+
                 val errMessage: String =
                     ex.message
                         ?: "Could not resolve node sequence candidates while map-matching via nodes (graph vertices)"
                 return RoutingResponse.noSegment(errMessage)
             }
 
-        val nodeSeqResult: NodeSequenceResolutionResult =
-            nodeService.resolveNodeIdSequence(
-                nodeSequenceCandidates,
-                vehicleType,
-                BufferAreaRestriction(
+        // The links within the buffer area are resolved once and shared by all routing attempts.
+        val commonBufferAreaRestriction: BufferAreaRestriction =
+            pipelineMetrics.time(Stage.BUFFER_AREA_RESOLUTION, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+                bufferAreaRestrictionResolver.resolveBufferAreaRestriction(
                     sourceRouteGeometry,
-                    matchingParameters.bufferRadiusInMeters
+                    matchingParameters.bufferRadiusInMeters,
+                    vehicleType
                 )
-            )
+            }
+
+        val nodeSeqResult: NodeSequenceResolutionResult =
+            pipelineMetrics.time(Stage.NODE_SEQUENCE_RESOLUTION, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+                nodeService.resolveNodeIdSequence(nodeSequenceCandidates, vehicleType, commonBufferAreaRestriction)
+            }
 
         return when (nodeSeqResult) {
             is NodeSequenceResolutionSucceeded -> {
+                pipelineMetrics.recordCandidatesTried(
+                    ALGORITHM_VIA_GRAPH_VERTICES,
+                    vehicleType,
+                    nodeSeqResult.numberOfCandidatesTried,
+                    true
+                )
+
                 val nodeIdSequence: NodeIdSequence = nodeSeqResult.nodeIdSequence
 
                 LOGGER.debug { "Resolved node ID sequence: $nodeIdSequence" }
@@ -108,22 +135,28 @@ class MatchRouteViaNetworkNodesServiceImpl(
                             vehicleType,
                             pointOnStartLink.closestPointFractionalMeasure,
                             pointOnEndLink.closestPointFractionalMeasure,
-                            BufferAreaRestriction.from(
-                                sourceRouteGeometry,
-                                matchingParameters.bufferRadiusInMeters,
-                                pointOnStartLink,
-                                pointOnEndLink
-                            )
+                            commonBufferAreaRestriction.withTerminusPoints(pointOnStartLink, pointOnEndLink)
                         ).also { routeLinks: List<RouteLink> ->
                             if (routeLinks.isNotEmpty()) {
                                 LOGGER.debug { "Got route links: ${joinToLogString(routeLinks)}" }
                             }
                         }
 
-                RoutingResponseCreator.create(routeLinks)
+                pipelineMetrics.time(Stage.RESPONSE_CREATION, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+                    RoutingResponseCreator.create(routeLinks)
+                }
             }
 
-            is NodeSequenceResolutionFailed -> RoutingResponse.noSegment(nodeSeqResult.message)
+            is NodeSequenceResolutionFailed -> {
+                pipelineMetrics.recordCandidatesTried(
+                    ALGORITHM_VIA_GRAPH_VERTICES,
+                    vehicleType,
+                    nodeSequenceCandidates.size,
+                    false
+                )
+
+                RoutingResponse.noSegment(nodeSeqResult.message)
+            }
         }
     }
 
@@ -144,6 +177,7 @@ class MatchRouteViaNetworkNodesServiceImpl(
         ) =
             resolveInfrastructureLinksOnRoute(
                 sourceRoutePoints,
+                vehicleType,
                 terminusLinkSelectionParams,
                 matchingParams.maxStopLocationDeviation
             )
@@ -152,12 +186,14 @@ class MatchRouteViaNetworkNodesServiceImpl(
         val fromRoutePointIndexToRoadJunctionNode: Map<Int, NodeProximity?> =
             matchingParams.roadJunctionMatching
                 ?.let { (matchDistance, clearingDistance) ->
-                    roadJunctionMatcher.findInfrastructureNodesMatchingRoadJunctions(
-                        sourceRoutePoints,
-                        vehicleType,
-                        matchDistance,
-                        clearingDistance
-                    )
+                    pipelineMetrics.time(Stage.JUNCTION_MATCHING, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+                        roadJunctionMatcher.findInfrastructureNodesMatchingRoadJunctions(
+                            sourceRoutePoints,
+                            vehicleType,
+                            matchDistance,
+                            clearingDistance
+                        )
+                    }
                 }
                 ?: emptyMap()
 
@@ -182,24 +218,28 @@ class MatchRouteViaNetworkNodesServiceImpl(
                     }
                 }
 
-        return MatchingServiceHelper.getSortedNodeSequenceCandidates(
-            startLinkCandidates,
-            endLinkCandidates,
-            viaNodeHolders
-        )
+        return pipelineMetrics.time(Stage.CANDIDATE_GENERATION, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+            MatchingServiceHelper.getSortedNodeSequenceCandidates(
+                startLinkCandidates,
+                endLinkCandidates,
+                viaNodeHolders
+            )
+        }
     }
 
     internal fun resolveInfrastructureLinksOnRoute(
         sourceRoutePoints: List<RoutePoint>,
+        vehicleType: VehicleType,
         terminusLinkSelectionParams: TerminusLinkSelectionParams,
         maxStopLocationDeviation: Double
     ): InfrastructureLinksOnRoute {
         val fromRoutePointIndexToSnappedLinkOfMatchedStop: Map<Int, SnapStopToLinkResult> =
-            publicTransportStopMatcher
-                .findStopPointsByNationalIdsAndIndexByRoutePointOrdering(
+            pipelineMetrics.time(Stage.STOP_MATCHING, ALGORITHM_VIA_GRAPH_VERTICES, vehicleType) {
+                publicTransportStopMatcher.findStopPointsByNationalIdsAndIndexByRoutePointOrdering(
                     sourceRoutePoints,
                     maxStopLocationDeviation
                 )
+            }
 
         val fromStopNationalIdToInfrastructureLinkId: Map<Int, InfrastructureLinkId> =
             fromRoutePointIndexToSnappedLinkOfMatchedStop
@@ -1,6 +1,7 @@
 package fi.hsl.jore4.mapmatching.service.matching
 
 import fi.hsl.jore4.mapmatching.Constants
+import fi.hsl.jore4.mapmatching.config.MatchingExecutorConfig
 import fi.hsl.jore4.mapmatching.model.LinkSide
 import fi.hsl.jore4.mapmatching.model.NodeProximity
 import fi.hsl.jore4.mapmatching.model.VehicleType
@@ -14,23 +15,49 @@ import fi.hsl.jore4.mapmatching.repository.routing.PgRoutingPoint
 import fi.hsl.jore4.mapmatching.repository.routing.RealNode
 import fi.hsl.jore4.mapmatching.repository.routing.RouteLink
 import fi.hsl.jore4.mapmatching.service.common.IRoutingServiceInternal
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Companion.ALGORITHM_VIA_GRAPH_EDGES
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Stage
 import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
 import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponseCreator
+import fi.hsl.jore4.mapmatching.util.ConcurrencyUtils.findFirstNotNullConcurrently
 import fi.hsl.jore4.mapmatching.util.InternalService
 import fi.hsl.jore4.mapmatching.util.LogUtils.joinToLogString
 import io.github.oshai.kotlinlogging.KotlinLogging
 import org.geolatte.geom.G2D
 import org.geolatte.geom.LineString
-import org.springframework.transaction.annotation.Transactional
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.beans.factory.annotation.Value
+import java.util.concurrent.ExecutorService
 
 private val LOGGER = KotlinLogging.logger {}
 
+/**
+ * Route point sequence candidates are tried in the order of their priority
+ * until a route is found. Optionally (via [CONCURRENT_CANDIDATES_PROPERTY]),
+ * multiple candidates are evaluated concurrently, each in a database
+ * transaction of its own. The result is still that of the highest-priority
+ * candidate that succeeds.
+ *
+ * No transaction spans the whole matching. The terminus links, stop points
+ * and the buffer area are resolved in short transactions of the collaborators,
+ * so that the calling thread does not hold a database connection while
+ * waiting for the concurrently evaluated candidates, each of which needs a
+ * connection of its own.
+ *
+ * The durations of the matching stages and the number of candidates tried
+ * are recorded via [MatchingPipelineMetrics].
+ */
 @InternalService
 class MatchRouteViaPointsOnLinksServiceImpl(
     val closestTerminusLinksResolver: IClosestTerminusLinksResolver,
     val publicTransportStopMatcher: IPublicTransportStopMatcher,
     val roadJunctionMatcher: IRoadJunctionMatcher,
-    val routingService: IRoutingServiceInternal
+    val routingService: IRoutingServiceInternal,
+    val bufferAreaRestrictionResolver: IBufferAreaRestrictionResolver,
+    val pipelineMetrics: MatchingPipelineMetrics,
+    @param:Qualifier(MatchingExecutorConfig.MATCHING_EXECUTOR) val matchingExecutor: ExecutorService,
+    @param:Value("\${$CONCURRENT_CANDIDATES_PROPERTY:1}") val numberOfConcurrentCandidates: Int
 ) : IMatchRouteViaPointsOnLinksService {
     internal data class TerminusPointCandidatesAndStopPoints(
         val targetStartPointCandidates: List<TerminusPointCandidate>,
@@ -38,7 +65,6 @@ class MatchRouteViaPointsOnLinksServiceImpl(
         val targetStopPointsIndexedByRoutePointOrdering: Map<Int, PgRoutingPoint>
     )
 
-    @Transactional(readOnly = true, noRollbackFor = [RuntimeException::class])
     override fun findMatchForPublicTransportRoute(
         sourceRouteGeometry: LineString<G2D>,
         sourceRoutePoints: List<RoutePoint>,
@@ -47,14 +73,20 @@ class MatchRouteViaPointsOnLinksServiceImpl(
     ): RoutingResponse {
         val terminusLinkSelectionParams: TerminusLinkSelectionParams =
             try {
-                closestTerminusLinksResolver.resolveTerminusLinkSelectionParameters(
-                    sourceRouteGeometry,
-                    sourceRoutePoints,
-                    vehicleType,
-                    matchingParameters.terminusLinkQueryDistance,
-                    matchingParameters.terminusLinkQueryLimit
-                )
+                pipelineMetrics.time(Stage.TERMINUS_LINK_RESOLUTION, ALGORITHM_VIA_GRAPH_EDGES, vehicleType) {
+                    closestTerminusLinksResolver.resolveTerminusLinkSelectionParameters(
+                        sourceRouteGeometry,
+                        sourceRoutePoints,
+                        vehicleType,
+                        matchingParameters.terminusLinkQueryDistance,
+                        matchingParameters.terminusLinkQueryLimit
+                    )
+                }
             } catch (ex: RuntimeException) {
+                if (MatchingServiceHelper.isTransientFailure(ex)) {
+                    throw ex
+                }
+
                 val errMessage: String =
                     ex.message ?: "Failed to find closest terminus links on either end of route"
                 return RoutingResponse.noSegment(errMessage)
@@ -75,7 +107,10 @@ class MatchRouteViaPointsOnLinksServiceImpl(
             matchingParameters.bufferRadiusInMeters
         )?.let { routeLinks: List<RouteLink> ->
             LOGGER.debug { "Got route links: ${joinToLogString(routeLinks)}" }
-            RoutingResponseCreator.create(routeLinks)
+
+            pipelineMetrics.time(Stage.RESPONSE_CREATION, ALGORITHM_VIA_GRAPH_EDGES, vehicleType) {
+                RoutingResponseCreator.create(routeLinks)
+            }
         } ?: RoutingResponse.noSegment(
             "Could not find route while map-matching via graph edges (points on links)"
         )
@@ -94,6 +129,7 @@ class MatchRouteViaPointsOnLinksServiceImpl(
         ) =
             resolveTerminusPointCandidatesAndStopPoints(
                 sourceRoutePoints,
+                vehicleType,
                 terminusLinkSelectionParams,
                 matchingParams.maxStopLocationDeviation
             )
@@ -102,12 +138,14 @@ class MatchRouteViaPointsOnLinksServiceImpl(
         val fromRoutePointIndexToRoadJunctionNode: Map<Int, NodeProximity?> =
             matchingParams.roadJunctionMatching
                 ?.let { (matchDistance, clearingDistance) ->
-                    roadJunctionMatcher.findInfrastructureNodesMatchingRoadJunctions(
-                        sourceRoutePoints,
-                        vehicleType,
-                        matchDistance,
-                        clearingDistance
-                    )
+                    pipelineMetrics.time(Stage.JUNCTION_MATCHING, ALGORITHM_VIA_GRAPH_EDGES, vehicleType) {
+                        roadJunctionMatcher.findInfrastructureNodesMatchingRoadJunctions(
+                            sourceRoutePoints,
+                            vehicleType,
+                            matchDistance,
+                            clearingDistance
+                        )
+                    }
                 }
                 ?: emptyMap()
 
@@ -129,24 +167,28 @@ class MatchRouteViaPointsOnLinksServiceImpl(
                     }
                 }
 
-        return MatchingServiceHelper.getSortedRoutePointSequenceCandidates(
-            targetStartPointCandidates,
-            targetEndPointCandidates,
-            targetViaRoutePoints
-        )
+        return pipelineMetrics.time(Stage.CANDIDATE_GENERATION, ALGORITHM_VIA_GRAPH_EDGES, vehicleType) {
+            MatchingServiceHelper.getSortedRoutePointSequenceCandidates(
+                targetStartPointCandidates,
+                targetEndPointCandidates,
+                targetViaRoutePoints
+            )
+        }
     }
 
     internal fun resolveTerminusPointCandidatesAndStopPoints(
         sourceRoutePoints: List<RoutePoint>,
+        vehicleType: VehicleType,
         terminusLinkSelectionParams: TerminusLinkSelectionParams,
         maxStopLocationDeviation: Double
     ): TerminusPointCandidatesAndStopPoints {
         val fromRoutePointIndexToSnappedLinkOfMatchedStop: Map<Int, SnapStopToLinkResult> =
-            publicTransportStopMatcher
-                .findStopPointsByNationalIdsAndIndexByRoutePointOrdering(
+            pipelineMetrics.time(Stage.STOP_MATCHING, ALGORITHM_VIA_GRAPH_EDGES, vehicleType) {
+                publicTransportStopMatcher.findStopPointsByNationalIdsAndIndexByRoutePointOrdering(
                     sourceRoutePoints,
                     maxStopLocationDeviation
                 )
+            }
 
         val fromNationalIdToTargetStopPoint: Map<Int, PgRoutingPoint> =
             fromRoutePointIndexToSnappedLinkOfMatchedStop
@@ -190,19 +232,68 @@ class MatchRouteViaPointsOnLinksServiceImpl(
         vehicleType: VehicleType,
         targetRoutePointSequenceCandidates: List<List<PgRoutingPoint>>,
         bufferRadiusInMeters: Double
-    ): List<RouteLink>? =
-        targetRoutePointSequenceCandidates.firstNotNullOfOrNull { targetRoutePoints ->
+    ): List<RouteLink>? {
+        if (targetRoutePointSequenceCandidates.isEmpty()) {
+            pipelineMetrics.recordCandidatesTried(ALGORITHM_VIA_GRAPH_EDGES, vehicleType, 0, false)
+            return null
+        }
 
-            val bufferAreaRestriction =
-                BufferAreaRestriction.from(
+        // The links within the buffer area are resolved once and shared by all candidates.
+        val commonBufferAreaRestriction: BufferAreaRestriction =
+            pipelineMetrics.time(Stage.BUFFER_AREA_RESOLUTION, ALGORITHM_VIA_GRAPH_EDGES, vehicleType) {
+                bufferAreaRestrictionResolver.resolveBufferAreaRestriction(
                     sourceRouteGeometry,
                     bufferRadiusInMeters,
-                    targetRoutePoints.first(),
-                    targetRoutePoints.last()
+                    vehicleType
                 )
+            }
 
-            routingService
-                .findRouteViaPointsOnLinks(targetRoutePoints, vehicleType, true, bufferAreaRestriction)
-                .ifEmpty { null }
-        }
+        // The result of a candidate is paired with the number of candidates tried so far in
+        // priority order.
+        val candidateEvaluations: List<() -> Pair<Int, List<RouteLink>>?> =
+            targetRoutePointSequenceCandidates.mapIndexed { candidateIndex, targetRoutePoints ->
+                {
+                    val bufferAreaRestriction: BufferAreaRestriction =
+                        commonBufferAreaRestriction.withTerminusPoints(
+                            targetRoutePoints.first(),
+                            targetRoutePoints.last()
+                        )
+
+                    routingService
+                        .findRouteViaPointsOnLinks(
+                            targetRoutePoints,
+                            vehicleType,
+                            true,
+                            bufferAreaRestriction,
+                            ALGORITHM_VIA_GRAPH_EDGES
+                        ).ifEmpty { null }
+                        ?.let { routeLinks -> candidateIndex + 1 to routeLinks }
+                }
+            }
+
+        val result: Pair<Int, List<RouteLink>>? =
+            findFirstNotNullConcurrently(
+                candidateEvaluations,
+                matchingExecutor,
+                numberOfConcurrentCandidates.coerceAtLeast(1)
+            )
+
+        pipelineMetrics.recordCandidatesTried(
+            ALGORITHM_VIA_GRAPH_EDGES,
+            vehicleType,
+            result?.first ?: targetRoutePointSequenceCandidates.size,
+            result != null
+        )
+
+        return result?.second
+    }
+
+    companion object {
+        /**
+         * The number of route point sequence candidates evaluated
+         * concurrently. With value 1, the candidates are evaluated one after
+         * another in the calling thread.
+         */
+        const val CONCURRENT_CANDIDATES_PROPERTY = "mapmatching.matching.via-points.concurrent-candidates"
+    }
 }
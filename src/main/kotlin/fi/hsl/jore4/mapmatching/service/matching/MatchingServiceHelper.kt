@@ -22,6 +22,9 @@ import fi.hsl.jore4.mapmatching.util.CollectionUtils.filterOutConsecutiveDuplica
 import io.github.oshai.kotlinlogging.KotlinLogging
 import org.geolatte.geom.G2D
 import org.geolatte.geom.Point
+import org.springframework.dao.DataAccessException
+import org.springframework.transaction.TransactionException
+import java.util.concurrent.CancellationException
 import kotlin.math.max
 import kotlin.math.min
 
@@ -50,6 +53,16 @@ object MatchingServiceHelper {
         return null
     }
 
+    /**
+     * Tells whether the given exception is caused by the circumstances of a
+     * request, e.g. a database error, a timeout or a cancellation, rather than
+     * by the route being matched. Such exceptions must not be turned into
+     * map-matching failures, since the failures would not be repeated by later
+     * requests for the same route.
+     */
+    fun isTransientFailure(ex: RuntimeException): Boolean =
+        ex is DataAccessException || ex is TransactionException || ex is CancellationException
+
     private fun hasAtLeastTwoDistinctRoutePointLocations(routePoints: List<RoutePoint>): Boolean {
         val routePointLocations: List<Point<G2D>> = routePoints.map(RoutePoint::location)
 
@@ -1,23 +1,51 @@
 package fi.hsl.jore4.mapmatching.service.matching
 
+import fi.hsl.jore4.mapmatching.config.MatchingExecutorConfig
 import fi.hsl.jore4.mapmatching.model.VehicleType
 import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.FallbackMode
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.FallbackOutcome
 import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
 import fi.hsl.jore4.mapmatching.service.matching.MatchingServiceHelper.validateInputForRouteMatching
+import fi.hsl.jore4.mapmatching.util.ConcurrencyUtils.CancellableTask
+import fi.hsl.jore4.mapmatching.util.ConcurrencyUtils.getResult
+import fi.hsl.jore4.mapmatching.util.ConcurrencyUtils.submitCancellable
 import io.github.oshai.kotlinlogging.KotlinLogging
 import org.geolatte.geom.G2D
 import org.geolatte.geom.LineString
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
-import org.springframework.transaction.annotation.Transactional
+import java.util.concurrent.ExecutorService
 
 private val LOGGER = KotlinLogging.logger {}
 
+/**
+ * Map-matches public transport routes primarily using the via-graph-edges
+ * (points on links) algorithm and optionally falls back to the
+ * via-graph-vertices algorithm.
+ *
+ * In the speculative mode (enabled via [SPECULATIVE_FALLBACK_PROPERTY]), the
+ * fallback algorithm is started concurrently with the primary algorithm in a
+ * separate database transaction. The result of the primary algorithm keeps
+ * priority and the fallback is cancelled once the primary algorithm succeeds.
+ *
+ * The matching does not run in a transaction of its own. Each algorithm opens
+ * its own short transactions, so that the calling thread does not hold a
+ * database connection while waiting for the speculative fallback.
+ *
+ * Whether the fallback was needed and whether it succeeded is recorded via
+ * [MatchingPipelineMetrics] tagged by the mode.
+ */
 @Service
 class MatchingServiceImpl(
     val viaPointsOnLinksService: IMatchRouteViaPointsOnLinksService,
-    val viaNodesService: IMatchRouteViaNetworkNodesService
+    val viaNodesService: IMatchRouteViaNetworkNodesService,
+    @param:Qualifier(MatchingExecutorConfig.MATCHING_EXECUTOR) val matchingExecutor: ExecutorService,
+    val pipelineMetrics: MatchingPipelineMetrics,
+    @param:Value("\${$SPECULATIVE_FALLBACK_PROPERTY:false}") val speculativeFallbackEnabled: Boolean
 ) : IMatchingService {
-    @Transactional(readOnly = true)
     override fun findMatchForPublicTransportRoute(
         sourceRouteId: String?,
         sourceRouteGeometry: LineString<G2D>,
@@ -29,6 +57,18 @@ class MatchingServiceImpl(
             return RoutingResponse.invalidValue(validationError)
         }
 
+        val routeName: String = sourceRouteId?.let { "route $it" } ?: "route"
+
+        if (speculativeFallbackEnabled && matchingParameters.fallbackToViaNodesAlgorithm) {
+            return findMatchWithSpeculativeFallback(
+                routeName,
+                sourceRouteGeometry,
+                sourceRoutePoints,
+                vehicleType,
+                matchingParameters
+            )
+        }
+
         val viaPointsOnLinksResponse: RoutingResponse =
             viaPointsOnLinksService
                 .findMatchForPublicTransportRoute(
@@ -38,11 +78,10 @@ class MatchingServiceImpl(
                     matchingParameters
                 )
 
-        val routeName: String = sourceRouteId?.let { "route $it" } ?: "route"
-
         return when (viaPointsOnLinksResponse) {
             is RoutingResponse.RoutingSuccessDTO -> {
                 LOGGER.info { "Matching $routeName succeeded" }
+                pipelineMetrics.recordFallbackOutcome(vehicleType, FallbackMode.SEQUENTIAL, FallbackOutcome.NOT_NEEDED)
                 viaPointsOnLinksResponse
             }
 
@@ -52,7 +91,15 @@ class MatchingServiceImpl(
                 }
 
                 when (matchingParameters.fallbackToViaNodesAlgorithm) {
-                    false -> viaPointsOnLinksResponse
+                    false -> {
+                        pipelineMetrics.recordFallbackOutcome(
+                            vehicleType,
+                            FallbackMode.SEQUENTIAL,
+                            FallbackOutcome.DISABLED
+                        )
+                        viaPointsOnLinksResponse
+                    }
+
                     else -> {
                         LOGGER.info { "Trying to match $routeName using via-graph-vertices algorithm..." }
 
@@ -65,13 +112,8 @@ class MatchingServiceImpl(
                                     matchingParameters
                                 )
 
-                        LOGGER.info {
-                            if (viaNodesResponse is RoutingResponse.RoutingFailureDTO) {
-                                "Matching $routeName using via-graph-vertices algorithm failed: ${viaNodesResponse.message}"
-                            } else {
-                                "Matching $routeName using via-graph-vertices algorithm succeeded"
-                            }
-                        }
+                        logViaNodesResult(routeName, viaNodesResponse)
+                        recordFallbackResult(vehicleType, FallbackMode.SEQUENTIAL, viaNodesResponse)
 
                         viaNodesResponse
                     }
@@ -79,4 +121,100 @@ class MatchingServiceImpl(
             }
         }
     }
+
+    private fun findMatchWithSpeculativeFallback(
+        routeName: String,
+        sourceRouteGeometry: LineString<G2D>,
+        sourceRoutePoints: List<RoutePoint>,
+        vehicleType: VehicleType,
+        matchingParameters: PublicTransportRouteMatchingParameters
+    ): RoutingResponse {
+        val fallbackStartTime: Long = System.nanoTime()
+
+        // The fallback is run in a transaction of its own in another thread. Cancelling the
+        // task also cancels its statement, which would otherwise keep holding a connection.
+        val viaNodesTask: CancellableTask<RoutingResponse> =
+            submitCancellable(matchingExecutor) {
+                viaNodesService.findMatchForPublicTransportRoute(
+                    sourceRouteGeometry,
+                    sourceRoutePoints,
+                    vehicleType,
+                    matchingParameters
+                )
+            }
+
+        try {
+            val viaPointsOnLinksResponse: RoutingResponse =
+                viaPointsOnLinksService
+                    .findMatchForPublicTransportRoute(
+                        sourceRouteGeometry,
+                        sourceRoutePoints,
+                        vehicleType,
+                        matchingParameters
+                    )
+
+            if (viaPointsOnLinksResponse is RoutingResponse.RoutingSuccessDTO) {
+                LOGGER.info { "Matching $routeName succeeded" }
+
+                viaNodesTask.cancel()
+                pipelineMetrics.recordFallbackOutcome(vehicleType, FallbackMode.SPECULATIVE, FallbackOutcome.NOT_NEEDED)
+
+                return viaPointsOnLinksResponse
+            }
+
+            LOGGER.info {
+                "Matching $routeName using via-graph-edges algorithm failed: " +
+                    (viaPointsOnLinksResponse as RoutingResponse.RoutingFailureDTO).message
+            }
+
+            // The time the fallback has been running in advance is the time saved by speculation.
+            val headStartNanos: Long = System.nanoTime() - fallbackStartTime
+
+            LOGGER.info { "Waiting for speculative via-graph-vertices matching of $routeName..." }
+
+            val viaNodesResponse: RoutingResponse = getResult(viaNodesTask.future)
+
+            logViaNodesResult(routeName, viaNodesResponse)
+
+            recordFallbackResult(vehicleType, FallbackMode.SPECULATIVE, viaNodesResponse)
+            pipelineMetrics.recordFallbackHeadStart(vehicleType, headStartNanos)
+
+            return viaNodesResponse
+        } finally {
+            // Ensures the fallback does not outlive the request in case of exceptions.
+            viaNodesTask.cancel()
+        }
+    }
+
+    private fun recordFallbackResult(
+        vehicleType: VehicleType,
+        mode: FallbackMode,
+        viaNodesResponse: RoutingResponse
+    ) {
+        pipelineMetrics.recordFallbackOutcome(
+            vehicleType,
+            mode,
+            when (viaNodesResponse) {
+                is RoutingResponse.RoutingSuccessDTO -> FallbackOutcome.FALLBACK_SUCCEEDED
+                is RoutingResponse.RoutingFailureDTO -> FallbackOutcome.FALLBACK_FAILED
+            }
+        )
+    }
+
+    companion object {
+        const val SPECULATIVE_FALLBACK_PROPERTY = "mapmatching.matching.speculative-fallback.enabled"
+
+        private fun logViaNodesResult(
+            routeName: String,
+            viaNodesResponse: RoutingResponse
+        ) {
+            LOGGER.info {
+                if (viaNodesResponse is RoutingResponse.RoutingFailureDTO) {
+                    "Matching $routeName using via-graph-vertices algorithm failed: ${viaNodesResponse.message}"
+                } else {
+                    "Matching $routeName using via-graph-vertices algorithm succeeded"
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,19 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
+
+/**
+ * Contains the input for map-matching one public transport route. The
+ * properties correspond to the parameters of
+ * [IMatchingService.findMatchForPublicTransportRoute].
+ */
+data class PublicTransportRouteMatchTask(
+    val routeId: String?,
+    val routeGeometry: LineString<G2D>,
+    val routePoints: List<RoutePoint>,
+    val vehicleType: VehicleType,
+    val matchingParameters: PublicTransportRouteMatchingParameters
+)
@@ -0,0 +1,99 @@
+package fi.hsl.jore4.mapmatching.service.matching.cache
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.service.common.INetworkVersionProbe
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.service.matching.IMatchingService
+import fi.hsl.jore4.mapmatching.service.matching.MatchingServiceImpl
+import fi.hsl.jore4.mapmatching.service.matching.PublicTransportRouteMatchingParameters
+import fi.hsl.jore4.mapmatching.util.RequestDeadline
+import io.micrometer.core.instrument.MeterRegistry
+import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.context.annotation.Primary
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Service
+
+/**
+ * A matching service that serves repeated map-matching requests from a
+ * [MatchResultCache] and delegates cache misses to [MatchingServiceImpl].
+ *
+ * Cached responses are tied to the version of the infrastructure network
+ * reported by [INetworkVersionProbe]. The whole cache is invalidated on
+ * [NetworkVersionChangedEvent].
+ *
+ * Only successes and failures that are determined by the request itself are
+ * cached. A response is not cached if the [RequestDeadline] of the request has
+ * expired or been cancelled during matching, since the matching may then
+ * have failed due to the deadline rather than due to the route. Transient
+ * errors, e.g. database errors, are thrown as exceptions by the matching
+ * service and are thus never cached.
+ *
+ * This service replaces [MatchingServiceImpl] when enabled via
+ * [RESULT_CACHE_ENABLED_PROPERTY].
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = [CachingMatchingServiceImpl.RESULT_CACHE_ENABLED_PROPERTY], havingValue = "true")
+class CachingMatchingServiceImpl(
+    val matchingService: MatchingServiceImpl,
+    val networkVersionProbe: INetworkVersionProbe,
+    meterRegistry: MeterRegistry,
+    @Value("\${$MAX_SIZE_PROPERTY:67108864}") maxSizeInBytes: Long
+) : IMatchingService {
+    internal val cache = MatchResultCache(maxSizeInBytes, meterRegistry)
+
+    override fun findMatchForPublicTransportRoute(
+        sourceRouteId: String?,
+        sourceRouteGeometry: LineString<G2D>,
+        sourceRoutePoints: List<RoutePoint>,
+        vehicleType: VehicleType,
+        matchingParameters: PublicTransportRouteMatchingParameters
+    ): RoutingResponse {
+        val key: MatchRequestKey =
+            MatchRequestKey.of(
+                sourceRouteGeometry,
+                sourceRoutePoints,
+                vehicleType,
+                matchingParameters,
+                networkVersionProbe.currentVersion.toString()
+            )
+
+        cache.get(key)?.let { return it }
+
+        val response: RoutingResponse =
+            matchingService.findMatchForPublicTransportRoute(
+                sourceRouteId,
+                sourceRouteGeometry,
+                sourceRoutePoints,
+                vehicleType,
+                matchingParameters
+            )
+
+        if (isWithinDeadline()) {
+            cache.put(key, response)
+        }
+
+        return response
+    }
+
+    private fun isWithinDeadline(): Boolean {
+        val deadline: RequestDeadline = RequestDeadline.current() ?: return true
+
+        return !deadline.isExpired && !deadline.isCancelled
+    }
+
+    @EventListener
+    fun onNetworkVersionChanged(event: NetworkVersionChangedEvent) {
+        cache.invalidateAll(event.version.toString())
+    }
+
+    companion object {
+        const val RESULT_CACHE_ENABLED_PROPERTY = "mapmatching.matching.result-cache.enabled"
+        const val MAX_SIZE_PROPERTY = "mapmatching.matching.result-cache.max-size-in-bytes"
+    }
+}
@@ -0,0 +1,97 @@
+package fi.hsl.jore4.mapmatching.service.matching.cache
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RouteJunctionPoint
+import fi.hsl.jore4.mapmatching.model.matching.RouteOtherPoint
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.model.matching.RouteStopPoint
+import fi.hsl.jore4.mapmatching.service.matching.PublicTransportRouteMatchingParameters
+import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
+import org.geolatte.geom.Point
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.security.MessageDigest
+
+/**
+ * Identifies a map-matching request in [MatchResultCache]. The key consists of
+ * the network version and a SHA-256 digest over a canonical binary encoding of
+ * everything affecting the result: the route geometry, route points, vehicle
+ * type and resolved matching parameters. The route identifier is not included
+ * since it does not affect the result.
+ */
+data class MatchRequestKey(
+    val networkVersion: String,
+    val digest: String
+) {
+    companion object {
+        fun of(
+            routeGeometry: LineString<G2D>,
+            routePoints: List<RoutePoint>,
+            vehicleType: VehicleType,
+            matchingParameters: PublicTransportRouteMatchingParameters,
+            networkVersion: String
+        ): MatchRequestKey {
+            val bytes = ByteArrayOutputStream(1024)
+
+            DataOutputStream(bytes).use { out ->
+                out.writeInt(routeGeometry.numPositions)
+                routeGeometry.positions.forEach { position ->
+                    out.writeDouble(position.lon)
+                    out.writeDouble(position.lat)
+                }
+
+                out.writeInt(routePoints.size)
+                routePoints.forEach { out.writeRoutePoint(it) }
+
+                out.writeUTF(vehicleType.value)
+
+                with(matchingParameters) {
+                    out.writeDouble(bufferRadiusInMeters)
+                    out.writeDouble(terminusLinkQueryDistance)
+                    out.writeInt(terminusLinkQueryLimit)
+                    out.writeDouble(maxStopLocationDeviation)
+                    out.writeBoolean(fallbackToViaNodesAlgorithm)
+                    out.writeBoolean(roadJunctionMatching != null)
+                    roadJunctionMatching?.let {
+                        out.writeDouble(it.matchDistance)
+                        out.writeDouble(it.clearingDistance)
+                    }
+                }
+            }
+
+            val digest: ByteArray = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray())
+
+            return MatchRequestKey(networkVersion, digest.joinToString("") { "%02x".format(it) })
+        }
+
+        private fun DataOutputStream.writeRoutePoint(routePoint: RoutePoint) {
+            when (routePoint) {
+                is RouteStopPoint -> {
+                    writeByte(1)
+                    writePoint(routePoint.location)
+                    writeBoolean(routePoint.projectedLocation != null)
+                    routePoint.projectedLocation?.let { writePoint(it) }
+                    writeUTF(routePoint.passengerId)
+                    writeBoolean(routePoint.nationalId != null)
+                    routePoint.nationalId?.let { writeInt(it) }
+                }
+
+                is RouteJunctionPoint -> {
+                    writeByte(2)
+                    writePoint(routePoint.location)
+                }
+
+                is RouteOtherPoint -> {
+                    writeByte(3)
+                    writePoint(routePoint.location)
+                }
+            }
+        }
+
+        private fun DataOutputStream.writePoint(point: Point<G2D>) {
+            writeDouble(point.position.lon)
+            writeDouble(point.position.lat)
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package fi.hsl.jore4.mapmatching.service.matching.cache
+
+import fi.hsl.jore4.mapmatching.service.common.response.RouteResultDTO
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+
+/**
+ * A bounded in-memory cache of map-matching responses. The total estimated
+ * size of the cached responses is kept within [maxSizeInBytes] by evicting
+ * the least recently used entries.
+ *
+ * All entries belong to a single network version, which is adopted from the
+ * first entry looked up or stored. Entries of other network versions are
+ * neither found nor stored until the cache is switched to a new network
+ * version via [invalidateAll]. This way, responses that were computed while
+ * the network was being re-imported do not end up in the cache.
+ *
+ * Hits, misses and evictions are recorded as metrics. The cache is safe for
+ * concurrent use.
+ */
+class MatchResultCache(
+    val maxSizeInBytes: Long,
+    meterRegistry: MeterRegistry
+) {
+    private class Entry(
+        val response: RoutingResponse,
+        val sizeInBytes: Long
+    )
+
+    // Access-ordered so that iteration starts from the least recently used entry.
+    private val entries = LinkedHashMap<String, Entry>(256, 0.75f, true)
+
+    private var networkVersion: String? = null
+
+    @Volatile
+    var sizeInBytes: Long = 0
+        private set
+
+    val numberOfEntries: Int
+        @Synchronized get() = entries.size
+
+    private val hits: Counter = meterRegistry.counter(REQUESTS_METRIC, "result", "hit")
+    private val misses: Counter = meterRegistry.counter(REQUESTS_METRIC, "result", "miss")
+    private val sizeEvictions: Counter = meterRegistry.counter(EVICTIONS_METRIC, "cause", "size")
+    private val invalidationEvictions: Counter = meterRegistry.counter(EVICTIONS_METRIC, "cause", "invalidation")
+
+    init {
+        Gauge
+            .builder(SIZE_METRIC, this) { it.sizeInBytes.toDouble() }
+            .baseUnit("bytes")
+            .register(meterRegistry)
+        Gauge
+            .builder(ENTRIES_METRIC, this) { it.numberOfEntries.toDouble() }
+            .register(meterRegistry)
+    }
+
+    @Synchronized
+    fun get(key: MatchRequestKey): RoutingResponse? {
+        val entry: Entry? = if (isCurrentNetworkVersion(key.networkVersion)) entries[key.digest] else null
+
+        if (entry != null) {
+            hits.increment()
+        } else {
+            misses.increment()
+        }
+
+        return entry?.response
+    }
+
+    /**
+     * Stores the given response. Responses larger than the whole cache or
+     * belonging to another network version are not stored.
+     */
+    @Synchronized
+    fun put(
+        key: MatchRequestKey,
+        response: RoutingResponse
+    ) {
+        if (!isCurrentNetworkVersion(key.networkVersion)) {
+            return
+        }
+
+        val entrySize: Long = estimateSizeInBytes(response) + ENTRY_OVERHEAD_IN_BYTES
+
+        if (entrySize > maxSizeInBytes) {
+            return
+        }
+
+        entries.put(key.digest, Entry(response, entrySize))?.let { previous ->
+            sizeInBytes -= previous.sizeInBytes
+        }
+        sizeInBytes += entrySize
+
+        val iterator: MutableIterator<Entry> = entries.values.iterator()
+
+        while (sizeInBytes > maxSizeInBytes && iterator.hasNext()) {
+            sizeInBytes -= iterator.next().sizeInBytes
+            iterator.remove()
+            sizeEvictions.increment()
+        }
+    }
+
+    /**
+     * Removes all entries and switches the cache to the given network version.
+     */
+    @Synchronized
+    fun invalidateAll(newNetworkVersion: String) {
+        invalidationEvictions.increment(entries.size.toDouble())
+        entries.clear()
+        sizeInBytes = 0
+        networkVersion = newNetworkVersion
+    }
+
+    private fun isCurrentNetworkVersion(version: String): Boolean {
+        if (networkVersion == null) {
+            networkVersion = version
+        }
+
+        return version == networkVersion
+    }
+
+    companion object {
+        const val REQUESTS_METRIC = "mapmatching.matching.result-cache.requests"
+        const val EVICTIONS_METRIC = "mapmatching.matching.result-cache.evictions"
+        const val SIZE_METRIC = "mapmatching.matching.result-cache.size"
+        const val ENTRIES_METRIC = "mapmatching.matching.result-cache.entries"
+
+        // The key, map entry and response object headers
+        private const val ENTRY_OVERHEAD_IN_BYTES = 256L
+
+        // The heap size of a position (an object header and two doubles) in a geometry
+        private const val POSITION_SIZE_IN_BYTES = 32L
+
+        private const val LINK_TRAVERSAL_SIZE_IN_BYTES = 256L
+
+        /**
+         * Estimates the heap memory held by the given response. Geometries
+         * dominate the size of successful responses.
+         */
+        fun estimateSizeInBytes(response: RoutingResponse): Long =
+            when (response) {
+                is RoutingResponse.RoutingSuccessDTO -> response.routes.sumOf(::estimateSizeInBytes)
+                is RoutingResponse.RoutingFailureDTO -> 2L * response.message.length
+            }
+
+        private fun estimateSizeInBytes(route: RouteResultDTO): Long =
+            POSITION_SIZE_IN_BYTES * route.geometry.numPositions +
+                route.paths.sumOf { path ->
+                    LINK_TRAVERSAL_SIZE_IN_BYTES + POSITION_SIZE_IN_BYTES * path.geometry.numPositions
+                }
+    }
+}
@@ -5,10 +5,16 @@ import fi.hsl.jore4.mapmatching.repository.infrastructure.SnappedPointOnLink
 
 sealed interface NodeSequenceResolutionResult
 
+/**
+ * @property numberOfCandidatesTried the number of node sequence candidates
+ * (between a pair of terminus links) tried in priority order until the first
+ * one succeeded
+ */
 data class NodeSequenceResolutionSucceeded(
     val nodeIdSequence: NodeIdSequence,
     val pointOnStartLink: SnappedPointOnLink,
-    val pointOnEndLink: SnappedPointOnLink
+    val pointOnEndLink: SnappedPointOnLink,
+    val numberOfCandidatesTried: Int
 ) : NodeSequenceResolutionResult
 
 data class NodeSequenceResolutionFailed(
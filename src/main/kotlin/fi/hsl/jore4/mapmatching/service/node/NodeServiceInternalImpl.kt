@@ -35,7 +35,8 @@ class NodeServiceInternalImpl(
                 return NodeSequenceResolutionSucceeded(
                     nodeIdSequences.first(),
                     candidatesBetweenLinks.pointOnStartLink,
-                    candidatesBetweenLinks.pointOnEndLink
+                    candidatesBetweenLinks.pointOnEndLink,
+                    1
                 )
             }
 
@@ -59,18 +60,17 @@ class NodeServiceInternalImpl(
                 )
             }
 
+        var numberOfCandidatesTried = 0
+
         val possibleNodeSequences: Map<Pair<InfrastructureLinkId, InfrastructureLinkId>, NodeIdSequence>? =
             nodeSequenceCandidates.firstNotNullOfOrNull { candidatesBetweenTwoLinks ->
+                numberOfCandidatesTried++
 
                 val bufferAreaRestrictionWithTerminusLinkIds: BufferAreaRestriction? =
-                    bufferAreaRestriction?.run {
-                        BufferAreaRestriction.from(
-                            lineGeometry,
-                            bufferRadiusInMeters,
-                            candidatesBetweenTwoLinks.pointOnStartLink,
-                            candidatesBetweenTwoLinks.pointOnEndLink
-                        )
-                    }
+                    bufferAreaRestriction?.withTerminusPoints(
+                        candidatesBetweenTwoLinks.pointOnStartLink,
+                        candidatesBetweenTwoLinks.pointOnEndLink
+                    )
 
                 nodeRepository
                     .resolveBestNodeSequences(
@@ -101,7 +101,12 @@ class NodeServiceInternalImpl(
 
                 possibleNodeSequences[nodeSeqKey]
                     ?.let { nodeIdSequence: NodeIdSequence ->
-                        NodeSequenceResolutionSucceeded(nodeIdSequence, pointOnStartLink, pointOnEndLink)
+                        NodeSequenceResolutionSucceeded(
+                            nodeIdSequence,
+                            pointOnStartLink,
+                            pointOnEndLink,
+                            numberOfCandidatesTried
+                        )
                     }
             }
             ?: NodeSequenceResolutionFailed("Could not resolve node identifier sequence because of internal error")
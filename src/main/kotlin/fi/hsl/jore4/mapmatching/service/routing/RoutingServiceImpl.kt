@@ -24,7 +24,8 @@ private val LOGGER = KotlinLogging.logger {}
 @Service
 class RoutingServiceImpl(
     val linkRepository: ILinkRepository,
-    val routingServiceInternal: IRoutingServiceInternal
+    val routingServiceInternal: IRoutingServiceInternal,
+    val snapResultCache: SnapResultCache
 ) : IRoutingService {
     @Transactional(readOnly = true)
     override fun findRoute(
@@ -68,9 +69,10 @@ class RoutingServiceImpl(
         vehicleType: VehicleType,
         linkQueryDistance: Int
     ): List<SnapPointToLinkResult> =
-        linkRepository
-            .findClosestLinks(points, vehicleType, linkQueryDistance.toDouble())
-            .toSortedMap()
+        snapResultCache
+            .findClosestLinks(points, vehicleType, linkQueryDistance) { pointsToSnap ->
+                linkRepository.findClosestLinks(pointsToSnap, vehicleType, linkQueryDistance.toDouble())
+            }.toSortedMap()
             .also { sortedResults: SortedMap<Int, SnapPointToLinkResult> ->
                 LOGGER.debug {
                     "Found closest links within $linkQueryDistance m radius: ${
@@ -0,0 +1,185 @@
+package fi.hsl.jore4.mapmatching.service.routing
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnapPointToLinkResult
+import fi.hsl.jore4.mapmatching.service.common.INetworkVersionProbe
+import fi.hsl.jore4.mapmatching.util.EtrsTm35FinProjection
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Point
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Component
+import kotlin.math.roundToLong
+
+/**
+ * Caches the closest infrastructure links of points snapped by the route API.
+ * While the user drags waypoints on the map, consecutive requests contain
+ * mostly the same points, which need not be snapped again.
+ *
+ * Points are keyed by their location in EPSG:3067 quantised to a grid of
+ * [GRID_SIZE_IN_METERS], together with the vehicle type and the link query
+ * distance. A cached result is returned with the requested point substituted
+ * for the point it was originally resolved for. Only points for which a link
+ * was found are cached. The cache holds at most [MAX_ENTRIES_PROPERTY]
+ * entries, evicting the least recently used ones.
+ *
+ * The cache is invalidated on [NetworkVersionChangedEvent]. Results resolved
+ * with an older network version are not stored after that.
+ *
+ * Caching is enabled via [ENABLED_PROPERTY]. The hit ratio is recorded as a
+ * metric.
+ */
+@Component
+class SnapResultCache(
+    val networkVersionProbe: INetworkVersionProbe,
+    meterRegistry: MeterRegistry,
+    @param:Value("\${$ENABLED_PROPERTY:false}") val enabled: Boolean,
+    @param:Value("\${$MAX_ENTRIES_PROPERTY:10000}") val maxEntries: Int
+) {
+    private data class Key(
+        val vehicleType: VehicleType,
+        val linkQueryDistance: Int,
+        val x: Long,
+        val y: Long
+    )
+
+    private val entries =
+        object : LinkedHashMap<Key, SnapPointToLinkResult>(256, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, SnapPointToLinkResult>) =
+                size > maxEntries
+        }
+
+    private var networkVersion: String? = null
+
+    private val hits: Counter = meterRegistry.counter(REQUESTS_METRIC, "result", "hit")
+    private val misses: Counter = meterRegistry.counter(REQUESTS_METRIC, "result", "miss")
+
+    val size: Int
+        @Synchronized get() = entries.size
+
+    init {
+        Gauge
+            .builder(ENTRIES_METRIC, this) { it.size.toDouble() }
+            .register(meterRegistry)
+        Gauge
+            .builder(HIT_RATIO_METRIC, this) { it.hitRatio }
+            .register(meterRegistry)
+    }
+
+    val hitRatio: Double
+        get() {
+            val total: Double = hits.count() + misses.count()
+
+            return if (total > 0.0) hits.count() / total else 0.0
+        }
+
+    /**
+     * Finds the closest infrastructure link for each of the given points.
+     * Points missing from the cache are resolved with [findClosestLinks],
+     * which is not called at all if every point is found in the cache.
+     *
+     * @return the closest links indexed by the one-based sequence number of
+     * the point. Points for which no link was found are left out.
+     */
+    fun findClosestLinks(
+        points: List<Point<G2D>>,
+        vehicleType: VehicleType,
+        linkQueryDistance: Int,
+        findClosestLinks: (List<Point<G2D>>) -> Map<Int, SnapPointToLinkResult>
+    ): Map<Int, SnapPointToLinkResult> {
+        if (!enabled) {
+            return findClosestLinks(points)
+        }
+
+        val version: String = networkVersionProbe.currentVersion.toString()
+        val keys: List<Key> = points.map { point -> createKey(point, vehicleType, linkQueryDistance) }
+
+        val result: MutableMap<Int, SnapPointToLinkResult> = HashMap()
+        val missingPointIndices: MutableList<Int> = ArrayList()
+
+        synchronized(this) {
+            val isCurrentVersion: Boolean = isCurrentNetworkVersion(version)
+
+            keys.forEachIndexed { pointIndex, key ->
+                val cached: SnapPointToLinkResult? = if (isCurrentVersion) entries[key] else null
+
+                if (cached != null) {
+                    result[pointIndex + 1] = cached.copy(point = points[pointIndex])
+                } else {
+                    missingPointIndices.add(pointIndex)
+                }
+            }
+        }
+
+        hits.increment((points.size - missingPointIndices.size).toDouble())
+        misses.increment(missingPointIndices.size.toDouble())
+
+        if (missingPointIndices.isEmpty()) {
+            return result
+        }
+
+        val resolved: Map<Int, SnapPointToLinkResult> = findClosestLinks(missingPointIndices.map(points::get))
+
+        synchronized(this) {
+            val isCurrentVersion: Boolean = isCurrentNetworkVersion(version)
+
+            resolved.forEach { (missingPointSeqNum, snap) ->
+                val pointIndex: Int = missingPointIndices[missingPointSeqNum - 1]
+
+                result[pointIndex + 1] = snap
+
+                if (isCurrentVersion) {
+                    entries[keys[pointIndex]] = snap
+                }
+            }
+        }
+
+        return result
+    }
+
+    @EventListener
+    @Synchronized
+    fun onNetworkVersionChanged(event: NetworkVersionChangedEvent) {
+        entries.clear()
+        networkVersion = event.version.toString()
+    }
+
+    private fun isCurrentNetworkVersion(version: String): Boolean {
+        if (networkVersion == null) {
+            networkVersion = version
+        }
+
+        return version == networkVersion
+    }
+
+    companion object {
+        const val ENABLED_PROPERTY = "mapmatching.routing.snap-cache.enabled"
+        const val MAX_ENTRIES_PROPERTY = "mapmatching.routing.snap-cache.max-entries"
+
+        const val REQUESTS_METRIC = "mapmatching.routing.snap-cache.requests"
+        const val ENTRIES_METRIC = "mapmatching.routing.snap-cache.entries"
+        const val HIT_RATIO_METRIC = "mapmatching.routing.snap-cache.hit-ratio"
+
+        const val GRID_SIZE_IN_METERS = 0.5
+
+        private fun createKey(
+            point: Point<G2D>,
+            vehicleType: VehicleType,
+            linkQueryDistance: Int
+        ): Key {
+            val projected = DoubleArray(2)
+            EtrsTm35FinProjection.project(point.position.lon, point.position.lat, projected)
+
+            return Key(
+                vehicleType,
+                linkQueryDistance,
+                (projected[0] / GRID_SIZE_IN_METERS).roundToLong(),
+                (projected[1] / GRID_SIZE_IN_METERS).roundToLong()
+            )
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package fi.hsl.jore4.mapmatching.util
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+
+object ConcurrencyUtils {
+    /**
+     * Evaluates the given tasks concurrently and returns the first non-null
+     * result in the order of the tasks, i.e. the result of the
+     * highest-priority task that succeeds. The semantics are the same as with
+     * sequential `tasks.firstNotNullOfOrNull { it() }`.
+     *
+     * At most [maxConcurrency] tasks are in progress at a time. A task is
+     * submitted to [executor] when the outcome of a higher-priority task
+     * becomes known, so that the in-progress tasks always form a window
+     * starting from the highest-priority task whose result is not yet known.
+     * As soon as the result is determined, the remaining lower-priority tasks
+     * are cancelled as described in [submitCancellable].
+     *
+     * If the result of a task is to be inspected and the task has thrown an
+     * exception, the exception is re-thrown after the remaining tasks are
+     * cancelled.
+     *
+     * @param maxConcurrency the maximum number of tasks in progress at a time.
+     * With value 1, the tasks are evaluated sequentially in the calling thread.
+     */
+    fun <T : Any> findFirstNotNullConcurrently(
+        tasks: List<() -> T?>,
+        executor: ExecutorService,
+        maxConcurrency: Int
+    ): T? {
+        require(maxConcurrency >= 1) { "maxConcurrency must be at least 1" }
+
+        if (maxConcurrency == 1 || tasks.size <= 1) {
+            return tasks.firstNotNullOfOrNull { it() }
+        }
+
+        val submittedTasks: MutableList<CancellableTask<T?>> = ArrayList(tasks.size)
+
+        fun submitNext() {
+            if (submittedTasks.size < tasks.size) {
+                submittedTasks.add(submitCancellable(executor, tasks[submittedTasks.size]))
+            }
+        }
+
+        repeat(maxConcurrency) { submitNext() }
+
+        try {
+            var index = 0
+
+            while (index < submittedTasks.size) {
+                val result: T? = getResult(submittedTasks[index++].future)
+
+                if (result != null) {
+                    return result
+                }
+
+                submitNext()
+            }
+
+            return null
+        } finally {
+            submittedTasks.forEach(CancellableTask<T?>::cancel)
+        }
+    }
+
+    /**
+     * Submits the given task to [executor] to be run within a
+     * [RequestDeadline] of its own (see [RequestDeadline.forConcurrentTask]).
+     * Cancelling the returned task both interrupts the task and cancels the
+     * JDBC statement it is executing. Interrupting alone does not stop a
+     * statement, which would keep holding its connection until completed.
+     */
+    fun <T> submitCancellable(
+        executor: ExecutorService,
+        task: () -> T
+    ): CancellableTask<T> {
+        val deadline: RequestDeadline = RequestDeadline.forConcurrentTask()
+
+        return CancellableTask(executor.submit<T> { RequestDeadline.runWithin(deadline, task) }, deadline)
+    }
+
+    /**
+     * Waits for the result of the given future. The exception thrown by the
+     * task, if any, is re-thrown as such. If the calling thread is interrupted
+     * while waiting, a [CancellationException] is thrown with the interrupt
+     * status of the thread restored.
+     */
+    fun <T> getResult(future: Future<T>): T =
+        try {
+            future.get()
+        } catch (ex: ExecutionException) {
+            throw ex.cause ?: ex
+        } catch (ex: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw CancellationException("Interrupted while waiting for concurrent task").apply { initCause(ex) }
+        }
+
+    /**
+     * A task submitted with [submitCancellable]. The task must be cancelled
+     * once its result is no longer needed, also after it has completed, so
+     * that its deadline is no longer tracked.
+     */
+    class CancellableTask<T>(
+        val future: Future<T>,
+        private val deadline: RequestDeadline
+    ) {
+        fun cancel() {
+            // The statement is cancelled first, since an interrupted task stops tracking it.
+            deadline.cancel()
+            future.cancel(true)
+        }
+    }
+}
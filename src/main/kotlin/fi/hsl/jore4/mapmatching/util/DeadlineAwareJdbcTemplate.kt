@@ -0,0 +1,44 @@
+package fi.hsl.jore4.mapmatching.util
+
+import org.springframework.dao.QueryTimeoutException
+import org.springframework.jdbc.core.JdbcTemplate
+import java.sql.Statement
+import javax.sql.DataSource
+import kotlin.math.max
+
+/**
+ * A [JdbcTemplate] that applies the [RequestDeadline] of the current thread
+ * to every statement. The remaining time (rounded up to whole seconds as
+ * required by JDBC) is set as the query timeout of the statement, so that the
+ * database cancels the statement when the deadline is exceeded. The statement
+ * is also registered to the deadline in order to be cancelled if the request
+ * is abandoned. A deadline that does not expire sets no query timeout.
+ *
+ * A [QueryTimeoutException] is thrown without executing the statement if the
+ * deadline has already expired or been cancelled.
+ */
+class DeadlineAwareJdbcTemplate(
+    dataSource: DataSource
+) : JdbcTemplate(dataSource) {
+    override fun applyStatementSettings(stmt: Statement) {
+        super.applyStatementSettings(stmt)
+
+        val deadline: RequestDeadline = RequestDeadline.current() ?: return
+
+        if (deadline.isCancelled) {
+            throw QueryTimeoutException("Request was cancelled")
+        }
+
+        if (deadline.isBounded) {
+            val remainingMillis: Long = deadline.remainingMillis
+
+            if (remainingMillis <= 0) {
+                throw QueryTimeoutException("Request deadline exceeded")
+            }
+
+            stmt.queryTimeout = max(1L, (remainingMillis + 999) / 1000).toInt()
+        }
+
+        deadline.register(stmt)
+    }
+}
@@ -0,0 +1,28 @@
+package fi.hsl.jore4.mapmatching.util
+
+import java.util.concurrent.AbstractExecutorService
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * An executor service that runs tasks on the given delegate within the
+ * [RequestDeadline] of the submitting thread.
+ */
+class DeadlinePropagatingExecutorService(
+    private val delegate: ExecutorService
+) : AbstractExecutorService() {
+    override fun execute(command: Runnable) = delegate.execute(RequestDeadline.propagate(command))
+
+    override fun shutdown() = delegate.shutdown()
+
+    override fun shutdownNow(): List<Runnable> = delegate.shutdownNow()
+
+    override fun isShutdown(): Boolean = delegate.isShutdown
+
+    override fun isTerminated(): Boolean = delegate.isTerminated
+
+    override fun awaitTermination(
+        timeout: Long,
+        unit: TimeUnit
+    ): Boolean = delegate.awaitTermination(timeout, unit)
+}
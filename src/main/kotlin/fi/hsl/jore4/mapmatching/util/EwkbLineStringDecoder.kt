@@ -0,0 +1,83 @@
+package fi.hsl.jore4.mapmatching.util
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Decodes 2D LineString geometries in EWKB format (as produced by PostGIS
+ * function ST_AsEWKB) directly into primitive coordinate arrays without
+ * constructing an intermediate geolatte geometry.
+ */
+object EwkbLineStringDecoder {
+    private const val WKB_LINESTRING_TYPE = 2
+
+    private const val EWKB_Z_FLAG = 0x80000000.toInt()
+    private const val EWKB_M_FLAG = 0x40000000
+    private const val EWKB_SRID_FLAG = 0x20000000
+
+    const val WGS84_SRID = 4326
+    const val ETRS_TM35FIN_SRID = 3067
+
+    /**
+     * @param ewkb the geometry in EWKB format. The coordinates are expected in
+     * WGS84 (EPSG:4326) coordinate system.
+     *
+     * @throws IllegalArgumentException if the geometry is not a 2D LineString
+     * in WGS84 coordinate system
+     */
+    fun decode(ewkb: ByteArray): LineStringCoordinates = LineStringCoordinates(decodeCoordinates(ewkb, WGS84_SRID))
+
+    /**
+     * Decodes the coordinates of a 2D LineString into an array of interleaved
+     * x/y values.
+     *
+     * @param ewkb the geometry in EWKB format
+     * @param expectedSrid the SRID of the coordinate system that the geometry
+     * is expected in, if the SRID is included in [ewkb]
+     *
+     * @throws IllegalArgumentException if the geometry is not a 2D LineString
+     * in the expected coordinate system
+     */
+    fun decodeCoordinates(
+        ewkb: ByteArray,
+        expectedSrid: Int
+    ): DoubleArray {
+        require(ewkb.isNotEmpty()) { "Empty EWKB" }
+
+        val buffer: ByteBuffer =
+            ByteBuffer
+                .wrap(ewkb)
+                .order(if (ewkb[0].toInt() == 0) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN)
+
+        buffer.position(1)
+
+        val typeWord: Int = buffer.getInt()
+
+        require(typeWord and 0x0FFFFFFF == WKB_LINESTRING_TYPE) {
+            "Geometry does not represent a LineString: type=${typeWord and 0x0FFFFFFF}"
+        }
+        require(typeWord and (EWKB_Z_FLAG or EWKB_M_FLAG) == 0) {
+            "Geometry does not represent a 2D LineString"
+        }
+
+        if (typeWord and EWKB_SRID_FLAG != 0) {
+            val srid: Int = buffer.getInt()
+
+            require(srid == expectedSrid) { "Geometry is not in expected coordinate system: SRID=$srid" }
+        }
+
+        val numPositions: Int = buffer.getInt()
+
+        require(numPositions >= 0 && buffer.remaining() >= 16L * numPositions) {
+            "Truncated EWKB LineString: $numPositions positions expected"
+        }
+
+        val coordinates = DoubleArray(2 * numPositions)
+
+        for (index in coordinates.indices) {
+            coordinates[index] = buffer.getDouble()
+        }
+
+        return coordinates
+    }
+}
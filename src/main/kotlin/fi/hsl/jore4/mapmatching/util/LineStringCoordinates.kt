@@ -0,0 +1,147 @@
+package fi.hsl.jore4.mapmatching.util
+
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Geometries.mkLineString
+import org.geolatte.geom.LineString
+import org.geolatte.geom.PositionSequenceBuilder
+import org.geolatte.geom.PositionSequenceBuilders
+import org.geolatte.geom.crs.CoordinateReferenceSystems.WGS84
+import kotlin.math.pow
+import kotlin.math.sqrt
+
+/**
+ * A 2D LineString in WGS84 coordinate system backed by a primitive array of
+ * interleaved longitude/latitude values. Route geometries are processed in
+ * this form from the decoding of database results until the creation of a
+ * response, which avoids allocating an object for every position. Conversion
+ * to geolatte [LineString] is done only when needed via [toLineString].
+ *
+ * Instances are not to be modified after they have been shared.
+ */
+class LineStringCoordinates internal constructor(
+    private val coordinates: DoubleArray
+) {
+    init {
+        require(coordinates.size % 2 == 0) { "Coordinate array must consist of longitude/latitude pairs" }
+    }
+
+    val numPositions: Int
+        get() = coordinates.size / 2
+
+    fun getLon(positionIndex: Int): Double = coordinates[2 * positionIndex]
+
+    fun getLat(positionIndex: Int): Double = coordinates[2 * positionIndex + 1]
+
+    /**
+     * Returns a new instance in which the positions are in reverse order.
+     */
+    fun reversed(): LineStringCoordinates = LineStringCoordinates(coordinates.copyOf()).also { it.reverseInPlace() }
+
+    internal fun reverseInPlace() {
+        var i = 0
+        var j = coordinates.size - 2
+
+        while (i < j) {
+            val lon: Double = coordinates[i]
+            val lat: Double = coordinates[i + 1]
+
+            coordinates[i] = coordinates[j]
+            coordinates[i + 1] = coordinates[j + 1]
+            coordinates[j] = lon
+            coordinates[j + 1] = lat
+
+            i += 2
+            j -= 2
+        }
+    }
+
+    fun toLineString(): LineString<G2D> {
+        val builder: PositionSequenceBuilder<G2D> = PositionSequenceBuilders.fixedSized(numPositions, G2D::class.java)
+
+        for (i in 0 until numPositions) {
+            builder.add(getLon(i), getLat(i))
+        }
+
+        return mkLineString(builder.toPositionSequence(), WGS84)
+    }
+
+    override fun equals(other: Any?): Boolean =
+        other is LineStringCoordinates && coordinates.contentEquals(other.coordinates)
+
+    override fun hashCode(): Int = coordinates.contentHashCode()
+
+    override fun toString(): String =
+        (0 until numPositions).joinToString(", ", "LineStringCoordinates(", ")") { "${getLon(it)} ${getLat(it)}" }
+
+    companion object {
+        // This is in WGS84 units and corresponds to approximately 5.5 millimeters at northern
+        // latitudes.
+        private const val LINE_ENDPOINT_CONNECTION_TOLERANCE = 0.0000001
+
+        fun of(vararg lonLatPairs: Double): LineStringCoordinates = LineStringCoordinates(lonLatPairs.copyOf())
+
+        fun fromLineString(line: LineString<G2D>): LineStringCoordinates {
+            val coordinates = DoubleArray(2 * line.numPositions)
+
+            line.positions.forEachIndexed { index, position: G2D ->
+                coordinates[2 * index] = position.lon
+                coordinates[2 * index + 1] = position.lat
+            }
+
+            return LineStringCoordinates(coordinates)
+        }
+
+        /**
+         * Merges the given lines into one. The lines must be topologically
+         * continuous, i.e. each line must start (very close to) where the
+         * previous one ends. The shared endpoint is included only once. The
+         * result is copied into a single array allocated up front.
+         */
+        fun mergeContinuousLines(linesToMerge: List<LineStringCoordinates>): LineStringCoordinates {
+            require(linesToMerge.isNotEmpty()) { "Must have at least one LineString" }
+            require(linesToMerge.all { it.numPositions > 0 }) { "Cannot merge empty LineString" }
+
+            val totalNumPositions: Int = linesToMerge.sumOf { it.numPositions } - (linesToMerge.size - 1)
+            val merged = DoubleArray(2 * totalNumPositions)
+
+            val firstLine: LineStringCoordinates = linesToMerge.first()
+
+            // Add all positions of the first line.
+            firstLine.coordinates.copyInto(merged)
+
+            var offset: Int = firstLine.coordinates.size
+
+            // Do not include the first line because it was already added.
+            for (lineIndex in 1 until linesToMerge.size) {
+                val line: LineStringCoordinates = linesToMerge[lineIndex]
+
+                val prevLon: Double = merged[offset - 2]
+                val prevLat: Double = merged[offset - 1]
+
+                // In the case of Digiroad data, in most cases (at least 99.95 %) these positions are
+                // the same. However, we need to account for some topology inaccuracies by allowing
+                // a small distance between the endpoints of consecutive lines.
+                if (line.getLon(0) != prevLon || line.getLat(0) != prevLat) {
+                    val distance: Double =
+                        sqrt(
+                            (line.getLat(0) - prevLat).pow(2.0) + (line.getLon(0) - prevLon).pow(2.0)
+                        )
+
+                    // The next line must start very close to the end of the previous line.
+                    require(distance < LINE_ENDPOINT_CONNECTION_TOLERANCE) {
+                        "Not topologically continuous sequence of lines. Distance between consecutive line endpoints " +
+                            "is more than allowed in WGS84 units: $distance >= $LINE_ENDPOINT_CONNECTION_TOLERANCE"
+                    }
+                }
+
+                // Add all positions except the first one (which was already added within processing of previous
+                // line).
+                line.coordinates.copyInto(merged, offset, 2, line.coordinates.size)
+
+                offset += line.coordinates.size - 2
+            }
+
+            return LineStringCoordinates(merged)
+        }
+    }
+}
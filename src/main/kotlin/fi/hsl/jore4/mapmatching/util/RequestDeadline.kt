@@ -0,0 +1,164 @@
+package fi.hsl.jore4.mapmatching.util
+
+import java.sql.SQLException
+import java.sql.Statement
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * A point in time by which the processing of a request must be completed.
+ * The deadline of the current thread is consulted when executing JDBC
+ * statements so that each statement gets the remaining time as its timeout.
+ * The statement being executed by each thread within the deadline is tracked so
+ * that it can be cancelled when the request is abandoned, e.g. when the client
+ * has disconnected.
+ *
+ * The deadline is bound to a thread with [runWithin]. It is propagated to
+ * tasks run on other threads by wrapping the tasks with [propagate]. A
+ * concurrent task that may be cancelled on its own is given a deadline of its
+ * own with [forConcurrentTask].
+ */
+class RequestDeadline private constructor(
+    // Null means that the deadline never expires.
+    private val expiresAtNanos: Long?,
+    private val parent: RequestDeadline? = null
+) {
+    @Volatile
+    var isCancelled: Boolean = false
+        private set
+
+    // The most recent statement of each thread. JDBC statements are executed
+    // synchronously, so the previous statement of a thread has completed by
+    // the time the thread registers another one.
+    private val statements: MutableMap<Thread, Statement> = ConcurrentHashMap()
+
+    // The deadlines of concurrent tasks that are cancelled along with this one.
+    private val children: MutableSet<RequestDeadline> = ConcurrentHashMap.newKeySet()
+
+    /**
+     * Tells whether this deadline expires at some point. A deadline that does
+     * not expire is only used to be able to cancel a task.
+     */
+    val isBounded: Boolean
+        get() = expiresAtNanos != null
+
+    val remainingMillis: Long
+        get() = expiresAtNanos?.let { TimeUnit.NANOSECONDS.toMillis(it - System.nanoTime()) } ?: Long.MAX_VALUE
+
+    val isExpired: Boolean
+        get() = expiresAtNanos != null && expiresAtNanos - System.nanoTime() <= 0
+
+    /**
+     * Registers a statement about to be executed by the current thread to be
+     * cancelled if this deadline is cancelled. The statement replaces the one
+     * previously registered by the thread. If this deadline is already
+     * cancelled, the statement is cancelled immediately.
+     */
+    fun register(statement: Statement) {
+        statements[Thread.currentThread()] = statement
+
+        if (isCancelled) {
+            cancelStatement(statement)
+        }
+    }
+
+    /**
+     * Marks this deadline as cancelled and cancels the statements executed
+     * within it and within the deadlines of its concurrent tasks. Cancelling
+     * statements that are already completed has no effect.
+     */
+    fun cancel() {
+        isCancelled = true
+
+        statements.values.forEach(::cancelStatement)
+        statements.clear()
+
+        children.forEach(RequestDeadline::cancel)
+        children.clear()
+
+        parent?.children?.remove(this)
+    }
+
+    private fun addChild(child: RequestDeadline) {
+        children.add(child)
+
+        // Cancellation may have happened before the child was added.
+        if (isCancelled) {
+            child.cancel()
+        }
+    }
+
+    private fun releaseCurrentThread() {
+        statements.remove(Thread.currentThread())
+    }
+
+    companion object {
+        private val CURRENT: ThreadLocal<RequestDeadline?> = ThreadLocal()
+
+        fun after(timeout: Duration): RequestDeadline = RequestDeadline(System.nanoTime() + timeout.toNanos())
+
+        /**
+         * Creates a deadline for a task run concurrently on behalf of the
+         * current thread. The deadline expires together with the deadline of
+         * the current thread and is cancelled when that one is cancelled. It
+         * can also be cancelled alone in order to cancel the statement of the
+         * task only, e.g. when the result of the task is no longer needed. If
+         * no deadline is bound to the current thread, the created deadline
+         * does not expire.
+         *
+         * The deadline must be cancelled once the task is no longer needed so
+         * that it is no longer tracked by the deadline of the current thread.
+         */
+        fun forConcurrentTask(): RequestDeadline {
+            val parent: RequestDeadline = current() ?: return RequestDeadline(null)
+
+            return RequestDeadline(parent.expiresAtNanos, parent).also(parent::addChild)
+        }
+
+        /**
+         * Returns the deadline bound to the current thread, if any.
+         */
+        fun current(): RequestDeadline? = CURRENT.get()
+
+        /**
+         * Runs the given block with the given deadline bound to the current
+         * thread. A null deadline means no deadline. The last statement
+         * registered by the block is no longer tracked once the block has
+         * completed.
+         */
+        fun <T> runWithin(
+            deadline: RequestDeadline?,
+            block: () -> T
+        ): T {
+            val previous: RequestDeadline? = CURRENT.get()
+
+            CURRENT.set(deadline)
+
+            try {
+                return block()
+            } finally {
+                deadline?.releaseCurrentThread()
+                CURRENT.set(previous)
+            }
+        }
+
+        /**
+         * Wraps the given task so that it is run within the deadline bound to
+         * the current thread at the time of calling this function.
+         */
+        fun propagate(task: Runnable): Runnable {
+            val deadline: RequestDeadline = current() ?: return task
+
+            return Runnable { runWithin(deadline) { task.run() } }
+        }
+
+        private fun cancelStatement(statement: Statement) {
+            try {
+                statement.cancel()
+            } catch (_: SQLException) {
+                // The statement is already closed.
+            }
+        }
+    }
+}
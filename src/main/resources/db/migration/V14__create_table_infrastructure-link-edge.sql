@@ -0,0 +1,78 @@
+--
+-- Create table for pgRouting edges pre-joined per vehicle type.
+--
+
+CREATE TABLE routing.infrastructure_link_edge
+(
+    vehicle_type    text NOT NULL,
+    id              bigint NOT NULL,
+    source          bigint NOT NULL,
+    target          bigint NOT NULL,
+    cost            double precision NOT NULL,
+    reverse_cost    double precision NOT NULL,
+    geom            geometry(LINESTRING, 3067) NOT NULL,
+    PRIMARY KEY (vehicle_type, id)
+) PARTITION BY LIST (vehicle_type);
+
+COMMENT ON TABLE routing.infrastructure_link_edge IS
+    'The edges of the routing graph of each vehicle type, i.e. the infrastructure links joined with the vehicle types by which they are safely traversed. The table is partitioned by vehicle type so that pgRouting edge queries constrained by a vehicle type read only the partition and the indices of that vehicle type. The content is derived from other tables and must be refreshed by calling `routing.refresh_infrastructure_link_edge()` procedure after the infrastructure network is imported.';
+COMMENT ON COLUMN routing.infrastructure_link_edge.vehicle_type IS
+    'The vehicle type that can safely traverse the infrastructure link';
+COMMENT ON COLUMN routing.infrastructure_link_edge.id IS
+    'The ID of the infrastructure link';
+COMMENT ON COLUMN routing.infrastructure_link_edge.source IS
+    'The ID of the start node of the infrastructure link';
+COMMENT ON COLUMN routing.infrastructure_link_edge.target IS
+    'The ID of the end node of the infrastructure link';
+COMMENT ON COLUMN routing.infrastructure_link_edge.cost IS
+    'The weight in terms of graph traversal for forward direction of the infrastructure link';
+COMMENT ON COLUMN routing.infrastructure_link_edge.reverse_cost IS
+    'The weight in terms of graph traversal for reverse direction of the infrastructure link';
+COMMENT ON COLUMN routing.infrastructure_link_edge.geom IS
+    'The 2D linestring geometry of the infrastructure link in EPSG:3067 coordinate system';
+
+-- Create indices to improve performance of pgRouting edge queries. The indices are created
+-- separately for every partition.
+CREATE INDEX infrastructure_link_edge_geom_idx ON routing.infrastructure_link_edge USING GIST(geom);
+CREATE INDEX infrastructure_link_edge_source_idx ON routing.infrastructure_link_edge (source);
+CREATE INDEX infrastructure_link_edge_target_idx ON routing.infrastructure_link_edge (target);
+
+--
+-- Create procedure for refreshing the pgRouting edges.
+--
+
+CREATE PROCEDURE routing.refresh_infrastructure_link_edge()
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    vt text;
+BEGIN
+    -- Create missing partitions for vehicle types.
+    FOR vt IN SELECT vehicle_type FROM routing.vehicle_type LOOP
+        EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS routing.%I PARTITION OF routing.infrastructure_link_edge FOR VALUES IN (%L)',
+            'infrastructure_link_edge_' || vt,
+            vt
+        );
+    END LOOP;
+
+    TRUNCATE routing.infrastructure_link_edge;
+
+    -- The rows are inserted in spatial order so that links close to each other are likely to
+    -- share table pages.
+    INSERT INTO routing.infrastructure_link_edge (vehicle_type, id, source, target, cost, reverse_cost, geom)
+    SELECT s.vehicle_type, l.infrastructure_link_id, l.start_node_id, l.end_node_id, l.cost, l.reverse_cost, l.geom
+    FROM routing.infrastructure_link l
+    INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
+      ON s.infrastructure_link_id = l.infrastructure_link_id
+    ORDER BY s.vehicle_type, l.geom;
+
+    ANALYZE routing.infrastructure_link_edge;
+END;
+$$;
+
+COMMENT ON PROCEDURE routing.refresh_infrastructure_link_edge() IS
+    'Populates `routing.infrastructure_link_edge` table from infrastructure links and their associations with vehicle types. Must be called after the infrastructure network is imported or modified.';
+
+-- Populate edges from already imported infrastructure network, if any.
+CALL routing.refresh_infrastructure_link_edge();
@@ -0,0 +1,101 @@
+--
+-- Create table for topology nodes reachable by vehicle types.
+--
+
+CREATE TABLE routing.infrastructure_link_vertex_reachable_by_vehicle_type
+(
+    vehicle_type    text NOT NULL,
+    id              bigint NOT NULL,
+    the_geom        geometry(POINT, 3067) NOT NULL,
+    PRIMARY KEY (vehicle_type, id)
+) PARTITION BY LIST (vehicle_type);
+
+COMMENT ON TABLE routing.infrastructure_link_vertex_reachable_by_vehicle_type IS
+    'The topology nodes that are an endpoint of at least one infrastructure link safely traversed by the vehicle type. The table is partitioned by vehicle type so that the closest nodes for a vehicle type can be found with a plain index-based nearest-neighbour search. The content is derived from `routing.infrastructure_link_edge` and `routing.infrastructure_link_vertices_pgr` tables and refreshed by `routing.refresh_infrastructure_link_edge()` procedure.';
+COMMENT ON COLUMN routing.infrastructure_link_vertex_reachable_by_vehicle_type.vehicle_type IS
+    'The vehicle type by which the node is reachable';
+COMMENT ON COLUMN routing.infrastructure_link_vertex_reachable_by_vehicle_type.id IS
+    'The ID of the topology node';
+COMMENT ON COLUMN routing.infrastructure_link_vertex_reachable_by_vehicle_type.the_geom IS
+    'The 2D point geometry of the topology node in EPSG:3067 coordinate system';
+
+CREATE INDEX infrastructure_link_vertex_reachable_by_vehicle_type_the_geom_idx
+    ON routing.infrastructure_link_vertex_reachable_by_vehicle_type USING GIST(the_geom);
+
+--
+-- Create procedure for refreshing the reachable nodes and include it in the refresh of
+-- pgRouting edges.
+--
+
+CREATE PROCEDURE routing.refresh_infrastructure_link_vertex_reachable_by_vehicle_type()
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    vt text;
+BEGIN
+    -- Create missing partitions for vehicle types.
+    FOR vt IN SELECT vehicle_type FROM routing.vehicle_type LOOP
+        EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS routing.%I PARTITION OF routing.infrastructure_link_vertex_reachable_by_vehicle_type FOR VALUES IN (%L)',
+            'infrastructure_link_vertex_reachable_by_' || vt,
+            vt
+        );
+    END LOOP;
+
+    TRUNCATE routing.infrastructure_link_vertex_reachable_by_vehicle_type;
+
+    INSERT INTO routing.infrastructure_link_vertex_reachable_by_vehicle_type (vehicle_type, id, the_geom)
+    SELECT n.vehicle_type, v.id, v.the_geom
+    FROM (
+        SELECT e.vehicle_type, e.source AS node_id FROM routing.infrastructure_link_edge e
+        UNION
+        SELECT e.vehicle_type, e.target AS node_id FROM routing.infrastructure_link_edge e
+    ) n
+    INNER JOIN routing.infrastructure_link_vertices_pgr v ON v.id = n.node_id
+    ORDER BY n.vehicle_type, v.the_geom;
+
+    ANALYZE routing.infrastructure_link_vertex_reachable_by_vehicle_type;
+END;
+$$;
+
+COMMENT ON PROCEDURE routing.refresh_infrastructure_link_vertex_reachable_by_vehicle_type() IS
+    'Populates `routing.infrastructure_link_vertex_reachable_by_vehicle_type` table from pgRouting edges and topology nodes. Called by `routing.refresh_infrastructure_link_edge()` procedure.';
+
+CREATE OR REPLACE PROCEDURE routing.refresh_infrastructure_link_edge()
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    vt text;
+BEGIN
+    -- Create missing partitions for vehicle types.
+    FOR vt IN SELECT vehicle_type FROM routing.vehicle_type LOOP
+        EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS routing.%I PARTITION OF routing.infrastructure_link_edge FOR VALUES IN (%L)',
+            'infrastructure_link_edge_' || vt,
+            vt
+        );
+    END LOOP;
+
+    TRUNCATE routing.infrastructure_link_edge;
+
+    -- The rows are inserted in spatial order so that links close to each other are likely to
+    -- share table pages.
+    INSERT INTO routing.infrastructure_link_edge (vehicle_type, id, source, target, cost, reverse_cost, geom)
+    SELECT s.vehicle_type, l.infrastructure_link_id, l.start_node_id, l.end_node_id, l.cost, l.reverse_cost, l.geom
+    FROM routing.infrastructure_link l
+    INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
+      ON s.infrastructure_link_id = l.infrastructure_link_id
+    ORDER BY s.vehicle_type, l.geom;
+
+    ANALYZE routing.infrastructure_link_edge;
+
+    -- The reachable nodes are derived from the edges.
+    CALL routing.refresh_infrastructure_link_vertex_reachable_by_vehicle_type();
+END;
+$$;
+
+COMMENT ON PROCEDURE routing.refresh_infrastructure_link_edge() IS
+    'Populates `routing.infrastructure_link_edge` and `routing.infrastructure_link_vertex_reachable_by_vehicle_type` tables from infrastructure links, their associations with vehicle types and topology nodes. Must be called after the infrastructure network or its topology is imported or modified.';
+
+-- Populate nodes from already imported infrastructure network, if any.
+CALL routing.refresh_infrastructure_link_vertex_reachable_by_vehicle_type();
@@ -0,0 +1,68 @@
+--
+-- Create single-row table for the version of the infrastructure network.
+--
+
+CREATE TABLE routing.infrastructure_network_version
+(
+    id              boolean PRIMARY KEY DEFAULT true CHECK (id),
+    version         bigint NOT NULL,
+    updated_at      timestamp with time zone NOT NULL
+);
+
+COMMENT ON TABLE routing.infrastructure_network_version IS
+    'The version of the infrastructure network. The table consists of a single row. The version is incremented by triggers in the same transaction in which the infrastructure network, its topology, public transport stops or the tables derived from them are modified. Hence, a version always identifies a committed snapshot of the network data.';
+COMMENT ON COLUMN routing.infrastructure_network_version.id IS
+    'Constant primary key restricting the table to a single row';
+COMMENT ON COLUMN routing.infrastructure_network_version.version IS
+    'The version number of the infrastructure network, incremented on every modifying statement';
+COMMENT ON COLUMN routing.infrastructure_network_version.updated_at IS
+    'The start time of the transaction that last incremented the version';
+
+INSERT INTO routing.infrastructure_network_version (version, updated_at) VALUES (1, now());
+
+--
+-- Create trigger function for incrementing the version and attach it to the tables of the
+-- infrastructure network.
+--
+
+CREATE FUNCTION routing.increment_infrastructure_network_version()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    UPDATE routing.infrastructure_network_version
+    SET version = version + 1,
+        updated_at = now();
+
+    RETURN NULL;
+END;
+$$;
+
+COMMENT ON FUNCTION routing.increment_infrastructure_network_version() IS
+    'Increments the version of the infrastructure network. Used by statement-level triggers of the tables of the infrastructure network.';
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON routing.infrastructure_link
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_network_version();
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON routing.infrastructure_link_safely_traversed_by_vehicle_type
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_network_version();
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON routing.infrastructure_link_vertices_pgr
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_network_version();
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON routing.public_transport_stop
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_network_version();
+
+-- The derived tables are always re-populated with an INSERT statement after being truncated by
+-- `routing.refresh_infrastructure_link_edge()` procedure, so truncation need not be tracked.
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE ON routing.infrastructure_link_edge
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_network_version();
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE ON routing.infrastructure_link_vertex_reachable_by_vehicle_type
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_network_version();
@@ -0,0 +1,119 @@
+--
+-- Track whether the pgRouting edges derived from the infrastructure network are up to date.
+--
+
+ALTER TABLE routing.infrastructure_network_version
+    ADD COLUMN topology_version bigint NOT NULL DEFAULT 1,
+    ADD COLUMN edge_topology_version bigint NOT NULL DEFAULT 1;
+
+COMMENT ON COLUMN routing.infrastructure_network_version.topology_version IS
+    'The version number of the tables from which `routing.infrastructure_link_edge` is derived, i.e. infrastructure links, their associations with vehicle types and topology nodes. Incremented on every modifying statement on those tables.';
+COMMENT ON COLUMN routing.infrastructure_network_version.edge_topology_version IS
+    'The topology version from which `routing.infrastructure_link_edge` and `routing.infrastructure_link_vertex_reachable_by_vehicle_type` were last refreshed. The derived tables are stale if this differs from `topology_version`.';
+
+-- The derived tables may already be stale if the network was restored without refreshing them.
+UPDATE routing.infrastructure_network_version
+SET edge_topology_version = 0
+WHERE EXISTS (
+    (
+        SELECT e.vehicle_type, e.id, e.source, e.target, e.cost, e.reverse_cost
+        FROM routing.infrastructure_link_edge e
+        EXCEPT
+        SELECT s.vehicle_type, l.infrastructure_link_id, l.start_node_id, l.end_node_id, l.cost, l.reverse_cost
+        FROM routing.infrastructure_link l
+        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
+          ON s.infrastructure_link_id = l.infrastructure_link_id
+    )
+    UNION ALL
+    (
+        SELECT s.vehicle_type, l.infrastructure_link_id, l.start_node_id, l.end_node_id, l.cost, l.reverse_cost
+        FROM routing.infrastructure_link l
+        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
+          ON s.infrastructure_link_id = l.infrastructure_link_id
+        EXCEPT
+        SELECT e.vehicle_type, e.id, e.source, e.target, e.cost, e.reverse_cost
+        FROM routing.infrastructure_link_edge e
+    )
+);
+
+--
+-- Create trigger function for incrementing both the network version and the topology version and
+-- attach it to the tables from which pgRouting edges are derived instead of the plain network
+-- version trigger.
+--
+
+CREATE FUNCTION routing.increment_infrastructure_topology_version()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    UPDATE routing.infrastructure_network_version
+    SET version = version + 1,
+        topology_version = topology_version + 1,
+        updated_at = now();
+
+    RETURN NULL;
+END;
+$$;
+
+COMMENT ON FUNCTION routing.increment_infrastructure_topology_version() IS
+    'Increments the version of the infrastructure network and the version of its topology. Used by statement-level triggers of the tables from which pgRouting edges are derived.';
+
+DROP TRIGGER network_version_trg ON routing.infrastructure_link;
+DROP TRIGGER network_version_trg ON routing.infrastructure_link_safely_traversed_by_vehicle_type;
+DROP TRIGGER network_version_trg ON routing.infrastructure_link_vertices_pgr;
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON routing.infrastructure_link
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_topology_version();
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON routing.infrastructure_link_safely_traversed_by_vehicle_type
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_topology_version();
+
+CREATE TRIGGER network_version_trg
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON routing.infrastructure_link_vertices_pgr
+    FOR EACH STATEMENT EXECUTE FUNCTION routing.increment_infrastructure_topology_version();
+
+--
+-- Stamp the topology version when pgRouting edges are refreshed.
+--
+
+CREATE OR REPLACE PROCEDURE routing.refresh_infrastructure_link_edge()
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    vt text;
+BEGIN
+    -- Create missing partitions for vehicle types.
+    FOR vt IN SELECT vehicle_type FROM routing.vehicle_type LOOP
+        EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS routing.%I PARTITION OF routing.infrastructure_link_edge FOR VALUES IN (%L)',
+            'infrastructure_link_edge_' || vt,
+            vt
+        );
+    END LOOP;
+
+    TRUNCATE routing.infrastructure_link_edge;
+
+    -- The rows are inserted in spatial order so that links close to each other are likely to
+    -- share table pages.
+    INSERT INTO routing.infrastructure_link_edge (vehicle_type, id, source, target, cost, reverse_cost, geom)
+    SELECT s.vehicle_type, l.infrastructure_link_id, l.start_node_id, l.end_node_id, l.cost, l.reverse_cost, l.geom
+    FROM routing.infrastructure_link l
+    INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
+      ON s.infrastructure_link_id = l.infrastructure_link_id
+    ORDER BY s.vehicle_type, l.geom;
+
+    ANALYZE routing.infrastructure_link_edge;
+
+    -- The reachable nodes are derived from the edges.
+    CALL routing.refresh_infrastructure_link_vertex_reachable_by_vehicle_type();
+
+    UPDATE routing.infrastructure_network_version
+    SET edge_topology_version = topology_version;
+END;
+$$;
+
+COMMENT ON PROCEDURE routing.refresh_infrastructure_link_edge() IS
+    'Populates `routing.infrastructure_link_edge` and `routing.infrastructure_link_vertex_reachable_by_vehicle_type` tables from infrastructure links, their associations with vehicle types and topology nodes, and marks them up to date in `routing.infrastructure_network_version` table. Must be called after the infrastructure network or its topology is imported or modified.';
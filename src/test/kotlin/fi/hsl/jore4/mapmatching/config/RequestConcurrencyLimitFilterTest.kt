@@ -0,0 +1,140 @@
+package fi.hsl.jore4.mapmatching.config
+
+import fi.hsl.jore4.mapmatching.config.RequestConcurrencyLimitConfig.RequestConcurrencyLimitFilter
+import fi.hsl.jore4.mapmatching.config.RequestConcurrencyLimitConfig.RequestConnectionDemand
+import fi.hsl.jore4.mapmatching.controller.api.BatchMapMatchingController
+import fi.hsl.jore4.mapmatching.controller.api.MapMatchingController
+import fi.hsl.jore4.mapmatching.controller.api.RouteController
+import jakarta.servlet.FilterChain
+import jakarta.servlet.http.HttpServletRequest
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+import org.springframework.mock.web.MockAsyncContext
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+
+class RequestConcurrencyLimitFilterTest {
+    private val filter = RequestConcurrencyLimitFilter(PERMITS) { DEMAND }
+
+    private fun createRequest() =
+        MockHttpServletRequest("POST", MapMatchingController.URL_PREFIX + "/bus").apply {
+            isAsyncSupported = true
+        }
+
+    @Nested
+    @DisplayName("Permits of request")
+    inner class PermitsOfRequest {
+        @Test
+        @DisplayName("Permits are held while request is handled synchronously and released afterwards")
+        fun permitsHeldDuringSynchronousRequest() {
+            var availablePermitsDuringRequest: Int? = null
+
+            filter.doFilter(createRequest(), MockHttpServletResponse()) { _, _ ->
+                availablePermitsDuringRequest = filter.numberOfAvailablePermits
+            }
+
+            assertThat(availablePermitsDuringRequest).isEqualTo(PERMITS - DEMAND)
+            assertThat(filter.numberOfAvailablePermits).isEqualTo(PERMITS)
+        }
+
+        @Test
+        @DisplayName("Permits are released when request fails")
+        fun permitsReleasedOnFailure() {
+            assertThatThrownBy {
+                filter.doFilter(createRequest(), MockHttpServletResponse()) { _, _ ->
+                    throw IllegalStateException("failure")
+                }
+            }.isInstanceOf(IllegalStateException::class.java)
+
+            assertThat(filter.numberOfAvailablePermits).isEqualTo(PERMITS)
+        }
+
+        @Test
+        @DisplayName("Permits are held until asynchronous processing is complete")
+        fun permitsHeldUntilAsyncComplete() {
+            val request: MockHttpServletRequest = createRequest()
+
+            filter.doFilter(request, MockHttpServletResponse(), startAsync())
+
+            assertThat(filter.numberOfAvailablePermits).isEqualTo(PERMITS - DEMAND)
+
+            (request.asyncContext as MockAsyncContext).complete()
+
+            assertThat(filter.numberOfAvailablePermits).isEqualTo(PERMITS)
+        }
+
+        @Test
+        @DisplayName("Permits are released only once when asynchronous processing is completed")
+        fun permitsReleasedOnceOnAsyncComplete() {
+            val request: MockHttpServletRequest = createRequest()
+
+            filter.doFilter(request, MockHttpServletResponse(), startAsync())
+
+            val asyncContext = request.asyncContext as MockAsyncContext
+            asyncContext.complete()
+            asyncContext.complete()
+
+            assertThat(filter.numberOfAvailablePermits).isEqualTo(PERMITS)
+        }
+
+        @Test
+        @DisplayName("Request demanding more permits than available in total acquires all of them")
+        fun demandCappedToPermits() {
+            val greedyFilter = RequestConcurrencyLimitFilter(PERMITS) { PERMITS + 1 }
+            var availablePermitsDuringRequest: Int? = null
+
+            greedyFilter.doFilter(createRequest(), MockHttpServletResponse()) { _, _ ->
+                availablePermitsDuringRequest = greedyFilter.numberOfAvailablePermits
+            }
+
+            assertThat(availablePermitsDuringRequest).isZero
+            assertThat(greedyFilter.numberOfAvailablePermits).isEqualTo(PERMITS)
+        }
+
+        private fun startAsync() = FilterChain { request, _ -> (request as HttpServletRequest).startAsync() }
+    }
+
+    @Nested
+    @DisplayName("Connection demand of request")
+    inner class ConnectionDemand {
+        private val connectionDemand = RequestConnectionDemand(3, true, 2)
+
+        private fun demandOf(path: String): Int = connectionDemand.of(MockHttpServletRequest("POST", path))
+
+        @Test
+        @DisplayName("Matching a route demands a connection per concurrent candidate and one for the fallback")
+        fun singleRoute() {
+            assertThat(demandOf(MapMatchingController.URL_PREFIX + "/bus")).isEqualTo(4)
+        }
+
+        @Test
+        @DisplayName("Matching a batch demands connections for the routes matched concurrently")
+        fun batch() {
+            assertThat(demandOf(BatchMapMatchingController.URL_PREFIX + "/bus")).isEqualTo(8)
+        }
+
+        @Test
+        @DisplayName("Route API demands a single connection")
+        fun route() {
+            assertThat(demandOf(RouteController.URL_PREFIX + "/bus/1,2~3,4")).isEqualTo(1)
+        }
+
+        @Test
+        @DisplayName("Matching a route without speculative fallback or concurrent candidates demands one connection")
+        fun sequentialMatching() {
+            val sequentialDemand = RequestConnectionDemand(1, false, 2)
+
+            assertThat(sequentialDemand.of(MockHttpServletRequest("POST", MapMatchingController.URL_PREFIX + "/bus")))
+                .isEqualTo(1)
+        }
+    }
+
+    companion object {
+        private const val PERMITS = 5
+
+        private const val DEMAND = 2
+    }
+}
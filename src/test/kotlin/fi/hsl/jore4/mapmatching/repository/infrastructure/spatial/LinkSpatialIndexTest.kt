@@ -0,0 +1,166 @@
+package fi.hsl.jore4.mapmatching.repository.infrastructure.spatial
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnappedPointOnLink
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class LinkSpatialIndexTest {
+    @Nested
+    @DisplayName("With hand-made links")
+    inner class WithHandMadeLinks {
+        // Link 1: L-shaped link of 30 metres; link 2: straight link of 10 metres above it
+        private val index: LinkSpatialIndex =
+            LinkSpatialIndexBuilder()
+                .addLink(
+                    1,
+                    11,
+                    12,
+                    TrafficFlowDirectionType.BIDIRECTIONAL,
+                    doubleArrayOf(0.0, 0.0, 20.0, 0.0, 20.0, 10.0)
+                ).addLink(
+                    2,
+                    12,
+                    13,
+                    TrafficFlowDirectionType.AGAINST_DIGITISED_DIRECTION,
+                    doubleArrayOf(0.0, 5.0, 10.0, 5.0)
+                ).addSafeTraversal(1, VehicleType.GENERIC_BUS)
+                .addSafeTraversal(2, VehicleType.GENERIC_BUS)
+                .addSafeTraversal(1, VehicleType.GENERIC_TRAM)
+                .build()
+
+        @Test
+        @DisplayName("Closest links are returned in ascending order of distance with link attributes")
+        fun closestLinksReturned() {
+            val closestLinks: List<SnappedPointOnLink> =
+                index.findClosestLinks(15.0, 4.0, VehicleType.GENERIC_BUS, 10.0, 5)
+
+            assertThat(closestLinks.map { it.infrastructureLinkId })
+                .containsExactly(InfrastructureLinkId(1), InfrastructureLinkId(2))
+
+            val first: SnappedPointOnLink = closestLinks[0]
+
+            assertThat(first.closestDistance).isCloseTo(4.0, within(1e-9))
+            assertThat(first.closestPointFractionalMeasure).isCloseTo(0.5, within(1e-9))
+            assertThat(first.infrastructureLinkLength).isCloseTo(30.0, within(1e-9))
+            assertThat(first.trafficFlowDirectionType).isEqualTo(TrafficFlowDirectionType.BIDIRECTIONAL)
+
+            val second: SnappedPointOnLink = closestLinks[1]
+
+            assertThat(second.closestDistance).isCloseTo(sqrt(26.0), within(1e-9))
+            assertThat(second.closestPointFractionalMeasure).isEqualTo(1.0)
+            assertThat(second.startNodeId.value).isEqualTo(12)
+            assertThat(second.endNodeId.value).isEqualTo(13)
+        }
+
+        @Test
+        @DisplayName("Fractional measure is resolved along the whole link")
+        fun fractionalMeasureAlongWholeLink() {
+            val closestLink: SnappedPointOnLink =
+                index.findClosestLinks(25.0, 5.0, VehicleType.GENERIC_BUS, 10.0, 1).single()
+
+            assertThat(closestLink.infrastructureLinkId).isEqualTo(InfrastructureLinkId(1))
+            assertThat(closestLink.closestPointFractionalMeasure).isCloseTo(25.0 / 30.0, within(1e-9))
+        }
+
+        @Test
+        @DisplayName("Links not safely traversable by vehicle type are excluded")
+        fun ineligibleLinksExcluded() {
+            assertThat(
+                index.findClosestLinks(5.0, 5.0, VehicleType.GENERIC_TRAM, 10.0, 5).map { it.infrastructureLinkId }
+            ).containsExactly(InfrastructureLinkId(1))
+
+            assertThat(index.findClosestLinks(5.0, 5.0, VehicleType.GENERIC_METRO, 10.0, 5)).isEmpty()
+        }
+
+        @Test
+        @DisplayName("Links beyond the distance are excluded")
+        fun distantLinksExcluded() {
+            assertThat(
+                index.findClosestLinks(5.0, -3.0, VehicleType.GENERIC_BUS, 5.0, 5).map { it.infrastructureLinkId }
+            ).containsExactly(InfrastructureLinkId(1))
+        }
+    }
+
+    @Test
+    @DisplayName("Results equal those of a brute-force search over random links")
+    fun resultsEqualBruteForceSearch() {
+        val random = Random(15)
+        val links: MutableList<DoubleArray> = ArrayList()
+        val builder = LinkSpatialIndexBuilder(16)
+
+        for (linkId in 1..2000) {
+            val numberOfPositions: Int = random.nextInt(2, 6)
+            val coordinates = DoubleArray(2 * numberOfPositions)
+
+            coordinates[0] = random.nextDouble(0.0, 5000.0)
+            coordinates[1] = random.nextDouble(0.0, 5000.0)
+
+            for (i in 1 until numberOfPositions) {
+                coordinates[2 * i] = coordinates[2 * i - 2] + random.nextDouble(-50.0, 50.0)
+                coordinates[2 * i + 1] = coordinates[2 * i - 1] + random.nextDouble(-50.0, 50.0)
+            }
+
+            links.add(coordinates)
+            builder.addLink(
+                linkId.toLong(),
+                2L * linkId,
+                2L * linkId + 1,
+                TrafficFlowDirectionType.BIDIRECTIONAL,
+                coordinates
+            )
+
+            if (linkId % 3 != 0) {
+                builder.addSafeTraversal(linkId.toLong(), VehicleType.GENERIC_BUS)
+            }
+        }
+
+        val index: LinkSpatialIndex = builder.build()
+
+        repeat(200) {
+            val x: Double = random.nextDouble(0.0, 5000.0)
+            val y: Double = random.nextDouble(0.0, 5000.0)
+
+            val expected: List<Pair<Long, Double>> =
+                links
+                    .mapIndexed { linkIndex, coordinates -> (linkIndex + 1L) to distanceToLine(coordinates, x, y) }
+                    .filter { (linkId, distance) -> linkId % 3 != 0L && distance <= 200.0 }
+                    .sortedBy { it.second }
+                    .take(5)
+
+            val actual: List<SnappedPointOnLink> = index.findClosestLinks(x, y, VehicleType.GENERIC_BUS, 200.0, 5)
+
+            assertThat(actual.map { it.infrastructureLinkId.value }).isEqualTo(expected.map { it.first })
+            actual.zip(expected).forEach { (snap, expectedLink) ->
+                assertThat(snap.closestDistance).isCloseTo(expectedLink.second, within(1e-9))
+            }
+        }
+    }
+
+    companion object {
+        private fun distanceToLine(
+            coordinates: DoubleArray,
+            x: Double,
+            y: Double
+        ): Double =
+            (0 until coordinates.size / 2 - 1).minOf { i ->
+                val x1: Double = coordinates[2 * i]
+                val y1: Double = coordinates[2 * i + 1]
+                val dx: Double = coordinates[2 * i + 2] - x1
+                val dy: Double = coordinates[2 * i + 3] - y1
+                val t: Double = (((x - x1) * dx + (y - y1) * dy) / (dx * dx + dy * dy)).coerceIn(0.0, 1.0)
+
+                val ex: Double = x - (x1 + t * dx)
+                val ey: Double = y - (y1 + t * dy)
+
+                sqrt(ex * ex + ey * ey)
+            }
+    }
+}
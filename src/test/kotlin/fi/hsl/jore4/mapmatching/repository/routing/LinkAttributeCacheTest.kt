@@ -0,0 +1,99 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.ExternalLinkReference
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.util.MultilingualString
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+
+class LinkAttributeCacheTest {
+    private class InMemoryLinkAttributeRepository(
+        val linkAttributes: MutableMap<InfrastructureLinkId, LinkAttributes>
+    ) : ILinkAttributeRepository {
+        val requestedLinkIds: MutableList<Set<InfrastructureLinkId>> = ArrayList()
+
+        override fun findAllLinkAttributes(): Map<InfrastructureLinkId, LinkAttributes> = linkAttributes.toMap()
+
+        override fun findLinkAttributes(
+            linkIds: Collection<InfrastructureLinkId>
+        ): Map<InfrastructureLinkId, LinkAttributes> {
+            requestedLinkIds.add(linkIds.toSet())
+
+            return linkAttributes.filterKeys { it in linkIds }
+        }
+    }
+
+    private val linkName: MultilingualString = MultilingualString.of(mapOf("fi" to "Mannerheimintie"))
+
+    private fun attributes(externalLinkId: String) =
+        LinkAttributes(
+            ExternalLinkReference("digiroad_r", externalLinkId),
+            linkName,
+            false,
+            10.0,
+            10.0
+        )
+
+    private val linkId1 = InfrastructureLinkId(1)
+    private val linkId2 = InfrastructureLinkId(2)
+    private val linkId3 = InfrastructureLinkId(3)
+
+    @Test
+    @DisplayName("Preloaded attributes are returned without querying the repository")
+    fun preloadedAttributesReturned() {
+        val repository =
+            InMemoryLinkAttributeRepository(mutableMapOf(linkId1 to attributes("1"), linkId2 to attributes("2")))
+
+        val cache = LinkAttributeCache(repository, true)
+        cache.loadOnStartup()
+
+        assertThat(cache.getLinkAttributes(listOf(linkId2, linkId1)))
+            .containsExactlyInAnyOrderEntriesOf(mapOf(linkId1 to attributes("1"), linkId2 to attributes("2")))
+        assertThat(repository.requestedLinkIds).isEmpty()
+    }
+
+    @Test
+    @DisplayName("Missing attributes are loaded on demand in one query and retained")
+    fun missingAttributesLoadedOnDemand() {
+        val repository =
+            InMemoryLinkAttributeRepository(
+                mutableMapOf(linkId1 to attributes("1"), linkId2 to attributes("2"), linkId3 to attributes("3"))
+            )
+
+        val cache = LinkAttributeCache(repository, false)
+        cache.loadOnStartup()
+
+        assertThat(cache.size).isZero()
+
+        assertThat(cache.getLinkAttributes(listOf(linkId1, linkId2, linkId1))).hasSize(2)
+        assertThat(cache.getLinkAttributes(listOf(linkId2, linkId3))).hasSize(2)
+
+        assertThat(repository.requestedLinkIds).containsExactly(setOf(linkId1, linkId2), setOf(linkId3))
+        assertThat(cache.size).isEqualTo(3)
+    }
+
+    @Test
+    @DisplayName("Attributes are replaced on reload")
+    fun attributesReplacedOnReload() {
+        val repository = InMemoryLinkAttributeRepository(mutableMapOf(linkId1 to attributes("1")))
+
+        val cache = LinkAttributeCache(repository, true)
+        cache.loadOnStartup()
+
+        repository.linkAttributes[linkId1] = attributes("1b")
+        cache.reload()
+
+        assertThat(cache.getLinkAttributes(listOf(linkId1))).containsEntry(linkId1, attributes("1b"))
+    }
+
+    @Test
+    @DisplayName("Non-existent link is reported as error")
+    fun nonExistentLinkReported() {
+        val cache = LinkAttributeCache(InMemoryLinkAttributeRepository(mutableMapOf()), true)
+
+        assertThatThrownBy { cache.getLinkAttributes(listOf(linkId1)) }
+            .isInstanceOf(IllegalStateException::class.java)
+    }
+}
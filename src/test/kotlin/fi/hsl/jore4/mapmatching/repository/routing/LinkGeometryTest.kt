@@ -0,0 +1,62 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.util.LineStringCoordinates
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+
+class LinkGeometryTest {
+    // Segment lengths in metric coordinates are 10 and 30 metres.
+    private val geometry: LinkGeometry =
+        LinkGeometry.of(
+            LineStringCoordinates.of(24.0, 60.0, 25.0, 60.0, 25.0, 63.0),
+            doubleArrayOf(0.0, 0.0, 10.0, 0.0, 10.0, 30.0)
+        )
+
+    @Test
+    @DisplayName("Length is derived from metric coordinates")
+    fun lengthDerivedFromMetricCoordinates() {
+        assertThat(geometry.length).isEqualTo(40.0)
+    }
+
+    @Nested
+    @DisplayName("Get substring")
+    inner class GetSubstring {
+        @Test
+        @DisplayName("Whole geometry is returned for full range")
+        fun wholeGeometryForFullRange() {
+            assertThat(geometry.getSubstring(0.0, 1.0)).isEqualTo(geometry.coordinates)
+        }
+
+        @Test
+        @DisplayName("Endpoints are interpolated by metric distance and inner positions retained")
+        fun endpointsInterpolatedByMetricDistance() {
+            assertThat(geometry.getSubstring(0.125, 0.625))
+                .isEqualTo(LineStringCoordinates.of(24.5, 60.0, 25.0, 60.0, 25.0, 61.5))
+        }
+
+        @Test
+        @DisplayName("Position coinciding with fractional location is not duplicated")
+        fun coincidingPositionNotDuplicated() {
+            assertThat(geometry.getSubstring(0.25, 1.0))
+                .isEqualTo(LineStringCoordinates.of(25.0, 60.0, 25.0, 63.0))
+            assertThat(geometry.getSubstring(0.0, 0.25))
+                .isEqualTo(LineStringCoordinates.of(24.0, 60.0, 25.0, 60.0))
+        }
+
+        @Test
+        @DisplayName("Positions are reversed for backward traversal")
+        fun positionsReversedForBackwardTraversal() {
+            assertThat(geometry.getSubstring(0.625, 0.125))
+                .isEqualTo(LineStringCoordinates.of(25.0, 61.5, 25.0, 60.0, 24.5, 60.0))
+        }
+    }
+
+    @Test
+    @DisplayName("Substring length is independent of direction")
+    fun substringLengthIndependentOfDirection() {
+        assertThat(geometry.getSubstringLength(0.25, 0.75)).isEqualTo(20.0)
+        assertThat(geometry.getSubstringLength(0.75, 0.25)).isEqualTo(20.0)
+    }
+}
@@ -0,0 +1,138 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.NodeIdSequence
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+
+class NodeSequenceLegsTest {
+    private fun nodeSeq(vararg nodeIds: Long) = NodeIdSequence(nodeIds.map(::InfrastructureNodeId))
+
+    private fun leg(
+        startNodeId: Long,
+        endNodeId: Long
+    ): NodeSequenceLeg = InfrastructureNodeId(startNodeId) to InfrastructureNodeId(endNodeId)
+
+    private fun candidate(
+        startLinkId: Long,
+        endLinkId: Long,
+        vararg nodeIds: Long
+    ) = NodeSequenceCandidate(InfrastructureLinkId(startLinkId), InfrastructureLinkId(endLinkId), nodeSeq(*nodeIds))
+
+    @Nested
+    @DisplayName("Get distinct legs")
+    inner class GetDistinctLegs {
+        @Test
+        @DisplayName("Legs shared by candidates are included only once")
+        fun sharedLegsIncludedOnce() {
+            val candidates: List<NodeSequenceCandidate> =
+                listOf(
+                    candidate(1, 2, 1, 2, 3, 4, 5),
+                    candidate(1, 2, 2, 1, 3, 4, 5),
+                    candidate(1, 2, 1, 2, 3, 4, 6)
+                )
+
+            assertThat(NodeSequenceLegs.getDistinctLegs(candidates))
+                .containsExactlyInAnyOrder(
+                    leg(1, 2),
+                    leg(2, 3),
+                    leg(3, 4),
+                    leg(4, 5),
+                    leg(2, 1),
+                    leg(1, 3),
+                    leg(4, 6)
+                )
+        }
+
+        @Test
+        @DisplayName("Legs from a node to itself are excluded")
+        fun legsToSameNodeExcluded() {
+            assertThat(NodeSequenceLegs.getDistinctLegs(listOf(candidate(1, 2, 1, 1, 2))))
+                .containsExactly(leg(1, 2))
+        }
+    }
+
+    @Nested
+    @DisplayName("Get route cost")
+    inner class GetRouteCost {
+        private val legCosts: Map<NodeSequenceLeg, Double> = mapOf(leg(1, 2) to 10.0, leg(2, 3) to 5.0)
+
+        @Test
+        @DisplayName("Route cost is the sum of leg costs")
+        fun sumOfLegCosts() {
+            assertThat(NodeSequenceLegs.getRouteCost(nodeSeq(1, 2, 3), legCosts)).isEqualTo(15.0)
+        }
+
+        @Test
+        @DisplayName("Route is not found when a leg is not routable")
+        fun nullWhenLegNotRoutable() {
+            assertThat(NodeSequenceLegs.getRouteCost(nodeSeq(1, 2, 3, 4), legCosts)).isNull()
+        }
+
+        @Test
+        @DisplayName("Route is not found for a sequence of a single node")
+        fun nullForSingleNode() {
+            assertThat(NodeSequenceLegs.getRouteCost(nodeSeq(1), legCosts)).isNull()
+        }
+    }
+
+    @Nested
+    @DisplayName("Select best node sequences")
+    inner class SelectBestNodeSequences {
+        private val legCosts: Map<NodeSequenceLeg, Double> =
+            mapOf(
+                leg(1, 2) to 10.0,
+                leg(2, 1) to 10.0,
+                leg(2, 3) to 5.0,
+                leg(1, 3) to 20.0,
+                leg(3, 4) to 1.0,
+                leg(4, 3) to 1.0
+            )
+
+        @Test
+        @DisplayName("The cheapest candidate is selected for each pair of terminus links")
+        fun cheapestCandidateSelected() {
+            val candidates: List<NodeSequenceCandidate> =
+                listOf(
+                    candidate(1, 2, 2, 1, 3, 4),
+                    candidate(1, 2, 1, 2, 3, 4),
+                    candidate(3, 4, 1, 2, 3, 4),
+                    candidate(3, 4, 1, 2, 4, 3)
+                )
+
+            assertThat(NodeSequenceLegs.selectBestNodeSequences(candidates, legCosts))
+                .containsExactlyInAnyOrderEntriesOf(
+                    mapOf(
+                        (InfrastructureLinkId(1) to InfrastructureLinkId(2)) to nodeSeq(1, 2, 3, 4),
+                        (InfrastructureLinkId(3) to InfrastructureLinkId(4)) to nodeSeq(1, 2, 3, 4)
+                    )
+                )
+        }
+
+        @Test
+        @DisplayName("On equal costs, the first candidate is selected")
+        fun firstCandidateSelectedOnEqualCosts() {
+            val candidates: List<NodeSequenceCandidate> =
+                listOf(
+                    candidate(1, 2, 3, 4, 3),
+                    candidate(1, 2, 4, 3, 4)
+                )
+
+            assertThat(NodeSequenceLegs.selectBestNodeSequences(candidates, legCosts))
+                .containsExactlyEntriesOf(
+                    mapOf((InfrastructureLinkId(1) to InfrastructureLinkId(2)) to nodeSeq(3, 4, 3))
+                )
+        }
+
+        @Test
+        @DisplayName("Terminus link pairs without a routable candidate are left out")
+        fun unroutableLinkPairsLeftOut() {
+            val candidates: List<NodeSequenceCandidate> = listOf(candidate(1, 2, 1, 2, 5))
+
+            assertThat(NodeSequenceLegs.selectBestNodeSequences(candidates, legCosts)).isEmpty()
+        }
+    }
+}
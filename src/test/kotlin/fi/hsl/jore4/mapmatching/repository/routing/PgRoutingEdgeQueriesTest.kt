@@ -16,15 +16,9 @@ class PgRoutingEdgeQueriesTest {
 
             assertThat(query).isEqualTo(
                 """
-                'SELECT l.infrastructure_link_id AS id,
-                  l.start_node_id AS source,
-                  l.end_node_id AS target,
-                  l.cost,
-                  l.reverse_cost
-                FROM routing.infrastructure_link l
-                INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                  ON s.infrastructure_link_id = l.infrastructure_link_id
-                WHERE s.vehicle_type = ''' || ? || ''''
+                'SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                FROM routing.infrastructure_link_edge e
+                WHERE e.vehicle_type = ''' || ? || ''''
                 """.trimIndent()
             )
         }
@@ -36,15 +30,9 @@ class PgRoutingEdgeQueriesTest {
 
             assertThat(query).isEqualTo(
                 """
-                $$ SELECT l.infrastructure_link_id AS id,
-                  l.start_node_id AS source,
-                  l.end_node_id AS target,
-                  l.cost,
-                  l.reverse_cost
-                FROM routing.infrastructure_link l
-                INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                  ON s.infrastructure_link_id = l.infrastructure_link_id
-                WHERE s.vehicle_type = $$ || quote_literal(:vehicleType)
+                $$ SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                FROM routing.infrastructure_link_edge e
+                WHERE e.vehicle_type = $$ || quote_literal(:vehicleType)
                 """.trimIndent()
             )
         }
@@ -57,186 +45,44 @@ class PgRoutingEdgeQueriesTest {
         @DisplayName("When not providing named parameters")
         inner class WithNonNamedParameters {
             @Test
-            @DisplayName("Without terminus link or node IDs")
-            fun withoutTerminusLinkOrNodeIds() {
-                val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(0, 0)
+            @DisplayName("With geometric buffer area")
+            fun withGeometricBufferArea() {
+                val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery()
 
                 assertThat(query).isEqualTo(
                     """
-                    'SELECT l.infrastructure_link_id AS id,
-                      l.start_node_id AS source,
-                      l.end_node_id AS target,
-                      l.cost,
-                      l.reverse_cost
-                    FROM routing.infrastructure_link l
-                    INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                      ON s.infrastructure_link_id = l.infrastructure_link_id
-                    WHERE s.vehicle_type = ''' || ? || '''
-                      AND ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), l.geom)'
+                    'SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                    FROM routing.infrastructure_link_edge e
+                    WHERE e.vehicle_type = ''' || ? || '''
+                      AND (
+                        e.id = ANY(''' || ? || '''::bigint[])
+                        OR ''' || ? || '''::bigint[] && ARRAY[e.source, e.target]
+                        OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), e.geom)
+                      )'
                     """.trimIndent()
                 )
             }
 
-            @Nested
-            @DisplayName("When only terminus link IDs present")
-            inner class WithTerminusLinksOnly {
-                @Test
-                @DisplayName("With one terminus link ID")
-                fun withOneTerminusLinkId() {
-                    val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(1, 0)
-
-                    assertThat(query).isEqualTo(
-                        """
-                        'SELECT l.infrastructure_link_id AS id,
-                          l.start_node_id AS source,
-                          l.end_node_id AS target,
-                          l.cost,
-                          l.reverse_cost
-                        FROM routing.infrastructure_link l
-                        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                          ON s.infrastructure_link_id = l.infrastructure_link_id
-                        WHERE s.vehicle_type = ''' || ? || '''
-                          AND (
-                            l.infrastructure_link_id IN (''' || ? || ''')
-                            OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), l.geom)
-                          )'
-                        """.trimIndent()
-                    )
-                }
-
-                @Test
-                @DisplayName("With two terminus link IDs")
-                fun withTwoTerminusLinkIds() {
-                    val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(2, 0)
-
-                    assertThat(query).isEqualTo(
-                        """
-                        'SELECT l.infrastructure_link_id AS id,
-                          l.start_node_id AS source,
-                          l.end_node_id AS target,
-                          l.cost,
-                          l.reverse_cost
-                        FROM routing.infrastructure_link l
-                        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                          ON s.infrastructure_link_id = l.infrastructure_link_id
-                        WHERE s.vehicle_type = ''' || ? || '''
-                          AND (
-                            l.infrastructure_link_id IN (''' || ? || ''',''' || ? || ''')
-                            OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), l.geom)
-                          )'
-                        """.trimIndent()
-                    )
-                }
-            }
-
-            @Nested
-            @DisplayName("When only terminus node IDs present")
-            inner class WithTerminusNodesOnly {
-                @Test
-                @DisplayName("With one terminus node ID")
-                fun withOneTerminusNodeId() {
-                    val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(0, 1)
-
-                    assertThat(query).isEqualTo(
-                        """
-                        'SELECT l.infrastructure_link_id AS id,
-                          l.start_node_id AS source,
-                          l.end_node_id AS target,
-                          l.cost,
-                          l.reverse_cost
-                        FROM routing.infrastructure_link l
-                        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                          ON s.infrastructure_link_id = l.infrastructure_link_id
-                        WHERE s.vehicle_type = ''' || ? || '''
-                          AND (
-                            l.start_node_id IN (''' || ? || ''')
-                            OR l.end_node_id IN (''' || ? || ''')
-                            OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), l.geom)
-                          )'
-                        """.trimIndent()
-                    )
-                }
-
-                @Test
-                @DisplayName("With two terminus node IDs")
-                fun withTwoTerminusNodeIds() {
-                    val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(0, 2)
-
-                    assertThat(query).isEqualTo(
-                        """
-                        'SELECT l.infrastructure_link_id AS id,
-                          l.start_node_id AS source,
-                          l.end_node_id AS target,
-                          l.cost,
-                          l.reverse_cost
-                        FROM routing.infrastructure_link l
-                        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                          ON s.infrastructure_link_id = l.infrastructure_link_id
-                        WHERE s.vehicle_type = ''' || ? || '''
-                          AND (
-                            l.start_node_id IN (''' || ? || ''',''' || ? || ''')
-                            OR l.end_node_id IN (''' || ? || ''',''' || ? || ''')
-                            OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), l.geom)
-                          )'
-                        """.trimIndent()
-                    )
-                }
-            }
-
-            @Nested
-            @DisplayName("When both terminus links and nodes are present")
-            inner class WithTerminusLinksAndNodes {
-                @Test
-                @DisplayName("With one terminus link ID and one terminus node ID")
-                fun withOneTerminusLinkIdAndOneTerminusNodeId() {
-                    val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(1, 1)
-
-                    assertThat(query).isEqualTo(
-                        """
-                        'SELECT l.infrastructure_link_id AS id,
-                          l.start_node_id AS source,
-                          l.end_node_id AS target,
-                          l.cost,
-                          l.reverse_cost
-                        FROM routing.infrastructure_link l
-                        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                          ON s.infrastructure_link_id = l.infrastructure_link_id
-                        WHERE s.vehicle_type = ''' || ? || '''
-                          AND (
-                            l.infrastructure_link_id IN (''' || ? || ''')
-                            OR l.start_node_id IN (''' || ? || ''')
-                            OR l.end_node_id IN (''' || ? || ''')
-                            OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), l.geom)
-                          )'
-                        """.trimIndent()
+            @Test
+            @DisplayName("With materialised buffer area")
+            fun withMaterialisedBufferArea() {
+                val query: String =
+                    PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(
+                        isBufferAreaMaterialised = true
                     )
-                }
-
-                @Test
-                @DisplayName("With two terminus link IDs and three terminus node IDs")
-                fun withTwoTerminusLinkIdsAndThreeTerminusNodeIds() {
-                    val query: String = PgRoutingEdgeQueries.getVehicleTypeAndBufferAreaConstrainedLinksQuery(2, 3)
 
-                    assertThat(query).isEqualTo(
-                        """
-                        'SELECT l.infrastructure_link_id AS id,
-                          l.start_node_id AS source,
-                          l.end_node_id AS target,
-                          l.cost,
-                          l.reverse_cost
-                        FROM routing.infrastructure_link l
-                        INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                          ON s.infrastructure_link_id = l.infrastructure_link_id
-                        WHERE s.vehicle_type = ''' || ? || '''
-                          AND (
-                            l.infrastructure_link_id IN (''' || ? || ''',''' || ? || ''')
-                            OR l.start_node_id IN (''' || ? || ''',''' || ? || ''',''' || ? || ''')
-                            OR l.end_node_id IN (''' || ? || ''',''' || ? || ''',''' || ? || ''')
-                            OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB(''' || ? || '''), 3067), ''' || ? || '''), l.geom)
-                          )'
-                        """.trimIndent()
-                    )
-                }
+                assertThat(query).isEqualTo(
+                    """
+                    'SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                    FROM routing.infrastructure_link_edge e
+                    WHERE e.vehicle_type = ''' || ? || '''
+                      AND (
+                        e.id = ANY(''' || ? || '''::bigint[])
+                        OR ''' || ? || '''::bigint[] && ARRAY[e.source, e.target]
+                        OR e.id = ANY(''' || ? || '''::bigint[])
+                      )'
+                    """.trimIndent()
+                )
             }
         }
     }
@@ -256,16 +102,10 @@ class PgRoutingEdgeQueriesTest {
 
             assertThat(query).isEqualTo(
                 """
-                $$ SELECT l.infrastructure_link_id AS id,
-                  l.start_node_id AS source,
-                  l.end_node_id AS target,
-                  l.cost,
-                  l.reverse_cost
-                FROM routing.infrastructure_link l
-                INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                  ON s.infrastructure_link_id = l.infrastructure_link_id
-                WHERE s.vehicle_type = $$ || quote_literal(:vehicleType) || $$
-                  AND ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), l.geom)$$
+                $$ SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                FROM routing.infrastructure_link_edge e
+                WHERE e.vehicle_type = $$ || quote_literal(:vehicleType) || $$
+                  AND ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), e.geom)$$
                 """.trimIndent()
             )
         }
@@ -283,18 +123,12 @@ class PgRoutingEdgeQueriesTest {
 
             assertThat(query).isEqualTo(
                 """
-                $$ SELECT l.infrastructure_link_id AS id,
-                  l.start_node_id AS source,
-                  l.end_node_id AS target,
-                  l.cost,
-                  l.reverse_cost
-                FROM routing.infrastructure_link l
-                INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                  ON s.infrastructure_link_id = l.infrastructure_link_id
-                WHERE s.vehicle_type = $$ || quote_literal(:vehicleType) || $$
+                $$ SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                FROM routing.infrastructure_link_edge e
+                WHERE e.vehicle_type = $$ || quote_literal(:vehicleType) || $$
                   AND (
-                    l.infrastructure_link_id = ANY(($$ || quote_literal(:terminusLinkIds) || $$)::bigint[])
-                    OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), l.geom)
+                    e.id = ANY(($$ || quote_literal(:terminusLinkIds) || $$)::bigint[])
+                    OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), e.geom)
                   )$$
                 """.trimIndent()
             )
@@ -313,18 +147,12 @@ class PgRoutingEdgeQueriesTest {
 
             assertThat(query).isEqualTo(
                 """
-                $$ SELECT l.infrastructure_link_id AS id,
-                  l.start_node_id AS source,
-                  l.end_node_id AS target,
-                  l.cost,
-                  l.reverse_cost
-                FROM routing.infrastructure_link l
-                INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                  ON s.infrastructure_link_id = l.infrastructure_link_id
-                WHERE s.vehicle_type = $$ || quote_literal(:vehicleType) || $$
+                $$ SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                FROM routing.infrastructure_link_edge e
+                WHERE e.vehicle_type = $$ || quote_literal(:vehicleType) || $$
                   AND (
-                    ($$ || quote_literal(:terminusNodeIds) || $$)::bigint[] && ARRAY[l.start_node_id, l.end_node_id]
-                    OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), l.geom)
+                    ($$ || quote_literal(:terminusNodeIds) || $$)::bigint[] && ARRAY[e.source, e.target]
+                    OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), e.geom)
                   )$$
                 """.trimIndent()
             )
@@ -344,19 +172,13 @@ class PgRoutingEdgeQueriesTest {
 
             assertThat(query).isEqualTo(
                 """
-                $$ SELECT l.infrastructure_link_id AS id,
-                  l.start_node_id AS source,
-                  l.end_node_id AS target,
-                  l.cost,
-                  l.reverse_cost
-                FROM routing.infrastructure_link l
-                INNER JOIN routing.infrastructure_link_safely_traversed_by_vehicle_type s
-                  ON s.infrastructure_link_id = l.infrastructure_link_id
-                WHERE s.vehicle_type = $$ || quote_literal(:vehicleType) || $$
+                $$ SELECT e.id, e.source, e.target, e.cost, e.reverse_cost
+                FROM routing.infrastructure_link_edge e
+                WHERE e.vehicle_type = $$ || quote_literal(:vehicleType) || $$
                   AND (
-                    l.infrastructure_link_id = ANY(($$ || quote_literal(:terminusLinkIds) || $$)::bigint[])
-                    OR ($$ || quote_literal(:terminusNodeIds) || $$)::bigint[] && ARRAY[l.start_node_id, l.end_node_id]
-                    OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), l.geom)
+                    e.id = ANY(($$ || quote_literal(:terminusLinkIds) || $$)::bigint[])
+                    OR ($$ || quote_literal(:terminusNodeIds) || $$)::bigint[] && ARRAY[e.source, e.target]
+                    OR ST_Covers(ST_Buffer(ST_Transform(ST_GeomFromEWKB($$ || quote_literal(:lineStringEwkb) || $$), 3067), $$ || quote_literal(:bufferRadius) || $$), e.geom)
                   )$$
                 """.trimIndent()
             )
@@ -0,0 +1,178 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+
+class PgRoutingPathProcessorTest {
+    private fun link(
+        startNodeId: Long,
+        endNodeId: Long,
+        trafficFlowDirectionType: TrafficFlowDirectionType = TrafficFlowDirectionType.BIDIRECTIONAL,
+        cost: Double = 100.0
+    ) = PgRoutingPathLink(startNodeId, endNodeId, trafficFlowDirectionType, cost)
+
+    private fun virtualNode(fraction: Double) = PgRoutingVirtualNodeLocation(fraction, fraction)
+
+    private fun section(
+        linkId: Long,
+        isTraversalForwards: Boolean,
+        startFraction: Double,
+        endFraction: Double
+    ) = TraversedLinkSection(InfrastructureLinkId(linkId), isTraversalForwards, startFraction, endFraction)
+
+    private fun process(
+        virtualNodes: Map<Long, PgRoutingVirtualNodeLocation>,
+        links: Map<Long, PgRoutingPathLink>,
+        vararg rows: Triple<Long, Long, Double>
+    ): List<TraversedLinkSection> {
+        val processor = PgRoutingPathProcessor(virtualNodes)
+
+        var pathId = 1
+
+        rows.forEachIndexed { index, (edge, node, cost) ->
+            processor.accept(PgRoutingPathRow(index + 1, pathId, edge, node, cost, links[edge]))
+
+            if (edge < 0) {
+                pathId++
+            }
+        }
+
+        return processor.finish()
+    }
+
+    @Test
+    @DisplayName("Sample data documented for the SQL query finding route via points is transformed alike")
+    fun sampleDataTransformedAlike() {
+        val virtualNodes: Map<Long, PgRoutingVirtualNodeLocation> =
+            mapOf(
+                3L to virtualNode(0.75),
+                4L to virtualNode(0.5),
+                5L to virtualNode(0.25),
+                6L to virtualNode(0.33),
+                7L to virtualNode(0.66)
+            )
+
+        val links: Map<Long, PgRoutingPathLink> =
+            mapOf(
+                238709L to link(115665, 115666, cost = 110.75663079130706),
+                238714L to link(115666, 115667, cost = 13.741292778420942),
+                238712L to link(115667, 115663, cost = 21.790898535769582),
+                238707L to link(115663, 115664, cost = 64.27132590126)
+            )
+
+        val result: List<TraversedLinkSection> =
+            process(
+                virtualNodes,
+                links,
+                Triple(238709, -3, 27.689157697826765),
+                Triple(-1, -4, 0.0),
+                Triple(238709, -4, 27.689157697826765),
+                Triple(-1, -5, 0.0),
+                Triple(238709, -5, 27.689157697826765),
+                Triple(238709, -4, 27.689157697826765),
+                Triple(238709, -3, 27.689157697826772),
+                Triple(238714, 115666, 13.741292778420942),
+                Triple(238712, 115667, 21.790898535769582),
+                Triple(238707, 115663, 21.20953754741562),
+                Triple(-1, -6, 0.0),
+                Triple(238707, -6, 21.20953754741562),
+                Triple(-2, -7, 0.0)
+            )
+
+        assertThat(result).containsExactly(
+            section(238709, false, 0.75, 0.25),
+            section(238709, true, 0.25, 1.0),
+            section(238714, true, 0.0, 1.0),
+            section(238712, true, 0.0, 1.0),
+            section(238707, true, 0.0, 0.66)
+        )
+    }
+
+    @Test
+    @DisplayName("Route via real nodes consists of full link traversals")
+    fun routeViaRealNodes() {
+        val links: Map<Long, PgRoutingPathLink> =
+            mapOf(
+                1L to link(10, 11),
+                2L to link(12, 11)
+            )
+
+        val result: List<TraversedLinkSection> =
+            process(
+                emptyMap(),
+                links,
+                Triple(1, 10, 100.0),
+                Triple(2, 11, 100.0),
+                Triple(-2, 12, 0.0)
+            )
+
+        assertThat(result).containsExactly(
+            section(1, true, 0.0, 1.0),
+            section(2, false, 1.0, 0.0)
+        )
+    }
+
+    @Test
+    @DisplayName("Empty output of pgRouting results in empty list")
+    fun emptyOutput() {
+        assertThat(process(emptyMap(), emptyMap())).isEmpty()
+    }
+
+    @Nested
+    @DisplayName("Closed-loop links")
+    inner class ClosedLoopLinks {
+        @Test
+        @DisplayName("Direction of traversal on one-way closed loop is resolved by traffic flow direction")
+        fun oneWayClosedLoop() {
+            val links: Map<Long, PgRoutingPathLink> =
+                mapOf(
+                    1L to link(10, 10, TrafficFlowDirectionType.AGAINST_DIGITISED_DIRECTION),
+                    2L to link(10, 11)
+                )
+
+            val result: List<TraversedLinkSection> =
+                process(
+                    emptyMap(),
+                    links,
+                    Triple(1, 10, 100.0),
+                    Triple(2, 10, 100.0),
+                    Triple(-2, 11, 0.0)
+                )
+
+            assertThat(result).containsExactly(
+                section(1, false, 1.0, 0.0),
+                section(2, true, 0.0, 1.0)
+            )
+        }
+
+        @Test
+        @DisplayName("Direction of traversal from virtual node on bi-directional closed loop is resolved by cost")
+        fun fromVirtualNodeOnBidirectionalClosedLoop() {
+            val virtualNodes: Map<Long, PgRoutingVirtualNodeLocation> = mapOf(3L to virtualNode(0.25))
+            val links: Map<Long, PgRoutingPathLink> = mapOf(1L to link(10, 10))
+
+            assertThat(process(virtualNodes, links, Triple(1, -3, 75.0), Triple(-2, 10, 0.0)))
+                .containsExactly(section(1, true, 0.25, 1.0))
+
+            assertThat(process(virtualNodes, links, Triple(1, -3, 25.0), Triple(-2, 10, 0.0)))
+                .containsExactly(section(1, false, 0.25, 0.0))
+        }
+
+        @Test
+        @DisplayName("Direction of traversal to virtual node on bi-directional closed loop is resolved by cost")
+        fun toVirtualNodeOnBidirectionalClosedLoop() {
+            val virtualNodes: Map<Long, PgRoutingVirtualNodeLocation> = mapOf(3L to virtualNode(0.25))
+            val links: Map<Long, PgRoutingPathLink> = mapOf(1L to link(10, 10))
+
+            assertThat(process(virtualNodes, links, Triple(1, 10, 25.0), Triple(-2, -3, 0.0)))
+                .containsExactly(section(1, true, 0.0, 0.25))
+
+            assertThat(process(virtualNodes, links, Triple(1, 10, 75.0), Triple(-2, -3, 0.0)))
+                .containsExactly(section(1, false, 1.0, 0.25))
+        }
+    }
+}
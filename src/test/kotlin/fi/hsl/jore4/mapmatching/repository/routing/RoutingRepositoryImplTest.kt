@@ -0,0 +1,46 @@
+package fi.hsl.jore4.mapmatching.repository.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+
+class RoutingRepositoryImplTest {
+    private fun forwards(linkId: Long) = TraversedLinkSection.fullTraversal(InfrastructureLinkId(linkId), true)
+
+    private fun backwards(linkId: Long) = TraversedLinkSection.fullTraversal(InfrastructureLinkId(linkId), false)
+
+    @Nested
+    @DisplayName("Trim terminus links")
+    inner class TrimTerminusLinks {
+        @Test
+        @DisplayName("Single link is trimmed from both ends when fractions follow traversal direction")
+        fun singleLinkTrimmed() {
+            assertThat(RoutingRepositoryImpl.trimTerminusLinks(listOf(forwards(1)), 0.2, 0.7))
+                .containsExactly(TraversedLinkSection(InfrastructureLinkId(1), true, 0.2, 0.7))
+
+            assertThat(RoutingRepositoryImpl.trimTerminusLinks(listOf(backwards(1)), 0.7, 0.2))
+                .containsExactly(TraversedLinkSection(InfrastructureLinkId(1), false, 0.7, 0.2))
+        }
+
+        @Test
+        @DisplayName("Single link is not trimmed when fractions are against traversal direction")
+        fun singleLinkNotTrimmedAgainstDirection() {
+            assertThat(RoutingRepositoryImpl.trimTerminusLinks(listOf(forwards(1)), 0.7, 0.2))
+                .containsExactly(forwards(1))
+        }
+
+        @Test
+        @DisplayName("First and last link are trimmed and links between are left intact")
+        fun firstAndLastLinkTrimmed() {
+            assertThat(
+                RoutingRepositoryImpl.trimTerminusLinks(listOf(backwards(1), forwards(2), forwards(3)), 0.4, 0.6)
+            ).containsExactly(
+                TraversedLinkSection(InfrastructureLinkId(1), false, 0.4, 0.0),
+                forwards(2),
+                TraversedLinkSection(InfrastructureLinkId(3), true, 0.0, 0.6)
+            )
+        }
+    }
+}
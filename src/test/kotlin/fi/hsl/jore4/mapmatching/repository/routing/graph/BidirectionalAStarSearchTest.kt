@@ -0,0 +1,191 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.LinkSide
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.TraversedLinkSection
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+import kotlin.math.abs
+
+class BidirectionalAStarSearchTest {
+    /**
+     * A square grid network with 100 metres between adjacent nodes. All links
+     * are two-way. The cost of a link is its length added with a small
+     * link-specific detour so that shortest paths are unique-ish and do not
+     * simply follow the grid lines.
+     */
+    private val gridSize = 20
+
+    private val graph: RoutingGraph = buildGridGraph(withCoordinates = true)
+
+    private fun buildGridGraph(withCoordinates: Boolean): RoutingGraph {
+        val builder = RoutingGraphBuilder(VehicleType.GENERIC_BUS)
+
+        fun nodeId(
+            row: Int,
+            col: Int
+        ): Long = (row * gridSize + col + 1).toLong()
+
+        var linkId = 1L
+
+        for (row in 0 until gridSize) {
+            for (col in 0 until gridSize) {
+                if (col + 1 < gridSize) {
+                    val cost: Double = 100.0 + (linkId * 37 % 13)
+                    builder.addLink(linkId++, nodeId(row, col), nodeId(row, col + 1), cost, cost)
+                }
+                if (row + 1 < gridSize) {
+                    val cost: Double = 100.0 + (linkId * 37 % 13)
+                    builder.addLink(linkId++, nodeId(row, col), nodeId(row + 1, col), cost, cost)
+                }
+                if (withCoordinates) {
+                    builder.setNodeCoordinates(nodeId(row, col), 100.0 * col, 100.0 * row)
+                }
+            }
+        }
+
+        return builder.build()
+    }
+
+    private fun pathCost(path: IntArray): Double = path.sumOf(graph::getEdgeCost)
+
+    private fun assertPathIsContinuous(
+        path: IntArray,
+        sourceVertex: Int,
+        targetVertex: Int
+    ) {
+        var vertex: Int = sourceVertex
+
+        path.forEach { edge ->
+            assertThat(graph.getEdgeSource(edge)).isEqualTo(vertex)
+            vertex = graph.getEdgeTarget(edge)
+        }
+
+        assertThat(vertex).isEqualTo(targetVertex)
+    }
+
+    @Nested
+    @DisplayName("Heuristic scale")
+    inner class HeuristicScale {
+        @Test
+        @DisplayName("Scale is one when costs are not less than straight-line distances")
+        fun testScaleWithMetricCosts() {
+            assertThat(graph.heuristicScale).isEqualTo(1.0)
+        }
+
+        @Test
+        @DisplayName("Scale is zero when graph has no coordinates")
+        fun testScaleWithoutCoordinates() {
+            val graphWithoutCoordinates: RoutingGraph = buildGridGraph(withCoordinates = false)
+
+            assertThat(graphWithoutCoordinates.heuristicScale).isEqualTo(0.0)
+            assertThat(graphWithoutCoordinates.estimateCost(0, 1)).isEqualTo(0.0)
+        }
+
+        @Test
+        @DisplayName("Scale is reduced when a cost is less than straight-line distance")
+        fun testScaleWithCheapLink() {
+            val graphWithCheapLink: RoutingGraph =
+                RoutingGraphBuilder(VehicleType.GENERIC_BUS)
+                    .addLink(1, 1, 2, 100.0, 50.0)
+                    .addLink(2, 2, 3, 100.0, -1.0)
+                    .setNodeCoordinates(1, 0.0, 0.0)
+                    .setNodeCoordinates(2, 100.0, 0.0)
+                    .setNodeCoordinates(3, 200.0, 0.0)
+                    .build()
+
+            assertThat(graphWithCheapLink.heuristicScale).isEqualTo(0.5)
+        }
+    }
+
+    @Test
+    @DisplayName("Shortest paths have the same cost as with Dijkstra")
+    fun testSameCostAsDijkstra() {
+        val sourceVertices = listOf(0, 7, 45, 210, 399)
+        val targetVertices = listOf(399, 380, 19, 133, 0)
+
+        sourceVertices.forEach { source ->
+            targetVertices.forEach { target ->
+                val dijkstraPath: IntArray = DijkstraSearch.findShortestPath(graph, source, target, null)!!
+                val aStarPath: IntArray = BidirectionalAStarSearch.findShortestPath(graph, source, target, null)!!
+
+                assertPathIsContinuous(aStarPath, source, target)
+                assertThat(pathCost(aStarPath)).isCloseTo(pathCost(dijkstraPath), within(1e-9))
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Fewer vertices are settled than with Dijkstra")
+    fun testFewerSettledVertices() {
+        var dijkstraSettled = 0
+        var aStarSettled = 0
+
+        // from the middle of the western edge to the middle of the eastern edge
+        val source: Int = 10 * gridSize
+        val target: Int = 10 * gridSize + gridSize - 1
+
+        DijkstraSearch.findShortestPath(graph, source, target, null, listener = { dijkstraSettled = it })
+        BidirectionalAStarSearch.findShortestPath(graph, source, target, null, listener = { aStarSettled = it })
+
+        assertThat(aStarSettled).isPositive().isLessThan(dijkstraSettled)
+    }
+
+    @Test
+    @DisplayName("Link filter restricts the traversable links")
+    fun testLinkFilter() {
+        // Allow only links along the first row of the grid (horizontal links are added first on each row).
+        val linkIdsOnFirstRow: List<InfrastructureLinkId> =
+            (0 until gridSize - 1).map { InfrastructureLinkId(1L + 2 * it) }
+
+        val linkFilter: BitSet = graph.createLinkFilter(linkIdsOnFirstRow)
+
+        val path: IntArray? = BidirectionalAStarSearch.findShortestPath(graph, 0, gridSize - 1, linkFilter)
+
+        assertThat(path).isNotNull
+        assertThat(path!!.map { graph.getLinkId(graph.getEdgeLink(it)) }).containsExactlyElementsOf(linkIdsOnFirstRow)
+
+        assertThat(BidirectionalAStarSearch.findShortestPath(graph, 0, gridSize, linkFilter)).isNull()
+    }
+
+    @Test
+    @DisplayName("Empty path is returned when source and target are the same vertex")
+    fun testSameVertex() {
+        assertThat(BidirectionalAStarSearch.findShortestPath(graph, 5, 5, null)).isEmpty()
+    }
+
+    @Test
+    @DisplayName("Goal-directed search via points along links gives route with the same cost as Dijkstra")
+    fun testGoalDirectedViaPointsSearch() {
+        val points: List<GraphRoutePoint> =
+            listOf(
+                LinkRoutePoint(3, 0.3, LinkSide.BOTH),
+                VertexRoutePoint(250),
+                LinkRoutePoint(700, 0.6, LinkSide.RIGHT),
+                LinkRoutePoint(40, 0.2, LinkSide.LEFT)
+            )
+
+        val dijkstraRoute = ViaPointsSearch.findPathViaPoints(graph, points, null, isGoalDirected = false)
+        val aStarRoute = ViaPointsSearch.findPathViaPoints(graph, points, null, isGoalDirected = true)
+
+        assertThat(aStarRoute).isNotNull
+        assertThat(routeCost(aStarRoute!!)).isCloseTo(routeCost(dijkstraRoute!!), within(1e-9))
+    }
+
+    private fun routeCost(sections: List<TraversedLinkSection>): Double =
+        sections.sumOf { section ->
+            val link: Int = graph.findLink(section.linkId)
+            val cost: Double =
+                when (section.isTraversalForwards) {
+                    true -> graph.getLinkCost(link)
+                    false -> graph.getLinkReverseCost(link)
+                }
+
+            abs(section.endFraction - section.startFraction) * cost
+        }
+}
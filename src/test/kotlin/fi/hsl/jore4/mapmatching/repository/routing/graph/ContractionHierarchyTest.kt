@@ -0,0 +1,148 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.LinkSide
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.TraversedLinkSection
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import kotlin.math.abs
+import kotlin.random.Random
+
+class ContractionHierarchyTest {
+    /**
+     * A square grid network in which every fifth link is one-way and link
+     * costs vary pseudo-randomly so that there are both shortcuts and
+     * witnesses within the hierarchy.
+     */
+    private val gridSize = 15
+
+    private val graph: RoutingGraph =
+        RoutingGraphBuilder(VehicleType.GENERIC_BUS)
+            .also { builder ->
+                fun nodeId(
+                    row: Int,
+                    col: Int
+                ): Long = (row * gridSize + col + 1).toLong()
+
+                var linkId = 1L
+
+                fun addLink(
+                    startNodeId: Long,
+                    endNodeId: Long
+                ) {
+                    val cost: Double = 50.0 + (linkId * 7919 % 101)
+                    val reverseCost: Double = if (linkId % 5 == 0L) -1.0 else cost
+
+                    builder.addLink(linkId++, startNodeId, endNodeId, cost, reverseCost)
+                }
+
+                for (row in 0 until gridSize) {
+                    for (col in 0 until gridSize) {
+                        if (col + 1 < gridSize) addLink(nodeId(row, col), nodeId(row, col + 1))
+                        if (row + 1 < gridSize) addLink(nodeId(row, col), nodeId(row + 1, col))
+                    }
+                }
+            }.build()
+
+    private val hierarchy: ContractionHierarchy = ContractionHierarchyBuilder(graph).build()
+
+    private fun pathCost(path: IntArray): Double = path.sumOf(graph::getEdgeCost)
+
+    private fun routeCost(sections: List<TraversedLinkSection>): Double =
+        sections.sumOf { section ->
+            val link: Int = graph.findLink(section.linkId)
+            val cost: Double =
+                when (section.isTraversalForwards) {
+                    true -> graph.getLinkCost(link)
+                    false -> graph.getLinkReverseCost(link)
+                }
+
+            abs(section.endFraction - section.startFraction) * cost
+        }
+
+    @Test
+    @DisplayName("Vertices are ranked uniquely")
+    fun testUniqueRanks() {
+        val ranks: List<Int> = (0 until graph.numberOfVertices).map(hierarchy::getRank)
+
+        assertThat(ranks).doesNotHaveDuplicates()
+        assertThat(hierarchy.numberOfEdges).isGreaterThanOrEqualTo(graph.numberOfEdges)
+    }
+
+    @Test
+    @DisplayName("Shortest paths have the same cost as with Dijkstra and consist of consecutive graph edges")
+    fun testSameCostAsDijkstra() {
+        val random = Random(1)
+
+        repeat(200) {
+            val source: Int = random.nextInt(graph.numberOfVertices)
+            val target: Int = random.nextInt(graph.numberOfVertices)
+
+            val dijkstraPath: IntArray? = DijkstraSearch.findShortestPath(graph, source, target, null)
+            val hierarchyPath: IntArray? = ContractionHierarchySearch.findShortestPath(hierarchy, source, target)
+
+            assertThat(hierarchyPath).isNotNull
+            assertThat(pathCost(hierarchyPath!!)).isCloseTo(pathCost(dijkstraPath!!), within(1e-9))
+
+            var vertex: Int = source
+            hierarchyPath.forEach { edge ->
+                assertThat(graph.getEdgeSource(edge)).isEqualTo(vertex)
+                vertex = graph.getEdgeTarget(edge)
+            }
+            assertThat(vertex).isEqualTo(target)
+        }
+    }
+
+    @Test
+    @DisplayName("Legs between points along links have the same cost as with Dijkstra")
+    fun testLegsBetweenPointsAlongLinks() {
+        val random = Random(2)
+        val sides: List<LinkSide> = LinkSide.entries
+
+        repeat(200) {
+            val from: GraphRoutePoint =
+                LinkRoutePoint(
+                    random.nextInt(graph.numberOfLinks),
+                    0.1 + 0.8 * random.nextDouble(),
+                    sides.random(random)
+                )
+            val to: GraphRoutePoint =
+                when (random.nextBoolean()) {
+                    true -> VertexRoutePoint(random.nextInt(graph.numberOfVertices))
+                    false ->
+                        LinkRoutePoint(
+                            random.nextInt(graph.numberOfLinks),
+                            0.1 + 0.8 * random.nextDouble(),
+                            sides.random(random)
+                        )
+                }
+
+            val dijkstraLeg: List<TraversedLinkSection>? = ViaPointsSearch.findLeg(graph, from, to, null)
+            val hierarchyLeg: List<TraversedLinkSection>? = ContractionHierarchySearch.findLeg(hierarchy, from, to)
+
+            if (dijkstraLeg == null) {
+                assertThat(hierarchyLeg).isNull()
+            } else {
+                assertThat(hierarchyLeg).isNotNull
+                assertThat(routeCost(hierarchyLeg!!)).isCloseTo(routeCost(dijkstraLeg), within(1e-9))
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Fewer vertices are settled than with Dijkstra")
+    fun testFewerSettledVertices() {
+        var dijkstraSettled = 0
+        var hierarchySettled = 0
+
+        val source = 0
+        val target: Int = graph.numberOfVertices - 1
+
+        DijkstraSearch.findShortestPath(graph, source, target, null, listener = { dijkstraSettled = it })
+        ContractionHierarchySearch.findShortestPath(hierarchy, source, target, listener = { hierarchySettled = it })
+
+        assertThat(hierarchySettled).isPositive().isLessThan(dijkstraSettled)
+    }
+}
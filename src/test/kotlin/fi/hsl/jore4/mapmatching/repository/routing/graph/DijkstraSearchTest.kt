@@ -0,0 +1,95 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+
+class DijkstraSearchTest {
+    /**
+     * Test network:
+     *
+     *   (1) --101--> (2) --102--> (3)
+     *    |                         ^
+     *    +----103---- (4) ---104---+
+     *
+     * Links 101 and 102 are one-way (along digitised direction). Links 103
+     * (from node 1 to node 4) and 104 (from node 3 to node 4) are two-way.
+     * The path via nodes 1-2-3 costs 20 while the path via nodes 1-4-3 costs
+     * 30.
+     */
+    private val graph: RoutingGraph =
+        RoutingGraphBuilder(VehicleType.GENERIC_BUS)
+            .addLink(101, 1, 2, 10.0, -1.0)
+            .addLink(102, 2, 3, 10.0, -1.0)
+            .addLink(103, 1, 4, 15.0, 15.0)
+            .addLink(104, 3, 4, 15.0, 15.0)
+            .build()
+
+    private fun vertex(nodeId: Long): Int = graph.findVertex(InfrastructureNodeId(nodeId))
+
+    private fun findPath(
+        fromNodeId: Long,
+        toNodeId: Long,
+        linkFilter: BitSet? = null
+    ): List<Pair<Long, Boolean>>? =
+        DijkstraSearch
+            .findShortestPath(graph, vertex(fromNodeId), vertex(toNodeId), linkFilter)
+            ?.map { edge -> graph.getLinkId(graph.getEdgeLink(edge)).value to graph.isEdgeForwards(edge) }
+
+    @Test
+    @DisplayName("Graph dimensions")
+    fun testGraphDimensions() {
+        assertThat(graph.numberOfVertices).isEqualTo(4)
+        assertThat(graph.numberOfLinks).isEqualTo(4)
+        assertThat(graph.numberOfEdges).isEqualTo(6)
+        assertThat(graph.findVertex(InfrastructureNodeId(5))).isEqualTo(-1)
+    }
+
+    @Test
+    @DisplayName("Shortest path is found along one-way links")
+    fun testShortestPathAlongOneWayLinks() {
+        assertThat(findPath(1, 3)).containsExactly(101L to true, 102L to true)
+    }
+
+    @Test
+    @DisplayName("One-way links are not traversed against their direction")
+    fun testOneWayLinksNotTraversedBackwards() {
+        assertThat(findPath(3, 1)).containsExactly(104L to true, 103L to false)
+    }
+
+    @Test
+    @DisplayName("Link filter restricts the traversable links")
+    fun testLinkFilter() {
+        val linkFilter: BitSet =
+            graph.createLinkFilter(listOf(102L, 103L, 104L).map(::InfrastructureLinkId))
+
+        assertThat(findPath(1, 3, linkFilter)).containsExactly(103L to true, 104L to false)
+    }
+
+    @Test
+    @DisplayName("Null is returned when target is not reachable")
+    fun testUnreachableTarget() {
+        val linkFilter: BitSet = graph.createLinkFilter(listOf(InfrastructureLinkId(101)))
+
+        assertThat(findPath(1, 3, linkFilter)).isNull()
+    }
+
+    @Test
+    @DisplayName("Empty path is returned when source and target are the same")
+    fun testSameSourceAndTarget() {
+        assertThat(findPath(2, 2)).isEmpty()
+    }
+
+    @Test
+    @DisplayName("Workspace is reusable between searches")
+    fun testRepeatedSearches() {
+        repeat(3) {
+            assertThat(findPath(1, 3)).containsExactly(101L to true, 102L to true)
+            assertThat(findPath(3, 1)).containsExactly(104L to true, 103L to false)
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+
+class GraphSearchWorkspacePoolTest {
+    @Test
+    @DisplayName("Returned workspace is reused by the next search")
+    fun workspaceReused() {
+        val pool = GraphSearchWorkspacePool(10, 2)
+
+        val first: GraphSearchWorkspace = pool.withWorkspace { it }
+        val second: GraphSearchWorkspace = pool.withWorkspace { it }
+
+        assertThat(second).isSameAs(first)
+        assertThat(pool.numberOfIdleWorkspaces).isEqualTo(1)
+    }
+
+    @Test
+    @DisplayName("Concurrently borrowed workspaces are distinct")
+    fun concurrentWorkspacesDistinct() {
+        val pool = GraphSearchWorkspacePool(10, 2)
+
+        pool.withWorkspaces { forward, backward ->
+            assertThat(forward).isNotSameAs(backward)
+        }
+    }
+
+    @Test
+    @DisplayName("Number of idle workspaces is bounded")
+    fun idleWorkspacesBounded() {
+        val pool = GraphSearchWorkspacePool(10, 2)
+
+        pool.withWorkspaces { _, _ ->
+            pool.withWorkspaces { _, _ -> }
+        }
+
+        assertThat(pool.numberOfIdleWorkspaces).isEqualTo(2)
+    }
+
+    @Test
+    @DisplayName("Workspace is returned when search fails")
+    fun workspaceReturnedOnFailure() {
+        val pool = GraphSearchWorkspacePool(10, 2)
+
+        assertThatThrownBy {
+            pool.withWorkspace { throw IllegalStateException("failure") }
+        }.isInstanceOf(IllegalStateException::class.java)
+
+        assertThat(pool.numberOfIdleWorkspaces).isEqualTo(1)
+    }
+}
@@ -0,0 +1,118 @@
+package fi.hsl.jore4.mapmatching.repository.routing.graph
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.LinkSide
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.routing.TraversedLinkSection
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+
+class ViaPointsSearchTest {
+    /**
+     * Test network (the same as in [DijkstraSearchTest]):
+     *
+     *   (1) --101--> (2) --102--> (3)
+     *    |                         ^
+     *    +----103---- (4) ---104---+
+     *
+     * Links 101 and 102 are one-way (along digitised direction). Links 103
+     * (from node 1 to node 4) and 104 (from node 3 to node 4) are two-way.
+     */
+    private val graph: RoutingGraph =
+        RoutingGraphBuilder(VehicleType.GENERIC_BUS)
+            .addLink(101, 1, 2, 10.0, -1.0)
+            .addLink(102, 2, 3, 10.0, -1.0)
+            .addLink(103, 1, 4, 15.0, 15.0)
+            .addLink(104, 3, 4, 15.0, 15.0)
+            .build()
+
+    private fun vertexPoint(nodeId: Long) = VertexRoutePoint(graph.findVertex(InfrastructureNodeId(nodeId)))
+
+    private fun linkPoint(
+        linkId: Long,
+        fraction: Double,
+        side: LinkSide = LinkSide.BOTH
+    ) = LinkRoutePoint(graph.findLink(InfrastructureLinkId(linkId)), fraction, side)
+
+    private fun section(
+        linkId: Long,
+        isTraversalForwards: Boolean,
+        startFraction: Double,
+        endFraction: Double
+    ) = TraversedLinkSection(InfrastructureLinkId(linkId), isTraversalForwards, startFraction, endFraction)
+
+    private fun findPath(
+        vararg points: GraphRoutePoint,
+        linkFilter: BitSet? = null
+    ): List<TraversedLinkSection>? = ViaPointsSearch.findPathViaPoints(graph, points.toList(), linkFilter)
+
+    @Test
+    @DisplayName("Points on same link are connected directly along the link")
+    fun testDirectTraversalAlongLink() {
+        assertThat(findPath(linkPoint(101, 0.2), linkPoint(101, 0.8)))
+            .containsExactly(section(101, true, 0.2, 0.8))
+    }
+
+    @Test
+    @DisplayName("Two-way link is traversed directly backwards")
+    fun testDirectBackwardsTraversalAlongTwoWayLink() {
+        assertThat(findPath(linkPoint(103, 0.6), linkPoint(103, 0.4)))
+            .containsExactly(section(103, false, 0.6, 0.4))
+    }
+
+    @Test
+    @DisplayName("One-way link is not traversed backwards between points")
+    fun testOneWayLinkNotTraversedBackwards() {
+        assertThat(findPath(linkPoint(101, 0.8), linkPoint(101, 0.2)))
+            .containsExactly(
+                section(101, true, 0.8, 1.0),
+                section(102, true, 0.0, 1.0),
+                section(104, true, 0.0, 1.0),
+                section(103, false, 1.0, 0.0),
+                section(101, true, 0.0, 0.2)
+            )
+    }
+
+    @Test
+    @DisplayName("Point on right side of link is visited only while traversing link forwards")
+    fun testLinkSideRestrictsDirection() {
+        assertThat(findPath(linkPoint(103, 0.6, LinkSide.RIGHT), linkPoint(103, 0.4, LinkSide.RIGHT)))
+            .containsExactly(
+                section(103, true, 0.6, 1.0),
+                section(103, false, 1.0, 0.0),
+                section(103, true, 0.0, 0.4)
+            )
+    }
+
+    @Test
+    @DisplayName("Route is found from real node to point along link")
+    fun testFromVertexToPointAlongLink() {
+        assertThat(findPath(vertexPoint(1), linkPoint(102, 0.5)))
+            .containsExactly(
+                section(101, true, 0.0, 1.0),
+                section(102, true, 0.0, 0.5)
+            )
+    }
+
+    @Test
+    @DisplayName("Sections continuing on same link via intermediate point are merged")
+    fun testMergeOfSectionsOnSameLink() {
+        assertThat(findPath(linkPoint(101, 0.2), linkPoint(101, 0.5), linkPoint(102, 0.5)))
+            .containsExactly(
+                section(101, true, 0.2, 1.0),
+                section(102, true, 0.0, 0.5)
+            )
+    }
+
+    @Test
+    @DisplayName("Null is returned when any leg cannot be routed")
+    fun testUnreachableLeg() {
+        val linkFilter: BitSet = graph.createLinkFilter(listOf(101L, 102L).map(::InfrastructureLinkId))
+
+        assertThat(findPath(linkPoint(101, 0.2), linkPoint(102, 0.5), linkPoint(101, 0.1), linkFilter = linkFilter))
+            .isNull()
+    }
+}
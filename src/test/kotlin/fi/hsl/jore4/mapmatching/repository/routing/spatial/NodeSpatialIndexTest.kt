@@ -0,0 +1,81 @@
+package fi.hsl.jore4.mapmatching.repository.routing.spatial
+
+import fi.hsl.jore4.mapmatching.model.NodeProximity
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import kotlin.math.hypot
+import kotlin.random.Random
+
+class NodeSpatialIndexTest {
+    @Test
+    @DisplayName("Nodes within distance are returned in ascending order of distance")
+    fun nodesWithinDistanceReturned() {
+        val index: NodeSpatialIndex =
+            NodeSpatialIndexBuilder()
+                .addNode(1, 0.0, 0.0)
+                .addNode(2, 3.0, 4.0)
+                .addNode(3, 10.0, 0.0)
+                .addEligibleVehicleType(1, VehicleType.GENERIC_BUS)
+                .addEligibleVehicleType(2, VehicleType.GENERIC_BUS)
+                .addEligibleVehicleType(3, VehicleType.GENERIC_BUS)
+                .build()
+
+        assertThat(index.findNodesWithinDistance(4.0, 4.0, VehicleType.GENERIC_BUS, 6.0).map { it.id.value })
+            .containsExactly(2L, 1L)
+    }
+
+    @Test
+    @DisplayName("Nodes not reachable by vehicle type are excluded")
+    fun unreachableNodesExcluded() {
+        val index: NodeSpatialIndex =
+            NodeSpatialIndexBuilder()
+                .addNode(1, 0.0, 0.0)
+                .addNode(2, 1.0, 0.0)
+                .addEligibleVehicleType(2, VehicleType.GENERIC_TRAM)
+                .build()
+
+        assertThat(index.findNodesWithinDistance(0.0, 0.0, VehicleType.GENERIC_TRAM, 5.0).map { it.id.value })
+            .containsExactly(2L)
+        assertThat(index.findNodesWithinDistance(0.0, 0.0, VehicleType.GENERIC_BUS, 5.0)).isEmpty()
+    }
+
+    @Test
+    @DisplayName("Results equal those of a brute-force search over random nodes")
+    fun resultsEqualBruteForceSearch() {
+        val random = Random(16)
+        val builder = NodeSpatialIndexBuilder(16)
+        val coordinates: MutableList<Pair<Double, Double>> = ArrayList()
+
+        for (nodeId in 1..5000) {
+            val x: Double = random.nextDouble(0.0, 10000.0)
+            val y: Double = random.nextDouble(0.0, 10000.0)
+
+            coordinates.add(x to y)
+            builder.addNode(nodeId.toLong(), x, y)
+
+            if (nodeId % 4 != 0) {
+                builder.addEligibleVehicleType(nodeId.toLong(), VehicleType.GENERIC_BUS)
+            }
+        }
+
+        val index: NodeSpatialIndex = builder.build()
+
+        repeat(200) {
+            val x: Double = random.nextDouble(0.0, 10000.0)
+            val y: Double = random.nextDouble(0.0, 10000.0)
+
+            val expected: List<Long> =
+                coordinates
+                    .mapIndexed { nodeIndex, (nodeX, nodeY) -> (nodeIndex + 1L) to hypot(nodeX - x, nodeY - y) }
+                    .filter { (nodeId, distance) -> nodeId % 4 != 0L && distance <= 300.0 }
+                    .sortedBy { it.second }
+                    .map { it.first }
+
+            val actual: List<NodeProximity> = index.findNodesWithinDistance(x, y, VehicleType.GENERIC_BUS, 300.0)
+
+            assertThat(actual.map { it.id.value }).isEqualTo(expected)
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package fi.hsl.jore4.mapmatching.service.common
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Companion.ALGORITHM_VIA_GRAPH_EDGES
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Companion.ALGORITHM_VIA_GRAPH_VERTICES
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.FallbackMode
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.FallbackOutcome
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.Stage
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+
+class MatchingPipelineMetricsTest {
+    private val meterRegistry = SimpleMeterRegistry()
+    private val metrics = MatchingPipelineMetrics(meterRegistry)
+
+    private fun findStageTimer(
+        stage: Stage,
+        algorithm: String
+    ): Timer? =
+        meterRegistry
+            .find(MatchingPipelineMetrics.STAGE_METRIC)
+            .tags("stage", stage.value, "algorithm", algorithm, "vehicle_type", VehicleType.GENERIC_BUS.value)
+            .timer()
+
+    @Test
+    @DisplayName("Stage duration is recorded with tags and result is returned")
+    fun stageDuration() {
+        val result: String = metrics.time(Stage.ROUTING, ALGORITHM_VIA_GRAPH_EDGES, VehicleType.GENERIC_BUS) { "ok" }
+
+        assertThat(result).isEqualTo("ok")
+        assertThat(findStageTimer(Stage.ROUTING, ALGORITHM_VIA_GRAPH_EDGES)?.count()).isEqualTo(1)
+        assertThat(findStageTimer(Stage.ROUTING, ALGORITHM_VIA_GRAPH_VERTICES)).isNull()
+    }
+
+    @Test
+    @DisplayName("Stage duration is recorded when stage fails")
+    fun failedStage() {
+        assertThatThrownBy {
+            metrics.time(Stage.STOP_MATCHING, ALGORITHM_VIA_GRAPH_VERTICES, VehicleType.GENERIC_BUS) {
+                throw IllegalStateException("failure")
+            }
+        }.isInstanceOf(IllegalStateException::class.java)
+
+        assertThat(findStageTimer(Stage.STOP_MATCHING, ALGORITHM_VIA_GRAPH_VERTICES)?.count()).isEqualTo(1)
+    }
+
+    @Test
+    @DisplayName("Number of candidates tried is recorded separately for successes and failures")
+    fun candidatesTried() {
+        metrics.recordCandidatesTried(ALGORITHM_VIA_GRAPH_EDGES, VehicleType.GENERIC_BUS, 1, true)
+        metrics.recordCandidatesTried(ALGORITHM_VIA_GRAPH_EDGES, VehicleType.GENERIC_BUS, 3, true)
+        metrics.recordCandidatesTried(ALGORITHM_VIA_GRAPH_EDGES, VehicleType.GENERIC_BUS, 4, false)
+
+        val successes: DistributionSummary? =
+            meterRegistry
+                .find(MatchingPipelineMetrics.CANDIDATES_TRIED_METRIC)
+                .tags("algorithm", ALGORITHM_VIA_GRAPH_EDGES, "result", "success")
+                .summary()
+
+        assertThat(successes?.count()).isEqualTo(2)
+        assertThat(successes?.totalAmount()).isEqualTo(4.0)
+        assertThat(successes?.max()).isEqualTo(3.0)
+    }
+
+    @Test
+    @DisplayName("Fallback outcomes are counted by mode and vehicle type")
+    fun fallbackOutcomes() {
+        metrics.recordFallbackOutcome(VehicleType.GENERIC_BUS, FallbackMode.SEQUENTIAL, FallbackOutcome.NOT_NEEDED)
+        metrics.recordFallbackOutcome(
+            VehicleType.GENERIC_BUS,
+            FallbackMode.SEQUENTIAL,
+            FallbackOutcome.FALLBACK_SUCCEEDED
+        )
+        metrics.recordFallbackOutcome(
+            VehicleType.GENERIC_BUS,
+            FallbackMode.SPECULATIVE,
+            FallbackOutcome.FALLBACK_SUCCEEDED
+        )
+
+        fun count(
+            mode: FallbackMode,
+            outcome: FallbackOutcome
+        ): Double =
+            meterRegistry
+                .counter(
+                    MatchingPipelineMetrics.FALLBACK_METRIC,
+                    "mode",
+                    mode.value,
+                    "outcome",
+                    outcome.value,
+                    "vehicle_type",
+                    VehicleType.GENERIC_BUS.value
+                ).count()
+
+        assertThat(count(FallbackMode.SEQUENTIAL, FallbackOutcome.NOT_NEEDED)).isEqualTo(1.0)
+        assertThat(count(FallbackMode.SEQUENTIAL, FallbackOutcome.FALLBACK_SUCCEEDED)).isEqualTo(1.0)
+        assertThat(count(FallbackMode.SPECULATIVE, FallbackOutcome.FALLBACK_SUCCEEDED)).isEqualTo(1.0)
+        assertThat(count(FallbackMode.SPECULATIVE, FallbackOutcome.NOT_NEEDED)).isZero
+    }
+}
@@ -0,0 +1,167 @@
+package fi.hsl.jore4.mapmatching.service.common
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import fi.hsl.jore4.mapmatching.repository.infrastructure.INetworkVersionRepository
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.dao.DataAccessResourceFailureException
+import java.time.OffsetDateTime
+
+class NetworkVersionProbeImplTest {
+    private var databaseVersion: NetworkVersion = version(1)
+    private var databaseAvailable = true
+    private var refreshFails = false
+    private var numberOfRefreshes = 0
+
+    private val publishedEvents: MutableList<Any> = ArrayList()
+
+    // The version seen by event listeners while they are run
+    private var versionSeenByListener: NetworkVersion? = null
+
+    private val repository =
+        object : INetworkVersionRepository {
+            override fun getNetworkVersion(): NetworkVersion {
+                if (!databaseAvailable) {
+                    throw DataAccessResourceFailureException("Connection refused")
+                }
+                return databaseVersion
+            }
+
+            override fun refreshEdgeTable() {
+                if (refreshFails) {
+                    throw DataAccessResourceFailureException("Connection refused")
+                }
+                numberOfRefreshes++
+
+                // The refresh modifies the derived tables, which increments the version.
+                databaseVersion = version(databaseVersion.version + 1)
+            }
+        }
+
+    private val probe: NetworkVersionProbeImpl =
+        NetworkVersionProbeImpl(
+            repository,
+            ApplicationEventPublisher { event ->
+                publishedEvents.add(event)
+                versionSeenByListener = probe.currentVersion
+            }
+        )
+
+    @Test
+    @DisplayName("Version is loaded on first access without publishing an event")
+    fun firstAccess() {
+        assertThat(probe.currentVersion).isEqualTo(version(1))
+        assertThat(publishedEvents).isEmpty()
+    }
+
+    @Test
+    @DisplayName("Version change is published before current version is switched")
+    fun versionChange() {
+        probe.poll()
+
+        databaseVersion = version(2)
+        probe.poll()
+
+        assertThat(publishedEvents).containsExactly(NetworkVersionChangedEvent(version(1), version(2)))
+        assertThat(versionSeenByListener).isEqualTo(version(1))
+        assertThat(probe.currentVersion).isEqualTo(version(2))
+    }
+
+    @Test
+    @DisplayName("Unchanged version is not published")
+    fun unchangedVersion() {
+        probe.poll()
+        probe.poll()
+
+        assertThat(publishedEvents).isEmpty()
+    }
+
+    @Test
+    @DisplayName("Database failure while polling retains current version")
+    fun databaseFailure() {
+        probe.poll()
+
+        databaseAvailable = false
+        probe.poll()
+
+        assertThat(probe.currentVersion).isEqualTo(version(1))
+        assertThat(publishedEvents).isEmpty()
+    }
+
+    @Test
+    @DisplayName("Stale edge table is refreshed on startup")
+    fun staleEdgeTableOnStartup() {
+        databaseVersion = staleVersion(1)
+
+        probe.refreshStaleEdgeTableOnStartup()
+
+        assertThat(numberOfRefreshes).isEqualTo(1)
+        assertThat(probe.currentVersion).isEqualTo(version(2))
+    }
+
+    @Test
+    @DisplayName("Edge table is not refreshed on startup when it is up to date")
+    fun upToDateEdgeTableOnStartup() {
+        probe.refreshStaleEdgeTableOnStartup()
+
+        assertThat(numberOfRefreshes).isZero
+        assertThat(probe.currentVersion).isEqualTo(version(1))
+    }
+
+    @Test
+    @DisplayName("Startup succeeds when refreshing stale edge table fails")
+    fun refreshFailureOnStartup() {
+        databaseVersion = staleVersion(1)
+        refreshFails = true
+
+        probe.refreshStaleEdgeTableOnStartup()
+
+        assertThat(probe.currentVersion.isEdgeTableStale).isTrue
+    }
+
+    @Test
+    @DisplayName("Stale edge table is refreshed before version change is published")
+    fun staleEdgeTableOnVersionChange() {
+        probe.poll()
+
+        databaseVersion = staleVersion(2)
+        probe.poll()
+
+        assertThat(numberOfRefreshes).isEqualTo(1)
+        assertThat(publishedEvents).containsExactly(NetworkVersionChangedEvent(version(1), version(3)))
+        assertThat(probe.currentVersion).isEqualTo(version(3))
+    }
+
+    @Test
+    @DisplayName("Failed refresh of stale edge table is retried on next poll")
+    fun refreshRetriedOnNextPoll() {
+        probe.poll()
+
+        databaseVersion = staleVersion(2)
+        refreshFails = true
+        probe.poll()
+
+        assertThat(probe.currentVersion.isEdgeTableStale).isTrue
+
+        refreshFails = false
+        probe.poll()
+
+        assertThat(numberOfRefreshes).isEqualTo(1)
+        assertThat(probe.currentVersion).isEqualTo(version(3))
+        assertThat(publishedEvents).containsExactly(
+            NetworkVersionChangedEvent(version(1), staleVersion(2)),
+            NetworkVersionChangedEvent(staleVersion(2), version(3))
+        )
+    }
+
+    companion object {
+        private val UPDATED_AT: OffsetDateTime = OffsetDateTime.parse("2024-01-01T00:00:00Z")
+
+        private fun version(version: Long) = NetworkVersion(version, UPDATED_AT)
+
+        private fun staleVersion(version: Long) = NetworkVersion(version, UPDATED_AT, true)
+    }
+}
@@ -0,0 +1,106 @@
+package fi.hsl.jore4.mapmatching.service.common
+
+import fi.hsl.jore4.mapmatching.service.common.response.ResponseCode
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.util.RequestDeadline
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+import org.springframework.dao.QueryTimeoutException
+import java.time.Duration
+
+class RequestDeadlineHandlerTest {
+    @Nested
+    @DisplayName("Resolve timeout")
+    inner class ResolveTimeout {
+        private val handler = RequestDeadlineHandler(SimpleMeterRegistry(), Duration.ofSeconds(60))
+
+        @Test
+        @DisplayName("Configured timeout is applied when client does not request a timeout")
+        fun whenNotRequested() {
+            assertThat(handler.resolveTimeout(null)).isEqualTo(Duration.ofSeconds(60))
+        }
+
+        @Test
+        @DisplayName("Shorter requested timeout is applied")
+        fun whenShorterRequested() {
+            assertThat(handler.resolveTimeout(5000)).isEqualTo(Duration.ofSeconds(5))
+        }
+
+        @Test
+        @DisplayName("Longer requested timeout is capped by configured timeout")
+        fun whenLongerRequested() {
+            assertThat(handler.resolveTimeout(120_000)).isEqualTo(Duration.ofSeconds(60))
+        }
+
+        @Test
+        @DisplayName("No timeout when neither configured nor requested")
+        fun whenNeitherConfiguredNorRequested() {
+            val handlerWithoutTimeout = RequestDeadlineHandler(SimpleMeterRegistry(), Duration.ZERO)
+
+            assertThat(handlerWithoutTimeout.resolveTimeout(null)).isNull()
+            assertThat(handlerWithoutTimeout.resolveTimeout(1000)).isEqualTo(Duration.ofSeconds(1))
+        }
+    }
+
+    @Nested
+    @DisplayName("Run within deadline")
+    inner class RunWithinDeadline {
+        private val meterRegistry = SimpleMeterRegistry()
+        private val handler = RequestDeadlineHandler(meterRegistry, Duration.ZERO)
+
+        private val timeoutCount: Double
+            get() = meterRegistry.counter(RequestDeadlineHandler.TIMEOUT_COUNTER, "api", "test").count()
+
+        @Test
+        @DisplayName("Deadline is bound to the current thread while running")
+        fun deadlineIsBound() {
+            var deadlineWhileRunning: RequestDeadline? = null
+
+            handler.runWithinDeadline("test", Duration.ofSeconds(10)) {
+                deadlineWhileRunning = RequestDeadline.current()
+                RoutingResponse.noSegment("none")
+            }
+
+            assertThat(deadlineWhileRunning).isNotNull
+            assertThat(RequestDeadline.current()).isNull()
+        }
+
+        @Test
+        @DisplayName("Response is returned as is when completed in time")
+        fun whenCompletedInTime() {
+            val response: RoutingResponse =
+                handler.runWithinDeadline("test", Duration.ofSeconds(10)) { RoutingResponse.noSegment("none") }
+
+            assertThat(response).isEqualTo(RoutingResponse.noSegment("none"))
+            assertThat(timeoutCount).isZero()
+        }
+
+        @Test
+        @DisplayName("Query timeout is converted to timeout response")
+        fun whenQueryTimesOut() {
+            val response: RoutingResponse =
+                handler.runWithinDeadline("test", Duration.ofSeconds(10)) {
+                    throw QueryTimeoutException("canceling statement due to statement timeout")
+                }
+
+            assertThat(response.code).isEqualTo(ResponseCode.Timeout)
+            assertThat(timeoutCount).isEqualTo(1.0)
+        }
+
+        @Test
+        @DisplayName("Failure response after deadline is converted to timeout response")
+        fun whenFailureAfterDeadline() {
+            val response: RoutingResponse =
+                handler.runWithinDeadline("test", Duration.ofMillis(1)) {
+                    Thread.sleep(20)
+                    RoutingResponse.noSegment("none")
+                }
+
+            assertThat(response.code).isEqualTo(ResponseCode.Timeout)
+            assertThat(timeoutCount).isEqualTo(1.0)
+        }
+    }
+}
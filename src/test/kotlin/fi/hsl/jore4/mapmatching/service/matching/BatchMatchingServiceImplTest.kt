@@ -0,0 +1,144 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.service.common.RequestDeadlineHandler
+import fi.hsl.jore4.mapmatching.service.common.response.BatchMatchResultDTO
+import fi.hsl.jore4.mapmatching.service.common.response.ResponseCode
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Geometries.mkLineString
+import org.geolatte.geom.LineString
+import org.geolatte.geom.PositionSequenceBuilders
+import org.geolatte.geom.crs.CoordinateReferenceSystems.WGS84
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.time.Duration
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class BatchMatchingServiceImplTest {
+    private val executor: ExecutorService = Executors.newFixedThreadPool(PARALLELISM)
+
+    @AfterEach
+    fun shutdownExecutor() {
+        executor.shutdownNow()
+    }
+
+    /**
+     * Returns a failure response with the route ID as message, or throws an
+     * exception for route IDs starting with "error". Keeps track of the
+     * maximum number of concurrent invocations.
+     */
+    private class StubMatchingService : IMatchingService {
+        private val running = AtomicInteger()
+
+        val maxConcurrency = AtomicInteger()
+
+        override fun findMatchForPublicTransportRoute(
+            sourceRouteId: String?,
+            sourceRouteGeometry: LineString<G2D>,
+            sourceRoutePoints: List<RoutePoint>,
+            vehicleType: VehicleType,
+            matchingParameters: PublicTransportRouteMatchingParameters
+        ): RoutingResponse {
+            maxConcurrency.accumulateAndGet(running.incrementAndGet(), ::maxOf)
+
+            try {
+                Thread.sleep(5)
+
+                if (sourceRouteId!!.startsWith("error")) {
+                    throw IllegalStateException("failed: $sourceRouteId")
+                }
+
+                return RoutingResponse.noSegment(sourceRouteId)
+            } finally {
+                running.decrementAndGet()
+            }
+        }
+    }
+
+    private fun createTask(routeId: String) =
+        PublicTransportRouteMatchTask(
+            routeId,
+            ROUTE_GEOMETRY,
+            emptyList(),
+            VehicleType.GENERIC_BUS,
+            MATCHING_PARAMETERS
+        )
+
+    @Test
+    @DisplayName("Every route gets a result with its index and route ID")
+    fun everyRouteGetsResult() {
+        val matchingService = StubMatchingService()
+        val service = BatchMatchingServiceImpl(matchingService, DEADLINE_HANDLER, executor)
+
+        val tasks: List<PublicTransportRouteMatchTask> = (0 until 20).map { createTask("route$it") }
+        val results: MutableList<BatchMatchResultDTO> = ArrayList()
+
+        service.findMatchesForPublicTransportRoutes(tasks, null) { results.add(it) }
+
+        assertThat(results.map(BatchMatchResultDTO::index)).containsExactlyInAnyOrderElementsOf(0 until 20)
+
+        results.forEach { result ->
+            assertThat(result.routeId).isEqualTo("route${result.index}")
+            assertThat(result.response).isEqualTo(RoutingResponse.noSegment("route${result.index}"))
+            assertThat(result.durationInMillis).isGreaterThanOrEqualTo(0)
+        }
+
+        assertThat(matchingService.maxConcurrency.get()).isLessThanOrEqualTo(PARALLELISM)
+    }
+
+    @Test
+    @DisplayName("Failure in matching a route is converted to a failure response")
+    fun failureIsConvertedToResponse() {
+        val service = BatchMatchingServiceImpl(StubMatchingService(), DEADLINE_HANDLER, executor)
+
+        val results: MutableList<BatchMatchResultDTO> = ArrayList()
+
+        service.findMatchesForPublicTransportRoutes(listOf(createTask("ok"), createTask("error")), null) {
+            results.add(it)
+        }
+
+        val failure: BatchMatchResultDTO = results.single { it.routeId == "error" }
+
+        assertThat(failure.index).isEqualTo(1)
+        assertThat(failure.response.code).isEqualTo(ResponseCode.InvalidUrl)
+    }
+
+    @Test
+    @DisplayName("Failure of result consumer is rethrown")
+    fun consumerFailureIsRethrown() {
+        val service = BatchMatchingServiceImpl(StubMatchingService(), DEADLINE_HANDLER, executor)
+
+        val tasks: List<PublicTransportRouteMatchTask> = (0 until 10).map { createTask("route$it") }
+
+        assertThatThrownBy {
+            service.findMatchesForPublicTransportRoutes(tasks, null) { throw IllegalStateException("disconnected") }
+        }.hasMessage("disconnected")
+    }
+
+    companion object {
+        private const val PARALLELISM = 3
+
+        private val DEADLINE_HANDLER = RequestDeadlineHandler(SimpleMeterRegistry(), Duration.ZERO)
+
+        private val ROUTE_GEOMETRY: LineString<G2D> =
+            mkLineString(
+                PositionSequenceBuilders
+                    .variableSized(G2D::class.java)
+                    .add(24.9384, 60.1699)
+                    .add(24.9402, 60.1711)
+                    .toPositionSequence(),
+                WGS84
+            )
+
+        private val MATCHING_PARAMETERS =
+            PublicTransportRouteMatchingParameters(55.0, 50.0, 5, 80.0, false, null)
+    }
+}
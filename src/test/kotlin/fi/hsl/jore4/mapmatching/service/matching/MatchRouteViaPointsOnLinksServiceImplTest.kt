@@ -0,0 +1,297 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.NodeIdSequence
+import fi.hsl.jore4.mapmatching.model.NodeProximity
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnapStopToLinkResult
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnappedPointOnLink
+import fi.hsl.jore4.mapmatching.repository.routing.BufferAreaRestriction
+import fi.hsl.jore4.mapmatching.repository.routing.PgRoutingPoint
+import fi.hsl.jore4.mapmatching.repository.routing.RouteLink
+import fi.hsl.jore4.mapmatching.service.common.IRoutingServiceInternal
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Geometries.mkLineString
+import org.geolatte.geom.Geometries.mkPoint
+import org.geolatte.geom.LineString
+import org.geolatte.geom.Point
+import org.geolatte.geom.PositionSequenceBuilders
+import org.geolatte.geom.crs.CoordinateReferenceSystems.WGS84
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.context.annotation.AnnotationConfigApplicationContext
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.annotation.EnableTransactionManagement
+import org.springframework.transaction.annotation.Transactional
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.sql.SQLException
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.function.Supplier
+import javax.sql.DataSource
+
+class MatchRouteViaPointsOnLinksServiceImplTest {
+    private val executor: ExecutorService = Executors.newFixedThreadPool(CONCURRENT_CANDIDATES)
+
+    private val context = AnnotationConfigApplicationContext()
+
+    @AfterEach
+    fun close() {
+        context.close()
+        executor.shutdownNow()
+    }
+
+    /**
+     * A connection pool of a fixed size. Acquiring a connection fails if none
+     * becomes available within [TIMEOUT_SECONDS].
+     */
+    private class SmallConnectionPool(
+        size: Int
+    ) {
+        private val permits = Semaphore(size)
+
+        val dataSource: DataSource =
+            createProxy(DataSource::class.java) { methodName ->
+                when (methodName) {
+                    "getConnection" -> acquireConnection()
+                    else -> null
+                }
+            }
+
+        private fun acquireConnection(): Connection {
+            if (!permits.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw SQLException("Connection is not available")
+            }
+
+            val closed = AtomicBoolean()
+
+            return createProxy(Connection::class.java) { methodName ->
+                when (methodName) {
+                    "close" -> if (closed.compareAndSet(false, true)) permits.release()
+                    "isClosed" -> return@createProxy closed.get()
+                }
+                null
+            }
+        }
+
+        /**
+         * Creates a stub of the given interface in which the methods not
+         * handled by [handler] return default values.
+         */
+        private fun <T> createProxy(
+            type: Class<T>,
+            handler: (String) -> Any?
+        ): T =
+            type.cast(
+                Proxy.newProxyInstance(javaClass.classLoader, arrayOf(type)) { proxy, method, args ->
+                    when (method.name) {
+                        "toString" -> type.simpleName
+                        "hashCode" -> System.identityHashCode(proxy)
+                        "equals" -> proxy === args[0]
+                        else ->
+                            handler(method.name) ?: when (method.returnType) {
+                                Boolean::class.javaPrimitiveType -> false
+                                Int::class.javaPrimitiveType -> 0
+                                else -> null
+                            }
+                    }
+                }
+            )
+    }
+
+    /**
+     * Provides the collaborators of the service under test, each opening a
+     * transaction of its own on a pool of [CONCURRENT_CANDIDATES] connections.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @EnableTransactionManagement
+    class CollaboratorConfig {
+        @Bean
+        fun transactionManager(): PlatformTransactionManager =
+            DataSourceTransactionManager(SmallConnectionPool(CONCURRENT_CANDIDATES).dataSource)
+
+        @Bean
+        fun closestTerminusLinksResolver(): IClosestTerminusLinksResolver = StubClosestTerminusLinksResolver()
+
+        @Bean
+        fun publicTransportStopMatcher(): IPublicTransportStopMatcher = StubPublicTransportStopMatcher()
+
+        @Bean
+        fun roadJunctionMatcher(): IRoadJunctionMatcher = StubRoadJunctionMatcher()
+
+        @Bean
+        fun bufferAreaRestrictionResolver(): IBufferAreaRestrictionResolver = StubBufferAreaRestrictionResolver()
+
+        @Bean
+        fun routingService(): IRoutingServiceInternal = StubRoutingService()
+    }
+
+    private class StubClosestTerminusLinksResolver : IClosestTerminusLinksResolver {
+        override fun findClosestInfrastructureLinksForRouteEndpoints(
+            startPoint: Point<G2D>,
+            endPoint: Point<G2D>,
+            vehicleType: VehicleType,
+            linkQueryDistance: Double,
+            linkQueryLimit: Int
+        ): Pair<List<SnappedPointOnLink>, List<SnappedPointOnLink>> = throw UnsupportedOperationException()
+
+        @Transactional(readOnly = true)
+        override fun resolveTerminusLinkSelectionParameters(
+            sourceRouteGeometry: LineString<G2D>,
+            sourceRoutePoints: List<RoutePoint>,
+            vehicleType: VehicleType,
+            terminusLinkQueryDistance: Double,
+            terminusLinkQueryLimit: Int
+        ) = TerminusLinkSelectionParams(
+            SourceRouteTerminusPoint.fromRoutePoint(START_POINT, true),
+            (1..CONCURRENT_CANDIDATES).map { createPointOnLink(it.toLong()) },
+            SourceRouteTerminusPoint.fromRoutePoint(END_POINT, false),
+            listOf(createPointOnLink(100))
+        )
+    }
+
+    private class StubPublicTransportStopMatcher : IPublicTransportStopMatcher {
+        @Transactional(readOnly = true)
+        override fun findStopPointsByNationalIdsAndIndexByRoutePointOrdering(
+            routePoints: List<RoutePoint>,
+            maxStopLocationDeviation: Double
+        ): Map<Int, SnapStopToLinkResult> = emptyMap()
+    }
+
+    private class StubRoadJunctionMatcher : IRoadJunctionMatcher {
+        @Transactional(readOnly = true)
+        override fun findInfrastructureNodesMatchingRoadJunctions(
+            routePoints: List<RoutePoint>,
+            vehicleType: VehicleType,
+            matchDistance: Double,
+            clearingDistance: Double
+        ): Map<Int, NodeProximity?> = emptyMap()
+    }
+
+    private class StubBufferAreaRestrictionResolver : IBufferAreaRestrictionResolver {
+        @Transactional(readOnly = true)
+        override fun resolveBufferAreaRestriction(
+            sourceRouteGeometry: LineString<G2D>,
+            bufferRadiusInMeters: Double,
+            vehicleType: VehicleType
+        ) = BufferAreaRestriction(sourceRouteGeometry, bufferRadiusInMeters)
+    }
+
+    /**
+     * Does not find a route for any candidate. Each candidate waits until all
+     * concurrent candidates are in a transaction at the same time.
+     */
+    private class StubRoutingService : IRoutingServiceInternal {
+        private val barrier = CyclicBarrier(CONCURRENT_CANDIDATES)
+
+        override fun findRouteViaNodes(
+            nodeIdSequence: NodeIdSequence,
+            vehicleType: VehicleType,
+            fractionalStartLocationOnFirstLink: Double,
+            fractionalEndLocationOnLastLink: Double,
+            bufferAreaRestriction: BufferAreaRestriction?
+        ): List<RouteLink> = throw UnsupportedOperationException()
+
+        @Transactional(readOnly = true)
+        override fun findRouteViaPointsOnLinks(
+            points: List<PgRoutingPoint>,
+            vehicleType: VehicleType,
+            simplifyConsecutiveClosedLoopTraversals: Boolean,
+            bufferAreaRestriction: BufferAreaRestriction?,
+            matchingAlgorithm: String?
+        ): List<RouteLink> {
+            barrier.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            return emptyList()
+        }
+    }
+
+    private fun createService(): IMatchRouteViaPointsOnLinksService {
+        context.register(CollaboratorConfig::class.java)
+        context.registerBean(
+            MatchRouteViaPointsOnLinksServiceImpl::class.java,
+            Supplier {
+                MatchRouteViaPointsOnLinksServiceImpl(
+                    context.getBean(IClosestTerminusLinksResolver::class.java),
+                    context.getBean(IPublicTransportStopMatcher::class.java),
+                    context.getBean(IRoadJunctionMatcher::class.java),
+                    context.getBean(IRoutingServiceInternal::class.java),
+                    context.getBean(IBufferAreaRestrictionResolver::class.java),
+                    MatchingPipelineMetrics(SimpleMeterRegistry()),
+                    executor,
+                    CONCURRENT_CANDIDATES
+                )
+            }
+        )
+        context.refresh()
+
+        return context.getBean(IMatchRouteViaPointsOnLinksService::class.java)
+    }
+
+    @Test
+    @DisplayName("Concurrent candidates do not deadlock with a pool of as many connections as candidates")
+    fun concurrentCandidatesDoNotExhaustConnectionPool() {
+        val service: IMatchRouteViaPointsOnLinksService = createService()
+
+        val response: RoutingResponse =
+            service.findMatchForPublicTransportRoute(
+                ROUTE_GEOMETRY,
+                emptyList(),
+                VehicleType.GENERIC_BUS,
+                MATCHING_PARAMETERS
+            )
+
+        assertThat(response).isEqualTo(
+            RoutingResponse.noSegment("Could not find route while map-matching via graph edges (points on links)")
+        )
+    }
+
+    companion object {
+        private const val CONCURRENT_CANDIDATES = 2
+
+        private const val TIMEOUT_SECONDS = 10L
+
+        private val START_POINT = mkPoint(G2D(24.9384, 60.1699), WGS84)
+
+        private val END_POINT = mkPoint(G2D(24.9402, 60.1711), WGS84)
+
+        private val ROUTE_GEOMETRY: LineString<G2D> =
+            mkLineString(
+                PositionSequenceBuilders
+                    .variableSized(G2D::class.java)
+                    .add(24.9384, 60.1699)
+                    .add(24.9402, 60.1711)
+                    .toPositionSequence(),
+                WGS84
+            )
+
+        private val MATCHING_PARAMETERS =
+            PublicTransportRouteMatchingParameters(55.0, 50.0, 5, 80.0, false, null)
+
+        private fun createPointOnLink(linkId: Long) =
+            SnappedPointOnLink(
+                InfrastructureLinkId(linkId),
+                1.0,
+                0.5,
+                TrafficFlowDirectionType.BIDIRECTIONAL,
+                10.0,
+                InfrastructureNodeId(2 * linkId),
+                InfrastructureNodeId(2 * linkId + 1)
+            )
+    }
+}
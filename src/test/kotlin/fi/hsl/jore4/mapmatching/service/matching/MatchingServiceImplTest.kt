@@ -0,0 +1,263 @@
+package fi.hsl.jore4.mapmatching.service.matching
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RouteOtherPoint
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.FallbackMode
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics.FallbackOutcome
+import fi.hsl.jore4.mapmatching.service.common.response.RouteResultDTO
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.util.RequestDeadline
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Geometries.mkLineString
+import org.geolatte.geom.Geometries.mkPoint
+import org.geolatte.geom.LineString
+import org.geolatte.geom.PositionSequenceBuilders
+import org.geolatte.geom.crs.CoordinateReferenceSystems.WGS84
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+import java.lang.reflect.Proxy
+import java.sql.Statement
+import java.time.Duration
+import java.util.concurrent.AbstractExecutorService
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.RunnableFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class MatchingServiceImplTest {
+    /**
+     * Runs the submitted tasks in the same thread, but only when
+     * [runSubmittedTasks] is called, so that a task can be observed while it
+     * is pending.
+     */
+    private class SameThreadExecutor : AbstractExecutorService() {
+        val submittedTasks: MutableList<Future<*>> = ArrayList()
+
+        private val pendingTasks: MutableList<Runnable> = ArrayList()
+
+        override fun execute(command: Runnable) {
+            if (command is RunnableFuture<*>) {
+                submittedTasks.add(command)
+            }
+            pendingTasks.add(command)
+        }
+
+        fun runSubmittedTasks() {
+            pendingTasks.forEach(Runnable::run)
+            pendingTasks.clear()
+        }
+
+        override fun shutdown() {}
+
+        override fun shutdownNow(): List<Runnable> = emptyList()
+
+        override fun isShutdown() = false
+
+        override fun isTerminated() = false
+
+        override fun awaitTermination(
+            timeout: Long,
+            unit: TimeUnit
+        ) = false
+    }
+
+    /**
+     * Returns the response given by [respond], which may also throw an
+     * exception.
+     */
+    private class StubAlgorithm(
+        val respond: () -> RoutingResponse
+    ) : IMatchRouteViaPointsOnLinksService,
+        IMatchRouteViaNetworkNodesService {
+        override fun findMatchForPublicTransportRoute(
+            sourceRouteGeometry: LineString<G2D>,
+            sourceRoutePoints: List<RoutePoint>,
+            vehicleType: VehicleType,
+            matchingParameters: PublicTransportRouteMatchingParameters
+        ): RoutingResponse = respond()
+    }
+
+    private val executor = SameThreadExecutor()
+
+    private val meterRegistry = SimpleMeterRegistry()
+
+    private fun createService(
+        viaPointsOnLinks: () -> RoutingResponse,
+        viaNodes: () -> RoutingResponse,
+        matchingExecutor: ExecutorService = executor
+    ) = MatchingServiceImpl(
+        StubAlgorithm(viaPointsOnLinks),
+        StubAlgorithm(viaNodes),
+        matchingExecutor,
+        MatchingPipelineMetrics(meterRegistry),
+        true
+    )
+
+    private fun findMatch(service: MatchingServiceImpl): RoutingResponse =
+        service.findMatchForPublicTransportRoute(
+            "route",
+            ROUTE_GEOMETRY,
+            ROUTE_POINTS,
+            VehicleType.GENERIC_BUS,
+            MATCHING_PARAMETERS
+        )
+
+    private fun countFallbackOutcomes(outcome: FallbackOutcome): Double =
+        meterRegistry
+            .find(MatchingPipelineMetrics.FALLBACK_METRIC)
+            .tags("mode", FallbackMode.SPECULATIVE.value, "outcome", outcome.value)
+            .counter()
+            ?.count()
+            ?: 0.0
+
+    @Nested
+    @DisplayName("Speculative fallback")
+    inner class SpeculativeFallback {
+        @Test
+        @DisplayName("Fallback is cancelled when via-graph-edges algorithm succeeds")
+        fun fallbackCancelledOnSuccess() {
+            val service =
+                createService(
+                    viaPointsOnLinks = { SUCCESS },
+                    viaNodes = { throw AssertionError("fallback must not be run") }
+                )
+
+            val response: RoutingResponse = findMatch(service)
+
+            assertThat(response).isEqualTo(SUCCESS)
+            assertThat(executor.submittedTasks).hasSize(1)
+            assertThat(executor.submittedTasks.single().isCancelled).isTrue
+            assertThat(countFallbackOutcomes(FallbackOutcome.NOT_NEEDED)).isEqualTo(1.0)
+        }
+
+        @Test
+        @DisplayName("Statement of fallback is cancelled when via-graph-edges algorithm succeeds")
+        fun fallbackStatementCancelledOnSuccess() {
+            val statementRegistered = CountDownLatch(1)
+            val numberOfStatementCancellations = AtomicInteger()
+
+            val statement: Statement =
+                Proxy.newProxyInstance(javaClass.classLoader, arrayOf(Statement::class.java)) { _, method, _ ->
+                    if (method.name == "cancel") {
+                        numberOfStatementCancellations.incrementAndGet()
+                    }
+                    null
+                } as Statement
+
+            val threadPool: ExecutorService = Executors.newSingleThreadExecutor()
+
+            try {
+                val service =
+                    createService(
+                        viaPointsOnLinks = {
+                            statementRegistered.await(5, TimeUnit.SECONDS)
+                            SUCCESS
+                        },
+                        viaNodes = {
+                            // Stands for a statement being executed, which is not stopped by an interrupt.
+                            RequestDeadline.current()!!.register(statement)
+                            statementRegistered.countDown()
+                            Thread.sleep(10_000)
+                            RoutingResponse.noSegment("fallback")
+                        },
+                        matchingExecutor = threadPool
+                    )
+
+                val response: RoutingResponse =
+                    RequestDeadline.runWithin(RequestDeadline.after(Duration.ofMinutes(1))) { findMatch(service) }
+
+                assertThat(response).isEqualTo(SUCCESS)
+                assertThat(numberOfStatementCancellations.get()).isEqualTo(1)
+            } finally {
+                threadPool.shutdownNow()
+            }
+        }
+
+        @Test
+        @DisplayName("Result of fallback is returned when via-graph-edges algorithm fails")
+        fun fallbackResultReturnedOnFailure() {
+            val fallbackResponse: RoutingResponse = RoutingResponse.noSegment("fallback")
+
+            val service =
+                createService(
+                    viaPointsOnLinks = {
+                        // The fallback completes while the primary algorithm is running.
+                        executor.runSubmittedTasks()
+                        RoutingResponse.noSegment("primary")
+                    },
+                    viaNodes = { fallbackResponse }
+                )
+
+            val response: RoutingResponse = findMatch(service)
+
+            assertThat(response).isEqualTo(fallbackResponse)
+            assertThat(countFallbackOutcomes(FallbackOutcome.FALLBACK_FAILED)).isEqualTo(1.0)
+        }
+
+        @Test
+        @DisplayName("Fallback is cancelled when via-graph-edges algorithm throws an exception")
+        fun fallbackCancelledOnException() {
+            val service =
+                createService(
+                    viaPointsOnLinks = { throw IllegalStateException("failure") },
+                    viaNodes = { throw AssertionError("fallback must not be run") }
+                )
+
+            assertThatThrownBy { findMatch(service) }
+                .isInstanceOf(IllegalStateException::class.java)
+                .hasMessage("failure")
+
+            assertThat(executor.submittedTasks.single().isCancelled).isTrue
+        }
+
+        @Test
+        @DisplayName("Exception thrown by fallback is re-thrown as such")
+        fun fallbackExceptionRethrown() {
+            val service =
+                createService(
+                    viaPointsOnLinks = {
+                        executor.runSubmittedTasks()
+                        RoutingResponse.noSegment("primary")
+                    },
+                    viaNodes = { throw IllegalStateException("fallback failure") }
+                )
+
+            assertThatThrownBy { findMatch(service) }
+                .isInstanceOf(IllegalStateException::class.java)
+                .hasMessage("fallback failure")
+        }
+    }
+
+    companion object {
+        private val ROUTE_GEOMETRY: LineString<G2D> =
+            mkLineString(
+                PositionSequenceBuilders
+                    .variableSized(G2D::class.java)
+                    .add(24.9384, 60.1699)
+                    .add(24.9402, 60.1711)
+                    .toPositionSequence(),
+                WGS84
+            )
+
+        private val ROUTE_POINTS: List<RoutePoint> =
+            listOf(
+                RouteOtherPoint(mkPoint(G2D(24.9384, 60.1699), WGS84)),
+                RouteOtherPoint(mkPoint(G2D(24.9402, 60.1711), WGS84))
+            )
+
+        private val MATCHING_PARAMETERS =
+            PublicTransportRouteMatchingParameters(55.0, 50.0, 5, 80.0, true, null)
+
+        private val SUCCESS: RoutingResponse =
+            RoutingResponse.ok(RouteResultDTO(ROUTE_GEOMETRY, 100.0, 100.0, emptyList()))
+    }
+}
@@ -0,0 +1,162 @@
+package fi.hsl.jore4.mapmatching.service.matching.cache
+
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RouteOtherPoint
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.service.common.INetworkVersionProbe
+import fi.hsl.jore4.mapmatching.service.common.MatchingPipelineMetrics
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.service.matching.IMatchRouteViaNetworkNodesService
+import fi.hsl.jore4.mapmatching.service.matching.IMatchRouteViaPointsOnLinksService
+import fi.hsl.jore4.mapmatching.service.matching.MatchingServiceImpl
+import fi.hsl.jore4.mapmatching.service.matching.PublicTransportRouteMatchingParameters
+import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toPoint
+import fi.hsl.jore4.mapmatching.util.RequestDeadline
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Geometries.mkLineString
+import org.geolatte.geom.LineString
+import org.geolatte.geom.PositionSequenceBuilders
+import org.geolatte.geom.crs.CoordinateReferenceSystems.WGS84
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.dao.DataAccessResourceFailureException
+import java.time.Duration
+import java.time.OffsetDateTime
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+class CachingMatchingServiceImplTest {
+    /**
+     * Counts the invocations and returns the response given by [respond],
+     * which may also throw an exception.
+     */
+    private class StubAlgorithm(
+        val respond: () -> RoutingResponse
+    ) : IMatchRouteViaPointsOnLinksService,
+        IMatchRouteViaNetworkNodesService {
+        val numberOfInvocations = AtomicInteger()
+
+        override fun findMatchForPublicTransportRoute(
+            sourceRouteGeometry: LineString<G2D>,
+            sourceRoutePoints: List<RoutePoint>,
+            vehicleType: VehicleType,
+            matchingParameters: PublicTransportRouteMatchingParameters
+        ): RoutingResponse {
+            numberOfInvocations.incrementAndGet()
+            return respond()
+        }
+    }
+
+    private fun createService(algorithm: StubAlgorithm) =
+        CachingMatchingServiceImpl(
+            MatchingServiceImpl(
+                algorithm,
+                StubAlgorithm { throw AssertionError("fallback must not be run") },
+                ForkJoinPool.commonPool(),
+                MatchingPipelineMetrics(SimpleMeterRegistry()),
+                false
+            ),
+            NETWORK_VERSION_PROBE,
+            SimpleMeterRegistry(),
+            1_000_000
+        )
+
+    private fun findMatch(service: CachingMatchingServiceImpl): RoutingResponse =
+        service.findMatchForPublicTransportRoute(
+            "route",
+            ROUTE_GEOMETRY,
+            ROUTE_POINTS,
+            VehicleType.GENERIC_BUS,
+            MATCHING_PARAMETERS
+        )
+
+    @Test
+    @DisplayName("Failure is cached when matching completes within deadline")
+    fun failureCachedWithinDeadline() {
+        val algorithm = StubAlgorithm { FAILURE }
+        val service: CachingMatchingServiceImpl = createService(algorithm)
+
+        RequestDeadline.runWithin(RequestDeadline.after(Duration.ofMinutes(1))) { findMatch(service) }
+        val response: RoutingResponse = findMatch(service)
+
+        assertThat(response).isEqualTo(FAILURE)
+        assertThat(algorithm.numberOfInvocations.get()).isEqualTo(1)
+    }
+
+    @Test
+    @DisplayName("Failure is not cached when deadline expires during matching")
+    fun failureNotCachedWhenDeadlineExpires() {
+        val algorithm =
+            StubAlgorithm {
+                // The failure stands for one converted from a cancelled statement.
+                while (!RequestDeadline.current()!!.isExpired) {
+                    Thread.sleep(1)
+                }
+                FAILURE
+            }
+        val service: CachingMatchingServiceImpl = createService(algorithm)
+
+        RequestDeadline.runWithin(RequestDeadline.after(Duration.ofMillis(10))) { findMatch(service) }
+
+        assertThat(service.cache.numberOfEntries).isZero
+    }
+
+    @Test
+    @DisplayName("Failure is not cached when deadline is cancelled during matching")
+    fun failureNotCachedWhenDeadlineCancelled() {
+        val deadline: RequestDeadline = RequestDeadline.after(Duration.ofMinutes(1))
+        val algorithm =
+            StubAlgorithm {
+                deadline.cancel()
+                FAILURE
+            }
+        val service: CachingMatchingServiceImpl = createService(algorithm)
+
+        RequestDeadline.runWithin(deadline) { findMatch(service) }
+
+        assertThat(service.cache.numberOfEntries).isZero
+    }
+
+    @Test
+    @DisplayName("Nothing is cached when matching fails due to database error")
+    fun nothingCachedOnDatabaseError() {
+        val algorithm = StubAlgorithm { throw DataAccessResourceFailureException("connection lost") }
+        val service: CachingMatchingServiceImpl = createService(algorithm)
+
+        assertThatThrownBy { findMatch(service) }.isInstanceOf(DataAccessResourceFailureException::class.java)
+
+        assertThat(service.cache.numberOfEntries).isZero
+    }
+
+    companion object {
+        private val FAILURE: RoutingResponse = RoutingResponse.noSegment("no route")
+
+        private val NETWORK_VERSION_PROBE =
+            object : INetworkVersionProbe {
+                override val currentVersion = NetworkVersion(1, OffsetDateTime.now())
+            }
+
+        private val ROUTE_GEOMETRY: LineString<G2D> =
+            mkLineString(
+                PositionSequenceBuilders
+                    .variableSized(G2D::class.java)
+                    .add(24.9384, 60.1699)
+                    .add(24.9402, 60.1711)
+                    .toPositionSequence(),
+                WGS84
+            )
+
+        private val ROUTE_POINTS: List<RoutePoint> =
+            listOf(
+                RouteOtherPoint(toPoint(G2D(24.9384, 60.1699))),
+                RouteOtherPoint(toPoint(G2D(24.9402, 60.1711)))
+            )
+
+        private val MATCHING_PARAMETERS =
+            PublicTransportRouteMatchingParameters(55.0, 50.0, 5, 80.0, false, null)
+    }
+}
@@ -0,0 +1,204 @@
+package fi.hsl.jore4.mapmatching.service.matching.cache
+
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.model.matching.RouteJunctionPoint
+import fi.hsl.jore4.mapmatching.model.matching.RoutePoint
+import fi.hsl.jore4.mapmatching.model.matching.RouteStopPoint
+import fi.hsl.jore4.mapmatching.service.common.response.RouteResultDTO
+import fi.hsl.jore4.mapmatching.service.common.response.RoutingResponse
+import fi.hsl.jore4.mapmatching.service.matching.PublicTransportRouteMatchingParameters
+import fi.hsl.jore4.mapmatching.service.matching.PublicTransportRouteMatchingParameters.JunctionMatchingParameters
+import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toPoint
+import fi.hsl.jore4.mapmatching.util.LineStringCoordinates
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.geolatte.geom.G2D
+import org.geolatte.geom.LineString
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+
+class MatchResultCacheTest {
+    @Nested
+    @DisplayName("Request key")
+    inner class RequestKey {
+        @Test
+        @DisplayName("Equal requests produce equal keys")
+        fun equalRequests() {
+            assertThat(key()).isEqualTo(key())
+        }
+
+        @Test
+        @DisplayName("Route geometry affects key")
+        fun routeGeometry() {
+            assertThat(key(geometry = line(24.93, 60.16, 24.95, 60.17))).isNotEqualTo(key())
+        }
+
+        @Test
+        @DisplayName("Route points affect key")
+        fun routePoints() {
+            val otherRoutePoints: List<RoutePoint> =
+                listOf(
+                    RouteStopPoint(toPoint(G2D(24.93, 60.16)), null, "H1234", 1),
+                    RouteJunctionPoint(toPoint(G2D(24.94, 60.17)))
+                )
+
+            assertThat(key(routePoints = otherRoutePoints)).isNotEqualTo(key())
+        }
+
+        @Test
+        @DisplayName("Vehicle type affects key")
+        fun vehicleType() {
+            assertThat(key(vehicleType = VehicleType.GENERIC_TRAM)).isNotEqualTo(key())
+        }
+
+        @Test
+        @DisplayName("Matching parameters affect key")
+        fun matchingParameters() {
+            assertThat(key(parameters = PARAMETERS.copy(roadJunctionMatching = null))).isNotEqualTo(key())
+            assertThat(key(parameters = PARAMETERS.copy(terminusLinkQueryLimit = 10))).isNotEqualTo(key())
+        }
+
+        @Test
+        @DisplayName("Network version is carried by key")
+        fun networkVersion() {
+            assertThat(key(networkVersion = "v2"))
+                .isNotEqualTo(key())
+                .extracting(MatchRequestKey::digest)
+                .isEqualTo(key().digest)
+        }
+    }
+
+    @Nested
+    @DisplayName("Cache")
+    inner class Cache {
+        private val meterRegistry = SimpleMeterRegistry()
+
+        private fun count(
+            metric: String,
+            tagKey: String,
+            tagValue: String
+        ): Double = meterRegistry.counter(metric, tagKey, tagValue).count()
+
+        @Test
+        @DisplayName("Stored response is returned and hits and misses are counted")
+        fun hitAndMiss() {
+            val cache = MatchResultCache(1_000_000, meterRegistry)
+            val response: RoutingResponse = success(10)
+
+            assertThat(cache.get(key())).isNull()
+
+            cache.put(key(), response)
+
+            assertThat(cache.get(key())).isSameAs(response)
+            assertThat(count(MatchResultCache.REQUESTS_METRIC, "result", "miss")).isEqualTo(1.0)
+            assertThat(count(MatchResultCache.REQUESTS_METRIC, "result", "hit")).isEqualTo(1.0)
+        }
+
+        @Test
+        @DisplayName("Least recently used entries are evicted when size limit is exceeded")
+        fun sizeEviction() {
+            val entrySize: Long = MatchResultCache.estimateSizeInBytes(success(100))
+            val cache = MatchResultCache(4 * entrySize, meterRegistry)
+
+            val keys: List<MatchRequestKey> = (1..3).map { key(geometry = line(24.0 + it, 60.0, 24.0 + it, 61.0)) }
+
+            keys.forEach { cache.put(it, success(100)) }
+
+            // Touch the first entry so that the second one becomes the least recently used.
+            cache.get(keys[0])
+
+            cache.put(key(), success(100))
+
+            assertThat(cache.get(keys[0])).isNotNull
+            assertThat(cache.get(keys[1])).isNull()
+            assertThat(cache.get(keys[2])).isNotNull
+            assertThat(cache.sizeInBytes).isLessThanOrEqualTo(cache.maxSizeInBytes)
+            assertThat(count(MatchResultCache.EVICTIONS_METRIC, "cause", "size")).isEqualTo(1.0)
+        }
+
+        @Test
+        @DisplayName("Response larger than the whole cache is not stored")
+        fun oversizedResponse() {
+            val cache = MatchResultCache(1000, meterRegistry)
+
+            cache.put(key(), success(100))
+
+            assertThat(cache.get(key())).isNull()
+            assertThat(cache.sizeInBytes).isZero
+        }
+
+        @Test
+        @DisplayName("Whole cache is invalidated when switching to new network version")
+        fun networkVersionChange() {
+            val cache = MatchResultCache(1_000_000, meterRegistry)
+
+            cache.put(key(), success(10))
+            cache.put(key(vehicleType = VehicleType.GENERIC_TRAM), success(10))
+
+            cache.invalidateAll("v2")
+
+            assertThat(cache.numberOfEntries).isZero
+            assertThat(cache.sizeInBytes).isZero
+            assertThat(count(MatchResultCache.EVICTIONS_METRIC, "cause", "invalidation")).isEqualTo(2.0)
+
+            cache.put(key(networkVersion = "v2"), success(10))
+
+            assertThat(cache.get(key(networkVersion = "v2"))).isNotNull
+        }
+
+        @Test
+        @DisplayName("Entries of other network versions are neither found nor stored")
+        fun otherNetworkVersion() {
+            val cache = MatchResultCache(1_000_000, meterRegistry)
+
+            cache.put(key(), success(10))
+            cache.put(key(networkVersion = "v2"), success(10))
+
+            assertThat(cache.get(key(networkVersion = "v2"))).isNull()
+            assertThat(cache.get(key())).isNotNull
+            assertThat(cache.numberOfEntries).isEqualTo(1)
+        }
+    }
+
+    companion object {
+        private val GEOMETRY: LineString<G2D> = line(24.93, 60.16, 24.94, 60.17)
+
+        private val ROUTE_POINTS: List<RoutePoint> =
+            listOf(
+                RouteStopPoint(toPoint(G2D(24.93, 60.16)), null, "H1234", 1),
+                RouteStopPoint(toPoint(G2D(24.94, 60.17)), null, "H1235", 2)
+            )
+
+        private val PARAMETERS =
+            PublicTransportRouteMatchingParameters(
+                bufferRadiusInMeters = 55.0,
+                terminusLinkQueryDistance = 50.0,
+                terminusLinkQueryLimit = 5,
+                maxStopLocationDeviation = 80.0,
+                fallbackToViaNodesAlgorithm = true,
+                roadJunctionMatching = JunctionMatchingParameters(5.0, 7.5)
+            )
+
+        private fun line(vararg coordinates: Double): LineString<G2D> =
+            LineStringCoordinates.of(*coordinates).toLineString()
+
+        private fun key(
+            geometry: LineString<G2D> = GEOMETRY,
+            routePoints: List<RoutePoint> = ROUTE_POINTS,
+            vehicleType: VehicleType = VehicleType.GENERIC_BUS,
+            parameters: PublicTransportRouteMatchingParameters = PARAMETERS,
+            networkVersion: String = "v1"
+        ): MatchRequestKey = MatchRequestKey.of(geometry, routePoints, vehicleType, parameters, networkVersion)
+
+        private fun success(numberOfPositions: Int): RoutingResponse =
+            RoutingResponse.ok(
+                RouteResultDTO(
+                    line(*DoubleArray(2 * numberOfPositions) { 24.0 + it * 0.001 }),
+                    1.0,
+                    1.0,
+                    emptyList()
+                )
+            )
+    }
+}
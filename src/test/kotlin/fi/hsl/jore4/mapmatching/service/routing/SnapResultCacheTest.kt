@@ -0,0 +1,166 @@
+package fi.hsl.jore4.mapmatching.service.routing
+
+import fi.hsl.jore4.mapmatching.model.InfrastructureLinkId
+import fi.hsl.jore4.mapmatching.model.InfrastructureNodeId
+import fi.hsl.jore4.mapmatching.model.NetworkVersion
+import fi.hsl.jore4.mapmatching.model.NetworkVersionChangedEvent
+import fi.hsl.jore4.mapmatching.model.TrafficFlowDirectionType
+import fi.hsl.jore4.mapmatching.model.VehicleType
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnapPointToLinkResult
+import fi.hsl.jore4.mapmatching.repository.infrastructure.SnappedPointOnLink
+import fi.hsl.jore4.mapmatching.service.common.INetworkVersionProbe
+import fi.hsl.jore4.mapmatching.util.GeolatteUtils.toPoint
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Point
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.time.OffsetDateTime
+
+class SnapResultCacheTest {
+    private var networkVersion: NetworkVersion = version(1)
+
+    private val networkVersionProbe =
+        object : INetworkVersionProbe {
+            override val currentVersion: NetworkVersion
+                get() = networkVersion
+        }
+
+    private val cache = SnapResultCache(networkVersionProbe, SimpleMeterRegistry(), true, 100)
+
+    // The points passed to the link query on each call
+    private val queriedPoints: MutableList<List<Point<G2D>>> = ArrayList()
+
+    private fun findClosestLinks(
+        points: List<Point<G2D>>,
+        vehicleType: VehicleType = VehicleType.GENERIC_BUS,
+        linkQueryDistance: Int = 50
+    ): Map<Int, SnapPointToLinkResult> =
+        cache.findClosestLinks(points, vehicleType, linkQueryDistance) { pointsToSnap ->
+            queriedPoints.add(pointsToSnap)
+
+            // A link is found for every point except the ones on the equator.
+            pointsToSnap
+                .withIndex()
+                .filter { it.value.position.lat != 0.0 }
+                .associate { (index, point) -> index + 1 to snap(point) }
+        }
+
+    @Test
+    @DisplayName("Repeated points are not queried again")
+    fun repeatedPoints() {
+        findClosestLinks(listOf(POINT_A, POINT_B))
+
+        val result: Map<Int, SnapPointToLinkResult> = findClosestLinks(listOf(POINT_A, POINT_B))
+
+        assertThat(queriedPoints).containsExactly(listOf(POINT_A, POINT_B))
+        assertThat(result.keys).containsExactly(1, 2)
+        assertThat(cache.hitRatio).isEqualTo(0.5)
+    }
+
+    @Test
+    @DisplayName("Only moved points are queried and results are indexed by original sequence numbers")
+    fun movedPoint() {
+        findClosestLinks(listOf(POINT_A, POINT_B))
+
+        val result: Map<Int, SnapPointToLinkResult> = findClosestLinks(listOf(POINT_C, POINT_B, POINT_A))
+
+        assertThat(queriedPoints).containsExactly(listOf(POINT_A, POINT_B), listOf(POINT_C))
+        assertThat(result.mapValues { it.value.point }).isEqualTo(mapOf(1 to POINT_C, 2 to POINT_B, 3 to POINT_A))
+    }
+
+    @Test
+    @DisplayName("Point within the same grid cell is served from the cache with the requested point")
+    fun pointWithinGridCell() {
+        val nearbyPoint: Point<G2D> = toPoint(G2D(POINT_A.position.lon + 1e-7, POINT_A.position.lat))
+
+        findClosestLinks(listOf(POINT_A, POINT_B))
+
+        val result: Map<Int, SnapPointToLinkResult> = findClosestLinks(listOf(nearbyPoint, POINT_B))
+
+        assertThat(queriedPoints).hasSize(1)
+        assertThat(result[1]?.point).isEqualTo(nearbyPoint)
+    }
+
+    @Test
+    @DisplayName("Vehicle type and link query distance are part of the key")
+    fun keyParameters() {
+        findClosestLinks(listOf(POINT_A))
+        findClosestLinks(listOf(POINT_A), vehicleType = VehicleType.GENERIC_TRAM)
+        findClosestLinks(listOf(POINT_A), linkQueryDistance = 100)
+
+        assertThat(queriedPoints).hasSize(3)
+    }
+
+    @Test
+    @DisplayName("Points without a link are not cached")
+    fun unmatchedPoints() {
+        val pointOnEquator: Point<G2D> = toPoint(G2D(24.93, 0.0))
+
+        findClosestLinks(listOf(pointOnEquator, POINT_A))
+
+        val result: Map<Int, SnapPointToLinkResult> = findClosestLinks(listOf(pointOnEquator, POINT_A))
+
+        assertThat(queriedPoints).containsExactly(listOf(pointOnEquator, POINT_A), listOf(pointOnEquator))
+        assertThat(result.keys).containsExactly(2)
+    }
+
+    @Test
+    @DisplayName("Cache is invalidated when network version changes")
+    fun networkVersionChange() {
+        findClosestLinks(listOf(POINT_A))
+
+        cache.onNetworkVersionChanged(NetworkVersionChangedEvent(version(1), version(2)))
+
+        // Results resolved with the old version are neither served nor stored.
+        findClosestLinks(listOf(POINT_A))
+        assertThat(cache.size).isZero
+
+        networkVersion = version(2)
+        findClosestLinks(listOf(POINT_A))
+        findClosestLinks(listOf(POINT_A))
+
+        assertThat(queriedPoints).hasSize(3)
+    }
+
+    @Test
+    @DisplayName("Disabled cache always queries all points")
+    fun disabled() {
+        val disabledCache = SnapResultCache(networkVersionProbe, SimpleMeterRegistry(), false, 100)
+        var numberOfQueries = 0
+
+        repeat(2) {
+            disabledCache.findClosestLinks(listOf(POINT_A), VehicleType.GENERIC_BUS, 50) { points ->
+                numberOfQueries++
+                mapOf(1 to snap(points[0]))
+            }
+        }
+
+        assertThat(numberOfQueries).isEqualTo(2)
+        assertThat(disabledCache.size).isZero
+    }
+
+    companion object {
+        private val POINT_A: Point<G2D> = toPoint(G2D(24.9384, 60.1699))
+        private val POINT_B: Point<G2D> = toPoint(G2D(24.9414, 60.1719))
+        private val POINT_C: Point<G2D> = toPoint(G2D(24.9444, 60.1739))
+
+        private fun version(version: Long) = NetworkVersion(version, OffsetDateTime.parse("2024-01-01T00:00:00Z"))
+
+        private fun snap(point: Point<G2D>) =
+            SnapPointToLinkResult(
+                point,
+                50.0,
+                SnappedPointOnLink(
+                    InfrastructureLinkId(1),
+                    5.0,
+                    0.5,
+                    TrafficFlowDirectionType.BIDIRECTIONAL,
+                    100.0,
+                    InfrastructureNodeId(1),
+                    InfrastructureNodeId(2)
+                )
+            )
+    }
+}
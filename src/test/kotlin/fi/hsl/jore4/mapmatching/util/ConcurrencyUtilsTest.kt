@@ -0,0 +1,162 @@
+package fi.hsl.jore4.mapmatching.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.lang.reflect.Proxy
+import java.sql.Statement
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class ConcurrencyUtilsTest {
+    private val executor: ExecutorService = Executors.newFixedThreadPool(4)
+
+    @AfterEach
+    fun shutdownExecutor() {
+        executor.shutdownNow()
+    }
+
+    @Test
+    @DisplayName("Result of the highest-priority successful task is returned even if it completes last")
+    fun highestPriorityResultReturned() {
+        val lowPriorityCompleted = CountDownLatch(2)
+
+        val tasks: List<() -> String?> =
+            listOf(
+                { null },
+                {
+                    lowPriorityCompleted.await(5, TimeUnit.SECONDS)
+                    "second"
+                },
+                {
+                    lowPriorityCompleted.countDown()
+                    "third"
+                },
+                {
+                    lowPriorityCompleted.countDown()
+                    "fourth"
+                }
+            )
+
+        assertThat(ConcurrencyUtils.findFirstNotNullConcurrently(tasks, executor, 4)).isEqualTo("second")
+    }
+
+    @Test
+    @DisplayName("Null is returned when no task succeeds")
+    fun nullWhenNoTaskSucceeds() {
+        val numberOfEvaluatedTasks = AtomicInteger()
+
+        val tasks: List<() -> String?> =
+            List(10) {
+                {
+                    numberOfEvaluatedTasks.incrementAndGet()
+                    null
+                }
+            }
+
+        assertThat(ConcurrencyUtils.findFirstNotNullConcurrently(tasks, executor, 3)).isNull()
+        assertThat(numberOfEvaluatedTasks.get()).isEqualTo(10)
+    }
+
+    @Test
+    @DisplayName("Lower-priority tasks are cancelled when the result is determined")
+    fun lowerPriorityTasksCancelled() {
+        val lowPriorityTaskStarted = CountDownLatch(1)
+        val lowPriorityTaskInterrupted = CountDownLatch(1)
+        val lowPriorityTaskCompleted = AtomicBoolean(false)
+
+        val tasks: List<() -> String?> =
+            listOf(
+                {
+                    lowPriorityTaskStarted.await(5, TimeUnit.SECONDS)
+                    "first"
+                },
+                {
+                    lowPriorityTaskStarted.countDown()
+                    try {
+                        Thread.sleep(10_000)
+                        lowPriorityTaskCompleted.set(true)
+                    } catch (_: InterruptedException) {
+                        lowPriorityTaskInterrupted.countDown()
+                    }
+                    "second"
+                }
+            )
+
+        assertThat(ConcurrencyUtils.findFirstNotNullConcurrently(tasks, executor, 2)).isEqualTo("first")
+        assertThat(lowPriorityTaskInterrupted.await(5, TimeUnit.SECONDS)).isTrue()
+        assertThat(lowPriorityTaskCompleted.get()).isFalse()
+    }
+
+    @Test
+    @DisplayName("Statements of lower-priority tasks are cancelled when the result is determined")
+    fun statementsOfLowerPriorityTasksCancelled() {
+        val statementRegistered = CountDownLatch(1)
+        val numberOfStatementCancellations = AtomicInteger()
+
+        val statement: Statement =
+            Proxy.newProxyInstance(javaClass.classLoader, arrayOf(Statement::class.java)) { _, method, _ ->
+                if (method.name == "cancel") {
+                    numberOfStatementCancellations.incrementAndGet()
+                }
+                null
+            } as Statement
+
+        val tasks: List<() -> String?> =
+            listOf(
+                {
+                    statementRegistered.await(5, TimeUnit.SECONDS)
+                    "first"
+                },
+                {
+                    // Stands for a statement being executed, which is not stopped by an interrupt.
+                    RequestDeadline.current()!!.register(statement)
+                    statementRegistered.countDown()
+                    Thread.sleep(10_000)
+                    "second"
+                }
+            )
+
+        val result: String? =
+            RequestDeadline.runWithin(RequestDeadline.after(Duration.ofMinutes(1))) {
+                ConcurrencyUtils.findFirstNotNullConcurrently(tasks, executor, 2)
+            }
+
+        assertThat(result).isEqualTo("first")
+        assertThat(numberOfStatementCancellations.get()).isEqualTo(1)
+    }
+
+    @Test
+    @DisplayName("Exception of a task whose result is inspected is re-thrown")
+    fun exceptionRethrown() {
+        val tasks: List<() -> String?> =
+            listOf(
+                { null },
+                { throw IllegalStateException("failure") },
+                { "third" }
+            )
+
+        assertThatThrownBy { ConcurrencyUtils.findFirstNotNullConcurrently(tasks, executor, 2) }
+            .isInstanceOf(IllegalStateException::class.java)
+            .hasMessage("failure")
+    }
+
+    @Test
+    @DisplayName("Exception of a task after a successful higher-priority task is ignored")
+    fun exceptionAfterSuccessIgnored() {
+        val tasks: List<() -> String?> =
+            listOf(
+                { "first" },
+                { throw IllegalStateException("failure") }
+            )
+
+        assertThat(ConcurrencyUtils.findFirstNotNullConcurrently(tasks, executor, 2)).isEqualTo("first")
+    }
+}
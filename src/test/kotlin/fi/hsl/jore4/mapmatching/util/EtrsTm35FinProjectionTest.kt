@@ -0,0 +1,42 @@
+package fi.hsl.jore4.mapmatching.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+
+class EtrsTm35FinProjectionTest {
+    private fun project(
+        lon: Double,
+        lat: Double
+    ): DoubleArray = DoubleArray(2).also { EtrsTm35FinProjection.project(lon, lat, it) }
+
+    @Test
+    @DisplayName("Point on central meridian is projected to false easting and scaled meridian arc length")
+    fun pointOnCentralMeridian() {
+        val projected: DoubleArray = project(27.0, 60.0)
+
+        // Meridian arc length from equator to 60°N on GRS80 ellipsoid multiplied by scale factor 0.9996
+        assertThat(projected[0]).isCloseTo(500000.0, within(0.001))
+        assertThat(projected[1]).isCloseTo(6651411.190, within(0.001))
+    }
+
+    @Test
+    @DisplayName("Projection is symmetric with regard to central meridian")
+    fun symmetricWithRegardToCentralMeridian() {
+        val west: DoubleArray = project(24.9, 60.17)
+        val east: DoubleArray = project(29.1, 60.17)
+
+        assertThat(500000.0 - west[0]).isCloseTo(east[0] - 500000.0, within(0.001))
+        assertThat(west[1]).isCloseTo(east[1], within(0.001))
+    }
+
+    @Test
+    @DisplayName("Point in Helsinki is projected in the expected area")
+    fun pointInHelsinki() {
+        val projected: DoubleArray = project(24.9414, 60.1719)
+
+        assertThat(projected[0]).isCloseTo(385900.0, within(1000.0))
+        assertThat(projected[1]).isCloseTo(6672200.0, within(1000.0))
+    }
+}
@@ -0,0 +1,64 @@
+package fi.hsl.jore4.mapmatching.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.geolatte.geom.ByteOrder
+import org.geolatte.geom.G2D
+import org.geolatte.geom.Geometries.mkLineString
+import org.geolatte.geom.Geometries.mkPoint
+import org.geolatte.geom.LineString
+import org.geolatte.geom.PositionSequenceBuilders
+import org.geolatte.geom.codec.Wkb
+import org.geolatte.geom.crs.CoordinateReferenceSystems.WGS84
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+
+class EwkbLineStringDecoderTest {
+    private val line: LineString<G2D> =
+        mkLineString(
+            PositionSequenceBuilders
+                .variableSized(G2D::class.java)
+                .add(24.9384, 60.1699)
+                .add(24.9402, 60.1711)
+                .add(24.9425, 60.1720)
+                .toPositionSequence(),
+            WGS84
+        )
+
+    @Test
+    @DisplayName("LineString in little-endian EWKB is decoded")
+    fun decodeLittleEndian() {
+        val ewkb: ByteArray = Wkb.toWkb(line, ByteOrder.NDR).toByteArray()
+
+        assertThat(EwkbLineStringDecoder.decode(ewkb))
+            .isEqualTo(LineStringCoordinates.of(24.9384, 60.1699, 24.9402, 60.1711, 24.9425, 60.1720))
+    }
+
+    @Test
+    @DisplayName("LineString in big-endian EWKB is decoded")
+    fun decodeBigEndian() {
+        val ewkb: ByteArray = Wkb.toWkb(line, ByteOrder.XDR).toByteArray()
+
+        assertThat(EwkbLineStringDecoder.decode(ewkb))
+            .isEqualTo(LineStringCoordinates.of(24.9384, 60.1699, 24.9402, 60.1711, 24.9425, 60.1720))
+    }
+
+    @Test
+    @DisplayName("Decoded LineString is equal to the one decoded by geolatte")
+    fun decodedEqualsToGeolatte() {
+        val ewkb: ByteArray = GeolatteUtils.toEwkb(line)
+
+        val expected: LineString<G2D> = GeolatteUtils.extractLineStringG2D(GeolatteUtils.fromEwkb(ewkb))
+
+        assertThat(EwkbLineStringDecoder.decode(ewkb).toLineString()).isEqualTo(expected)
+    }
+
+    @Test
+    @DisplayName("Geometry other than LineString is rejected")
+    fun pointRejected() {
+        val ewkb: ByteArray = GeolatteUtils.toEwkb(mkPoint(G2D(24.9384, 60.1699), WGS84))
+
+        assertThatThrownBy { EwkbLineStringDecoder.decode(ewkb) }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
@@ -0,0 +1,72 @@
+package fi.hsl.jore4.mapmatching.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+
+class LineStringCoordinatesTest {
+    @Test
+    @DisplayName("Positions are reversed into a new instance")
+    fun reversed() {
+        val line: LineStringCoordinates = LineStringCoordinates.of(1.0, 2.0, 3.0, 4.0, 5.0, 6.0)
+
+        assertThat(line.reversed()).isEqualTo(LineStringCoordinates.of(5.0, 6.0, 3.0, 4.0, 1.0, 2.0))
+        assertThat(line).isEqualTo(LineStringCoordinates.of(1.0, 2.0, 3.0, 4.0, 5.0, 6.0))
+    }
+
+    @Test
+    @DisplayName("Conversion to and from geolatte LineString retains positions")
+    fun geolatteRoundTrip() {
+        val line: LineStringCoordinates = LineStringCoordinates.of(24.93, 60.16, 24.94, 60.17)
+
+        assertThat(LineStringCoordinates.fromLineString(line.toLineString())).isEqualTo(line)
+    }
+
+    @Nested
+    @DisplayName("Merge continuous lines")
+    inner class MergeContinuousLines {
+        @Test
+        @DisplayName("Shared endpoints of consecutive lines are included once")
+        fun sharedEndpointsIncludedOnce() {
+            val merged: LineStringCoordinates =
+                LineStringCoordinates.mergeContinuousLines(
+                    listOf(
+                        LineStringCoordinates.of(0.0, 0.0, 1.0, 0.0),
+                        LineStringCoordinates.of(1.0, 0.0, 1.0, 1.0, 2.0, 1.0),
+                        LineStringCoordinates.of(2.0, 1.0, 2.0, 2.0)
+                    )
+                )
+
+            assertThat(merged).isEqualTo(LineStringCoordinates.of(0.0, 0.0, 1.0, 0.0, 1.0, 1.0, 2.0, 1.0, 2.0, 2.0))
+        }
+
+        @Test
+        @DisplayName("Small gap between consecutive lines is tolerated")
+        fun smallGapTolerated() {
+            val merged: LineStringCoordinates =
+                LineStringCoordinates.mergeContinuousLines(
+                    listOf(
+                        LineStringCoordinates.of(0.0, 0.0, 1.0, 0.0),
+                        LineStringCoordinates.of(1.00000001, 0.0, 2.0, 0.0)
+                    )
+                )
+
+            assertThat(merged).isEqualTo(LineStringCoordinates.of(0.0, 0.0, 1.0, 0.0, 2.0, 0.0))
+        }
+
+        @Test
+        @DisplayName("Discontinuous lines are rejected")
+        fun discontinuousLinesRejected() {
+            assertThatThrownBy {
+                LineStringCoordinates.mergeContinuousLines(
+                    listOf(
+                        LineStringCoordinates.of(0.0, 0.0, 1.0, 0.0),
+                        LineStringCoordinates.of(1.1, 0.0, 2.0, 0.0)
+                    )
+                )
+            }.isInstanceOf(IllegalArgumentException::class.java)
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package fi.hsl.jore4.mapmatching.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.lang.reflect.Proxy
+import java.sql.Statement
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class RequestDeadlineTest {
+    private class StatementStub {
+        val numberOfCancellations = AtomicInteger()
+
+        val statement: Statement =
+            Proxy.newProxyInstance(javaClass.classLoader, arrayOf(Statement::class.java)) { _, method, _ ->
+                if (method.name == "cancel") {
+                    numberOfCancellations.incrementAndGet()
+                }
+                null
+            } as Statement
+    }
+
+    @Test
+    @DisplayName("Only the statement currently executed by a thread is cancelled")
+    fun onlyCurrentStatementCancelled() {
+        val deadline: RequestDeadline = RequestDeadline.after(Duration.ofMinutes(1))
+        val completed = StatementStub()
+        val running = StatementStub()
+
+        RequestDeadline.runWithin(deadline) {
+            deadline.register(completed.statement)
+            deadline.register(running.statement)
+
+            deadline.cancel()
+        }
+
+        assertThat(completed.numberOfCancellations.get()).isZero
+        assertThat(running.numberOfCancellations.get()).isEqualTo(1)
+    }
+
+    @Test
+    @DisplayName("Statements are no longer tracked after the thread has left the deadline")
+    fun statementReleasedAfterRunWithin() {
+        val deadline: RequestDeadline = RequestDeadline.after(Duration.ofMinutes(1))
+        val stub = StatementStub()
+
+        RequestDeadline.runWithin(deadline) {
+            deadline.register(stub.statement)
+        }
+
+        deadline.cancel()
+
+        assertThat(stub.numberOfCancellations.get()).isZero
+    }
+
+    @Test
+    @DisplayName("Statement registered after cancellation is cancelled immediately")
+    fun statementCancelledImmediatelyWhenAlreadyCancelled() {
+        val deadline: RequestDeadline = RequestDeadline.after(Duration.ofMinutes(1))
+        val stub = StatementStub()
+
+        deadline.cancel()
+
+        RequestDeadline.runWithin(deadline) {
+            deadline.register(stub.statement)
+        }
+
+        assertThat(stub.numberOfCancellations.get()).isEqualTo(1)
+    }
+
+    @Test
+    @DisplayName("Deadline of concurrent task is cancelled along with deadline of its request")
+    fun concurrentTaskCancelledWithRequest() {
+        val deadline: RequestDeadline = RequestDeadline.after(Duration.ofMinutes(1))
+        val stub = StatementStub()
+
+        val taskDeadline: RequestDeadline = RequestDeadline.runWithin(deadline) { RequestDeadline.forConcurrentTask() }
+
+        RequestDeadline.runWithin(taskDeadline) {
+            taskDeadline.register(stub.statement)
+
+            deadline.cancel()
+        }
+
+        assertThat(taskDeadline.isCancelled).isTrue
+        assertThat(stub.numberOfCancellations.get()).isEqualTo(1)
+    }
+
+    @Test
+    @DisplayName("Cancelling deadline of concurrent task does not cancel deadline of its request")
+    fun concurrentTaskCancelledAlone() {
+        val deadline: RequestDeadline = RequestDeadline.after(Duration.ofMinutes(1))
+        val stub = StatementStub()
+
+        RequestDeadline.runWithin(deadline) {
+            deadline.register(stub.statement)
+
+            RequestDeadline.forConcurrentTask().cancel()
+        }
+
+        assertThat(deadline.isCancelled).isFalse
+        assertThat(stub.numberOfCancellations.get()).isZero
+    }
+
+    @Test
+    @DisplayName("Deadline of concurrent task without a request deadline does not expire")
+    fun concurrentTaskWithoutRequestDeadline() {
+        val taskDeadline: RequestDeadline = RequestDeadline.forConcurrentTask()
+
+        assertThat(taskDeadline.isBounded).isFalse
+        assertThat(taskDeadline.isExpired).isFalse
+    }
+}